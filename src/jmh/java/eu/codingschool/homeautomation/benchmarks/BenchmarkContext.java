@@ -0,0 +1,77 @@
+package eu.codingschool.homeautomation.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import eu.codingschool.homeautomation.HomeAutomationApplication;
+
+/**
+ * Starts the whole application against the in-memory H2 database of the tests and fills it with data.
+ */
+final class BenchmarkContext {
+
+	static final int ROOMS = 5;
+
+	private BenchmarkContext() {
+	}
+
+	static ConfigurableApplicationContext start() {
+		return new SpringApplicationBuilder(HomeAutomationApplication.class)
+				.properties(
+						"server.port=0",
+						"spring.main.banner-mode=off",
+						"logging.level.root=WARN"
+				)
+				.run();
+	}
+
+	/**
+	 * Run a script of the test resources, e.g. the data the integration tests use.
+	 */
+	static void populate(ConfigurableApplicationContext context, String script) {
+		new ResourceDatabasePopulator(new ClassPathResource(script)).execute(context.getBean(DataSource.class));
+	}
+
+	/**
+	 * Insert a simple user with the given number of devices assigned, spread over {@link #ROOMS} rooms.
+	 * The devices get the ids 1 to deviceCount.
+	 */
+	static void insertPersonWithDevices(ConfigurableApplicationContext context, int personId, int deviceCount) {
+		JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+		jdbcTemplate.update(
+				"INSERT INTO person(id, name, surname, email, password, role) VALUES (?, 'Bench', 'User', ?, '***', 'USER')",
+				personId, "bench" + personId + "@foo.com"
+		);
+		jdbcTemplate.update(
+				"INSERT INTO device_type(id, type, information_type, unit_of_measure, min_value, max_value, " +
+				"interaction_type, icon, group_color) " +
+				"VALUES (1, 'Lights', 'Illumination', '%', 0, 100, 'plusminus', 'fa-lightbulb', 'bg-warning')"
+		);
+
+		List<Object[]> rooms = new ArrayList<>();
+		for (int roomId = 1; roomId <= ROOMS; roomId++) {
+			rooms.add(new Object[] { roomId, "Room #" + roomId });
+		}
+		jdbcTemplate.batchUpdate("INSERT INTO room(id, name) VALUES (?, ?)", rooms);
+
+		List<Object[]> devices = new ArrayList<>();
+		List<Object[]> assignments = new ArrayList<>();
+		for (int deviceId = 1; deviceId <= deviceCount; deviceId++) {
+			devices.add(new Object[] { deviceId, "Lighting #" + deviceId, deviceId % ROOMS + 1 });
+			assignments.add(new Object[] { personId, deviceId });
+		}
+		jdbcTemplate.batchUpdate(
+				"INSERT INTO device(id, name, status, information_value, room_id, device_type_id) VALUES (?, ?, 0, '50', ?, 1)",
+				devices
+		);
+		jdbcTemplate.batchUpdate("INSERT INTO person_device(person_id, device_id) VALUES (?, ?)", assignments);
+	}
+}
@@ -0,0 +1,110 @@
+package eu.codingschool.homeautomation.benchmarks;
+
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.user;
+import static org.springframework.security.test.web.servlet.setup.SecurityMockMvcConfigurers.springSecurity;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.RequestBuilder;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+/**
+ * A device click and a dashboard render, end-to-end through the security filters, the controllers, the services and
+ * H2 with the data of the integration tests.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DeviceCommandBenchmark {
+
+	// device 7 is assigned to testuser1@foo.com (id 102) in test-data-population.sql
+	private static final int DEVICE_ID = 7;
+	private static final int USER_ID = 102;
+
+	private ConfigurableApplicationContext context;
+
+	private MockMvc mockMvc;
+
+	private UserDetails simpleUser;
+
+	private boolean status;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		context = BenchmarkContext.start();
+		BenchmarkContext.populate(context, "test-data-population.sql");
+
+		mockMvc = MockMvcBuilders.webAppContextSetup((WebApplicationContext) context)
+								 .apply(springSecurity())
+								 .build();
+		simpleUser = context.getBean("userDetailsServiceImpl", UserDetailsService.class)
+							.loadUserByUsername("testuser1@foo.com");
+
+		// do not measure failing requests
+		checkStatus(updateDeviceStatus(), HttpStatus.SEE_OTHER);
+		checkStatus(updateDeviceStatusFromDashboard(), HttpStatus.OK);
+		checkStatus(renderDeviceGrid(), HttpStatus.OK);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		context.close();
+	}
+
+	/**
+	 * The classic form of the click, which redirects back to the dashboard.
+	 */
+	@Benchmark
+	public MvcResult updateDeviceStatus() throws Exception {
+		status = !status;
+		return perform(patch("/devices/{id}/updateStatus/{status}", DEVICE_ID, status).with(user(simpleUser)));
+	}
+
+	@Benchmark
+	public MvcResult updateDeviceStatusFromDashboard() throws Exception {
+		status = !status;
+		return perform(patch("/devices/{id}/updateStatus/{status}", DEVICE_ID, status)
+				.header("X-Requested-With", "XMLHttpRequest")
+				.with(user(simpleUser)));
+	}
+
+	@Benchmark
+	public MvcResult renderDeviceGrid() throws Exception {
+		return perform(get("/devices/user/{id}", USER_ID).with(user(simpleUser)));
+	}
+
+	private MvcResult perform(RequestBuilder request) throws Exception {
+		return mockMvc.perform(request).andReturn();
+	}
+
+	private static void checkStatus(MvcResult result, HttpStatus expected) {
+		if (result.getResponse().getStatus() != expected.value()) {
+			throw new IllegalStateException(
+					result.getRequest().getRequestURI() + " returned " + result.getResponse().getStatus());
+		}
+	}
+}
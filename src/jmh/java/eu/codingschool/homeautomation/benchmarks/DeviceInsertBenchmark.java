@@ -0,0 +1,105 @@
+package eu.codingschool.homeautomation.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.Session;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.orm.jpa.EntityManagerFactoryUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import eu.codingschool.homeautomation.model.Device;
+import eu.codingschool.homeautomation.model.DeviceType;
+import eu.codingschool.homeautomation.model.Room;
+import eu.codingschool.homeautomation.repositories.DeviceRepository;
+
+/**
+ * Provisioning devices in bulk through Hibernate, a transaction per {@link #DEVICES} devices, with the inserts sent
+ * one by one (a JDBC batch size of 1, as with the AUTO_INCREMENT ids before) or in JDBC batches. The score is the
+ * number of devices inserted per second.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DeviceInsertBenchmark {
+
+	private static final int DEVICES = 500;
+
+	// device type 1 and room 2 are inserted by test-data-population.sql, together with the devices 1 to 7
+	private static final int DEVICE_TYPE_ID = 1;
+	private static final int ROOM_ID = 2;
+	private static final int POPULATED_DEVICES = 7;
+
+	@Param({ "1", "50" })
+	private int jdbcBatchSize;
+
+	private ConfigurableApplicationContext context;
+
+	private EntityManagerFactory entityManagerFactory;
+
+	private DeviceRepository deviceRepository;
+
+	private TransactionTemplate transactionTemplate;
+
+	private JdbcTemplate jdbcTemplate;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		context = BenchmarkContext.start();
+		BenchmarkContext.populate(context, "test-data-population.sql");
+
+		entityManagerFactory = context.getBean(EntityManagerFactory.class);
+		deviceRepository = context.getBean(DeviceRepository.class);
+		transactionTemplate = context.getBean(TransactionTemplate.class);
+		jdbcTemplate = context.getBean(JdbcTemplate.class);
+	}
+
+	@TearDown(Level.Iteration)
+	public void deleteInsertedDevices() {
+		jdbcTemplate.update("DELETE FROM device WHERE id > ?", POPULATED_DEVICES);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		context.close();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(DEVICES)
+	public List<Device> insertDevices() {
+		return transactionTemplate.execute(status -> {
+			EntityManager entityManager = EntityManagerFactoryUtils.getTransactionalEntityManager(entityManagerFactory);
+			entityManager.unwrap(Session.class).setJdbcBatchSize(jdbcBatchSize);
+
+			DeviceType deviceType = entityManager.getReference(DeviceType.class, DEVICE_TYPE_ID);
+			Room room = entityManager.getReference(Room.class, ROOM_ID);
+			List<Device> devices = new ArrayList<>(DEVICES);
+			for (int i = 1; i <= DEVICES; i++) {
+				devices.add(new Device("Lighting #" + i, false, "50", deviceType, room));
+			}
+			return deviceRepository.saveAll(devices);
+		});
+	}
+}
@@ -0,0 +1,129 @@
+package eu.codingschool.homeautomation.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import eu.codingschool.homeautomation.model.Device;
+import eu.codingschool.homeautomation.model.DeviceSelection;
+import eu.codingschool.homeautomation.repositories.PersonRepository;
+import eu.codingschool.homeautomation.repositories.RoomRepository;
+import eu.codingschool.homeautomation.repositories.projections.RoomDevicesCount;
+import eu.codingschool.homeautomation.services.DevicePermissionService;
+import eu.codingschool.homeautomation.services.DeviceService;
+
+/**
+ * The lookups behind every click and every form submission, for users with a growing number of assigned devices.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DeviceLookupBenchmark {
+
+	private static final int PERSON_ID = 1000;
+
+	@Param({ "10", "100", "1000" })
+	private int deviceCount;
+
+	private ConfigurableApplicationContext context;
+
+	private DevicePermissionService devicePermissionService;
+
+	private DeviceService deviceService;
+
+	private PersonRepository personRepository;
+
+	private RoomRepository roomRepository;
+
+	private TransactionTemplate transactionTemplate;
+
+	private List<String> selectedDeviceIds;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		context = BenchmarkContext.start();
+		BenchmarkContext.insertPersonWithDevices(context, PERSON_ID, deviceCount);
+
+		// by name, like the controllers and the services get them injected, since the test configurations of the
+		// service tests are on the classpath as well and define beans of the same types
+		devicePermissionService = context.getBean("devicePermissionService", DevicePermissionService.class);
+		deviceService = context.getBean("deviceService", DeviceService.class);
+		personRepository = context.getBean(PersonRepository.class);
+		roomRepository = context.getBean(RoomRepository.class);
+		transactionTemplate = context.getBean(TransactionTemplate.class);
+		selectedDeviceIds = IntStream.rangeClosed(1, deviceCount)
+									 .mapToObj(String::valueOf)
+									 .collect(Collectors.toList());
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		context.close();
+	}
+
+	/**
+	 * The authorization check of a click, as done by DeviceController.
+	 */
+	@Benchmark
+	public boolean checkDeviceAssigned() {
+		return devicePermissionService.isAssigned(PERSON_ID, deviceCount);
+	}
+
+	/**
+	 * The authorization check of the first click after the assignments of the user have changed.
+	 */
+	@Benchmark
+	public boolean checkDeviceAssignedAfterInvalidation() {
+		devicePermissionService.invalidate(PERSON_ID);
+		return devicePermissionService.isAssigned(PERSON_ID, deviceCount);
+	}
+
+	/**
+	 * The way the authorization check used to work: initialize Person.devices and look for the device id.
+	 */
+	@Benchmark
+	public Boolean checkDeviceAssignedByLoadingPersonDevices() {
+		return transactionTemplate.execute(status -> personRepository.findById(PERSON_ID)
+																	  .get()
+																	  .getDevices()
+																	  .stream()
+																	  .map(Device::getId)
+																	  .anyMatch(deviceId -> deviceId == deviceCount));
+	}
+
+	/**
+	 * Resolving the devices selected in the person form.
+	 */
+	@Benchmark
+	public DeviceSelection getSelectedDevices() {
+		return deviceService.getSelectedDevices(selectedDeviceIds);
+	}
+
+	/**
+	 * The side menu of every page of a simple user.
+	 */
+	@Benchmark
+	public List<RoomDevicesCount> findUserRooms() {
+		return roomRepository.findUserRooms(PERSON_ID);
+	}
+}
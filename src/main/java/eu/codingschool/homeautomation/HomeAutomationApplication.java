@@ -2,8 +2,10 @@ package eu.codingschool.homeautomation;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
 // Having the main class inside the root package requires only @SpringBootApplication to work
 // Having @ComponentScan, @EnableJpaRepositories confuses @WebMvcTest testing
 //@EntityScan("eu.codingschool.homeautomation.model")
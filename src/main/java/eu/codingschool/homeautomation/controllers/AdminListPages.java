@@ -0,0 +1,27 @@
+package eu.codingschool.homeautomation.controllers;
+
+import java.util.List;
+
+import org.springframework.data.domain.Slice;
+import org.springframework.ui.Model;
+
+import eu.codingschool.homeautomation.model.ListSort;
+
+/**
+ * Model attributes shared by the paginated admin lists, see {@code _fragments_/listPager.html}.
+ */
+final class AdminListPages {
+
+	private AdminListPages() {
+	}
+
+	/**
+	 * The link to the next page is built from the last row shown, which is where the next page continues from.
+	 */
+	static void addPageAttributes(Model model, Slice<?> page, ListSort sort, String filter) {
+		List<?> rows = page.getContent();
+		model.addAttribute("sort", sort);
+		model.addAttribute("filter", filter);
+		model.addAttribute("nextPage", page.hasNext() && !rows.isEmpty() ? rows.get(rows.size() - 1) : null);
+	}
+}
@@ -0,0 +1,140 @@
+package eu.codingschool.homeautomation.controllers;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import eu.codingschool.homeautomation.services.DataTransferService;
+import eu.codingschool.homeautomation.transfer.DataFormat;
+import eu.codingschool.homeautomation.transfer.DataSet;
+import eu.codingschool.homeautomation.transfer.ImportListener;
+import eu.codingschool.homeautomation.transfer.ImportProgress;
+import eu.codingschool.homeautomation.transfer.MalformedDataException;
+import eu.codingschool.homeautomation.transfer.RowReader;
+import eu.codingschool.homeautomation.transfer.RowWriter;
+
+/**
+ * Bulk export and import of the rooms, device types, devices and assignments, e.g. to set up a new building at once
+ * instead of through the forms. Both are written straight to the response while the rows are read, so that neither
+ * the request nor the response is ever kept in memory as a whole.
+ */
+@Controller
+@RequestMapping("/admin")
+public class DataTransferController {
+
+	private static final String ENDPOINT_EXPORT = "/export/{dataSet}";
+	private static final String ENDPOINT_IMPORT = "/import/{dataSet}";
+
+	private static final String MEDIA_TYPE_CSV = "text/csv";
+	private static final String MEDIA_TYPE_NDJSON = "application/x-ndjson";
+
+	private final DataTransferService dataTransferService;
+
+	private final ObjectMapper objectMapper;
+
+	public DataTransferController(DataTransferService dataTransferService, ObjectMapper objectMapper) {
+		this.dataTransferService = dataTransferService;
+		this.objectMapper = objectMapper;
+	}
+
+	/**
+	 * Download every row of the data set in a file that can be imported again as it is.
+	 */
+	@GetMapping(value = ENDPOINT_EXPORT)
+	public void exportRows(
+			@PathVariable(value = "dataSet") String path,
+			@RequestParam(value = "format", defaultValue = "CSV") DataFormat format,
+			HttpServletResponse response) throws IOException {
+		DataSet dataSet = DataSet.fromPath(path);
+		if (dataSet == null) {
+			response.sendError(HttpServletResponse.SC_NOT_FOUND);
+			return;
+		}
+
+		response.setContentType(format.getMediaType());
+		response.setCharacterEncoding("UTF-8");
+		response.setHeader(HttpHeaders.CONTENT_DISPOSITION,
+				"attachment; filename=\"" + dataSet.getPath() + format.getExtension() + "\"");
+		try (RowWriter rows = format.openWriter(response.getOutputStream(), dataSet.getColumns())) {
+			dataTransferService.exportRows(dataSet, rows);
+		}
+	}
+
+	/**
+	 * Import the rows of a CSV or JSON file sent as the request body. The response has one JSON object per line: one
+	 * for every rejected row, one after every chunk that has been written and one at the end, either "done" or
+	 * "aborted" when the rest of the file could not be read.
+	 */
+	@PostMapping(value = ENDPOINT_IMPORT, consumes = { MEDIA_TYPE_CSV, MediaType.APPLICATION_JSON_VALUE })
+	public void importRows(
+			@PathVariable(value = "dataSet") String path,
+			HttpServletRequest request,
+			HttpServletResponse response) throws IOException {
+		DataSet dataSet = DataSet.fromPath(path);
+		if (dataSet == null) {
+			response.sendError(HttpServletResponse.SC_NOT_FOUND);
+			return;
+		}
+		DataFormat format = DataFormat.fromContentType(request.getContentType());
+
+		response.setContentType(MEDIA_TYPE_NDJSON);
+		response.setCharacterEncoding("UTF-8");
+		OutputStream out = response.getOutputStream();
+		ImportListener listener = new ImportListener() {
+			@Override
+			public void rowRejected(long row, String reason) throws IOException {
+				Map<String, Object> event = new LinkedHashMap<>();
+				event.put("event", "rejected");
+				event.put("row", row);
+				event.put("reason", reason);
+				writeEvent(out, event);
+			}
+
+			@Override
+			public void chunkWritten(ImportProgress progress) throws IOException {
+				writeEvent(out, progressEvent("progress", progress));
+				// let the client see how far the import has got
+				response.flushBuffer();
+			}
+		};
+
+		try (RowReader rows = format.openReader(request.getInputStream())) {
+			ImportProgress progress = dataTransferService.importRows(dataSet, rows, listener);
+			writeEvent(out, progressEvent("done", progress));
+		} catch (MalformedDataException ex) {
+			Map<String, Object> event = new LinkedHashMap<>();
+			event.put("event", "aborted");
+			event.put("reason", ex.getMessage());
+			writeEvent(out, event);
+		}
+	}
+
+	private static Map<String, Object> progressEvent(String name, ImportProgress progress) {
+		Map<String, Object> event = new LinkedHashMap<>();
+		event.put("event", name);
+		event.put("read", progress.getRead());
+		event.put("imported", progress.getImported());
+		event.put("rejected", progress.getRejected());
+		return event;
+	}
+
+	private void writeEvent(OutputStream out, Map<String, Object> event) throws IOException {
+		out.write(objectMapper.writeValueAsBytes(event));
+		out.write('\n');
+	}
+}
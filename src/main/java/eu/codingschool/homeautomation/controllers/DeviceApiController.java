@@ -0,0 +1,165 @@
+package eu.codingschool.homeautomation.controllers;
+
+import java.util.List;
+
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import eu.codingschool.homeautomation.model.Person;
+import eu.codingschool.homeautomation.repositories.projections.DeviceGridRow;
+import eu.codingschool.homeautomation.security.PersonUser;
+import eu.codingschool.homeautomation.services.DevicePermissionService;
+import eu.codingschool.homeautomation.services.DeviceService;
+import eu.codingschool.homeautomation.services.PersonService;
+import eu.codingschool.homeautomation.services.StateVersionService;
+
+/**
+ * The devices of the device grid as JSON, for the clients that poll them, e.g. wall tablets.
+ * <p>
+ * Every response has an ETag made of the version of what it shows. A client that sends it back in If-None-Match gets
+ * 304 Not Modified as long as nothing has changed, which is answered from memory without loading any device, nor the
+ * logged-in person: who is asking is known from the session until something is to be loaded.
+ */
+@RestController
+@RequestMapping(value = "/api/v1", produces = MediaType.APPLICATION_JSON_VALUE)
+public class DeviceApiController {
+
+	/**
+	 * The responses depend on the user, so they may only be kept by the client and must be revalidated every time.
+	 */
+	private static final String CACHE_CONTROL = CacheControl.noCache().cachePrivate().getHeaderValue();
+
+	private final PersonService personService;
+
+	private final DeviceService deviceService;
+
+	private final DevicePermissionService devicePermissionService;
+
+	private final StateVersionService stateVersionService;
+
+	public DeviceApiController(
+			PersonService personService,
+			DeviceService deviceService,
+			DevicePermissionService devicePermissionService,
+			StateVersionService stateVersionService) {
+
+		this.personService = personService;
+		this.deviceService = deviceService;
+		this.devicePermissionService = devicePermissionService;
+		this.stateVersionService = stateVersionService;
+	}
+
+	/**
+	 * Same devices as {@link DeviceController#showUserDevices}.
+	 */
+	@GetMapping(value = "/users/{userId}/devices")
+	public ResponseEntity<List<DeviceGridRow>> getUserDevices(
+			@PathVariable(value="userId") int userId,
+			ServletWebRequest request) {
+
+		checkUserAuthorized(userId);
+
+		if (isNotModified(request, stateVersionService.getUserVersion(userId))) {
+			return null;
+		}
+		checkLoggedInPerson(userId);
+		return ResponseEntity.ok(deviceService.findGridRowsByPersonsId(userId));
+	}
+
+	/**
+	 * Same devices as {@link DeviceController#showUserDevicesPerRoom}.
+	 */
+	@GetMapping(value = "/users/{userId}/rooms/{roomId}/devices")
+	public ResponseEntity<List<DeviceGridRow>> getUserDevicesPerRoom(
+			@PathVariable(value="userId") int userId,
+			@PathVariable(value="roomId") int roomId,
+			ServletWebRequest request) {
+
+		checkUserAuthorized(userId);
+
+		if (isNotModified(request, stateVersionService.getUserVersion(userId))) {
+			return null;
+		}
+		checkLoggedInPerson(userId);
+		return ResponseEntity.ok(deviceService.findGridRowsByPersonsIdAndRoomId(userId, roomId));
+	}
+
+	@GetMapping(value = "/devices/{id}")
+	public ResponseEntity<DeviceGridRow> getDevice(
+			@PathVariable(value="id") int deviceId,
+			ServletWebRequest request) {
+
+		checkDeviceAssignedToLoggedInUserOrAdmin(deviceId);
+
+		if (isNotModified(request, stateVersionService.getDeviceVersion(deviceId))) {
+			return null;
+		}
+		checkDeviceAssignedToLoggedInPersonOrAdmin(deviceId);
+		DeviceGridRow row = deviceService.findGridRowById(deviceId);
+		return row != null ? ResponseEntity.ok(row) : ResponseEntity.notFound().build();
+	}
+
+	/**
+	 * The version is read before the devices, so that a change in between is sent again with the next request
+	 * instead of being missed. The ETag is set on the response either way.
+	 */
+	private static boolean isNotModified(ServletWebRequest request, long version) {
+		request.getResponse().setHeader(HttpHeaders.CACHE_CONTROL, CACHE_CONTROL);
+		return request.checkNotModified("\"" + version + "\"");
+	}
+
+	/**
+	 * Checked against the person id of the session, without reading the database.
+	 */
+	private void checkUserAuthorized(int userId) {
+		UserDetails loggedInUser = personService.getLoggedInUser();
+		if (!(loggedInUser instanceof PersonUser)) {
+			checkLoggedInPerson(userId);
+		} else if (((PersonUser) loggedInUser).getPersonId() != userId) {
+			throw new AccessDeniedException("");
+		}
+	}
+
+	private void checkDeviceAssignedToLoggedInUserOrAdmin(int deviceId) {
+		UserDetails loggedInUser = personService.getLoggedInUser();
+		if (!(loggedInUser instanceof PersonUser)) {
+			checkDeviceAssignedToLoggedInPersonOrAdmin(deviceId);
+			return;
+		}
+		PersonUser personUser = (PersonUser) loggedInUser;
+		if (!personUser.isAdmin() && !devicePermissionService.isAssigned(personUser.getPersonId(), deviceId)) {
+			throw new AccessDeniedException("");
+		}
+	}
+
+	/**
+	 * Before anything is loaded, the logged-in person is read again, since they may have been deleted, or their email
+	 * or role changed, since they logged in.
+	 */
+	private void checkLoggedInPerson(int userId) {
+		Person loggedInUser = personService.getLoggedInPerson();
+		if (loggedInUser == null || loggedInUser.getId() != userId) {
+			throw new AccessDeniedException("");
+		}
+	}
+
+	private void checkDeviceAssignedToLoggedInPersonOrAdmin(int deviceId) {
+		Person loggedInUser = personService.getLoggedInPerson();
+		if (loggedInUser == null) {
+			throw new AccessDeniedException("");
+		}
+		if (!loggedInUser.isAdmin() && !devicePermissionService.isAssigned(loggedInUser.getId(), deviceId)) {
+			// trying to access a device that does not belong to the logged-in user
+			throw new AccessDeniedException("");
+		}
+	}
+}
@@ -1,29 +1,51 @@
 package eu.codingschool.homeautomation.controllers;
 
 import java.util.*;
+import java.util.stream.Collectors;
 
+import io.micrometer.core.annotation.Timed;
 import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.Slice;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.AccessDeniedException;
-import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.ui.ModelMap;
 import org.springframework.validation.BindingResult;
 import org.springframework.web.bind.annotation.*;
 
+import eu.codingschool.homeautomation.metrics.RequestMetrics;
+import eu.codingschool.homeautomation.model.Dashboard;
 import eu.codingschool.homeautomation.model.Device;
+import eu.codingschool.homeautomation.model.DeviceCommand;
+import eu.codingschool.homeautomation.model.DeviceHistoryRollup;
+import eu.codingschool.homeautomation.model.DeviceHistorySample;
+import eu.codingschool.homeautomation.model.DeviceState;
 import eu.codingschool.homeautomation.model.DeviceType;
+import eu.codingschool.homeautomation.model.HistoryResolution;
+import eu.codingschool.homeautomation.model.ListSort;
 import eu.codingschool.homeautomation.model.Person;
 import eu.codingschool.homeautomation.model.Room;
+import eu.codingschool.homeautomation.services.DashboardService;
+import eu.codingschool.homeautomation.services.DeviceEventService;
+import eu.codingschool.homeautomation.services.DeviceHistoryService;
+import eu.codingschool.homeautomation.services.DevicePermissionService;
 import eu.codingschool.homeautomation.services.DeviceService;
+import eu.codingschool.homeautomation.services.DeviceStateConflictException;
+import eu.codingschool.homeautomation.services.DeviceStatesNotWrittenException;
 import eu.codingschool.homeautomation.services.DeviceTypeService;
+import eu.codingschool.homeautomation.services.InvalidDeviceValueException;
 import eu.codingschool.homeautomation.services.PersonService;
 import eu.codingschool.homeautomation.services.RoomService;
 import eu.codingschool.homeautomation.validators.DeviceValidator;
 import org.springframework.web.servlet.View;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 
 @Controller
 public class DeviceController {
@@ -37,6 +59,13 @@ public class DeviceController {
 
 	private static final String VIEW_DEVICE_LIST = "device/list";
 	public static final String VIEW_DEVICE_GRID = "device/grid";
+	private static final String VIEW_ERROR_404 = "/error/404";
+	private static final String VIEW_ERROR_409 = "/error/409";
+
+	/**
+	 * The dashboards send their commands with AJAX and get the changes back through the device events stream.
+	 */
+	private static final String HEADER_AJAX_REQUEST = "X-Requested-With=XMLHttpRequest";
 
 
 	private final PersonService personService;
@@ -49,24 +78,52 @@ public class DeviceController {
 
 	private final DeviceValidator deviceValidator;
 
+	private final DeviceEventService deviceEventService;
+
+	private final DevicePermissionService devicePermissionService;
+
+	private final DeviceHistoryService deviceHistoryService;
+
+	private final DashboardService dashboardService;
+
 	public DeviceController(
 			PersonService personService,
 			DeviceService deviceService,
 			DeviceTypeService deviceTypeService,
 			RoomService roomService,
-			DeviceValidator deviceValidator) {
+			DeviceValidator deviceValidator,
+			DeviceEventService deviceEventService,
+			DevicePermissionService devicePermissionService,
+			DeviceHistoryService deviceHistoryService,
+			DashboardService dashboardService) {
 
 		this.personService = personService;
 		this.deviceService = deviceService;
 		this.deviceTypeService = deviceTypeService;
 		this.roomService = roomService;
 		this.deviceValidator = deviceValidator;
+		this.deviceEventService = deviceEventService;
+		this.devicePermissionService = devicePermissionService;
+		this.deviceHistoryService = deviceHistoryService;
+		this.dashboardService = dashboardService;
 	}
 	
 	
+	@Timed(value = RequestMetrics.ADMIN_LISTS, histogram = true)
 	@GetMapping(value = ENDPOINT_ADMIN_DEVICES_BASE_URL)
-	public String getAdminDevicesList(Model model) {
-		getAllDevices(model);
+	public String getAdminDevicesList(
+			@RequestParam(value = "sort", defaultValue = "ID") ListSort sort,
+			@RequestParam(value = "filter", required = false) String filter,
+			@RequestParam(value = "afterId", required = false) Integer afterId,
+			@RequestParam(value = "afterName", required = false) String afterName,
+			Model model) {
+		checkAdminUser();
+
+		Slice<Device> page = deviceService.findPage(sort, filter, afterId, afterName);
+		model.addAttribute("devices", page.getContent());
+		AdminListPages.addPageAttributes(model, page, sort, filter);
+		model.addAttribute("rooms", roomService.findAll());
+		model.addAttribute("loggedInUser", personService.getLoggedInPerson());
 		return VIEW_DEVICE_LIST;
 	}
 	
@@ -92,8 +149,12 @@ public class DeviceController {
 	 * Save a new device by submitting the form.
 	 */
 	@PostMapping(value = ENDPOINT_ADMIN_DEVICES_BASE_URL)
-	public String addDevice(@ModelAttribute("device") Device device, BindingResult result) {
-		return saveOrUpdateDevice(device, result);
+	public String addDevice(
+			@ModelAttribute("device") Device device,
+			BindingResult result,
+			ModelMap model,
+			HttpServletResponse response) {
+		return saveOrUpdateDevice(device, result, model, response);
 	}
 	
 	/**
@@ -119,8 +180,12 @@ public class DeviceController {
 	 * Update a device by submitting the form.
 	 */
 	@PutMapping(value = ENDPOINT_ADMIN_DEVICES_BASE_URL + "/{id}")
-	public String editDevice(@ModelAttribute("device") Device device, BindingResult result) {
-		return saveOrUpdateDevice(device, result);
+	public String editDevice(
+			@ModelAttribute("device") Device device,
+			BindingResult result,
+			ModelMap model,
+			HttpServletResponse response) {
+		return saveOrUpdateDevice(device, result, model, response);
 	}
 	
 	/**
@@ -157,7 +222,11 @@ public class DeviceController {
 		return REDIRECT_ENDPOINT_ADMIN_DEVICES_BASE_URL;
 	}
 	
-	private String saveOrUpdateDevice(Device device, BindingResult result) {
+	private String saveOrUpdateDevice(
+			Device device,
+			BindingResult result,
+			ModelMap model,
+			HttpServletResponse response) {
 		checkAdminUser();
 
 		deviceValidator.validate(device, result);
@@ -167,70 +236,77 @@ public class DeviceController {
 			return MODAL_DEVICE_NEW_OR_EDIT;
 		}
 		
-		deviceService.save(device);
+		try {
+			deviceService.save(device);
+		} catch (OptimisticLockingFailureException ex) {
+			// the form was loaded before somebody else saved the device, so saving it would undo their changes
+			response.setStatus(HttpStatus.CONFLICT.value());
+			model.addAttribute("action", "save device");
+			model.addAttribute("entityName", device.getName());
+			model.addAttribute("additionalMessage", "The device has been changed by someone else in the meantime. Please reload the page and try again.");
+			return VIEW_ERROR_409;
+		}
 		return REDIRECT_ENDPOINT_ADMIN_DEVICES_BASE_URL;
 	}
 
-	private void getAllDevices(Model model) {
-		checkAdminUser();
-
-		model.addAttribute("devices", deviceService.findAll());
-		model.addAttribute("rooms", roomService.findAll());
-		model.addAttribute(
-				"loggedInUser",
-				personService.findByEmail(personService.getLoggedInUser().getUsername())
-		);
-	}
-
 	/**
 	 * Display the devices that can be operated by an ADMIN only
 	 */
+	@Timed(value = RequestMetrics.GRID, histogram = true)
 	@GetMapping(value =  ENDPOINT_ADMIN_DEVICES_BASE_URL + "/user/all")
 	public String showAdminDevices(Model model) {
-		getAllDevices(model);
+		Dashboard dashboard = getAdminDashboard();
+
+		model.addAttribute("devices", dashboard.getDevices());
+		model.addAttribute("rooms", dashboard.getRooms());
+		model.addAttribute("loggedInUser", dashboard.getLoggedInUser());
 		return VIEW_DEVICE_GRID;
 	}
 
 	/**
 	 * Display the devices that can be operated by any USER
 	 */
+	@Timed(value = RequestMetrics.GRID, histogram = true)
 	@GetMapping(value = ENDPOINT_DEVICES_BASE_URL + "/user/{id}")
 	public String showUserDevices(@PathVariable(value="id") int userId, Model model) {
-		UserDetails loggedInUserDetails = getUserAuthorized(userId);
-		populateSideMenuSimpleUser(model, loggedInUserDetails);
-    	model.addAttribute("devices", deviceService.findByPersonsId(userId));
+		Dashboard dashboard = getUserDashboardAuthorized(userId);
+		populateSideMenuSimpleUser(model, dashboard);
+		model.addAttribute("devices", dashboard.getLoggedInUser().isAdmin()
+				? deviceService.findGridRowsByPersonsId(userId)
+				: dashboard.getDevices());
 		return VIEW_DEVICE_GRID;
 	}
 	
 	/**
 	 * Display all the devices for a specific room
 	 */
+	@Timed(value = RequestMetrics.GRID, histogram = true)
 	@GetMapping(value = ENDPOINT_ADMIN_DEVICES_BASE_URL + "/user/all/room/{roomId}")
 	public String showAdminDevicesPerRoom(@PathVariable(value="roomId") int roomId, Model model) {
-		checkAdminUser();
+		Dashboard dashboard = getAdminDashboard();
 		
-		model.addAttribute("devices", deviceService.findAllByRoomId(roomId));
-		model.addAttribute("rooms", roomService.findAll());
+		model.addAttribute("devices", dashboard.getDevicesInRoom(roomId));
+		model.addAttribute("rooms", dashboard.getRooms());
 		model.addAttribute("selectedRoom", roomService.findById(roomId).getName());
-		model.addAttribute(
-				"loggedInUser",
-				personService.findByEmail(personService.getLoggedInUser().getUsername())
-		);
+		model.addAttribute("loggedInUser", dashboard.getLoggedInUser());
 		return VIEW_DEVICE_GRID;
 	}
 	
 	/**
 	 * Display the devices that are assigned to a USER for a specific room
 	 */
+	@Timed(value = RequestMetrics.GRID, histogram = true)
 	@GetMapping(value = ENDPOINT_DEVICES_BASE_URL + "/user/{userId}/room/{roomId}")
 	public String showUserDevicesPerRoom(
 			@PathVariable(value="userId") int userId, 
 			@PathVariable(value="roomId") int roomId, 
 			Model model) {
 
-		UserDetails loggedInUserDetails = getUserAuthorized(userId);
-		populateSideMenuSimpleUser(model, loggedInUserDetails);
-		model.addAttribute("devices", deviceService.findByPersonsIdAndRoomId(userId, roomId));
+		Dashboard dashboard = getUserDashboardAuthorized(userId);
+		populateSideMenuSimpleUser(model, dashboard);
+		model.addAttribute("devices", dashboard.getLoggedInUser().isAdmin()
+				? deviceService.findGridRowsByPersonsIdAndRoomId(userId, roomId)
+				: dashboard.getDevicesInRoom(roomId));
 		model.addAttribute("selectedRoom", roomService.findById(roomId).getName());
 		return VIEW_DEVICE_GRID;
 	}
@@ -238,6 +314,7 @@ public class DeviceController {
 	/**
 	 * Set the device on/off.
 	 */
+	@Timed(value = RequestMetrics.COMMANDS, histogram = true)
 	@PatchMapping(value = ENDPOINT_DEVICES_BASE_URL + "/{id}/updateStatus/{status}")
 	public String updateDeviceStatus(
 			@PathVariable(value="id") int deviceId, 
@@ -246,9 +323,9 @@ public class DeviceController {
 
 		checkDeviceAssignedToLoggedInUserOrAdmin(deviceId);
 
-		Device device = deviceService.findById(deviceId);
-		device.setStatusOn(status);
-		deviceService.save(device);
+		if (deviceService.updateStatus(deviceId, status) == null) {
+			return "redirect:" + VIEW_ERROR_404;
+		}
 		
 		return redirectPage(request);
 	}
@@ -256,6 +333,7 @@ public class DeviceController {
 	/**
 	 * Increase/Decrease the device's information value. 
 	 */
+	@Timed(value = RequestMetrics.COMMANDS, histogram = true)
 	@PatchMapping(value = ENDPOINT_DEVICES_BASE_URL + "/{id}/updateValue/{value}")
 	public String updateDeviceInformationValue(
 			@PathVariable(value="id") int deviceId, 
@@ -264,83 +342,287 @@ public class DeviceController {
 
 		checkDeviceAssignedToLoggedInUserOrAdmin(deviceId);
 
-		Device device = deviceService.findById(deviceId);
-		device.setInformationValue(informationValue);
-		deviceService.save(device);
+		if (deviceService.updateInformationValue(deviceId, informationValue) == null) {
+			return "redirect:" + VIEW_ERROR_404;
+		}
 		
 		return redirectPage(request);
 	}
 
+	/**
+	 * Set the device on/off from a dashboard. Only the new state is returned, the page itself is updated through the
+	 * device events stream.
+	 * If a version is given, the device is changed only if it is still at that version; otherwise the response is a
+	 * 409 Conflict with the current state.
+	 */
+	@Timed(value = RequestMetrics.COMMANDS, histogram = true)
+	@PatchMapping(value = ENDPOINT_DEVICES_BASE_URL + "/{id}/updateStatus/{status}", headers = HEADER_AJAX_REQUEST)
+	public ResponseEntity<DeviceState> updateDeviceStatusFromDashboard(
+			@PathVariable(value="id") int deviceId,
+			@PathVariable(value="status") boolean status,
+			@RequestParam(value="version", required=false) Long version) {
+
+		checkDeviceAssignedToLoggedInUserOrAdmin(deviceId);
+
+		DeviceState deviceState = deviceService.updateStatus(deviceId, status, version);
+		return deviceState != null ? ResponseEntity.ok(deviceState) : ResponseEntity.notFound().build();
+	}
+
+	/**
+	 * Increase/Decrease the device's information value from a dashboard. Only the new state is returned, the page
+	 * itself is updated through the device events stream.
+	 * If a version is given, the device is changed only if it is still at that version; otherwise the response is a
+	 * 409 Conflict with the current state.
+	 */
+	@Timed(value = RequestMetrics.COMMANDS, histogram = true)
+	@PatchMapping(value = ENDPOINT_DEVICES_BASE_URL + "/{id}/updateValue/{value}", headers = HEADER_AJAX_REQUEST)
+	public ResponseEntity<DeviceState> updateDeviceInformationValueFromDashboard(
+			@PathVariable(value="id") int deviceId,
+			@PathVariable(value="value") String informationValue,
+			@RequestParam(value="version", required=false) Long version) {
+
+		checkDeviceAssignedToLoggedInUserOrAdmin(deviceId);
+
+		DeviceState deviceState = deviceService.updateInformationValue(deviceId, informationValue, version);
+		return deviceState != null ? ResponseEntity.ok(deviceState) : ResponseEntity.notFound().build();
+	}
+
+	/**
+	 * Increase/Decrease the device's information value by the given amount from a dashboard. The new value is
+	 * computed from the latest one on the server and kept within the range of the device type, so adjustments made at
+	 * the same time from many dashboards all count. The new state is returned.
+	 */
+	@Timed(value = RequestMetrics.COMMANDS, histogram = true)
+	@PatchMapping(value = ENDPOINT_DEVICES_BASE_URL + "/{id}/adjustValue/{delta}")
+	public ResponseEntity<DeviceState> adjustDeviceInformationValue(
+			@PathVariable(value="id") int deviceId,
+			@PathVariable(value="delta") int delta) {
+
+		checkDeviceAssignedToLoggedInUserOrAdmin(deviceId);
+
+		DeviceState deviceState = deviceService.adjustInformationValue(deviceId, delta);
+		return deviceState != null ? ResponseEntity.ok(deviceState) : ResponseEntity.notFound().build();
+	}
+
+	/**
+	 * Stream the changes of the devices the logged-in user can see to their open dashboards.
+	 */
+	@GetMapping(value = ENDPOINT_DEVICES_BASE_URL + "/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+	public SseEmitter streamDeviceEvents() {
+		Person loggedInUser = personService.getLoggedInPerson();
+		if (loggedInUser == null) {
+			throw new AccessDeniedException("");
+		}
+		return deviceEventService.subscribe(loggedInUser);
+	}
+
+	/**
+	 * Apply many status/value changes at once, e.g. when everything is turned off before leaving home.
+	 * All the changes are applied in a single transaction or none of them is applied at all, e.g. when any of the
+	 * devices is not at the version given by its command anymore. The changes are written to the database before
+	 * responding; if that fails, they are still applied and written later, which is answered with 202 Accepted.
+	 */
+	@Timed(value = RequestMetrics.COMMANDS, histogram = true)
+	@PatchMapping(value = ENDPOINT_DEVICES_BASE_URL + "/commands", consumes = MediaType.APPLICATION_JSON_VALUE)
+	public ResponseEntity<List<DeviceState>> updateDevices(@RequestBody List<DeviceCommand> commands) {
+		if (commands == null || commands.isEmpty() || !commands.stream().allMatch(DeviceCommand::isValid)) {
+			return ResponseEntity.badRequest().build();
+		}
+
+		checkDevicesAssignedToLoggedInUserOrAdmin(
+				commands.stream().map(DeviceCommand::getDeviceId).collect(Collectors.toSet())
+		);
+
+		List<DeviceState> deviceStates = deviceService.applyCommands(commands);
+		if (deviceStates == null) {
+			return ResponseEntity.notFound().build();
+		}
+		return ResponseEntity.ok(deviceStates);
+	}
+
+	/**
+	 * A change meant for a version of a device that is not the current one anymore is rejected with the current
+	 * state, so that the client can show it and decide again.
+	 */
+	@ExceptionHandler(DeviceStateConflictException.class)
+	public ResponseEntity<DeviceState> handleDeviceStateConflict(DeviceStateConflictException ex) {
+		return ResponseEntity.status(HttpStatus.CONFLICT).body(ex.getCurrentState());
+	}
+
+	/**
+	 * The commands have been applied, but not written to the database yet; like the single changes, they are written
+	 * in the background.
+	 */
+	@ExceptionHandler(DeviceStatesNotWrittenException.class)
+	public ResponseEntity<List<DeviceState>> handleDeviceStatesNotWritten(DeviceStatesNotWrittenException ex) {
+		return ResponseEntity.status(HttpStatus.ACCEPTED).body(ex.getDeviceStates());
+	}
+
+	/**
+	 * The information values are numbers within the range of the device type; anything else changes nothing.
+	 */
+	@ExceptionHandler(InvalidDeviceValueException.class)
+	public ResponseEntity<Void> handleInvalidDeviceValue(InvalidDeviceValueException ex) {
+		return ResponseEntity.badRequest().build();
+	}
+
+	/**
+	 * The changes of a device within a range of time, given in millis since the epoch. The range ends now unless
+	 * specified otherwise.
+	 */
+	@GetMapping(value = ENDPOINT_DEVICES_BASE_URL + "/{id}/history", produces = MediaType.APPLICATION_JSON_VALUE)
+	public ResponseEntity<List<DeviceHistorySample>> getDeviceHistory(
+			@PathVariable(value="id") int deviceId,
+			@RequestParam(value="from") long from,
+			@RequestParam(value="to", required=false) Long to) {
+
+		checkDeviceAssignedToLoggedInUserOrAdmin(deviceId);
+
+		return ResponseEntity.ok(deviceHistoryService.getSamples(deviceId, from, endOfRange(to)));
+	}
+
+	/**
+	 * The minimum, maximum and average value of a device per minute, hour or day within a range of time.
+	 */
+	@GetMapping(value = ENDPOINT_DEVICES_BASE_URL + "/{id}/history/rollups", produces = MediaType.APPLICATION_JSON_VALUE)
+	public ResponseEntity<List<DeviceHistoryRollup>> getDeviceHistoryRollups(
+			@PathVariable(value="id") int deviceId,
+			@RequestParam(value="resolution") HistoryResolution resolution,
+			@RequestParam(value="from") long from,
+			@RequestParam(value="to", required=false) Long to) {
+
+		checkDeviceAssignedToLoggedInUserOrAdmin(deviceId);
+
+		return ResponseEntity.ok(deviceHistoryService.getRollups(deviceId, resolution, from, endOfRange(to)));
+	}
+
+	/**
+	 * The changes of the devices of a room within a range of time, per device id. Simple users get only their own
+	 * devices.
+	 */
+	@GetMapping(value = ENDPOINT_DEVICES_BASE_URL + "/room/{roomId}/history", produces = MediaType.APPLICATION_JSON_VALUE)
+	public ResponseEntity<Map<Integer, List<DeviceHistorySample>>> getRoomHistory(
+			@PathVariable(value="roomId") int roomId,
+			@RequestParam(value="from") long from,
+			@RequestParam(value="to", required=false) Long to) {
+
+		return ResponseEntity.ok(keepDevicesOfLoggedInUserOrAdmin(
+				deviceHistoryService.getRoomSamples(roomId, from, endOfRange(to))
+		));
+	}
+
+	/**
+	 * The minimum, maximum and average value of the devices of a room per minute, hour or day within a range of time.
+	 */
+	@GetMapping(value = ENDPOINT_DEVICES_BASE_URL + "/room/{roomId}/history/rollups", produces = MediaType.APPLICATION_JSON_VALUE)
+	public ResponseEntity<Map<Integer, List<DeviceHistoryRollup>>> getRoomHistoryRollups(
+			@PathVariable(value="roomId") int roomId,
+			@RequestParam(value="resolution") HistoryResolution resolution,
+			@RequestParam(value="from") long from,
+			@RequestParam(value="to", required=false) Long to) {
+
+		return ResponseEntity.ok(keepDevicesOfLoggedInUserOrAdmin(
+				deviceHistoryService.getRoomRollups(roomId, resolution, from, endOfRange(to))
+		));
+	}
+
+	private static long endOfRange(Long to) {
+		return to != null ? to : System.currentTimeMillis();
+	}
+
 	private void checkAdminUser() {
-		UserDetails loggedInUserDetails = personService.getLoggedInUser();
-		if (loggedInUserDetails == null
-				|| loggedInUserDetails.getUsername() == null
-				|| !personService.findByEmail(loggedInUserDetails.getUsername()).isAdmin()) {
+		Person loggedInUser = personService.getLoggedInPerson();
+		if (loggedInUser == null || !loggedInUser.isAdmin()) {
+			throw new AccessDeniedException("");
+		}
+	}
 
+	private Dashboard getAdminDashboard() {
+		Dashboard dashboard = dashboardService.getLoggedInDashboard();
+		if (dashboard == null || !dashboard.getLoggedInUser().isAdmin()) {
 			throw new AccessDeniedException("");
 		}
+		return dashboard;
 	}
 
-	private UserDetails getUserAuthorized(int userId) {
-		UserDetails loggedInUserDetails = personService.getLoggedInUser();
-		Person requestedUser = personService.findById(userId);
-		if ( loggedInUserDetails == null
-				|| requestedUser == null
-				|| loggedInUserDetails.getUsername() == null
-				|| !loggedInUserDetails.getUsername().equals(requestedUser.getEmail()) ) {
+	/**
+	 * The dashboard of an admin has every device instead of the ones assigned to them, so the grids of an admin that
+	 * asks for their own devices are read from the database.
+	 */
+	private Dashboard getUserDashboardAuthorized(int userId) {
+		Dashboard dashboard = dashboardService.getLoggedInDashboard();
+		if (dashboard == null || dashboard.getLoggedInUser().getId() != userId) {
 			throw new AccessDeniedException("");
 		}
-		return loggedInUserDetails;
+		return dashboard;
 	}
 
 	private void checkDeviceAssignedToLoggedInUserOrAdmin(int deviceId) {
-		UserDetails loggedInUserDetails = personService.getLoggedInUser();
-		if (loggedInUserDetails == null || loggedInUserDetails.getUsername() == null) {
+		Person loggedInUser = personService.getLoggedInPerson();
+		if (loggedInUser == null) {
 			throw new AccessDeniedException("");
 		}
 
-		if (personService.findByEmail(loggedInUserDetails.getUsername()).isAdmin()) {
+		if (loggedInUser.isAdmin()) {
 			return;
 		}
 
-		Set<Device> userDevices = personService.findByEmail(loggedInUserDetails.getUsername()).getDevices();
-		Optional<Integer> deviceIdFound = userDevices.stream()
-													 .map(Device::getId)
-													 .filter(deviceIdStream -> deviceIdStream == deviceId)
-													 .findFirst();
-		if (!deviceIdFound.isPresent()) {
+		if (!devicePermissionService.isAssigned(loggedInUser.getId(), deviceId)) {
 			// trying to access a device that does not belong to the logged-in user
 			throw new AccessDeniedException("");
 		}
 	}
 	
-	private void populateSideMenuSimpleUser(Model model, UserDetails loggedInUserDetails) {
-		Person loggedInUser = personService.findByEmail(loggedInUserDetails.getUsername());
-		if (loggedInUser != null) {
-			model.addAttribute("roomsDevicesCount", roomService.findByUser(loggedInUser.getId()));
+	private void checkDevicesAssignedToLoggedInUserOrAdmin(Set<Integer> deviceIds) {
+		Person loggedInUser = personService.getLoggedInPerson();
+		if (loggedInUser == null) {
+			throw new AccessDeniedException("");
+		}
+		if (loggedInUser.isAdmin()) {
+			return;
+		}
+
+		if (!devicePermissionService.isAssignedAll(loggedInUser.getId(), deviceIds)) {
+			// trying to access devices that do not belong to the logged-in user
+			throw new AccessDeniedException("");
+		}
+	}
+	
+	private <T> Map<Integer, T> keepDevicesOfLoggedInUserOrAdmin(Map<Integer, T> valuesPerDevice) {
+		Person loggedInUser = personService.getLoggedInPerson();
+		if (loggedInUser == null) {
+			throw new AccessDeniedException("");
+		}
+		if (!loggedInUser.isAdmin()) {
+			valuesPerDevice.keySet().removeIf(deviceId -> !devicePermissionService.isAssigned(loggedInUser.getId(), deviceId));
 		}
+		return valuesPerDevice;
+	}
+	
+	private void populateSideMenuSimpleUser(Model model, Dashboard dashboard) {
+		Person loggedInUser = dashboard.getLoggedInUser();
+		model.addAttribute("roomsDevicesCount", loggedInUser.isAdmin()
+				? roomService.findByUser(loggedInUser.getId())
+				: dashboard.getRoomsDevicesCount());
 		model.addAttribute("loggedInUser", loggedInUser);
 	}
 
 	// FIXME the actual redirection URLs may be different, so we need to handle them
 	// E.g. after ADMIN updates the status of a device in a specific room we do not want to return them back to all devices
 	private String redirectPage(HttpServletRequest request) {
-		UserDetails loggedInUser = personService.getLoggedInUser();
-		if (loggedInUser != null && loggedInUser.getUsername() != null) {
-			Person loggedInPerson = personService.findByEmail(loggedInUser.getUsername());
-			if (loggedInPerson != null) {
-				// We set the response status to 303: See Other as a workaround to make the redirection from a PATCH
-				// method to a GET work.
-				// When using XHR requests other than GET or POST and redirecting after the request then some browsers
-				// will follow the redirect using the original request method. This may lead to undesirable behavior
-				// such as a double PATCH here.
-				request.setAttribute(View.RESPONSE_STATUS_ATTRIBUTE, HttpStatus.SEE_OTHER);
-				if ("ADMIN".equals(loggedInPerson.getRole())) {
-					return "redirect:" + ENDPOINT_ADMIN_DEVICES_BASE_URL + "/user/all";
-				}
-				else if ("USER".equals(loggedInPerson.getRole())) {
-					return "redirect:" + ENDPOINT_DEVICES_BASE_URL + "/user/" + loggedInPerson.getId();
-				}
+		Person loggedInPerson = personService.getLoggedInPerson();
+		if (loggedInPerson != null) {
+			// We set the response status to 303: See Other as a workaround to make the redirection from a PATCH
+			// method to a GET work.
+			// When using XHR requests other than GET or POST and redirecting after the request then some browsers
+			// will follow the redirect using the original request method. This may lead to undesirable behavior
+			// such as a double PATCH here.
+			request.setAttribute(View.RESPONSE_STATUS_ATTRIBUTE, HttpStatus.SEE_OTHER);
+			if ("ADMIN".equals(loggedInPerson.getRole())) {
+				return "redirect:" + ENDPOINT_ADMIN_DEVICES_BASE_URL + "/user/all";
+			}
+			else if ("USER".equals(loggedInPerson.getRole())) {
+				return "redirect:" + ENDPOINT_DEVICES_BASE_URL + "/user/" + loggedInPerson.getId();
 			}
 		}
 		return null;
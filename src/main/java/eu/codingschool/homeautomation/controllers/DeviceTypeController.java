@@ -1,8 +1,6 @@
 package eu.codingschool.homeautomation.controllers;
 
 import org.springframework.dao.DataIntegrityViolationException;
-import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.ui.ModelMap;
@@ -52,14 +50,8 @@ public class DeviceTypeController {
 
 	@GetMapping(value = ENDPOINT_DEVICE_TYPES_BASE_URL)
 	public String getDeviceTypes(Model model) {
-		String email = "";
-        Object userDetails = SecurityContextHolder.getContext().getAuthentication().getPrincipal();
-        if (userDetails instanceof UserDetails) {
-            email = ((UserDetails)userDetails).getUsername();
-        }
-        
 		model.addAttribute("deviceTypes", deviceTypeService.findAll());
-		model.addAttribute("loggedInUser", personService.findByEmail(email));
+		model.addAttribute("loggedInUser", personService.getLoggedInPerson());
 		return VIEW_DEVICE_TYPE_LIST;
 	}
 	
@@ -1,16 +1,15 @@
 package eu.codingschool.homeautomation.controllers;
 
-import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.ui.ModelMap;
 import org.springframework.validation.BindingResult;
 import org.springframework.web.bind.annotation.*;
 
+import eu.codingschool.homeautomation.model.Dashboard;
 import eu.codingschool.homeautomation.model.Person;
+import eu.codingschool.homeautomation.services.DashboardService;
 import eu.codingschool.homeautomation.services.PersonService;
-import eu.codingschool.homeautomation.services.RoomService;
 import eu.codingschool.homeautomation.validators.PersonValidator;
 
 @Controller
@@ -26,30 +25,28 @@ public class IndexController {
 
 	private final PersonService personService;
 
-	private final RoomService roomService;
+	private final DashboardService dashboardService;
 
 	private final PersonValidator personValidator;
 
-	public IndexController(PersonService personService, RoomService roomService, PersonValidator personValidator) {
+	public IndexController(
+			PersonService personService, DashboardService dashboardService, PersonValidator personValidator) {
 		this.personService = personService;
-		this.roomService = roomService;
+		this.dashboardService = dashboardService;
 		this.personValidator = personValidator;
 	}
 
 	@GetMapping(value = { ENDPOINT_ROOT, ENDPOINT_INDEX })
 	public String home(ModelMap model) {
-		Object userDetails = SecurityContextHolder.getContext().getAuthentication().getPrincipal();
-		if (userDetails instanceof UserDetails) {
-			String email = ((UserDetails) userDetails).getUsername();
-			Person loggedInUser = personService.findByEmail(email);
+		Dashboard dashboard = dashboardService.getLoggedInDashboard();
+		if (dashboard != null) {
+			Person loggedInUser = dashboard.getLoggedInUser();
 			model.addAttribute("loggedInUser", loggedInUser);
-			if (loggedInUser != null) {
-				if (loggedInUser.isAdmin()) {
-					model.addAttribute("rooms", roomService.findAll());
-				}
-				else {
-					model.addAttribute("roomsDevicesCount", roomService.findByUser(loggedInUser.getId()));
-				}
+			if (loggedInUser.isAdmin()) {
+				model.addAttribute("rooms", dashboard.getRooms());
+			}
+			else {
+				model.addAttribute("roomsDevicesCount", dashboard.getRoomsDevicesCount());
 			}
 			return VIEW_INDEX;
 		}
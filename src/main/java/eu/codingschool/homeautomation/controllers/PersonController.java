@@ -1,14 +1,20 @@
 package eu.codingschool.homeautomation.controllers;
 
+import java.util.ArrayList;
 import java.util.List;
 
+import io.micrometer.core.annotation.Timed;
+import org.springframework.data.domain.Slice;
 import org.springframework.security.access.AccessDeniedException;
-import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
+import org.springframework.util.StringUtils;
 import org.springframework.validation.BindingResult;
 import org.springframework.web.bind.annotation.*;
 
+import eu.codingschool.homeautomation.metrics.RequestMetrics;
+import eu.codingschool.homeautomation.model.DeviceSelection;
+import eu.codingschool.homeautomation.model.ListSort;
 import eu.codingschool.homeautomation.model.Person;
 import eu.codingschool.homeautomation.services.DeviceService;
 import eu.codingschool.homeautomation.services.PersonService;
@@ -49,17 +55,25 @@ public class PersonController {
 		this.personValidator = personValidator;
 	}
 
+	@Timed(value = RequestMetrics.ADMIN_LISTS, histogram = true)
 	@GetMapping(value = ENDPOINT_PERSONS_BASE_URL)
-	public String getPeople(Model model) {
+	public String getPeople(
+			@RequestParam(value = "sort", defaultValue = "ID") ListSort sort,
+			@RequestParam(value = "filter", required = false) String filter,
+			@RequestParam(value = "afterId", required = false) Integer afterId,
+			@RequestParam(value = "afterName", required = false) String afterName,
+			Model model) {
 		
-		UserDetails loggedInUser = personService.getLoggedInUser();
-		if ( loggedInUser == null || loggedInUser.getUsername() == null ) {
+		Person loggedInUser = personService.getLoggedInPerson();
+		if (loggedInUser == null) {
 			throw new AccessDeniedException("");
 		}
 		
-		model.addAttribute("people", personService.findAll());
+		Slice<Person> page = personService.findPage(sort, filter, afterId, afterName);
+		model.addAttribute("people", page.getContent());
+		AdminListPages.addPageAttributes(model, page, sort, filter);
 		model.addAttribute("rooms", roomService.findAll());
-		model.addAttribute("loggedInUser", personService.findByEmail(loggedInUser.getUsername()));
+		model.addAttribute("loggedInUser", loggedInUser);
 		return VIEW_PERSON_LIST;
 	}
 
@@ -87,23 +101,31 @@ public class PersonController {
 			BindingResult result,
 			Model model) {
 		
-		UserDetails loggedInUser = personService.getLoggedInUser();
-		if ( loggedInUser == null || loggedInUser.getUsername() == null ) {
+		Person loggedInUser = personService.getLoggedInPerson();
+		if (loggedInUser == null) {
 			throw new AccessDeniedException("");
 		}
 		
 		personValidator.validate(person, result);
 
+		DeviceSelection selection = deviceService.getSelectedDevices(selectedDeviceIds);
+		if (!selection.isComplete()) {
+			List<Object> rejectedIds = new ArrayList<>(selection.getMalformedIds());
+			rejectedIds.addAll(selection.getUnknownIds());
+			String rejectedIdsText = StringUtils.collectionToDelimitedString(rejectedIds, ", ");
+			result.rejectValue("devices", "Unknown", new Object[] { rejectedIdsText }, null);
+		}
+
 		if (result.hasErrors()) {
 			// reload the same page fragment
 			model.addAttribute("person", person);
 			return MODAL_PERSON_NEW_OR_EDIT;
 		}		
 		
-		personService.update(person, deviceService.getSelectedDevices(selectedDeviceIds));
+		personService.update(person, selection.getDevices());
 		
 		model.addAttribute("rooms", roomService.findAll());
-		model.addAttribute("loggedInUser", personService.findByEmail(loggedInUser.getUsername()));
+		model.addAttribute("loggedInUser", loggedInUser);
 		return REDIRECT_ENDPOINT_ADMIN_PERSONS_BASE_URL;
 	}
 
@@ -1,14 +1,16 @@
 package eu.codingschool.homeautomation.controllers;
 
+import io.micrometer.core.annotation.Timed;
 import org.springframework.dao.DataIntegrityViolationException;
-import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.data.domain.Slice;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.ui.ModelMap;
 import org.springframework.validation.BindingResult;
 import org.springframework.web.bind.annotation.*;
 
+import eu.codingschool.homeautomation.metrics.RequestMetrics;
+import eu.codingschool.homeautomation.model.ListSort;
 import eu.codingschool.homeautomation.model.Room;
 import eu.codingschool.homeautomation.services.PersonService;
 import eu.codingschool.homeautomation.services.RoomService;
@@ -39,16 +41,20 @@ public class RoomController {
         this.roomValidator = roomValidator;
     }
 
+	@Timed(value = RequestMetrics.ADMIN_LISTS, histogram = true)
 	@GetMapping(value = ENDPOINT_ROOMS_BASE_URL)
-	public String getRooms(Model model) {
-		String email = "";
-        Object userDetails = SecurityContextHolder.getContext().getAuthentication().getPrincipal();
-        if (userDetails instanceof UserDetails) {
-            email = ((UserDetails)userDetails).getUsername();
-        }
-        
+	public String getRooms(
+			@RequestParam(value = "sort", defaultValue = "ID") ListSort sort,
+			@RequestParam(value = "filter", required = false) String filter,
+			@RequestParam(value = "afterId", required = false) Integer afterId,
+			@RequestParam(value = "afterName", required = false) String afterName,
+			Model model) {
+		Slice<Room> page = roomService.findPage(sort, filter, afterId, afterName);
+		model.addAttribute("listedRooms", page.getContent());
+		AdminListPages.addPageAttributes(model, page, sort, filter);
+		// the side menu still lists every room
         model.addAttribute("rooms", roomService.findAll());
-    	model.addAttribute("loggedInUser", personService.findByEmail(email));
+    	model.addAttribute("loggedInUser", personService.getLoggedInPerson());
 		return VIEW_ROOM_LIST;
 	}
 
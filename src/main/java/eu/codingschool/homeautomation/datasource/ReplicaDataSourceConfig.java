@@ -0,0 +1,73 @@
+package eu.codingschool.homeautomation.datasource;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Replaces the data source of Spring Boot with one that sends the read-only transactions of the services to the
+ * replicas listed in homeautomation.datasource.replica-urls, see {@link ReplicaRoutingDataSource}. The replicas are
+ * connected to with the user and the pool settings of the primary. Without any replica nothing changes.
+ */
+@Configuration
+@ConditionalOnProperty("homeautomation.datasource.replica-urls")
+public class ReplicaDataSourceConfig {
+
+	@Bean
+	ReplicaSet replicaSet(
+			DataSourceProperties properties,
+			Environment environment,
+			ObjectProvider<MeterRegistry> meterRegistry,
+			@Value("${homeautomation.datasource.replica-urls}") String[] replicaUrls,
+			@Value("${homeautomation.datasource.max-replica-lag-ms:2000}") long maxReplicaLagMillis) {
+
+		Binder binder = Binder.get(environment);
+		MeterRegistry registry = meterRegistry.getIfAvailable();
+		DataSource primary = createPool(properties, binder, registry, "primary", properties.determineUrl());
+		List<DataSource> replicas = new ArrayList<>();
+		for (int i = 0; i < replicaUrls.length; i++) {
+			replicas.add(createPool(properties, binder, registry, "replica-" + (i + 1), replicaUrls[i].trim()));
+		}
+		return new ReplicaSet(primary, replicas, maxReplicaLagMillis);
+	}
+
+	@Bean
+	public DataSource dataSource(ReplicaSet replicaSet) {
+		return new LazyConnectionDataSourceProxy(new ReplicaRoutingDataSource(replicaSet));
+	}
+
+	/**
+	 * Creates the pool the way Spring Boot does for a single Hikari data source, tagging its metrics with its name.
+	 */
+	private static HikariDataSource createPool(
+			DataSourceProperties properties, Binder binder, MeterRegistry registry, String name, String url) {
+
+		HikariDataSource pool = properties.initializeDataSourceBuilder()
+										  .type(HikariDataSource.class)
+										  .url(url)
+										  .build();
+		binder.bind("spring.datasource.hikari", Bindable.ofInstance(pool));
+		pool.setPoolName(name);
+		if (registry != null) {
+			pool.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(registry));
+		}
+		return pool;
+	}
+}
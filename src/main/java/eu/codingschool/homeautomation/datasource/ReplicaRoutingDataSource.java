@@ -0,0 +1,129 @@
+package eu.codingschool.homeautomation.datasource;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+import eu.codingschool.homeautomation.HomeAutomationApplication;
+
+/**
+ * Sends the read-only transactions of the services to the replicas, round robin, and everything else to the primary.
+ * <p>
+ * Spring Data runs the finders of the repositories in read-only transactions of their own, and a save often follows
+ * what they have found, so only the read-only transactions declared in the application go to a replica. A replica is
+ * skipped while it lags behind, and for the requests of a session until it has replayed the latest write of that
+ * session, so that users see their own changes. The writes of the other users are not waited for, or a steady trickle
+ * of them would keep every read on the primary. The scheduled flushes of the device states and history are not
+ * waited for either, since the states are served from memory anyway.
+ * <p>
+ * The transaction is known to be read-only only once it has started, so this must be wrapped into a
+ * {@link LazyConnectionDataSourceProxy}, which gets the connection on the first statement.
+ */
+class ReplicaRoutingDataSource extends AbstractRoutingDataSource {
+
+	static final String PRIMARY = "primary";
+
+	private static final String APPLICATION_PACKAGE = HomeAutomationApplication.class.getPackage().getName() + ".";
+
+	private final ReplicaSet replicaSet;
+
+	/**
+	 * The session attribute holding the time (millis) of the latest write of the session, or of its commit once it is
+	 * over, as an AtomicLong.
+	 */
+	static final String LAST_WRITTEN_AT = ReplicaRoutingDataSource.class.getName() + ".lastWrittenAt";
+
+	private final AtomicInteger nextReplica = new AtomicInteger();
+
+	ReplicaRoutingDataSource(ReplicaSet replicaSet) {
+		this.replicaSet = replicaSet;
+		Map<Object, Object> targetDataSources = new HashMap<>();
+		targetDataSources.put(PRIMARY, replicaSet.getPrimary());
+		for (int i = 0; i < replicaSet.getReplicas().size(); i++) {
+			targetDataSources.put(i, replicaSet.getReplicas().get(i));
+		}
+		setTargetDataSources(targetDataSources);
+		setDefaultTargetDataSource(replicaSet.getPrimary());
+		afterPropertiesSet();
+	}
+
+	@Override
+	protected Object determineCurrentLookupKey() {
+		if (!TransactionSynchronizationManager.isActualTransactionActive()) {
+			return PRIMARY;
+		}
+		if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+			RequestAttributes request = RequestContextHolder.getRequestAttributes();
+			if (request != null) {
+				recordWrite(request);
+			}
+			return PRIMARY;
+		}
+		String transactionName = TransactionSynchronizationManager.getCurrentTransactionName();
+		if (transactionName == null || !transactionName.startsWith(APPLICATION_PACKAGE)) {
+			return PRIMARY;
+		}
+
+		int replicas = replicaSet.getReplicas().size();
+		int first = Math.floorMod(nextReplica.getAndIncrement(), replicas);
+		long writtenAt = getLastWrittenAt(RequestContextHolder.getRequestAttributes());
+		for (int i = 0; i < replicas; i++) {
+			int replica = (first + i) % replicas;
+			if (replicaSet.isUpToDate(replica, writtenAt)) {
+				return replica;
+			}
+		}
+		return PRIMARY;
+	}
+
+	/**
+	 * A heartbeat written before the commit may be replayed before the write, so the time is taken again after it.
+	 */
+	private static void recordWrite(RequestAttributes request) {
+		AtomicLong lastWrittenAt = getOrCreateLastWrittenAt(request);
+		lastWrittenAt.accumulateAndGet(System.currentTimeMillis(), Math::max);
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				@Override
+				public void afterCompletion(int status) {
+					lastWrittenAt.accumulateAndGet(System.currentTimeMillis(), Math::max);
+				}
+			});
+		}
+	}
+
+	/**
+	 * @return the time of the latest write of the session of the request, 0 if it has not written anything or there is
+	 * no request, whose reads need not wait for any replay
+	 */
+	private static long getLastWrittenAt(RequestAttributes request) {
+		if (request == null) {
+			return 0;
+		}
+		AtomicLong lastWrittenAt = (AtomicLong) request.getAttribute(LAST_WRITTEN_AT, RequestAttributes.SCOPE_SESSION);
+		return lastWrittenAt != null ? lastWrittenAt.get() : 0;
+	}
+
+	/**
+	 * The session is created if the request has none yet, for the requests that follow to wait for the write.
+	 */
+	private static AtomicLong getOrCreateLastWrittenAt(RequestAttributes request) {
+		synchronized (request.getSessionMutex()) {
+			AtomicLong lastWrittenAt =
+					(AtomicLong) request.getAttribute(LAST_WRITTEN_AT, RequestAttributes.SCOPE_SESSION);
+			if (lastWrittenAt == null) {
+				lastWrittenAt = new AtomicLong();
+				request.setAttribute(LAST_WRITTEN_AT, lastWrittenAt, RequestAttributes.SCOPE_SESSION);
+			}
+			return lastWrittenAt;
+		}
+	}
+}
@@ -0,0 +1,140 @@
+package eu.codingschool.homeautomation.datasource;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+
+/**
+ * The primary and the replicas of the database, and how far each replica has got with replaying the primary.
+ * <p>
+ * The primary gets the current time as a heartbeat every interval, so the latest heartbeat that a replica has replayed
+ * tells both how far behind it is and whether it has replayed a given write yet. A replica whose heartbeat cannot be
+ * read is not used until it can be read again.
+ */
+class ReplicaSet implements AutoCloseable {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(ReplicaSet.class);
+
+	static final String SQL_UPDATE_HEARTBEAT = "UPDATE replication_heartbeat SET beat_at = ? WHERE id = 1";
+	static final String SQL_INSERT_HEARTBEAT = "INSERT INTO replication_heartbeat (id, beat_at) VALUES (1, ?)";
+	static final String SQL_SELECT_HEARTBEAT = "SELECT beat_at FROM replication_heartbeat WHERE id = 1";
+
+	/**
+	 * The heartbeat of a replica that has not been read yet or could not be read.
+	 */
+	private static final long NO_HEARTBEAT = Long.MIN_VALUE;
+
+	private final DataSource primary;
+
+	private final List<DataSource> replicas;
+
+	private final JdbcTemplate primaryJdbcTemplate;
+
+	private final List<JdbcTemplate> replicaJdbcTemplates = new ArrayList<>();
+
+	/**
+	 * The latest heartbeat (millis) that each replica has replayed.
+	 */
+	private final AtomicLongArray replayedHeartbeats;
+
+	/**
+	 * A replica is skipped once its latest heartbeat is older than this; it must be longer than the heartbeat interval.
+	 */
+	private final long maxLagMillis;
+
+	ReplicaSet(DataSource primary, List<DataSource> replicas, long maxLagMillis) {
+		this.primary = primary;
+		this.replicas = Collections.unmodifiableList(new ArrayList<>(replicas));
+		this.maxLagMillis = maxLagMillis;
+		this.primaryJdbcTemplate = new JdbcTemplate(primary);
+		this.replicas.forEach(replica -> replicaJdbcTemplates.add(new JdbcTemplate(replica)));
+		this.replayedHeartbeats = new AtomicLongArray(replicas.size());
+		for (int i = 0; i < replicas.size(); i++) {
+			replayedHeartbeats.set(i, NO_HEARTBEAT);
+		}
+	}
+
+	DataSource getPrimary() {
+		return primary;
+	}
+
+	List<DataSource> getReplicas() {
+		return replicas;
+	}
+
+	/**
+	 * @param replica the index of the replica
+	 * @param writtenAt the time (millis) of the latest write that the reads must see
+	 * @return whether the replica has replayed everything up to the write and is not lagging behind
+	 */
+	boolean isUpToDate(int replica, long writtenAt) {
+		long replayed = replayedHeartbeats.get(replica);
+		return replayed > writtenAt && replayed >= System.currentTimeMillis() - maxLagMillis;
+	}
+
+	/**
+	 * Writes the next heartbeat to the primary and reads the latest one that each replica has replayed. The heartbeat
+	 * is the time it was written at, so a replica that has replayed it has replayed every write committed before.
+	 */
+	@Scheduled(fixedDelayString = "${homeautomation.datasource.heartbeat-interval-ms:500}")
+	public void beat() {
+		long now = System.currentTimeMillis();
+		try {
+			if (primaryJdbcTemplate.update(SQL_UPDATE_HEARTBEAT, now) == 0) {
+				primaryJdbcTemplate.update(SQL_INSERT_HEARTBEAT, now);
+			}
+		} catch (DuplicateKeyException ex) {
+			// another instance of the application has just written the first heartbeat
+		} catch (DataAccessException ex) {
+			LOGGER.warn("Could not write the replication heartbeat to the primary", ex);
+		}
+
+		for (int i = 0; i < replicaJdbcTemplates.size(); i++) {
+			long replayed = readHeartbeat(i);
+			long previous = replayedHeartbeats.getAndSet(i, replayed);
+			if (replayed != NO_HEARTBEAT && previous == NO_HEARTBEAT) {
+				LOGGER.info("Replica {} is {} ms behind the primary", i + 1, now - replayed);
+			}
+		}
+	}
+
+	/**
+	 * Closes the pools, which are not beans of their own.
+	 */
+	@Override
+	public void close() throws Exception {
+		for (DataSource replica : replicas) {
+			closePool(replica);
+		}
+		closePool(primary);
+	}
+
+	private static void closePool(DataSource pool) throws Exception {
+		if (pool instanceof AutoCloseable) {
+			((AutoCloseable) pool).close();
+		}
+	}
+
+	private long readHeartbeat(int replica) {
+		try {
+			List<Long> heartbeats = replicaJdbcTemplates.get(replica).queryForList(SQL_SELECT_HEARTBEAT, Long.class);
+			return heartbeats.isEmpty() ? NO_HEARTBEAT : heartbeats.get(0);
+		} catch (DataAccessException ex) {
+			if (replayedHeartbeats.get(replica) != NO_HEARTBEAT) {
+				LOGGER.warn("Could not read the replication heartbeat of replica {}, reading from the primary instead",
+						replica + 1, ex);
+			}
+			return NO_HEARTBEAT;
+		}
+	}
+}
@@ -0,0 +1,19 @@
+package eu.codingschool.homeautomation.events;
+
+import eu.codingschool.homeautomation.model.DeviceState;
+
+/**
+ * Published by the service layer whenever the status or the information value of a device changes.
+ */
+public class DeviceStateChangedEvent {
+
+	private final DeviceState deviceState;
+
+	public DeviceStateChangedEvent(DeviceState deviceState) {
+		this.deviceState = deviceState;
+	}
+
+	public DeviceState getDeviceState() {
+		return deviceState;
+	}
+}
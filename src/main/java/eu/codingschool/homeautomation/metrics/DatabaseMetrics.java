@@ -0,0 +1,81 @@
+package eu.codingschool.homeautomation.metrics;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Counts and times the SQL statements sent through the metered data source, in total and per web request.
+ */
+@Component
+public class DatabaseMetrics {
+
+	static final String METRIC_STATEMENTS = "homeautomation.db.statements";
+	static final String METRIC_REQUEST_STATEMENTS = "homeautomation.db.request.statements";
+	static final String METRIC_REQUEST_TIME = "homeautomation.db.request.time";
+
+	@Autowired
+	MeterRegistry meterRegistry;
+
+	private Timer statements;
+
+	/**
+	 * The statements of the request handled by the current thread; unset outside of requests, e.g. for the scheduled
+	 * flushes.
+	 */
+	private final ThreadLocal<RequestUsage> requestUsage = new ThreadLocal<>();
+
+	@PostConstruct
+	void registerMeters() {
+		statements = Timer.builder(METRIC_STATEMENTS)
+						  .description("SQL statements and batches sent to the database")
+						  .register(meterRegistry);
+	}
+
+	void recordStatement(long nanos) {
+		statements.record(nanos, TimeUnit.NANOSECONDS);
+		RequestUsage usage = requestUsage.get();
+		if (usage != null) {
+			usage.statements++;
+			usage.nanos += nanos;
+		}
+	}
+
+	void startRequest() {
+		requestUsage.set(new RequestUsage());
+	}
+
+	void endRequest(String uri) {
+		RequestUsage usage = requestUsage.get();
+		requestUsage.remove();
+		if (usage == null) {
+			return;
+		}
+		DistributionSummary.builder(METRIC_REQUEST_STATEMENTS)
+						   .description("SQL statements sent to the database per request")
+						   .tag("uri", uri)
+						   .publishPercentileHistogram()
+						   .register(meterRegistry)
+						   .record(usage.statements);
+		Timer.builder(METRIC_REQUEST_TIME)
+			 .description("Time spent in the database per request")
+			 .tag("uri", uri)
+			 .publishPercentileHistogram()
+			 .register(meterRegistry)
+			 .record(usage.nanos, TimeUnit.NANOSECONDS);
+	}
+
+	private static final class RequestUsage {
+
+		private int statements;
+
+		private long nanos;
+	}
+}
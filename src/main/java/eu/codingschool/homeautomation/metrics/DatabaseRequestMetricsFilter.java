@@ -0,0 +1,41 @@
+package eu.codingschool.homeautomation.metrics;
+
+import java.io.IOException;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.boot.actuate.metrics.web.servlet.WebMvcTags;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+/**
+ * Records the statements sent to the database by each request, tagged with the same uri as the request timers.
+ * It is ordered before the security filters, so that the lookups done while logging in are counted too.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 2)
+public class DatabaseRequestMetricsFilter extends OncePerRequestFilter {
+
+	private final DatabaseMetrics databaseMetrics;
+
+	public DatabaseRequestMetricsFilter(DatabaseMetrics databaseMetrics) {
+		this.databaseMetrics = databaseMetrics;
+	}
+
+	@Override
+	protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+			throws ServletException, IOException {
+
+		databaseMetrics.startRequest();
+		try {
+			filterChain.doFilter(request, response);
+		} finally {
+			databaseMetrics.endRequest(WebMvcTags.uri(request, response).getValue());
+		}
+	}
+}
@@ -0,0 +1,54 @@
+package eu.codingschool.homeautomation.metrics;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import eu.codingschool.homeautomation.events.DeviceStateChangedEvent;
+import eu.codingschool.homeautomation.repositories.DeviceRepository;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Counts the commands applied to the devices per device type. The counter of each device is looked up once and kept,
+ * so counting a command costs a map lookup only.
+ */
+@Component
+public class DeviceCommandMetrics {
+
+	static final String METRIC_COMMANDS = "homeautomation.device.commands";
+
+	private static final String NO_DEVICE_TYPE = "none";
+
+	@Autowired
+	MeterRegistry meterRegistry;
+
+	@Autowired
+	DeviceRepository deviceRepository;
+
+	private final ConcurrentMap<Integer, Counter> counters = new ConcurrentHashMap<>();
+
+	@EventListener
+	public void onDeviceStateChanged(DeviceStateChangedEvent event) {
+		counters.computeIfAbsent(event.getDeviceState().getDeviceId(), this::createCounter).increment();
+	}
+
+	private Counter createCounter(Integer deviceId) {
+		String deviceType = deviceRepository.findDeviceTypeById(deviceId);
+		return Counter.builder(METRIC_COMMANDS)
+					  .description("Status and value changes applied to the devices")
+					  .tag("type", deviceType != null ? deviceType : NO_DEVICE_TYPE)
+					  .register(meterRegistry);
+	}
+
+	/**
+	 * Forget the device type of the device, e.g. after it has been edited or deleted.
+	 */
+	public void evict(int deviceId) {
+		counters.remove(deviceId);
+	}
+}
@@ -0,0 +1,34 @@
+package eu.codingschool.homeautomation.metrics;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import eu.codingschool.homeautomation.services.DeviceHistoryService;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Counts the device changes that have been dropped from the history in the database, since too many were waiting to be
+ * written, e.g. while the database was down.
+ */
+@Component
+public class DeviceHistoryMetrics {
+
+	static final String METRIC_DROPPED = "homeautomation.device.history.dropped";
+
+	@Autowired
+	MeterRegistry meterRegistry;
+
+	@Autowired
+	DeviceHistoryService deviceHistoryService;
+
+	@PostConstruct
+	public void bind() {
+		FunctionCounter.builder(METRIC_DROPPED, deviceHistoryService, DeviceHistoryService::getDroppedCount)
+					   .description("Device changes dropped from the history before they could be written")
+					   .register(meterRegistry);
+	}
+}
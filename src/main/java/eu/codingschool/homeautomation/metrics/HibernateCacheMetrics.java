@@ -0,0 +1,34 @@
+package eu.codingschool.homeautomation.metrics;
+
+import javax.annotation.PostConstruct;
+import javax.persistence.EntityManagerFactory;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.jpa.HibernateMetrics;
+
+/**
+ * Publishes the Hibernate statistics, among them the hits and misses of the second-level cache per region and of the
+ * query cache. They are only collected when {@code hibernate.generate_statistics} is on.
+ * <p>
+ * This is not a {@code MeterBinder} bean, since the registry is created while the entity manager factory is still
+ * being built, so such a binder would be skipped.
+ */
+@Component
+public class HibernateCacheMetrics {
+
+	private static final String ENTITY_MANAGER_FACTORY_NAME = "entityManagerFactory";
+
+	@Autowired
+	MeterRegistry meterRegistry;
+
+	@Autowired
+	EntityManagerFactory entityManagerFactory;
+
+	@PostConstruct
+	public void bind() {
+		HibernateMetrics.monitor(meterRegistry, entityManagerFactory, ENTITY_MANAGER_FACTORY_NAME);
+	}
+}
@@ -0,0 +1,60 @@
+package eu.codingschool.homeautomation.metrics;
+
+import java.io.IOException;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.web.util.matcher.AntPathRequestMatcher;
+import org.springframework.security.web.util.matcher.RequestMatcher;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Times the login form submissions, which are handled by the security filters and never reach a controller.
+ * It has to be placed right before the filter that authenticates the user.
+ */
+public class LoginMetricsFilter extends OncePerRequestFilter {
+
+	static final String METRIC_LOGIN = "homeautomation.login";
+
+	private final MeterRegistry meterRegistry;
+
+	private final RequestMatcher loginRequestMatcher;
+
+	public LoginMetricsFilter(MeterRegistry meterRegistry, String loginProcessingUrl) {
+		this.meterRegistry = meterRegistry;
+		this.loginRequestMatcher = new AntPathRequestMatcher(loginProcessingUrl, "POST");
+	}
+
+	@Override
+	protected boolean shouldNotFilter(HttpServletRequest request) {
+		return !loginRequestMatcher.matches(request);
+	}
+
+	@Override
+	protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+			throws ServletException, IOException {
+
+		Authentication before = SecurityContextHolder.getContext().getAuthentication();
+		Timer.Sample sample = Timer.start(meterRegistry);
+		try {
+			filterChain.doFilter(request, response);
+		} finally {
+			// a successful login always replaces the authentication, even of a user that is logged in already
+			Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+			boolean success = authentication != null && authentication != before && authentication.isAuthenticated();
+			sample.stop(Timer.builder(METRIC_LOGIN)
+							 .description("Login form submissions")
+							 .tag("outcome", success ? "SUCCESS" : "FAILURE")
+							 .publishPercentileHistogram()
+							 .register(meterRegistry));
+		}
+	}
+}
@@ -0,0 +1,91 @@
+package eu.codingschool.homeautomation.metrics;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.function.Supplier;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+/**
+ * Hands out connections whose statements report the time of every execution. Both Hibernate and the JDBC templates
+ * go through it, so every statement is counted. The pool itself is still reachable with {@link #unwrap}.
+ */
+class MeteredDataSource extends DelegatingDataSource {
+
+	/**
+	 * Resolved on the first statement only, since the data source is created before the metrics.
+	 */
+	private final Supplier<DatabaseMetrics> metricsSupplier;
+
+	private volatile DatabaseMetrics metrics;
+
+	MeteredDataSource(DataSource targetDataSource, Supplier<DatabaseMetrics> metricsSupplier) {
+		super(targetDataSource);
+		this.metricsSupplier = metricsSupplier;
+	}
+
+	@Override
+	public Connection getConnection() throws SQLException {
+		return meter(super.getConnection());
+	}
+
+	@Override
+	public Connection getConnection(String username, String password) throws SQLException {
+		return meter(super.getConnection(username, password));
+	}
+
+	private Connection meter(Connection connection) {
+		return (Connection) Proxy.newProxyInstance(
+				getClass().getClassLoader(),
+				new Class<?>[] { Connection.class },
+				(proxy, method, args) -> {
+					Object result = invoke(connection, method, args);
+					return result instanceof Statement ? meter((Statement) result, method.getReturnType()) : result;
+				}
+		);
+	}
+
+	private Statement meter(Statement statement, Class<?> statementType) {
+		Class<?> type = CallableStatement.class.isAssignableFrom(statementType) ? CallableStatement.class
+				: PreparedStatement.class.isAssignableFrom(statementType) ? PreparedStatement.class
+				: Statement.class;
+		InvocationHandler handler = (proxy, method, args) -> {
+			if (!method.getName().startsWith("execute")) {
+				return invoke(statement, method, args);
+			}
+			long start = System.nanoTime();
+			try {
+				return invoke(statement, method, args);
+			} finally {
+				getMetrics().recordStatement(System.nanoTime() - start);
+			}
+		};
+		return (Statement) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { type }, handler);
+	}
+
+	private DatabaseMetrics getMetrics() {
+		DatabaseMetrics resolved = metrics;
+		if (resolved == null) {
+			resolved = metricsSupplier.get();
+			metrics = resolved;
+		}
+		return resolved;
+	}
+
+	private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+		try {
+			return method.invoke(target, args);
+		} catch (InvocationTargetException e) {
+			throw e.getTargetException();
+		}
+	}
+}
@@ -0,0 +1,29 @@
+package eu.codingschool.homeautomation.metrics;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.stereotype.Component;
+
+/**
+ * Wraps the data source into a {@link MeteredDataSource}. It runs after the ordered post processors, so the pool has
+ * already been bound to its own metrics by then.
+ */
+@Component
+public class MeteredDataSourcePostProcessor implements BeanPostProcessor {
+
+	private final ObjectProvider<DatabaseMetrics> databaseMetrics;
+
+	public MeteredDataSourcePostProcessor(ObjectProvider<DatabaseMetrics> databaseMetrics) {
+		this.databaseMetrics = databaseMetrics;
+	}
+
+	@Override
+	public Object postProcessAfterInitialization(Object bean, String beanName) {
+		if (bean instanceof DataSource && !(bean instanceof MeteredDataSource)) {
+			return new MeteredDataSource((DataSource) bean, databaseMetrics::getObject);
+		}
+		return bean;
+	}
+}
@@ -0,0 +1,15 @@
+package eu.codingschool.homeautomation.metrics;
+
+/**
+ * Names of the request timers of the endpoints that matter most. The rest of the endpoints are timed as
+ * {@code http.server.requests}; all of them share its tags (uri, method, status and exception).
+ */
+public final class RequestMetrics {
+
+	public static final String COMMANDS = "homeautomation.requests.commands";
+	public static final String GRID = "homeautomation.requests.grid";
+	public static final String ADMIN_LISTS = "homeautomation.requests.admin.lists";
+
+	private RequestMetrics() {
+	}
+}
@@ -0,0 +1,124 @@
+package eu.codingschool.homeautomation.metrics;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.springframework.aop.framework.Advised;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.SmartInstantiationAwareBeanPostProcessor;
+import org.springframework.data.repository.Repository;
+import org.springframework.stereotype.Component;
+
+import eu.codingschool.homeautomation.services.DeviceService;
+import eu.codingschool.homeautomation.services.DeviceTypeService;
+import eu.codingschool.homeautomation.services.PersonService;
+import eu.codingschool.homeautomation.services.RoomService;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Times every call to the main services and to the JPA repositories, tagged with the interface and the method.
+ * <p>
+ * The repositories, and the services that are transactional, are already proxies, so the timing is added to them as
+ * the outermost advice. It runs after the ordered post processors, so the transactional proxies exist by then. A bean
+ * that is injected early because of a circular reference gets its timing at that point, like the transactional proxies
+ * do, so that every bean sees the same instance.
+ */
+@Component
+public class TimedInterfacesPostProcessor implements SmartInstantiationAwareBeanPostProcessor {
+
+	static final String METRIC_SERVICES = "homeautomation.services";
+	static final String METRIC_REPOSITORIES = "homeautomation.repositories";
+
+	private static final List<Class<?>> TIMED_SERVICES = Arrays.asList(
+			DeviceService.class, PersonService.class, RoomService.class, DeviceTypeService.class);
+
+	private static final String REPOSITORIES_PACKAGE = "eu.codingschool.homeautomation.repositories";
+
+	private final ObjectProvider<MeterRegistry> meterRegistryProvider;
+
+	/**
+	 * Resolved on the first call only, since the post processor is created before the metrics.
+	 */
+	private volatile MeterRegistry meterRegistry;
+
+	private final Set<String> earlyReferences = ConcurrentHashMap.newKeySet();
+
+	public TimedInterfacesPostProcessor(ObjectProvider<MeterRegistry> meterRegistryProvider) {
+		this.meterRegistryProvider = meterRegistryProvider;
+	}
+
+	@Override
+	public Object getEarlyBeanReference(Object bean, String beanName) {
+		earlyReferences.add(beanName);
+		return wrap(bean);
+	}
+
+	@Override
+	public Object postProcessAfterInitialization(Object bean, String beanName) {
+		if (earlyReferences.remove(beanName)) {
+			return bean;
+		}
+		return wrap(bean);
+	}
+
+	private Object wrap(Object bean) {
+		Class<?> service = TIMED_SERVICES.stream().filter(type -> type.isInstance(bean)).findFirst().orElse(null);
+		if (service != null) {
+			return addTiming(bean, service, METRIC_SERVICES);
+		}
+		// a repository that is not a proxy has been replaced on purpose, e.g. by a test, so it is left alone
+		if (bean instanceof Repository && bean instanceof Advised) {
+			Class<?> repository = Arrays.stream(((Advised) bean).getProxiedInterfaces())
+										.filter(type -> type.getName().startsWith(REPOSITORIES_PACKAGE))
+										.findFirst()
+										.orElse(null);
+			if (repository != null) {
+				return addTiming(bean, repository, METRIC_REPOSITORIES);
+			}
+		}
+		return bean;
+	}
+
+	private Object addTiming(Object bean, Class<?> type, String metricName) {
+		MethodInterceptor timing = invocation -> {
+			Timer.Sample sample = Timer.start(getMeterRegistry());
+			String exception = "none";
+			try {
+				return invocation.proceed();
+			} catch (Throwable e) {
+				exception = e.getClass().getSimpleName();
+				throw e;
+			} finally {
+				sample.stop(Timer.builder(metricName)
+								 .tag("class", type.getSimpleName())
+								 .tag("method", invocation.getMethod().getName())
+								 .tag("exception", exception)
+								 .register(getMeterRegistry()));
+			}
+		};
+
+		if (bean instanceof Advised && !((Advised) bean).isFrozen()) {
+			((Advised) bean).addAdvice(0, timing);
+			return bean;
+		}
+		ProxyFactory proxyFactory = new ProxyFactory(bean);
+		proxyFactory.addInterface(type);
+		proxyFactory.addAdvice(timing);
+		return proxyFactory.getProxy(bean.getClass().getClassLoader());
+	}
+
+	private MeterRegistry getMeterRegistry() {
+		MeterRegistry resolved = meterRegistry;
+		if (resolved == null) {
+			resolved = meterRegistryProvider.getObject();
+			meterRegistry = resolved;
+		}
+		return resolved;
+	}
+}
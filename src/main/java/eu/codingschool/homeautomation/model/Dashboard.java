@@ -0,0 +1,62 @@
+package eu.codingschool.homeautomation.model;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import eu.codingschool.homeautomation.repositories.projections.DeviceGridRow;
+import eu.codingschool.homeautomation.repositories.projections.RoomDevicesCount;
+
+/**
+ * Everything the home page and the device grid show around the devices of the logged-in user. It is shared by the
+ * requests of the user until something it shows changes, so it must not be modified.
+ */
+public class Dashboard {
+
+	private final Person loggedInUser;
+
+	private final List<Room> rooms;
+
+	private final List<RoomDevicesCount> roomsDevicesCount;
+
+	private final List<DeviceGridRow> devices;
+
+	public Dashboard(
+			Person loggedInUser, List<Room> rooms, List<RoomDevicesCount> roomsDevicesCount, List<DeviceGridRow> devices) {
+
+		this.loggedInUser = loggedInUser;
+		this.rooms = rooms;
+		this.roomsDevicesCount = roomsDevicesCount;
+		this.devices = devices;
+	}
+
+	public Person getLoggedInUser() {
+		return loggedInUser;
+	}
+
+	/**
+	 * @return all the rooms for an admin, null for a user
+	 */
+	public List<Room> getRooms() {
+		return rooms;
+	}
+
+	/**
+	 * @return the rooms with devices assigned to a user and how many of them are in each room, null for an admin
+	 */
+	public List<RoomDevicesCount> getRoomsDevicesCount() {
+		return roomsDevicesCount;
+	}
+
+	/**
+	 * @return all the devices for an admin, the devices assigned to a user
+	 */
+	public List<DeviceGridRow> getDevices() {
+		return devices;
+	}
+
+	public List<DeviceGridRow> getDevicesInRoom(int roomId) {
+		return devices.stream()
+					  .filter(device -> device.getRoomId() != null && device.getRoomId() == roomId)
+					  .collect(Collectors.toList());
+	}
+}
@@ -1,25 +1,39 @@
 package eu.codingschool.homeautomation.model;
 
+import java.math.BigDecimal;
 import java.util.Set;
 
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
-import javax.persistence.GenerationType;
 import javax.persistence.Id;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToMany;
 import javax.persistence.ManyToOne;
 import javax.persistence.Table;
+import javax.persistence.Version;
 
+import org.hibernate.annotations.ColumnDefault;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
 import org.hibernate.annotations.Type;
 
 @Entity
 @Table(name = "DEVICE")
 public class Device {
 
+	/**
+	 * The ids of all the entities are handed out by the id_generator table, which reserves 50 of them at a time, so that
+	 * Hibernate can batch the inserts; an identity column makes it insert each row as soon as it is persisted.
+	 */
 	@Id
-	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	@GeneratedValue(generator = "device_ids")
+	@GenericGenerator(name = "device_ids", strategy = "org.hibernate.id.enhanced.TableGenerator", parameters = {
+			@Parameter(name = "table_name", value = "id_generator"),
+			@Parameter(name = "segment_value", value = "device"),
+			@Parameter(name = "increment_size", value = "50"),
+			@Parameter(name = "optimizer", value = "pooled-lo")
+	})
 	@Column(name = "id")
 	private int id;
 
@@ -37,9 +51,11 @@ public class Device {
 	 * It keeps a value for the specific device related to the type of the device. 
 	 * For instance, for the oven we keep the temperature in Celsius degrees, for lighting we keep the percentage of the 
 	 * illumination, etc.
+	 * It is stored as a number, so that it can be compared and aggregated in the database, e.g. to find the thermostats
+	 * set above some temperature.
 	 */
-	@Column(name = "information_value")
-	private String informationValue;
+	@Column(name = "information_value", precision = 10, scale = 2)
+	private BigDecimal informationValue;
 	
 	@ManyToOne
 	@JoinColumn(name = "device_type_id")
@@ -52,6 +68,15 @@ public class Device {
 	@ManyToMany(mappedBy = "devices")
 	private Set<Person> persons;
 	
+	/**
+	 * Increased by every update of the entity, which is then written only if nobody else has updated it in the
+	 * meantime. The status and the information value are written separately by the commands and do not change it.
+	 */
+	@Version
+	@Column(name = "version", nullable = false)
+	@ColumnDefault("0")
+	private int version;
+	
 	public Device() {
 		
 	}
@@ -59,7 +84,7 @@ public class Device {
 	public Device(String name, boolean statusOn, String informationValue, DeviceType deviceType, Room room) {
 		this.name = name;
 		this.statusOn = statusOn;
-		this.informationValue = informationValue;
+		this.informationValue = DeviceValues.parse(informationValue);
 		this.room = room;
 		this.deviceType = deviceType;
 	}
@@ -89,11 +114,22 @@ public class Device {
 	}
 
 	public String getInformationValue() {
-		return informationValue;
+		return DeviceValues.format(informationValue);
 	}
 
+	/**
+	 * @throws NumberFormatException if the information value is not a number the database holds, see DeviceValues
+	 */
 	public void setInformationValue(String informationValue) {
-		this.informationValue = informationValue;
+		this.informationValue = DeviceValues.parse(informationValue);
+	}
+
+	public BigDecimal getNumericValue() {
+		return informationValue;
+	}
+
+	public void setNumericValue(BigDecimal numericValue) {
+		this.informationValue = numericValue;
 	}
 
 	public DeviceType getDeviceType() {
@@ -136,4 +172,12 @@ public class Device {
 	public String getInteractionType() {
 		return deviceType.getInteractionType();
 	}
+
+	public int getVersion() {
+		return version;
+	}
+
+	public void setVersion(int version) {
+		this.version = version;
+	}
 }
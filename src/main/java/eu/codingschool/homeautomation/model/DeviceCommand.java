@@ -0,0 +1,82 @@
+package eu.codingschool.homeautomation.model;
+
+/**
+ * A change requested for a single device. Either the status, the information value or both may be given.
+ * <p>
+ * If a version is given as well, the change is applied only if the device is still at that version.
+ */
+public class DeviceCommand {
+
+	private Integer deviceId;
+
+	private Boolean status;
+
+	private String value;
+
+	private Long version;
+
+	public DeviceCommand() {
+
+	}
+
+	public DeviceCommand(Integer deviceId, Boolean status, String value) {
+		this.deviceId = deviceId;
+		this.status = status;
+		this.value = value;
+	}
+
+	public Integer getDeviceId() {
+		return deviceId;
+	}
+
+	public void setDeviceId(Integer deviceId) {
+		this.deviceId = deviceId;
+	}
+
+	public Boolean getStatus() {
+		return status;
+	}
+
+	public void setStatus(Boolean status) {
+		this.status = status;
+	}
+
+	public String getValue() {
+		return value;
+	}
+
+	public void setValue(String value) {
+		this.value = value;
+	}
+
+	public Long getVersion() {
+		return version;
+	}
+
+	public void setVersion(Long version) {
+		this.version = version;
+	}
+
+	public boolean isValid() {
+		return deviceId != null && (status != null || value != null);
+	}
+
+	/**
+	 * @return whether the command can be applied to the given state of its device
+	 */
+	public boolean isApplicableTo(DeviceState state) {
+		return version == null || version == state.getVersion();
+	}
+
+	/**
+	 * The whole command counts as a single change of the device.
+	 */
+	public DeviceState applyTo(DeviceState state) {
+		return new DeviceState(
+				state.getDeviceId(),
+				status != null ? status : state.isStatusOn(),
+				value != null ? value : state.getInformationValue(),
+				state.getVersion() + 1
+		);
+	}
+}
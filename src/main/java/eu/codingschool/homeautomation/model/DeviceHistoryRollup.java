@@ -0,0 +1,63 @@
+package eu.codingschool.homeautomation.model;
+
+/**
+ * Aggregate of the numeric values a device had within one bucket of the history.
+ */
+public class DeviceHistoryRollup {
+
+	private final int deviceId;
+
+	private final HistoryResolution resolution;
+
+	private final long bucketStart;
+
+	private final long sampleCount;
+
+	private final double minValue;
+
+	private final double maxValue;
+
+	private final double sumValue;
+
+	public DeviceHistoryRollup(int deviceId, HistoryResolution resolution, long bucketStart, long sampleCount,
+							   double minValue, double maxValue, double sumValue) {
+		this.deviceId = deviceId;
+		this.resolution = resolution;
+		this.bucketStart = bucketStart;
+		this.sampleCount = sampleCount;
+		this.minValue = minValue;
+		this.maxValue = maxValue;
+		this.sumValue = sumValue;
+	}
+
+	public int getDeviceId() {
+		return deviceId;
+	}
+
+	public HistoryResolution getResolution() {
+		return resolution;
+	}
+
+	/**
+	 * @return the start of the bucket in millis since the epoch
+	 */
+	public long getBucketStart() {
+		return bucketStart;
+	}
+
+	public long getSampleCount() {
+		return sampleCount;
+	}
+
+	public double getMinValue() {
+		return minValue;
+	}
+
+	public double getMaxValue() {
+		return maxValue;
+	}
+
+	public double getAverageValue() {
+		return sampleCount > 0 ? sumValue / sampleCount : 0;
+	}
+}
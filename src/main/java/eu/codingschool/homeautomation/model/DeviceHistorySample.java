@@ -0,0 +1,44 @@
+package eu.codingschool.homeautomation.model;
+
+/**
+ * The state of a device right after one of its changes.
+ */
+public class DeviceHistorySample {
+
+	private final int deviceId;
+
+	private final long recordedAt;
+
+	private final boolean statusOn;
+
+	private final Double value;
+
+	public DeviceHistorySample(int deviceId, long recordedAt, boolean statusOn, Double value) {
+		this.deviceId = deviceId;
+		this.recordedAt = recordedAt;
+		this.statusOn = statusOn;
+		this.value = value;
+	}
+
+	public int getDeviceId() {
+		return deviceId;
+	}
+
+	/**
+	 * @return the time of the change in millis since the epoch
+	 */
+	public long getRecordedAt() {
+		return recordedAt;
+	}
+
+	public boolean isStatusOn() {
+		return statusOn;
+	}
+
+	/**
+	 * @return the information value of the device or null if it is not a number
+	 */
+	public Double getValue() {
+		return value;
+	}
+}
@@ -0,0 +1,47 @@
+package eu.codingschool.homeautomation.model;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The devices resolved from the ids submitted by a form, together with the ids that could not be resolved.
+ */
+public class DeviceSelection {
+
+	private final List<Device> devices;
+
+	private final Set<Integer> unknownIds;
+
+	private final Set<String> malformedIds;
+
+	public DeviceSelection(List<Device> devices, Set<Integer> unknownIds, Set<String> malformedIds) {
+		this.devices = devices;
+		this.unknownIds = unknownIds;
+		this.malformedIds = malformedIds;
+	}
+
+	/**
+	 * @return the existing devices, in the order their ids were first submitted
+	 */
+	public List<Device> getDevices() {
+		return devices;
+	}
+
+	/**
+	 * @return the well-formed ids that do not belong to any device
+	 */
+	public Set<Integer> getUnknownIds() {
+		return unknownIds;
+	}
+
+	/**
+	 * @return the ids that are not numbers at all
+	 */
+	public Set<String> getMalformedIds() {
+		return malformedIds;
+	}
+
+	public boolean isComplete() {
+		return unknownIds.isEmpty() && malformedIds.isEmpty();
+	}
+}
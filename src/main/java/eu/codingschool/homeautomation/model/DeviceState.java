@@ -0,0 +1,80 @@
+package eu.codingschool.homeautomation.model;
+
+import java.math.BigDecimal;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+/**
+ * Immutable snapshot of the part of a device that is changed by the users, i.e. whether it is on/off and its current
+ * information value.
+ * <p>
+ * The version is increased by every accepted change, so that a client can ask for a change to be applied only if the
+ * device has not been changed by anyone else since the state it has seen.
+ */
+public class DeviceState {
+
+	private final int deviceId;
+
+	private final boolean statusOn;
+
+	private final BigDecimal numericValue;
+
+	private final String informationValue;
+
+	private final long version;
+
+	public DeviceState(int deviceId, boolean statusOn, String informationValue) {
+		this(deviceId, statusOn, informationValue, 0L);
+	}
+
+	/**
+	 * @throws NumberFormatException if the information value is not a number the database holds, see DeviceValues
+	 */
+	public DeviceState(int deviceId, boolean statusOn, String informationValue, long version) {
+		this(deviceId, statusOn, version, DeviceValues.parse(informationValue));
+	}
+
+	private DeviceState(int deviceId, boolean statusOn, long version, BigDecimal numericValue) {
+		this.deviceId = deviceId;
+		this.statusOn = statusOn;
+		this.numericValue = numericValue;
+		this.informationValue = DeviceValues.format(numericValue);
+		this.version = version;
+	}
+
+	public int getDeviceId() {
+		return deviceId;
+	}
+
+	public boolean isStatusOn() {
+		return statusOn;
+	}
+
+	public String getInformationValue() {
+		return informationValue;
+	}
+
+	/**
+	 * The same as the information value, so that it does not have to be parsed again.
+	 */
+	@JsonIgnore
+	public BigDecimal getNumericValue() {
+		return numericValue;
+	}
+
+	public long getVersion() {
+		return version;
+	}
+
+	public DeviceState withStatusOn(boolean statusOn) {
+		return new DeviceState(deviceId, statusOn, version + 1, numericValue);
+	}
+
+	public DeviceState withInformationValue(String informationValue) {
+		return new DeviceState(deviceId, statusOn, informationValue, version + 1);
+	}
+
+	public DeviceState withNumericValue(BigDecimal numericValue) {
+		return new DeviceState(deviceId, statusOn, version + 1, numericValue);
+	}
+}
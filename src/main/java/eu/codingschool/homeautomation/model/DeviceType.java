@@ -1,18 +1,34 @@
 package eu.codingschool.homeautomation.model;
 
+import javax.persistence.Cacheable;
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
-import javax.persistence.GenerationType;
 import javax.persistence.Id;
 import javax.persistence.Table;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+
+/**
+ * Reference data that is read on almost every page and changes rarely, so it is kept in the second-level cache.
+ */
 @Entity
 @Table(name = "DEVICE_TYPE")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 public class DeviceType {
 	
 	@Id
-	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	@GeneratedValue(generator = "device_type_ids")
+	@GenericGenerator(name = "device_type_ids", strategy = "org.hibernate.id.enhanced.TableGenerator", parameters = {
+			@Parameter(name = "table_name", value = "id_generator"),
+			@Parameter(name = "segment_value", value = "device_type"),
+			@Parameter(name = "increment_size", value = "50"),
+			@Parameter(name = "optimizer", value = "pooled-lo")
+	})
 	@Column(name = "id")
 	private int id;
 
@@ -0,0 +1,80 @@
+package eu.codingschool.homeautomation.model;
+
+import java.math.BigDecimal;
+
+/**
+ * The information values are numbers, e.g. a temperature or a percentage. They are stored as such, while the pages
+ * and the commands show and send them as plain text.
+ */
+public final class DeviceValues {
+
+	/**
+	 * The values are stored as DECIMAL(10,2): at most 8 digits before the decimal point and 2 after it.
+	 */
+	public static final int MAX_INTEGER_DIGITS = 8;
+
+	public static final int MAX_SCALE = 2;
+
+	/**
+	 * The largest value the column holds; the smallest is its negation.
+	 */
+	public static final BigDecimal MAX_VALUE = new BigDecimal("99999999.99");
+
+	private DeviceValues() {
+
+	}
+
+	/**
+	 * @return the number given as text or null if none is given
+	 * @throws NumberFormatException if the text is not a number or has more digits than the column holds, since a
+	 * larger number would fail the write and more decimals would be rounded away without notice; the message tells
+	 * which, e.g. "not a number"
+	 */
+	public static BigDecimal parse(String value) {
+		if (value == null || value.trim().isEmpty()) {
+			return null;
+		}
+		BigDecimal number;
+		try {
+			number = new BigDecimal(value.trim());
+		} catch (NumberFormatException ex) {
+			throw new NumberFormatException("not a number");
+		}
+		if (!fitsColumn(number)) {
+			throw new NumberFormatException("too large or too precise, at most " + MAX_INTEGER_DIGITS +
+					" integer digits and " + MAX_SCALE + " decimals");
+		}
+		return number;
+	}
+
+	/**
+	 * @return whether the number is stored as it is, trailing zeros after the decimal point aside
+	 */
+	public static boolean fitsColumn(BigDecimal value) {
+		if (value == null || value.signum() == 0) {
+			return true;
+		}
+		BigDecimal stripped = value.stripTrailingZeros();
+		return stripped.scale() <= MAX_SCALE && stripped.precision() - stripped.scale() <= MAX_INTEGER_DIGITS;
+	}
+
+	/**
+	 * @return the number limited to the values the column holds
+	 */
+	public static BigDecimal clampToColumn(BigDecimal value) {
+		if (value.compareTo(MAX_VALUE) > 0) {
+			return MAX_VALUE;
+		}
+		return value.compareTo(MAX_VALUE.negate()) < 0 ? MAX_VALUE.negate() : value;
+	}
+
+	/**
+	 * @return the number as text without trailing zeros, e.g. 21.5 instead of 21.50, or null if none is given
+	 */
+	public static String format(BigDecimal value) {
+		if (value == null) {
+			return null;
+		}
+		return value.signum() == 0 ? "0" : value.stripTrailingZeros().toPlainString();
+	}
+}
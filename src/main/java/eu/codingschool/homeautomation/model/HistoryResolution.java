@@ -0,0 +1,29 @@
+package eu.codingschool.homeautomation.model;
+
+/**
+ * The resolutions the device history is rolled up to. Buckets are aligned to the epoch, i.e. days start at UTC
+ * midnight.
+ */
+public enum HistoryResolution {
+
+	MINUTE(60_000L),
+	HOUR(3_600_000L),
+	DAY(86_400_000L);
+
+	private final long millis;
+
+	HistoryResolution(long millis) {
+		this.millis = millis;
+	}
+
+	public long getMillis() {
+		return millis;
+	}
+
+	/**
+	 * @return the start of the bucket the given time (millis) falls into
+	 */
+	public long truncate(long time) {
+		return time - Math.floorMod(time, millis);
+	}
+}
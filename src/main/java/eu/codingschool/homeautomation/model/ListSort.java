@@ -0,0 +1,11 @@
+package eu.codingschool.homeautomation.model;
+
+/**
+ * The orders the admin lists can be sorted by. Ties are always broken by the id, so that every row has a unique
+ * position to continue from.
+ */
+public enum ListSort {
+
+	ID,
+	NAME
+}
@@ -2,20 +2,37 @@ package eu.codingschool.homeautomation.model;
 
 import java.util.Set;
 
+import javax.persistence.Cacheable;
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
-import javax.persistence.GenerationType;
 import javax.persistence.Id;
 import javax.persistence.OneToMany;
 import javax.persistence.Table;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+
+/**
+ * Rooms change rarely, so they are kept in the second-level cache. Their devices are not, since the devices are not
+ * cached themselves and their room is changed from the device side.
+ */
 @Entity
 @Table(name = "ROOM")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 public class Room {
 	
 	@Id
-	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	@GeneratedValue(generator = "room_ids")
+	@GenericGenerator(name = "room_ids", strategy = "org.hibernate.id.enhanced.TableGenerator", parameters = {
+			@Parameter(name = "table_name", value = "id_generator"),
+			@Parameter(name = "segment_value", value = "room"),
+			@Parameter(name = "increment_size", value = "50"),
+			@Parameter(name = "optimizer", value = "pooled-lo")
+	})
 	@Column(name = "id")
 	private int id;
 
@@ -1,18 +1,86 @@
 package eu.codingschool.homeautomation.repositories;
 
+import java.math.BigDecimal;
 import java.util.List;
+import java.util.Set;
 
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import eu.codingschool.homeautomation.model.Device;
+import eu.codingschool.homeautomation.repositories.projections.DeviceGridRow;
 
 @Repository("deviceRepository")
 public interface DeviceRepository extends JpaRepository<Device, Integer> {
+
+	String SELECT_GRID_ROWS =
+			"select new eu.codingschool.homeautomation.repositories.projections.DeviceGridRow(" +
+			"d.id, d.name, d.room.id, d.statusOn, d.informationValue, t.informationType, t.unitOfMeasure, " +
+			"t.minValue, t.maxValue, t.interactionType, t.icon, t.groupColor) " +
+			"from Device d left join d.deviceType t ";
+
+	/**
+	 * The admin list shows the type and the room of every device, so they are fetched with the page. The names are
+	 * optional, so a null filter lists every device, those without a name included.
+	 */
+	String SELECT_LIST_PAGE =
+			"select d from Device d left join fetch d.deviceType left join fetch d.room " +
+			"where (:filter is null or lower(d.name) like :filter escape '!') ";
 	
 	List<Device> findByRoomId(Integer roomId);
     
     List<Device> findByPersonsId(Integer id);
     
     List<Device> findByPersonsIdAndRoomId(Integer userId, Integer roomId);
+    
+    @Query("select d.id from Device d join d.persons p where p.id = :id")
+    Set<Integer> findIdsByPersonsId(@Param("id") Integer personId);
+
+    @Query("select t.type from Device d join d.deviceType t where d.id = :id")
+    String findDeviceTypeById(@Param("id") Integer deviceId);
+
+    @Query("select d.id from Device d where d.room.id = :roomId")
+    Set<Integer> findIdsByRoomId(@Param("roomId") Integer roomId);
+
+    /**
+     * E.g. all the thermostats set above some temperature, highest first. Served by the index on the type and the value.
+     */
+    @Query("select d from Device d where d.deviceType.id = :deviceTypeId and d.informationValue > :value " +
+    	   "order by d.informationValue desc, d.id")
+    List<Device> findByDeviceTypeIdAndValueAbove(
+    		@Param("deviceTypeId") Integer deviceTypeId, @Param("value") BigDecimal value);
+
+    @Query(SELECT_LIST_PAGE + "and d.id > :afterId order by d.id")
+    Slice<Device> findPageOrderById(
+    		@Param("filter") String filter, @Param("afterId") int afterId, Pageable pageable);
+
+    /**
+     * The devices without a name sort first; a null afterName continues among them.
+     */
+    @Query(SELECT_LIST_PAGE +
+    	   "and (d.name > :afterName or (d.name = :afterName and d.id > :afterId) " +
+    	   "or (:afterName is null and (d.name is not null or d.id > :afterId))) order by d.name, d.id")
+    Slice<Device> findPageOrderByName(
+    		@Param("filter") String filter, @Param("afterName") String afterName, @Param("afterId") int afterId,
+    		Pageable pageable);
+
+    @Query(SELECT_GRID_ROWS + "order by d.id")
+    List<DeviceGridRow> findGridRows();
+
+    @Query(SELECT_GRID_ROWS + "where d.id = :id")
+    DeviceGridRow findGridRowById(@Param("id") Integer id);
+
+    @Query(SELECT_GRID_ROWS + "where d.room.id = :roomId order by d.id")
+    List<DeviceGridRow> findGridRowsByRoomId(@Param("roomId") Integer roomId);
+
+    @Query(SELECT_GRID_ROWS + "join d.persons p where p.id = :personId order by d.id")
+    List<DeviceGridRow> findGridRowsByPersonsId(@Param("personId") Integer personId);
+
+    @Query(SELECT_GRID_ROWS + "join d.persons p where p.id = :personId and d.room.id = :roomId order by d.id")
+    List<DeviceGridRow> findGridRowsByPersonsIdAndRoomId(
+    		@Param("personId") Integer personId, @Param("roomId") Integer roomId);
 }
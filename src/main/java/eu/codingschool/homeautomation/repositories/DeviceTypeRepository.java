@@ -1,11 +1,23 @@
 package eu.codingschool.homeautomation.repositories;
 
+import java.util.List;
+
+import javax.persistence.QueryHint;
+
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 
 import eu.codingschool.homeautomation.model.DeviceType;
 
 @Repository("deviceTypeRepository")
 public interface DeviceTypeRepository extends JpaRepository<DeviceType, Integer> {
-	
+
+	/**
+	 * Cached, since the device types are offered by every device form. The cached result is dropped whenever a device
+	 * type is saved or deleted.
+	 */
+	@Override
+	@QueryHints(@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_CACHEABLE, value = "true"))
+	List<DeviceType> findAll();
 }
@@ -1,12 +1,38 @@
 package eu.codingschool.homeautomation.repositories;
 
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import eu.codingschool.homeautomation.model.Person;
 
 @Repository("personRepository")
 public interface PersonRepository extends JpaRepository<Person, Integer> {
+
+	/**
+	 * The names are optional, so a null filter lists every person, those without a name included.
+	 */
+	String SELECT_LIST_PAGE =
+			"select p from Person p " +
+			"where (:filter is null or lower(p.name) like :filter escape '!' " +
+			"or lower(p.surname) like :filter escape '!' or lower(p.email) like :filter escape '!') ";
 	
     Person findByEmail(String email);
+
+    @Query(SELECT_LIST_PAGE + "and p.id > :afterId order by p.id")
+    Slice<Person> findPageOrderById(
+    		@Param("filter") String filter, @Param("afterId") int afterId, Pageable pageable);
+
+    /**
+     * The people without a name sort first; a null afterName continues among them.
+     */
+    @Query(SELECT_LIST_PAGE +
+    	   "and (p.name > :afterName or (p.name = :afterName and p.id > :afterId) " +
+    	   "or (:afterName is null and (p.name is not null or p.id > :afterId))) order by p.name, p.id")
+    Slice<Person> findPageOrderByName(
+    		@Param("filter") String filter, @Param("afterName") String afterName, @Param("afterId") int afterId,
+    		Pageable pageable);
 }
\ No newline at end of file
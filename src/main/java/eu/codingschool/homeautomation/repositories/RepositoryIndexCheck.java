@@ -0,0 +1,174 @@
+package eu.codingschool.homeautomation.repositories;
+
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Checks on startup that the indexes which the queries of the repositories run on every request depend on are there,
+ * since without them the queries still work, only slower with every row added, and nobody notices until it hurts.
+ * The indexes are created by the migrations of db/migration.
+ * <p>
+ * An index is looked for by its columns rather than by its name: any index, the primary key included, that starts with
+ * the columns will do.
+ */
+@Component
+public class RepositoryIndexCheck implements SmartInitializingSingleton {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(RepositoryIndexCheck.class);
+
+	static final List<RequiredIndex> REQUIRED_INDEXES = Collections.unmodifiableList(Arrays.asList(
+			new RequiredIndex("PersonRepository.findByEmail", "person", true, "email"),
+			new RequiredIndex("DeviceRepository.findByRoomId", "device", false, "room_id", "id"),
+			new RequiredIndex("DeviceRepository.findByPersonsIdAndRoomId", "person_device", false,
+					"person_id", "device_id"),
+			// the rooms are reached from the assignments of the user, through the primary keys of device and room
+			new RequiredIndex("RoomRepository.findUserRooms", "person_device", false, "person_id", "device_id"),
+			new RequiredIndex("RoomRepository.findUserDeviceRooms", "person_device", false, "person_id", "device_id")
+	));
+
+	@Autowired
+	JdbcTemplate jdbcTemplate;
+
+	@Value("${homeautomation.schema.check-indexes:true}")
+	boolean enabled;
+
+	/**
+	 * An index that a query depends on.
+	 */
+	static final class RequiredIndex {
+
+		private final String query;
+
+		private final String table;
+
+		private final boolean unique;
+
+		private final List<String> columns;
+
+		RequiredIndex(String query, String table, boolean unique, String... columns) {
+			this.query = query;
+			this.table = table;
+			this.unique = unique;
+			this.columns = Collections.unmodifiableList(Arrays.asList(columns));
+		}
+
+		@Override
+		public String toString() {
+			return (unique ? "a unique index" : "an index") + " on " + table + " " + columns + " for " + query;
+		}
+	}
+
+	@Override
+	public void afterSingletonsInstantiated() {
+		if (!enabled) {
+			return;
+		}
+		List<RequiredIndex> missing = findMissingIndexes();
+		if (!missing.isEmpty()) {
+			throw new IllegalStateException("The database lacks " +
+					missing.stream().map(RequiredIndex::toString).collect(Collectors.joining(", ")) +
+					"; migrate it or set homeautomation.schema.check-indexes=false");
+		}
+		LOGGER.debug("Found the {} indexes that the repositories depend on", REQUIRED_INDEXES.size());
+	}
+
+	List<RequiredIndex> findMissingIndexes() {
+		return jdbcTemplate.execute((ConnectionCallback<List<RequiredIndex>>) connection -> {
+			DatabaseMetaData metaData = connection.getMetaData();
+			Map<String, String> tableNames = findTableNames(metaData, connection.getCatalog());
+			Map<String, List<IndexColumns>> indexesByTable = new HashMap<>();
+
+			List<RequiredIndex> missing = new ArrayList<>();
+			for (RequiredIndex required : REQUIRED_INDEXES) {
+				String tableName = tableNames.get(required.table.toLowerCase(Locale.ROOT));
+				if (tableName == null) {
+					missing.add(required);
+					continue;
+				}
+				List<IndexColumns> indexes = indexesByTable.get(tableName);
+				if (indexes == null) {
+					indexes = findIndexes(metaData, connection.getCatalog(), tableName);
+					indexesByTable.put(tableName, indexes);
+				}
+				if (indexes.stream().noneMatch(index -> index.serves(required))) {
+					missing.add(required);
+				}
+			}
+			return missing;
+		});
+	}
+
+	/**
+	 * @return the names of the tables as the database has stored them, by their lower case names
+	 */
+	private static Map<String, String> findTableNames(DatabaseMetaData metaData, String catalog) throws SQLException {
+		Map<String, String> tableNames = new HashMap<>();
+		try (ResultSet rs = metaData.getTables(catalog, null, "%", new String[] { "TABLE" })) {
+			while (rs.next()) {
+				String tableName = rs.getString("TABLE_NAME");
+				tableNames.putIfAbsent(tableName.toLowerCase(Locale.ROOT), tableName);
+			}
+		}
+		return tableNames;
+	}
+
+	private static List<IndexColumns> findIndexes(DatabaseMetaData metaData, String catalog, String tableName)
+			throws SQLException {
+
+		Map<String, IndexColumns> indexes = new HashMap<>();
+		try (ResultSet rs = metaData.getIndexInfo(catalog, null, tableName, false, true)) {
+			while (rs.next()) {
+				String indexName = rs.getString("INDEX_NAME");
+				if (indexName == null || rs.getShort("TYPE") == DatabaseMetaData.tableIndexStatistic) {
+					continue;
+				}
+				indexes.computeIfAbsent(indexName, name -> new IndexColumns())
+					   .add(rs.getBoolean("NON_UNIQUE"), rs.getShort("ORDINAL_POSITION"), rs.getString("COLUMN_NAME"));
+			}
+		}
+		return new ArrayList<>(indexes.values());
+	}
+
+	/**
+	 * The columns of an index of the database, in their order.
+	 */
+	private static final class IndexColumns {
+
+		private final Map<Short, String> columns = new TreeMap<>();
+
+		private boolean unique = true;
+
+		private void add(boolean nonUnique, short position, String column) {
+			unique &= !nonUnique;
+			columns.put(position, column.toLowerCase(Locale.ROOT));
+		}
+
+		private boolean serves(RequiredIndex required) {
+			List<String> names = new ArrayList<>(columns.values());
+			return (unique || !required.unique)
+					&& names.size() >= required.columns.size()
+					&& names.subList(0, required.columns.size()).equals(required.columns)
+					// a unique index on more columns than required does not make the required columns unique
+					&& (!required.unique || names.size() == required.columns.size());
+		}
+	}
+}
@@ -2,9 +2,15 @@ package eu.codingschool.homeautomation.repositories;
 
 import java.util.List;
 
+import javax.persistence.QueryHint;
+
+import eu.codingschool.homeautomation.repositories.projections.DeviceRoom;
 import eu.codingschool.homeautomation.repositories.projections.RoomDevicesCount;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
@@ -12,6 +18,19 @@ import eu.codingschool.homeautomation.model.Room;
 
 @Repository("roomRepository")
 public interface RoomRepository extends JpaRepository<Room, Integer> {
+
+	/**
+	 * The names are optional, so a null filter lists every room, those without a name included.
+	 */
+	String SELECT_LIST_PAGE = "select r from Room r where (:filter is null or lower(r.name) like :filter escape '!') ";
+
+    /**
+     * Cached, since all the rooms are listed in the side menu of every admin page. The cached result is dropped
+     * whenever a room is saved or deleted.
+     */
+    @Override
+    @QueryHints(@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_CACHEABLE, value = "true"))
+    List<Room> findAll();
     
     @Query("select new eu.codingschool.homeautomation.repositories.projections.RoomDevicesCount(r, count(r)) " +
       	   "from Room r " + 
@@ -20,4 +39,28 @@ public interface RoomRepository extends JpaRepository<Room, Integer> {
       	   "where p.id = :id " +
 		   "group by r.id")
 	List<RoomDevicesCount> findUserRooms(@Param("id") Integer personId);
+
+    /**
+     * The room of every device assigned to the user, from which the device counts of the rooms are kept up to date.
+     */
+    @Query("select new eu.codingschool.homeautomation.repositories.projections.DeviceRoom(d.id, r) " +
+           "from Room r " +
+           "join r.devices d " +
+           "join d.persons p " +
+           "where p.id = :id")
+    List<DeviceRoom> findUserDeviceRooms(@Param("id") Integer personId);
+
+    @Query(SELECT_LIST_PAGE + "and r.id > :afterId order by r.id")
+    Slice<Room> findPageOrderById(
+    		@Param("filter") String filter, @Param("afterId") int afterId, Pageable pageable);
+
+    /**
+     * The rooms without a name sort first; a null afterName continues among them.
+     */
+    @Query(SELECT_LIST_PAGE +
+    	   "and (r.name > :afterName or (r.name = :afterName and r.id > :afterId) " +
+    	   "or (:afterName is null and (r.name is not null or r.id > :afterId))) order by r.name, r.id")
+    Slice<Room> findPageOrderByName(
+    		@Param("filter") String filter, @Param("afterName") String afterName, @Param("afterId") int afterId,
+    		Pageable pageable);
 }
@@ -0,0 +1,105 @@
+package eu.codingschool.homeautomation.repositories.projections;
+
+import java.math.BigDecimal;
+
+import eu.codingschool.homeautomation.model.DeviceValues;
+
+/**
+ * Everything the device grid displays for a device, fetched together with its type in a single query.
+ */
+public class DeviceGridRow {
+
+    private int id;
+    private String name;
+    private Integer roomId;
+    private boolean statusOn;
+    private String informationValue;
+    private String informationType;
+    private String unitOfMeasure;
+    private Integer minValue;
+    private Integer maxValue;
+    private String interactionType;
+    private String icon;
+    private String groupColor;
+
+    public DeviceGridRow(int id, String name, Integer roomId, boolean statusOn, BigDecimal informationValue,
+                         String informationType, String unitOfMeasure, Integer minValue, Integer maxValue,
+                         String interactionType, String icon, String groupColor) {
+        this.id = id;
+        this.name = name;
+        this.roomId = roomId;
+        this.statusOn = statusOn;
+        this.informationValue = DeviceValues.format(informationValue);
+        this.informationType = informationType;
+        this.unitOfMeasure = unitOfMeasure;
+        this.minValue = minValue;
+        this.maxValue = maxValue;
+        this.interactionType = interactionType;
+        this.icon = icon;
+        this.groupColor = groupColor;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Integer getRoomId() {
+        return roomId;
+    }
+
+    public boolean isStatusOn() {
+        return statusOn;
+    }
+
+    public void setStatusOn(boolean statusOn) {
+        this.statusOn = statusOn;
+    }
+
+    public String getInformationValue() {
+        return informationValue;
+    }
+
+    public void setInformationValue(String informationValue) {
+        this.informationValue = informationValue;
+    }
+
+    public Integer getMinValue() {
+        return minValue;
+    }
+
+    public Integer getMaxValue() {
+        return maxValue;
+    }
+
+    public String getInteractionType() {
+        return interactionType;
+    }
+
+    public String getIcon() {
+        return icon;
+    }
+
+    public String getGroupColor() {
+        return groupColor;
+    }
+
+    /**
+     * Same as {@link eu.codingschool.homeautomation.model.Device#getInformationText()}.
+     */
+    public String getInformationText() {
+        String str = "";
+
+        if (informationType != null) {
+            str += informationType;
+        }
+        if (unitOfMeasure != null) {
+            str += " " + unitOfMeasure;
+        }
+
+        return str;
+    }
+}
@@ -0,0 +1,22 @@
+package eu.codingschool.homeautomation.repositories.projections;
+
+import eu.codingschool.homeautomation.model.Room;
+
+public class DeviceRoom {
+
+    private int deviceId;
+    private Room room;
+
+    public DeviceRoom(int deviceId, Room room) {
+        this.deviceId = deviceId;
+        this.room = room;
+    }
+
+    public int getDeviceId() {
+        return deviceId;
+    }
+
+    public Room getRoom() {
+        return room;
+    }
+}
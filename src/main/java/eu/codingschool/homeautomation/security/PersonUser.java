@@ -0,0 +1,30 @@
+package eu.codingschool.homeautomation.security;
+
+import java.util.Collection;
+
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.userdetails.User;
+
+/**
+ * A logged-in user together with the id of their person, which is kept in the session from the login on, so that a
+ * request can tell who is asking without reading the person from the database again.
+ */
+public class PersonUser extends User {
+
+	private static final long serialVersionUID = 1L;
+
+	private final int personId;
+
+	public PersonUser(int personId, String email, String password, Collection<? extends GrantedAuthority> authorities) {
+		super(email, password, authorities);
+		this.personId = personId;
+	}
+
+	public int getPersonId() {
+		return personId;
+	}
+
+	public boolean isAdmin() {
+		return getAuthorities().stream().anyMatch(authority -> "ADMIN".equals(authority.getAuthority()));
+	}
+}
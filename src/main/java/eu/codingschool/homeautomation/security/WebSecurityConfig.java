@@ -1,6 +1,7 @@
 package eu.codingschool.homeautomation.security;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Configuration;
@@ -11,8 +12,15 @@ import org.springframework.security.config.annotation.web.configuration.EnableWe
 import org.springframework.security.config.annotation.web.configuration.WebSecurityConfigurerAdapter;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
+import org.springframework.security.web.session.HttpSessionEventPublisher;
+import org.springframework.security.web.util.matcher.AndRequestMatcher;
 import org.springframework.security.web.util.matcher.AntPathRequestMatcher;
 
+import eu.codingschool.homeautomation.metrics.LoginMetricsFilter;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
 @Configuration
 @EnableWebSecurity
 @ComponentScan(basePackages = "eu.codingschool.homeautomation")
@@ -20,6 +28,16 @@ public class WebSecurityConfig extends WebSecurityConfigurerAdapter {
 	@Autowired
 	private UserDetailsService userDetailsService;
 
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	/**
+	 * Prometheus scrapes the metrics without a session, so they are open on the management port, which is not
+	 * published, and for admins only on any other port. Without a management port of their own they are never open.
+	 */
+	@Value("${homeautomation.metrics.scrape-port:${management.server.port:-1}}")
+	private int scrapePort;
+
 	@Bean(name="passwordEncoder")
 	public BCryptPasswordEncoder bCryptPasswordEncoder() {
 		return new BCryptPasswordEncoder();
@@ -30,6 +48,15 @@ public class WebSecurityConfig extends WebSecurityConfigurerAdapter {
 		return authenticationManager();
 	}
 
+	/**
+	 * Publishes the end of every session, on logout or when it expires, so that what is kept in memory for the user
+	 * can be forgotten.
+	 */
+	@Bean
+	public HttpSessionEventPublisher httpSessionEventPublisher() {
+		return new HttpSessionEventPublisher();
+	}
+
     @Override
     protected void configure(HttpSecurity http) throws Exception {
     	http.csrf().disable()
@@ -37,6 +64,11 @@ public class WebSecurityConfig extends WebSecurityConfigurerAdapter {
 		    	.antMatchers("/", "/login", "/hello", "/registration").permitAll()
 				.antMatchers("/css/**", "/img/**", "/js/**", "/scss/**", "/vendor/**").permitAll()
 				.antMatchers("/admin/**").hasAuthority("ADMIN")
+				.antMatchers("/actuator/health").permitAll()
+				.requestMatchers(new AndRequestMatcher(
+						new AntPathRequestMatcher("/actuator/prometheus"),
+						request -> scrapePort > 0 && request.getLocalPort() == scrapePort)).permitAll()
+				.antMatchers("/actuator/**").hasAuthority("ADMIN")
 				.anyRequest().authenticated()
 			.and()	
 				.formLogin()
@@ -52,7 +84,10 @@ public class WebSecurityConfig extends WebSecurityConfigurerAdapter {
 				.logoutSuccessUrl("/")
 			.and()
 				.exceptionHandling()
-				.accessDeniedPage("/error/403");
+				.accessDeniedPage("/error/403")
+			.and()
+				.addFilterBefore(
+						new LoginMetricsFilter(meterRegistry, "/login"), UsernamePasswordAuthenticationFilter.class);
     }
 
 	@Autowired
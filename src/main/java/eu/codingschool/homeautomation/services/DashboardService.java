@@ -0,0 +1,24 @@
+package eu.codingschool.homeautomation.services;
+
+import eu.codingschool.homeautomation.model.Dashboard;
+
+/**
+ * Keeps the dashboard of every user in memory together with the state version of the user it was built for, see
+ * {@link StateVersionService}. Device commands, assignment changes and room, device type or device changes all move
+ * the version on, so a dashboard is built again only after something it shows may have changed.
+ */
+public interface DashboardService {
+
+	/**
+	 * A refresh without any change reads nothing from the database. Concurrent requests that find the dashboard out
+	 * of date wait for a single one of them to build it.
+	 *
+	 * @return the dashboard of the logged-in user or null if nobody is logged in
+	 */
+	Dashboard getLoggedInDashboard();
+
+	/**
+	 * Forget the dashboard of the person, e.g. after they have been deleted.
+	 */
+	void evict(int personId);
+}
@@ -0,0 +1,209 @@
+package eu.codingschool.homeautomation.services;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.annotation.PostConstruct;
+
+import org.hibernate.Hibernate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.session.SessionDestroyedEvent;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import eu.codingschool.homeautomation.model.Dashboard;
+import eu.codingschool.homeautomation.model.Person;
+import eu.codingschool.homeautomation.model.Room;
+import eu.codingschool.homeautomation.security.PersonUser;
+
+/**
+ * A dashboard is built for the versions that were current before it was loaded, so it never claims to be newer than
+ * what it shows. An admin sees every device, so their dashboard follows the version of everything; a user's dashboard
+ * follows the version of the user.
+ */
+@Service
+public class DashboardServiceImpl implements DashboardService {
+
+	@Autowired
+	PersonService personService;
+
+	@Autowired
+	RoomService roomService;
+
+	@Autowired
+	DeviceService deviceService;
+
+	@Autowired
+	StateVersionService stateVersionService;
+
+	@Autowired
+	PlatformTransactionManager transactionManager;
+
+	/**
+	 * A dashboard is only read, so it may be loaded from a replica of the database.
+	 */
+	private TransactionTemplate readOnlyTransactionTemplate;
+
+	/**
+	 * A logged-in user that is not a {@link PersonUser} is known by their email only, which only changes with the
+	 * person, and then the version of the person changes too. A person that cannot be found any more is forgotten
+	 * when their dashboard is built again.
+	 * <p>
+	 * Both maps only hold the users whose session is still open, see {@link #onSessionDestroyed}.
+	 */
+	private final ConcurrentMap<String, Integer> personIdPerEmail = new ConcurrentHashMap<>();
+
+	private final ConcurrentMap<Integer, DashboardLoad> dashboards = new ConcurrentHashMap<>();
+
+	@PostConstruct
+	void createReadOnlyTransactionTemplate() {
+		readOnlyTransactionTemplate = new TransactionTemplate(transactionManager);
+		readOnlyTransactionTemplate.setReadOnly(true);
+		readOnlyTransactionTemplate.setName(DashboardServiceImpl.class.getName() + ".loadDashboard");
+	}
+
+	@Override
+	public Dashboard getLoggedInDashboard() {
+		UserDetails loggedInUser = personService.getLoggedInUser();
+		if (loggedInUser == null || loggedInUser.getUsername() == null) {
+			return null;
+		}
+		String email = loggedInUser.getUsername();
+
+		// the person is read once per request, by the load of the dashboard if it is out of date
+		Integer personId = loggedInUser instanceof PersonUser
+				? Integer.valueOf(((PersonUser) loggedInUser).getPersonId())
+				: personIdPerEmail.get(email);
+		if (personId == null) {
+			Person person = personService.findByEmail(email);
+			if (person == null) {
+				return null;
+			}
+			personId = person.getId();
+			personIdPerEmail.put(email, personId);
+		}
+		return getDashboard(email, personId);
+	}
+
+	@Override
+	public void evict(int personId) {
+		dashboards.remove(personId);
+		personIdPerEmail.values().removeIf(id -> id == personId);
+	}
+
+	/**
+	 * The session ends on logout or when it expires, and the dashboard is built again on the next login anyway.
+	 */
+	@EventListener
+	public void onSessionDestroyed(SessionDestroyedEvent event) {
+		event.getSecurityContexts().stream()
+			 .map(SecurityContext::getAuthentication)
+			 .filter(Objects::nonNull)
+			 .map(Authentication::getPrincipal)
+			 .filter(PersonUser.class::isInstance)
+			 .forEach(principal -> evict(((PersonUser) principal).getPersonId()));
+	}
+
+	private Dashboard getDashboard(String email, int personId) {
+		long userVersion = stateVersionService.getUserVersion(personId);
+		long version = stateVersionService.getVersion();
+
+		while (true) {
+			DashboardLoad current = dashboards.get(personId);
+			if (current != null && current.isUpToDate(userVersion, version)) {
+				return current.join();
+			}
+
+			DashboardLoad load = new DashboardLoad(userVersion, version);
+			boolean started = current == null
+					? dashboards.putIfAbsent(personId, load) == null
+					: dashboards.replace(personId, current, load);
+			if (!started) {
+				// somebody else has just started a load; it may already be recent enough
+				continue;
+			}
+
+			try {
+				Dashboard dashboard = loadDashboard(email);
+				if (dashboard == null || dashboard.getLoggedInUser().getId() != personId) {
+					dashboards.remove(personId, load);
+					personIdPerEmail.remove(email, personId);
+				}
+				load.dashboard.complete(dashboard);
+				return dashboard;
+			} catch (RuntimeException ex) {
+				dashboards.remove(personId, load);
+				load.dashboard.completeExceptionally(ex);
+				throw ex;
+			}
+		}
+	}
+
+	/**
+	 * The devices of the rooms are counted by the side menu of an admin, so they are loaded here, while the rooms are
+	 * still attached.
+	 */
+	private Dashboard loadDashboard(String email) {
+		return readOnlyTransactionTemplate.execute(status -> {
+			Person person = personService.findByEmail(email);
+			if (person == null) {
+				return null;
+			}
+			if (person.isAdmin()) {
+				List<Room> rooms = roomService.findAll();
+				rooms.forEach(room -> Hibernate.initialize(room.getDevices()));
+				return new Dashboard(person, rooms, null, deviceService.findGridRows());
+			}
+			return new Dashboard(
+					person, null, roomService.findByUser(person.getId()),
+					deviceService.findGridRowsByPersonsId(person.getId()));
+		});
+	}
+
+	private static final class DashboardLoad {
+
+		private final long userVersion;
+
+		private final long version;
+
+		private final CompletableFuture<Dashboard> dashboard = new CompletableFuture<>();
+
+		DashboardLoad(long userVersion, long version) {
+			this.userVersion = userVersion;
+			this.version = version;
+		}
+
+		/**
+		 * Until the load is done it is not known whether the person is an admin, so it must cover both versions.
+		 */
+		boolean isUpToDate(long currentUserVersion, long currentVersion) {
+			if (dashboard.isCompletedExceptionally()) {
+				return false;
+			}
+			Dashboard loaded = dashboard.getNow(null);
+			if (loaded == null) {
+				return !dashboard.isDone() && userVersion >= currentUserVersion && version >= currentVersion;
+			}
+			return loaded.getLoggedInUser().isAdmin() ? version >= currentVersion : userVersion >= currentUserVersion;
+		}
+
+		Dashboard join() {
+			try {
+				return dashboard.join();
+			} catch (CompletionException ex) {
+				throw ex.getCause() instanceof RuntimeException
+						? (RuntimeException) ex.getCause()
+						: ex;
+			}
+		}
+	}
+}
@@ -0,0 +1,34 @@
+package eu.codingschool.homeautomation.services;
+
+import java.io.IOException;
+
+import eu.codingschool.homeautomation.transfer.DataSet;
+import eu.codingschool.homeautomation.transfer.ImportListener;
+import eu.codingschool.homeautomation.transfer.ImportProgress;
+import eu.codingschool.homeautomation.transfer.RowReader;
+import eu.codingschool.homeautomation.transfer.RowWriter;
+
+/**
+ * Exports and imports whole tables, e.g. the rooms and the devices of a new building. Rows are streamed in both
+ * directions, so the memory needed does not depend on the number of rows.
+ */
+public interface DataTransferService {
+
+	/**
+	 * Insert the rows read. Every row is checked the way the admin forms check it and the valid ones are written in
+	 * JDBC batches, one transaction per chunk. A row that is rejected, by the checks or by the database, does not
+	 * keep the rest of its chunk from being written. A row without an id gets a new one.
+	 *
+	 * @throws eu.codingschool.homeautomation.transfer.MalformedDataException if the rest of the file cannot be read;
+	 * the rows read before it are still written
+	 * @return the totals of the import
+	 */
+	ImportProgress importRows(DataSet dataSet, RowReader rows, ImportListener listener) throws IOException;
+
+	/**
+	 * Write every row, ordered by id, as it is read through a database cursor.
+	 *
+	 * @return the number of rows written
+	 */
+	long exportRows(DataSet dataSet, RowWriter rows) throws IOException;
+}
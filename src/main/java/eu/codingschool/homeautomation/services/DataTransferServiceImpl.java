@@ -0,0 +1,586 @@
+package eu.codingschool.homeautomation.services;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.enhanced.TableGenerator;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.MessageSource;
+import org.springframework.context.i18n.LocaleContextHolder;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.validation.BeanPropertyBindingResult;
+import org.springframework.validation.Errors;
+import org.springframework.validation.FieldError;
+import org.springframework.validation.Validator;
+
+import eu.codingschool.homeautomation.model.Device;
+import eu.codingschool.homeautomation.model.DeviceState;
+import eu.codingschool.homeautomation.model.DeviceType;
+import eu.codingschool.homeautomation.model.DeviceValues;
+import eu.codingschool.homeautomation.model.Room;
+import eu.codingschool.homeautomation.transfer.DataSet;
+import eu.codingschool.homeautomation.transfer.ImportListener;
+import eu.codingschool.homeautomation.transfer.ImportProgress;
+import eu.codingschool.homeautomation.transfer.MalformedDataException;
+import eu.codingschool.homeautomation.transfer.RowReader;
+import eu.codingschool.homeautomation.transfer.RowWriter;
+import eu.codingschool.homeautomation.validators.DeviceTypeValidator;
+import eu.codingschool.homeautomation.validators.DeviceValidator;
+import eu.codingschool.homeautomation.validators.RoomValidator;
+
+@Service
+public class DataTransferServiceImpl implements DataTransferService {
+
+	private static final String SQL_SELECT_ROOMS = "SELECT id, name FROM room ORDER BY id";
+	private static final String SQL_SELECT_DEVICE_TYPES =
+			"SELECT id, type, information_type, unit_of_measure, min_value, max_value, interaction_type, icon, " +
+			"group_color FROM device_type ORDER BY id";
+	private static final String SQL_SELECT_DEVICES =
+			"SELECT id, name, device_type_id, room_id, status, information_value FROM device ORDER BY id";
+	private static final String SQL_SELECT_ASSIGNMENTS =
+			"SELECT person_id, device_id FROM person_device ORDER BY person_id, device_id";
+	private static final String SQL_SELECT_DEVICE_TYPE_RANGES = "SELECT id, min_value, max_value FROM device_type";
+
+	// the id is the first argument of the inserts of the rooms, device types and devices, see assignIds
+	private static final String SQL_INSERT_ROOM = "INSERT INTO room (id, name) VALUES (?, ?)";
+	private static final String SQL_INSERT_DEVICE_TYPE =
+			"INSERT INTO device_type (id, type, information_type, unit_of_measure, min_value, max_value, " +
+			"interaction_type, icon, group_color) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+	private static final String SQL_INSERT_DEVICE =
+			"INSERT INTO device (id, name, device_type_id, room_id, status, information_value, version) " +
+			"VALUES (?, ?, ?, ?, ?, ?, 0)";
+	private static final String SQL_INSERT_ASSIGNMENT = "INSERT INTO person_device (person_id, device_id) VALUES (?, ?)";
+
+	@Autowired
+	JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	TransactionTemplate transactionTemplate;
+
+	@Autowired
+	EntityManagerFactory entityManagerFactory;
+
+	@Autowired
+	MessageSource messageSource;
+
+	@Autowired
+	RoomValidator roomValidator;
+
+	@Autowired
+	DeviceTypeValidator deviceTypeValidator;
+
+	@Autowired
+	DeviceValidator deviceValidator;
+
+	@Autowired
+	DeviceStateService deviceStateService;
+
+	@Autowired
+	DevicePermissionService devicePermissionService;
+
+	@Autowired
+	RoomService roomService;
+
+	@Autowired
+	StateVersionService stateVersionService;
+
+	/**
+	 * Number of rows written per transaction by an import.
+	 */
+	@Value("${homeautomation.data-transfer.chunk-size:1000}")
+	int chunkSize;
+
+	/**
+	 * Number of rows fetched from the database at a time by an export.
+	 */
+	@Value("${homeautomation.data-transfer.fetch-size:1000}")
+	int fetchSize;
+
+	@Override
+	public ImportProgress importRows(DataSet dataSet, RowReader rows, ImportListener listener) throws IOException {
+		Import run = new Import(dataSet, listener);
+		try {
+			Map<String, String> row;
+			while ((row = rows.next()) != null) {
+				run.add(row);
+			}
+		} catch (MalformedDataException ex) {
+			// the rows before the malformed one are fine
+			run.writeChunk();
+			throw ex;
+		}
+		run.writeChunk();
+		return run.getProgress();
+	}
+
+	/**
+	 * An insert that is waiting for its chunk to be written.
+	 */
+	private static final class PendingRow {
+
+		private final long number;
+
+		private final String sql;
+
+		private final Object[] args;
+
+		private PendingRow(long number, String sql, Object... args) {
+			this.number = number;
+			this.sql = sql;
+			this.args = args;
+		}
+	}
+
+	/**
+	 * Thrown when a row is not valid, with the reason to report.
+	 */
+	private static final class RowRejectedException extends Exception {
+
+		private static final long serialVersionUID = 1L;
+
+		private RowRejectedException(String reason) {
+			super(reason);
+		}
+	}
+
+	/**
+	 * The state of one import.
+	 */
+	private final class Import {
+
+		private final DataSet dataSet;
+
+		private final ImportListener listener;
+
+		private List<PendingRow> chunk = new ArrayList<>();
+
+		private long read;
+
+		private long imported;
+
+		private long rejected;
+
+		/**
+		 * The device types by id, with their ranges, loaded with the first device.
+		 */
+		private Map<Integer, DeviceType> deviceTypes;
+
+		private Import(DataSet dataSet, ImportListener listener) {
+			this.dataSet = dataSet;
+			this.listener = listener;
+		}
+
+		private void add(Map<String, String> row) throws IOException {
+			read++;
+			try {
+				chunk.add(toInsert(read, row));
+			} catch (RowRejectedException ex) {
+				reject(read, ex.getMessage());
+			}
+			if (chunk.size() >= chunkSize) {
+				writeChunk();
+			}
+		}
+
+		private PendingRow toInsert(long number, Map<String, String> row) throws RowRejectedException {
+			switch (dataSet) {
+			case ROOMS:
+				return toRoomInsert(number, row);
+			case DEVICE_TYPES:
+				return toDeviceTypeInsert(number, row);
+			case DEVICES:
+				return toDeviceInsert(number, row, getDeviceTypes());
+			default:
+				return toAssignmentInsert(number, row);
+			}
+		}
+
+		private void writeChunk() throws IOException {
+			if (chunk.isEmpty()) {
+				return;
+			}
+			List<PendingRow> rows = chunk;
+			chunk = new ArrayList<>();
+			Class<?> entityClass = getEntityClass(dataSet);
+			if (entityClass != null) {
+				assignIds(entityClass, rows);
+			}
+
+			// every row of a data set is inserted by the same statement
+			String sql = rows.get(0).sql;
+			List<Object[]> batch = rows.stream().map(row -> row.args).collect(Collectors.toList());
+			try {
+				transactionTemplate.execute(status -> jdbcTemplate.batchUpdate(sql, batch));
+				imported += rows.size();
+			} catch (DataAccessException ex) {
+				// the whole chunk has been rolled back, so write its rows one by one to find the ones that cannot be
+				for (PendingRow row : rows) {
+					try {
+						transactionTemplate.execute(status -> jdbcTemplate.update(row.sql, row.args));
+						imported++;
+					} catch (DataAccessException rowEx) {
+						reject(row.number, rowEx.getMostSpecificCause().getMessage());
+					}
+				}
+			}
+			afterChunk(rows);
+			stateVersionService.changeAll();
+			listener.chunkWritten(getProgress());
+		}
+
+		/**
+		 * The rows have been written behind Hibernate's back, so forget what has been kept about the tables they
+		 * change.
+		 */
+		private void afterChunk(List<PendingRow> rows) {
+			switch (dataSet) {
+			case ROOMS:
+			case DEVICE_TYPES:
+				// the lists of all the rooms and device types
+				entityManagerFactory.unwrap(SessionFactory.class).getCache().evictQueryRegions();
+				break;
+			case ASSIGNMENTS:
+				Set<Integer> personIds = rows.stream()
+						.map(row -> (Integer) row.args[0])
+						.collect(Collectors.toCollection(LinkedHashSet::new));
+				for (Integer personId : personIds) {
+					devicePermissionService.invalidate(personId);
+					roomService.evictDevicesCount(personId);
+				}
+				break;
+			default:
+				// new devices are not assigned to anyone yet and their states are loaded when first needed
+				break;
+			}
+		}
+
+		private Map<Integer, DeviceType> getDeviceTypes() {
+			if (deviceTypes == null) {
+				deviceTypes = loadDeviceTypes();
+			}
+			return deviceTypes;
+		}
+
+		private void reject(long number, String reason) throws IOException {
+			rejected++;
+			listener.rowRejected(number, reason);
+		}
+
+		private ImportProgress getProgress() {
+			return new ImportProgress(read, imported, rejected);
+		}
+	}
+
+	private static Class<?> getEntityClass(DataSet dataSet) {
+		switch (dataSet) {
+		case ROOMS:
+			return Room.class;
+		case DEVICE_TYPES:
+			return DeviceType.class;
+		case DEVICES:
+			return Device.class;
+		default:
+			return null;
+		}
+	}
+
+	/**
+	 * Takes the ids of the rows that come without one from the id generator of the entity, as Hibernate does, so that
+	 * neither hands out an id that the other has used. The ids that the rows come with are taken out of the generator
+	 * first: its table is raised above them and the ids that it has reserved in memory below them are skipped.
+	 */
+	private void assignIds(Class<?> entityClass, List<PendingRow> rows) {
+		SessionFactoryImplementor sessionFactory = entityManagerFactory.unwrap(SessionFactoryImplementor.class);
+		TableGenerator generator =
+				(TableGenerator) sessionFactory.getMetamodel().entityPersister(entityClass).getIdentifierGenerator();
+		int maxId = rows.stream()
+				.filter(row -> row.args[0] != null)
+				.mapToInt(row -> (Integer) row.args[0])
+				.max()
+				.orElse(0);
+
+		try (Session session = sessionFactory.openSession()) {
+			SharedSessionContractImplementor sessionImplementor = (SharedSessionContractImplementor) session;
+			Integer nextId = null;
+			if (maxId > 0) {
+				raiseNextId(generator, maxId + 1);
+				do {
+					nextId = generateId(generator, sessionImplementor);
+				} while (nextId <= maxId);
+			}
+			for (PendingRow row : rows) {
+				if (row.args[0] == null) {
+					row.args[0] = nextId != null ? nextId : generateId(generator, sessionImplementor);
+					nextId = null;
+				}
+			}
+		}
+	}
+
+	private static Integer generateId(TableGenerator generator, SharedSessionContractImplementor session) {
+		return ((Number) generator.generate(session, null)).intValue();
+	}
+
+	/**
+	 * Makes the next block of ids that the generator reserves start at the given id at the earliest.
+	 */
+	private void raiseNextId(TableGenerator generator, long nextId) {
+		String table = generator.getTableName();
+		String segmentColumn = generator.getSegmentColumnName();
+		String valueColumn = generator.getValueColumnName();
+		transactionTemplate.execute(status -> {
+			int updated = jdbcTemplate.update(
+					"UPDATE " + table + " SET " + valueColumn + " = ? WHERE " + segmentColumn + " = ? AND " +
+					valueColumn + " < ?",
+					nextId, generator.getSegmentValue(), nextId);
+			if (updated == 0 && jdbcTemplate.queryForObject(
+					"SELECT COUNT(*) FROM " + table + " WHERE " + segmentColumn + " = ?",
+					Integer.class, generator.getSegmentValue()) == 0) {
+				jdbcTemplate.update(
+						"INSERT INTO " + table + " (" + segmentColumn + ", " + valueColumn + ") VALUES (?, ?)",
+						generator.getSegmentValue(), nextId);
+			}
+			return null;
+		});
+	}
+
+	private PendingRow toRoomInsert(long number, Map<String, String> row) throws RowRejectedException {
+		Room room = new Room(row.get("name"));
+		validate(room, "room", roomValidator);
+		return new PendingRow(number, SQL_INSERT_ROOM, toInteger(row, "id"), room.getName());
+	}
+
+	private PendingRow toDeviceTypeInsert(long number, Map<String, String> row) throws RowRejectedException {
+		DeviceType deviceType = new DeviceType(row.get("type"), row.get("informationType"));
+		deviceType.setUnitOfMeasure(row.get("unitOfMeasure"));
+		deviceType.setMinValue(toInteger(row, "minValue"));
+		deviceType.setMaxValue(toInteger(row, "maxValue"));
+		deviceType.setInteractionType(row.get("interactionType"));
+		deviceType.setIcon(row.get("icon"));
+		deviceType.setGroupColor(row.get("groupColor"));
+		validate(deviceType, "deviceType", deviceTypeValidator);
+
+		return new PendingRow(number, SQL_INSERT_DEVICE_TYPE,
+				toInteger(row, "id"), deviceType.getType(), deviceType.getInformationType(),
+				deviceType.getUnitOfMeasure(), deviceType.getMinValue(), deviceType.getMaxValue(),
+				deviceType.getInteractionType(), deviceType.getIcon(), deviceType.getGroupColor());
+	}
+
+	/**
+	 * The device type and the room are given by id. Whether they exist is left to the foreign keys; the value has to be
+	 * within the range of the device type, as for a change of the value.
+	 */
+	private PendingRow toDeviceInsert(long number, Map<String, String> row, Map<Integer, DeviceType> deviceTypes)
+			throws RowRejectedException {
+
+		Device device = new Device();
+		device.setName(row.get("name"));
+		Integer deviceTypeId = toInteger(row, "deviceType");
+		if (deviceTypeId != null) {
+			DeviceType deviceType = deviceTypes.get(deviceTypeId);
+			if (deviceType == null) {
+				deviceType = new DeviceType();
+				deviceType.setId(deviceTypeId);
+			}
+			device.setDeviceType(deviceType);
+		}
+		Integer roomId = toInteger(row, "room");
+		if (roomId != null) {
+			Room room = new Room();
+			room.setId(roomId);
+			device.setRoom(room);
+		}
+		device.setStatusOn(toBoolean(row, "statusOn"));
+		device.setNumericValue(toDecimal(row, "informationValue"));
+		validate(device, "device", deviceValidator);
+		if (!isWithinRange(device.getNumericValue(), device.getDeviceType())) {
+			throw new RowRejectedException(
+					"informationValue: '" + row.get("informationValue") + "' is out of the range of the device type");
+		}
+
+		return new PendingRow(number, SQL_INSERT_DEVICE, toInteger(row, "id"),
+				device.getName(), deviceTypeId, roomId, device.isStatusOn(), device.getNumericValue());
+	}
+
+	private Map<Integer, DeviceType> loadDeviceTypes() {
+		Map<Integer, DeviceType> deviceTypes = new HashMap<>();
+		jdbcTemplate.query(SQL_SELECT_DEVICE_TYPE_RANGES, (RowCallbackHandler) rs -> {
+			DeviceType deviceType = new DeviceType();
+			deviceType.setId(rs.getInt(1));
+			deviceType.setMinValue(rs.getObject(2, Integer.class));
+			deviceType.setMaxValue(rs.getObject(3, Integer.class));
+			deviceTypes.put(deviceType.getId(), deviceType);
+		});
+		return deviceTypes;
+	}
+
+	/**
+	 * A missing value is always accepted.
+	 */
+	private static boolean isWithinRange(BigDecimal value, DeviceType deviceType) {
+		if (value == null || deviceType == null) {
+			return true;
+		}
+		Integer min = deviceType.getMinValue();
+		Integer max = deviceType.getMaxValue();
+		return (min == null || value.compareTo(BigDecimal.valueOf(min)) >= 0)
+				&& (max == null || value.compareTo(BigDecimal.valueOf(max)) <= 0);
+	}
+
+	/**
+	 * There is no form for a single assignment, so only the ids are checked here.
+	 */
+	private PendingRow toAssignmentInsert(long number, Map<String, String> row) throws RowRejectedException {
+		Integer personId = toRequiredInteger(row, "person");
+		Integer deviceId = toRequiredInteger(row, "device");
+		return new PendingRow(number, SQL_INSERT_ASSIGNMENT, personId, deviceId);
+	}
+
+	private void validate(Object target, String objectName, Validator validator) throws RowRejectedException {
+		Errors errors = new BeanPropertyBindingResult(target, objectName);
+		validator.validate(target, errors);
+		if (errors.hasErrors()) {
+			throw new RowRejectedException(errors.getAllErrors().stream()
+					.map(error -> (error instanceof FieldError ? ((FieldError) error).getField() + ": " : "")
+							+ messageSource.getMessage(error, LocaleContextHolder.getLocale()))
+					.collect(Collectors.joining(", ")));
+		}
+	}
+
+	private Integer toRequiredInteger(Map<String, String> row, String column) throws RowRejectedException {
+		Integer value = toInteger(row, column);
+		if (value == null) {
+			throw new RowRejectedException(
+					column + ": " + messageSource.getMessage("NotEmpty", null, LocaleContextHolder.getLocale()));
+		}
+		return value;
+	}
+
+	private static Integer toInteger(Map<String, String> row, String column) throws RowRejectedException {
+		String value = row.get(column);
+		if (value == null || value.trim().isEmpty()) {
+			return null;
+		}
+		try {
+			return Integer.valueOf(value.trim());
+		} catch (NumberFormatException ex) {
+			throw new RowRejectedException(column + ": '" + value + "' is not a whole number");
+		}
+	}
+
+	private static BigDecimal toDecimal(Map<String, String> row, String column) throws RowRejectedException {
+		String value = row.get(column);
+		try {
+			return DeviceValues.parse(value);
+		} catch (NumberFormatException ex) {
+			throw new RowRejectedException(column + ": '" + value + "' is " + ex.getMessage());
+		}
+	}
+
+	/**
+	 * Both the values of the exports and the values of the database are accepted.
+	 */
+	private static boolean toBoolean(Map<String, String> row, String column) throws RowRejectedException {
+		String value = row.get(column);
+		if (value == null || value.trim().isEmpty()) {
+			return false;
+		}
+		switch (value.trim().toLowerCase()) {
+		case "true":
+		case "1":
+			return true;
+		case "false":
+		case "0":
+			return false;
+		default:
+			throw new RowRejectedException(column + ": '" + value + "' is neither true nor false");
+		}
+	}
+
+	@Override
+	public long exportRows(DataSet dataSet, RowWriter rows) throws IOException {
+		String sql;
+		switch (dataSet) {
+		case ROOMS:
+			sql = SQL_SELECT_ROOMS;
+			break;
+		case DEVICE_TYPES:
+			sql = SQL_SELECT_DEVICE_TYPES;
+			break;
+		case DEVICES:
+			sql = SQL_SELECT_DEVICES;
+			break;
+		default:
+			sql = SQL_SELECT_ASSIGNMENTS;
+			break;
+		}
+
+		long[] count = {0};
+		try {
+			jdbcTemplate.query(
+					connection -> {
+						// forward only, so that the driver can stream the rows instead of reading them all first
+						PreparedStatement statement = connection.prepareStatement(
+								sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+						statement.setFetchSize(fetchSize);
+						return statement;
+					},
+					(RowCallbackHandler) rs -> {
+						try {
+							rows.write(toValues(dataSet, rs));
+						} catch (IOException ex) {
+							throw new UncheckedIOException(ex);
+						}
+						count[0]++;
+					}
+			);
+		} catch (UncheckedIOException ex) {
+			// e.g. the client has gone away
+			throw ex.getCause();
+		}
+		return count[0];
+	}
+
+	private List<Object> toValues(DataSet dataSet, ResultSet rs) throws SQLException {
+		switch (dataSet) {
+		case ROOMS:
+			return Arrays.asList(rs.getInt(1), rs.getString(2));
+		case DEVICE_TYPES:
+			return Arrays.asList(
+					rs.getInt(1), rs.getString(2), rs.getString(3), rs.getString(4), rs.getObject(5, Integer.class),
+					rs.getObject(6, Integer.class), rs.getString(7), rs.getString(8), rs.getString(9));
+		case DEVICES:
+			// the latest commands may still be in memory only
+			DeviceState state = deviceStateService.getLoadedState(rs.getInt(1));
+			return Arrays.asList(
+					rs.getInt(1), rs.getString(2), rs.getInt(3), rs.getInt(4),
+					state != null ? state.isStatusOn() : rs.getBoolean(5),
+					DeviceValues.format(state != null ? state.getNumericValue() : rs.getBigDecimal(6)));
+		default:
+			return Arrays.asList(rs.getInt(1), rs.getInt(2));
+		}
+	}
+}
@@ -0,0 +1,19 @@
+package eu.codingschool.homeautomation.services;
+
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import eu.codingschool.homeautomation.events.DeviceStateChangedEvent;
+import eu.codingschool.homeautomation.model.Person;
+
+/**
+ * Pushes the device changes to the open dashboards of the users (Server-Sent Events).
+ */
+public interface DeviceEventService {
+
+	/**
+	 * Open a new stream for the given user. Only the changes of the devices the user can see are sent to it.
+	 */
+	SseEmitter subscribe(Person person);
+
+	void onDeviceStateChanged(DeviceStateChangedEvent event);
+}
@@ -0,0 +1,174 @@
+package eu.codingschool.homeautomation.services;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import eu.codingschool.homeautomation.events.DeviceStateChangedEvent;
+import eu.codingschool.homeautomation.model.DeviceState;
+import eu.codingschool.homeautomation.model.Person;
+
+@Service
+public class DeviceEventServiceImpl implements DeviceEventService {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(DeviceEventServiceImpl.class);
+
+	private static final String EVENT_NAME = "device-state";
+
+	@Autowired
+	DevicePermissionService devicePermissionService;
+
+	@Value("${homeautomation.device-events.timeout-ms:1800000}")
+	private long timeoutMillis;
+
+	/**
+	 * Number of changes that may wait to be sent to a single dashboard. A dashboard that falls further behind is
+	 * closed, and the browser opens a new one.
+	 */
+	@Value("${homeautomation.device-events.queue-capacity:100}")
+	private int queueCapacity;
+
+	@Value("${homeautomation.device-events.sender-threads:2}")
+	private int senderThreads;
+
+	private final CopyOnWriteArrayList<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+
+	/**
+	 * Sending is done in the background so that the commands never wait for slow dashboards. Each dashboard has at
+	 * most one task queued or running, which sends all of its changes waiting, so the queue of the executor never
+	 * holds more tasks than there are dashboards.
+	 */
+	private ExecutorService sender;
+
+	@PostConstruct
+	public void startSender() {
+		sender = Executors.newFixedThreadPool(senderThreads, runnable -> {
+			Thread thread = new Thread(runnable, "device-events");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	@Override
+	public SseEmitter subscribe(Person person) {
+		Subscription subscription =
+				new Subscription(createEmitter(), person.getId(), person.isAdmin(), queueCapacity);
+
+		subscription.emitter.onCompletion(() -> subscriptions.remove(subscription));
+		subscription.emitter.onTimeout(() -> subscriptions.remove(subscription));
+		subscription.emitter.onError(ex -> subscriptions.remove(subscription));
+		subscriptions.add(subscription);
+		return subscription.emitter;
+	}
+
+	SseEmitter createEmitter() {
+		return new SseEmitter(timeoutMillis);
+	}
+
+	/**
+	 * Runs on the thread of the change, so it only queues the change for every dashboard; which of them may see the
+	 * device is looked up by the sender, since it may have to be loaded from the database.
+	 */
+	@Override
+	@EventListener
+	public void onDeviceStateChanged(DeviceStateChangedEvent event) {
+		DeviceState deviceState = event.getDeviceState();
+		for (Subscription subscription : subscriptions) {
+			if (!subscription.pending.offer(deviceState)) {
+				LOGGER.warn("Closing the device events of person {}, {} changes behind", subscription.personId,
+						queueCapacity);
+				subscriptions.remove(subscription);
+				subscription.overflowed = true;
+			}
+			if (subscription.draining.compareAndSet(false, true)) {
+				sender.execute(() -> drain(subscription));
+			}
+		}
+	}
+
+	private void drain(Subscription subscription) {
+		do {
+			DeviceState deviceState;
+			while (!subscription.overflowed && (deviceState = subscription.pending.poll()) != null) {
+				if ((subscription.admin
+						|| devicePermissionService.isAssigned(subscription.personId, deviceState.getDeviceId()))
+						&& !send(subscription, deviceState)) {
+					return;
+				}
+			}
+			if (subscription.overflowed) {
+				// completed only here, since the emitter cannot be completed while it is sending
+				subscription.pending.clear();
+				subscription.emitter.complete();
+				return;
+			}
+			subscription.draining.set(false);
+			// a change may have been queued after the last poll but before draining was reset
+		} while (!subscription.pending.isEmpty() && subscription.draining.compareAndSet(false, true));
+	}
+
+	/**
+	 * @return whether the dashboard is still open
+	 */
+	private boolean send(Subscription subscription, DeviceState deviceState) {
+		try {
+			subscription.emitter.send(
+					SseEmitter.event().name(EVENT_NAME).data(deviceState, MediaType.APPLICATION_JSON)
+			);
+			return true;
+		} catch (IOException | IllegalStateException ex) {
+			// the dashboard has been closed
+			subscriptions.remove(subscription);
+			subscription.emitter.completeWithError(ex);
+			return false;
+		}
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		sender.shutdown();
+		subscriptions.forEach(subscription -> subscription.emitter.complete());
+		subscriptions.clear();
+	}
+
+	private static class Subscription {
+
+		private final SseEmitter emitter;
+
+		private final int personId;
+
+		private final boolean admin;
+
+		private final BlockingQueue<DeviceState> pending;
+
+		/**
+		 * Whether a task of the sender is queued or running for the dashboard.
+		 */
+		private final AtomicBoolean draining = new AtomicBoolean();
+
+		private volatile boolean overflowed;
+
+		private Subscription(SseEmitter emitter, int personId, boolean admin, int queueCapacity) {
+			this.emitter = emitter;
+			this.personId = personId;
+			this.admin = admin;
+			this.pending = new ArrayBlockingQueue<>(queueCapacity);
+		}
+	}
+}
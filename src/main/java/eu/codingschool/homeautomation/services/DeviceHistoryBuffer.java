@@ -0,0 +1,63 @@
+package eu.codingschool.homeautomation.services;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import eu.codingschool.homeautomation.model.DeviceHistorySample;
+
+/**
+ * Fixed-size ring with the latest changes of one device. The samples are kept in primitive arrays, so recording a
+ * change allocates nothing once the ring is full.
+ */
+final class DeviceHistoryBuffer {
+
+	private final long[] recordedAt;
+
+	private final boolean[] statusOn;
+
+	/**
+	 * NaN where the information value is not a number.
+	 */
+	private final double[] values;
+
+	private int next;
+
+	private int size;
+
+	DeviceHistoryBuffer(int capacity) {
+		recordedAt = new long[capacity];
+		statusOn = new boolean[capacity];
+		values = new double[capacity];
+	}
+
+	synchronized void add(long time, boolean on, Double value) {
+		recordedAt[next] = time;
+		statusOn[next] = on;
+		values[next] = value != null ? value : Double.NaN;
+		next = (next + 1) % recordedAt.length;
+		size = Math.min(size + 1, recordedAt.length);
+	}
+
+	/**
+	 * @return the time of the oldest change still kept or {@link Long#MAX_VALUE} if there is none
+	 */
+	synchronized long getOldestRecordedAt() {
+		if (size == 0) {
+			return Long.MAX_VALUE;
+		}
+		return recordedAt[(next - size + recordedAt.length) % recordedAt.length];
+	}
+
+	synchronized List<DeviceHistorySample> getSamples(int deviceId, long from, long to) {
+		List<DeviceHistorySample> samples = new ArrayList<>();
+		for (int i = 0; i < size; i++) {
+			int index = (next - size + i + recordedAt.length) % recordedAt.length;
+			if (recordedAt[index] >= from && recordedAt[index] < to) {
+				double value = values[index];
+				samples.add(new DeviceHistorySample(
+						deviceId, recordedAt[index], statusOn[index], Double.isNaN(value) ? null : value));
+			}
+		}
+		return samples;
+	}
+}
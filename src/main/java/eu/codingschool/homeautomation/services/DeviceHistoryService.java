@@ -0,0 +1,60 @@
+package eu.codingschool.homeautomation.services;
+
+import java.util.List;
+import java.util.Map;
+
+import eu.codingschool.homeautomation.model.DeviceHistoryRollup;
+import eu.codingschool.homeautomation.model.DeviceHistorySample;
+import eu.codingschool.homeautomation.model.HistoryResolution;
+
+/**
+ * Records every change of the devices. The latest changes of each device are kept in memory, while all of them are
+ * written to the database in the background and rolled up to minutes, hours and days.
+ * <p>
+ * All ranges are given in millis since the epoch; {@code from} is inclusive and {@code to} is exclusive.
+ */
+public interface DeviceHistoryService {
+
+	/**
+	 * @return the changes of the device within the range, oldest first
+	 */
+	List<DeviceHistorySample> getSamples(int deviceId, long from, long to);
+
+	/**
+	 * @return the changes of every device of the room within the range, per device id
+	 */
+	Map<Integer, List<DeviceHistorySample>> getRoomSamples(int roomId, long from, long to);
+
+	/**
+	 * @return the rollups of the device whose buckets start within the range, oldest first
+	 */
+	List<DeviceHistoryRollup> getRollups(int deviceId, HistoryResolution resolution, long from, long to);
+
+	/**
+	 * @return the rollups of every device of the room whose buckets start within the range, per device id
+	 */
+	Map<Integer, List<DeviceHistoryRollup>> getRoomRollups(int roomId, HistoryResolution resolution, long from, long to);
+
+	/**
+	 * Forget the changes kept in memory for the device, e.g. after it has been deleted.
+	 */
+	void evict(int deviceId);
+
+	/**
+	 * Write all the recorded changes that are not in the database yet in a single batch.
+	 *
+	 * @return the number of changes written
+	 */
+	int flush();
+
+	/**
+	 * @return the number of changes since the startup that have not been written to the database, because too many
+	 *         changes were waiting to be written already
+	 */
+	long getDroppedCount();
+
+	/**
+	 * Roll up every bucket that ends before the given time and has not been rolled up yet.
+	 */
+	void rollUp(long until);
+}
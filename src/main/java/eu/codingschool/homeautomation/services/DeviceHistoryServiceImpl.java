@@ -0,0 +1,421 @@
+package eu.codingschool.homeautomation.services;
+
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import eu.codingschool.homeautomation.events.DeviceStateChangedEvent;
+import eu.codingschool.homeautomation.model.DeviceHistoryRollup;
+import eu.codingschool.homeautomation.model.DeviceHistorySample;
+import eu.codingschool.homeautomation.model.DeviceState;
+import eu.codingschool.homeautomation.model.HistoryResolution;
+import eu.codingschool.homeautomation.repositories.DeviceRepository;
+
+@Service
+public class DeviceHistoryServiceImpl implements DeviceHistoryService {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(DeviceHistoryServiceImpl.class);
+
+	private static final String SQL_INSERT_SAMPLE =
+			"INSERT INTO device_history (device_id, recorded_at, status, numeric_value) VALUES (?, ?, ?, ?)";
+	private static final String SQL_SELECT_SAMPLES =
+			"SELECT device_id, recorded_at, status, numeric_value FROM device_history " +
+			"WHERE device_id IN (%s) AND recorded_at >= ? AND recorded_at < ? ORDER BY recorded_at, id";
+	private static final String SQL_SELECT_ROLLUPS =
+			"SELECT device_id, bucket_start, sample_count, min_value, max_value, sum_value FROM device_history_rollup " +
+			"WHERE device_id IN (%s) AND resolution = ? AND bucket_start >= ? AND bucket_start < ? ORDER BY bucket_start";
+	private static final String SQL_SELECT_LAST_BUCKET =
+			"SELECT MAX(bucket_start) FROM device_history_rollup WHERE resolution = ?";
+	private static final String SQL_SELECT_FIRST_SAMPLE =
+			"SELECT MIN(recorded_at) FROM device_history";
+	private static final String SQL_SELECT_FIRST_BUCKET =
+			"SELECT MIN(bucket_start) FROM device_history_rollup WHERE resolution = ?";
+
+	/**
+	 * Minutes are rolled up from the samples; hours and days from the rollups of the previous resolution, so that
+	 * every sample is read only once.
+	 */
+	private static final String SQL_ROLL_UP_SAMPLES =
+			"INSERT INTO device_history_rollup " +
+			"(device_id, resolution, bucket_start, sample_count, min_value, max_value, sum_value) " +
+			"SELECT device_id, '%1$s', recorded_at - MOD(recorded_at, %2$d), COUNT(*), " +
+			"MIN(numeric_value), MAX(numeric_value), SUM(numeric_value) " +
+			"FROM device_history " +
+			"WHERE numeric_value IS NOT NULL AND recorded_at >= ? AND recorded_at < ? " +
+			"GROUP BY device_id, recorded_at - MOD(recorded_at, %2$d)";
+	private static final String SQL_ROLL_UP_ROLLUPS =
+			"INSERT INTO device_history_rollup " +
+			"(device_id, resolution, bucket_start, sample_count, min_value, max_value, sum_value) " +
+			"SELECT device_id, '%1$s', bucket_start - MOD(bucket_start, %2$d), SUM(sample_count), " +
+			"MIN(min_value), MAX(max_value), SUM(sum_value) " +
+			"FROM device_history_rollup " +
+			"WHERE resolution = '%3$s' AND bucket_start >= ? AND bucket_start < ? " +
+			"GROUP BY device_id, bucket_start - MOD(bucket_start, %2$d)";
+
+	@Autowired
+	JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	TransactionTemplate transactionTemplate;
+
+	@Autowired
+	DeviceRepository deviceRepository;
+
+	/**
+	 * Number of changes kept in memory per device. It should be larger than the number of changes a device can have
+	 * between two flushes, so that the database and the memory always overlap.
+	 */
+	@Value("${homeautomation.device-history.buffer-size:256}")
+	int bufferSize;
+
+	/**
+	 * How long to wait before rolling up a bucket that has ended, so that late changes can still make it.
+	 */
+	@Value("${homeautomation.device-history.rollup-delay-ms:60000}")
+	private long rollupDelayMillis;
+
+	/**
+	 * Number of changes that may wait to be written, e.g. while the database is down. Further changes are still kept
+	 * in memory, but dropped from the history in the database.
+	 */
+	@Value("${homeautomation.device-history.max-pending:100000}")
+	int maxPending;
+
+	private final ConcurrentMap<Integer, DeviceHistoryBuffer> buffers = new ConcurrentHashMap<>();
+
+	private final Queue<DeviceHistorySample> pending = new ConcurrentLinkedQueue<>();
+
+	/**
+	 * The size of the queue, which the queue itself can only count.
+	 */
+	private final AtomicInteger pendingCount = new AtomicInteger();
+
+	/**
+	 * The changes taken from the queue by the flush that is writing them, which are not in the database yet either.
+	 */
+	private volatile List<DeviceHistorySample> writing = Collections.emptyList();
+
+	/**
+	 * Guards moving the changes from the queue to {@link #writing}, so that a reader sees them in one of both.
+	 */
+	private final Object unwrittenLock = new Object();
+
+	private final AtomicLong droppedCount = new AtomicLong();
+
+	/**
+	 * The changes dropped since the last flush, which reports them.
+	 */
+	private final AtomicLong droppedSinceFlush = new AtomicLong();
+
+	/**
+	 * Only memory is touched here, since this runs on the request path of every command.
+	 */
+	@EventListener
+	public void onDeviceStateChanged(DeviceStateChangedEvent event) {
+		record(event.getDeviceState(), System.currentTimeMillis());
+	}
+
+	void record(DeviceState deviceState, long recordedAt) {
+		Double value = deviceState.getNumericValue() != null ? deviceState.getNumericValue().doubleValue() : null;
+		buffers.computeIfAbsent(deviceState.getDeviceId(), deviceId -> new DeviceHistoryBuffer(bufferSize))
+			   .add(recordedAt, deviceState.isStatusOn(), value);
+		addPending(new DeviceHistorySample(deviceState.getDeviceId(), recordedAt, deviceState.isStatusOn(), value));
+	}
+
+	private void addPending(DeviceHistorySample sample) {
+		if (pendingCount.incrementAndGet() > maxPending) {
+			pendingCount.decrementAndGet();
+			droppedCount.incrementAndGet();
+			droppedSinceFlush.incrementAndGet();
+			return;
+		}
+		pending.add(sample);
+	}
+
+	@Override
+	public long getDroppedCount() {
+		return droppedCount.get();
+	}
+
+	@Override
+	public List<DeviceHistorySample> getSamples(int deviceId, long from, long to) {
+		return getSamples(Collections.singleton(deviceId), from, to).get(deviceId);
+	}
+
+	@Override
+	public Map<Integer, List<DeviceHistorySample>> getRoomSamples(int roomId, long from, long to) {
+		return getSamples(deviceRepository.findIdsByRoomId(roomId), from, to);
+	}
+
+	/**
+	 * The devices are read from the database with a single query, each up to the oldest change it keeps in memory.
+	 */
+	private Map<Integer, List<DeviceHistorySample>> getSamples(Collection<Integer> deviceIds, long from, long to) {
+		Map<Integer, List<DeviceHistorySample>> samples = new TreeMap<>();
+		Map<Integer, Long> bufferedFrom = new HashMap<>();
+		long readUntil = from;
+		for (Integer deviceId : deviceIds) {
+			DeviceHistoryBuffer buffer = buffers.get(deviceId);
+			long deviceBufferedFrom = buffer != null ? buffer.getOldestRecordedAt() : Long.MAX_VALUE;
+			bufferedFrom.put(deviceId, deviceBufferedFrom);
+			readUntil = Math.max(readUntil, Math.min(to, deviceBufferedFrom));
+			samples.put(deviceId, new ArrayList<>());
+		}
+
+		// only the part of the range that is older than what is kept in memory is read from the database
+		if (readUntil > from) {
+			// taken before the query, so that a change written meanwhile is found in either of both
+			List<DeviceHistorySample> unwritten = getUnwrittenSamples();
+			List<Object> args = new ArrayList<>(deviceIds);
+			args.add(from);
+			args.add(readUntil);
+			List<DeviceHistorySample> read = jdbcTemplate.query(
+					String.format(SQL_SELECT_SAMPLES, String.join(", ", Collections.nCopies(deviceIds.size(), "?"))),
+					(rs, rowNum) -> {
+						double value = rs.getDouble(4);
+						return new DeviceHistorySample(
+								rs.getInt(1), rs.getLong(2), rs.getBoolean(3), rs.wasNull() ? null : value);
+					},
+					args.toArray()
+			);
+			for (DeviceHistorySample sample : read) {
+				if (sample.getRecordedAt() < bufferedFrom.get(sample.getDeviceId())) {
+					samples.get(sample.getDeviceId()).add(sample);
+				}
+			}
+			addUnwrittenSamples(samples, unwritten, bufferedFrom, from, to);
+		}
+		for (Integer deviceId : deviceIds) {
+			DeviceHistoryBuffer buffer = buffers.get(deviceId);
+			long deviceBufferedFrom = bufferedFrom.get(deviceId);
+			if (buffer != null && to > deviceBufferedFrom) {
+				samples.get(deviceId).addAll(buffer.getSamples(deviceId, Math.max(from, deviceBufferedFrom), to));
+			}
+		}
+		return samples;
+	}
+
+	private List<DeviceHistorySample> getUnwrittenSamples() {
+		synchronized (unwrittenLock) {
+			List<DeviceHistorySample> unwritten = new ArrayList<>(writing);
+			unwritten.addAll(pending);
+			return unwritten;
+		}
+	}
+
+	/**
+	 * The changes that are no longer kept in memory but wait to be written are added to those read from the database,
+	 * unless the database already returned them.
+	 */
+	private static void addUnwrittenSamples(Map<Integer, List<DeviceHistorySample>> samples,
+			List<DeviceHistorySample> unwritten, Map<Integer, Long> bufferedFrom, long from, long to) {
+
+		Map<Integer, Set<List<Object>>> readKeys = new HashMap<>();
+		for (DeviceHistorySample sample : unwritten) {
+			List<DeviceHistorySample> deviceSamples = samples.get(sample.getDeviceId());
+			if (deviceSamples == null || sample.getRecordedAt() < from
+					|| sample.getRecordedAt() >= Math.min(to, bufferedFrom.get(sample.getDeviceId()))) {
+				continue;
+			}
+			Set<List<Object>> keys = readKeys.computeIfAbsent(sample.getDeviceId(), deviceId -> {
+				Set<List<Object>> read = new HashSet<>();
+				deviceSamples.forEach(s -> read.add(key(s)));
+				return read;
+			});
+			if (keys.add(key(sample))) {
+				deviceSamples.add(sample);
+			}
+		}
+		// the order of the database is kept among changes recorded at the same time
+		readKeys.keySet().forEach(deviceId -> samples.get(deviceId).sort(
+				Comparator.comparingLong(DeviceHistorySample::getRecordedAt)));
+	}
+
+	private static List<Object> key(DeviceHistorySample sample) {
+		return Arrays.asList(sample.getRecordedAt(), sample.isStatusOn(), sample.getValue());
+	}
+
+	@Override
+	public List<DeviceHistoryRollup> getRollups(int deviceId, HistoryResolution resolution, long from, long to) {
+		return getRollups(Collections.singleton(deviceId), resolution, from, to).get(deviceId);
+	}
+
+	@Override
+	public Map<Integer, List<DeviceHistoryRollup>> getRoomRollups(
+			int roomId, HistoryResolution resolution, long from, long to) {
+
+		return getRollups(deviceRepository.findIdsByRoomId(roomId), resolution, from, to);
+	}
+
+	/**
+	 * Read with a single query for all the devices.
+	 */
+	private Map<Integer, List<DeviceHistoryRollup>> getRollups(
+			Collection<Integer> deviceIds, HistoryResolution resolution, long from, long to) {
+
+		Map<Integer, List<DeviceHistoryRollup>> rollups = new TreeMap<>();
+		deviceIds.forEach(deviceId -> rollups.put(deviceId, new ArrayList<>()));
+		if (deviceIds.isEmpty()) {
+			return rollups;
+		}
+		List<Object> args = new ArrayList<>(deviceIds);
+		args.add(resolution.name());
+		args.add(from);
+		args.add(to);
+		jdbcTemplate.query(
+				String.format(SQL_SELECT_ROLLUPS, String.join(", ", Collections.nCopies(deviceIds.size(), "?"))),
+				(rs, rowNum) -> new DeviceHistoryRollup(
+						rs.getInt(1), resolution, rs.getLong(2), rs.getLong(3), rs.getDouble(4), rs.getDouble(5),
+						rs.getDouble(6)),
+				args.toArray()
+		).forEach(rollup -> rollups.get(rollup.getDeviceId()).add(rollup));
+		return rollups;
+	}
+
+	@Override
+	public void evict(int deviceId) {
+		buffers.remove(deviceId);
+		// the changes waiting to be written would otherwise be read back, or written for a device that is gone
+		for (DeviceHistorySample sample : pending) {
+			if (sample.getDeviceId() == deviceId && pending.remove(sample)) {
+				pendingCount.decrementAndGet();
+			}
+		}
+	}
+
+	@Override
+	public synchronized int flush() {
+		long dropped = droppedSinceFlush.getAndSet(0);
+		if (dropped > 0) {
+			LOGGER.warn("Dropped {} history samples, more than {} were waiting to be written", dropped, maxPending);
+		}
+
+		List<DeviceHistorySample> batch = new ArrayList<>();
+		synchronized (unwrittenLock) {
+			DeviceHistorySample sample;
+			while ((sample = pending.poll()) != null) {
+				pendingCount.decrementAndGet();
+				batch.add(sample);
+			}
+			writing = batch;
+		}
+		if (batch.isEmpty()) {
+			return 0;
+		}
+
+		try {
+			transactionTemplate.execute(status -> jdbcTemplate.batchUpdate(
+					SQL_INSERT_SAMPLE,
+					batch,
+					batch.size(),
+					(ps, s) -> {
+						ps.setInt(1, s.getDeviceId());
+						ps.setLong(2, s.getRecordedAt());
+						ps.setBoolean(3, s.isStatusOn());
+						if (s.getValue() != null) {
+							ps.setDouble(4, s.getValue());
+						} else {
+							ps.setNull(4, Types.DOUBLE);
+						}
+					}
+			));
+		} catch (RuntimeException ex) {
+			// keep the changes so that the next flush retries them, as far as there is still room for them
+			batch.forEach(this::addPending);
+			LOGGER.error("Could not write {} history samples to the database", batch.size(), ex);
+			return 0;
+		} finally {
+			writing = Collections.emptyList();
+		}
+		return batch.size();
+	}
+
+	@Scheduled(fixedDelayString = "${homeautomation.device-history.flush-interval-ms:5000}")
+	public void flushPeriodically() {
+		flush();
+	}
+
+	@PreDestroy
+	public void flushOnShutdown() {
+		flush();
+	}
+
+	@Override
+	public synchronized void rollUp(long until) {
+		flush();
+		// samples that could not be written yet must not end up in a bucket that is already closed
+		long closedUntil = until;
+		for (DeviceHistorySample sample : pending) {
+			closedUntil = Math.min(closedUntil, sample.getRecordedAt());
+		}
+
+		// a bucket is rolled up only when all the buckets of the finer resolution within it have been rolled up
+		long rolledUpUntil = closedUntil;
+		HistoryResolution finer = null;
+		for (HistoryResolution resolution : HistoryResolution.values()) {
+			Long start = findRollUpStart(resolution, finer);
+			long end = resolution.truncate(rolledUpUntil);
+			if (start != null && end > start) {
+				String sql = finer == null
+						? String.format(SQL_ROLL_UP_SAMPLES, resolution.name(), resolution.getMillis())
+						: String.format(SQL_ROLL_UP_ROLLUPS, resolution.name(), resolution.getMillis(), finer.name());
+				try {
+					transactionTemplate.execute(status -> jdbcTemplate.update(sql, start, end));
+				} catch (RuntimeException ex) {
+					LOGGER.error("Could not roll up the device history per {}", resolution, ex);
+					return;
+				}
+			}
+			rolledUpUntil = end;
+			finer = resolution;
+		}
+	}
+
+	/**
+	 * The progress is read from the rollups themselves, so nothing is lost or counted twice across restarts.
+	 *
+	 * @return the start of the first bucket that has not been rolled up yet or null if there is nothing to roll up
+	 */
+	private Long findRollUpStart(HistoryResolution resolution, HistoryResolution finer) {
+		Long lastBucket = jdbcTemplate.queryForObject(SQL_SELECT_LAST_BUCKET, Long.class, resolution.name());
+		if (lastBucket != null) {
+			return lastBucket + resolution.getMillis();
+		}
+		Long first = finer == null
+				? jdbcTemplate.queryForObject(SQL_SELECT_FIRST_SAMPLE, Long.class)
+				: jdbcTemplate.queryForObject(SQL_SELECT_FIRST_BUCKET, Long.class, finer.name());
+		return first != null ? resolution.truncate(first) : null;
+	}
+
+	@Scheduled(fixedDelayString = "${homeautomation.device-history.rollup-interval-ms:60000}")
+	public void rollUpPeriodically() {
+		rollUp(System.currentTimeMillis() - rollupDelayMillis);
+	}
+}
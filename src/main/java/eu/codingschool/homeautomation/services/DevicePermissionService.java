@@ -0,0 +1,30 @@
+package eu.codingschool.homeautomation.services;
+
+import java.util.Collection;
+
+/**
+ * Answers whether a device is assigned to a user without loading any entity. The ids of the devices assigned to each
+ * user are kept in memory until the assignments of the user change.
+ */
+public interface DevicePermissionService {
+
+	boolean isAssigned(int personId, int deviceId);
+
+	boolean isAssignedAll(int personId, Collection<Integer> deviceIds);
+
+	/**
+	 * @return the ids of the devices assigned to the user, sorted
+	 */
+	int[] getAssignedDeviceIds(int personId);
+
+	/**
+	 * Forget the devices assigned to the user, e.g. after the user has been updated or deleted. If a transaction is
+	 * active, they are forgotten again when it completes, so that nobody keeps what was read before the commit.
+	 */
+	void invalidate(int personId);
+
+	/**
+	 * Forget the devices of every user the device is assigned to, e.g. after the device has been deleted.
+	 */
+	void invalidateDevice(int deviceId);
+}
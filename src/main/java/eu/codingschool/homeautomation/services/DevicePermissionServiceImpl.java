@@ -0,0 +1,103 @@
+package eu.codingschool.homeautomation.services;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import eu.codingschool.homeautomation.repositories.DeviceRepository;
+
+@Service
+public class DevicePermissionServiceImpl implements DevicePermissionService {
+
+	@Autowired
+	DeviceRepository deviceRepository;
+
+	/**
+	 * The ids of the devices assigned to each user, sorted so that they can be binary searched.
+	 */
+	private final ConcurrentMap<Integer, int[]> deviceIdsPerPerson = new ConcurrentHashMap<>();
+
+	/**
+	 * Counts the invalidations, so that a load that has overlapped one is not kept.
+	 */
+	private final AtomicLong invalidations = new AtomicLong();
+
+	@Override
+	public boolean isAssigned(int personId, int deviceId) {
+		return Arrays.binarySearch(getDeviceIds(personId), deviceId) >= 0;
+	}
+
+	@Override
+	public boolean isAssignedAll(int personId, Collection<Integer> deviceIds) {
+		int[] assignedDeviceIds = getDeviceIds(personId);
+		for (Integer deviceId : deviceIds) {
+			if (deviceId == null || Arrays.binarySearch(assignedDeviceIds, deviceId) < 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public int[] getAssignedDeviceIds(int personId) {
+		return getDeviceIds(personId).clone();
+	}
+
+	/**
+	 * The devices are loaded outside of the map, so that the query does not block the other users of the map.
+	 * Concurrent requests of the same user may each load them, and the first one is kept.
+	 */
+	private int[] getDeviceIds(int personId) {
+		int[] deviceIds = deviceIdsPerPerson.get(personId);
+		if (deviceIds != null) {
+			return deviceIds;
+		}
+		long invalidationsBefore = invalidations.get();
+		int[] loaded = deviceRepository.findIdsByPersonsId(personId).stream().mapToInt(Integer::intValue).sorted().toArray();
+		int[] kept = deviceIdsPerPerson.putIfAbsent(personId, loaded);
+		if (kept != null) {
+			return kept;
+		}
+		// an invalidation during the load may have come before the devices were kept, and missed them
+		if (invalidations.get() != invalidationsBefore) {
+			deviceIdsPerPerson.remove(personId, loaded);
+		}
+		return loaded;
+	}
+
+	@Override
+	public void invalidate(int personId) {
+		invalidateNowAndOnCompletion(() -> deviceIdsPerPerson.remove(personId));
+	}
+
+	@Override
+	public void invalidateDevice(int deviceId) {
+		invalidateNowAndOnCompletion(
+				() -> deviceIdsPerPerson.values().removeIf(deviceIds -> Arrays.binarySearch(deviceIds, deviceId) >= 0)
+		);
+	}
+
+	private void invalidateNowAndOnCompletion(Runnable invalidation) {
+		invalidate(invalidation);
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				@Override
+				public void afterCompletion(int status) {
+					invalidate(invalidation);
+				}
+			});
+		}
+	}
+
+	private void invalidate(Runnable invalidation) {
+		invalidations.incrementAndGet();
+		invalidation.run();
+	}
+}
@@ -1,12 +1,29 @@
 package eu.codingschool.homeautomation.services;
 
+import java.math.BigDecimal;
 import java.util.List;
+import java.util.Set;
+
+import org.springframework.data.domain.Slice;
 
 import eu.codingschool.homeautomation.model.Device;
+import eu.codingschool.homeautomation.model.DeviceCommand;
+import eu.codingschool.homeautomation.model.DeviceSelection;
+import eu.codingschool.homeautomation.model.DeviceState;
+import eu.codingschool.homeautomation.model.ListSort;
+import eu.codingschool.homeautomation.repositories.projections.DeviceGridRow;
 
 public interface DeviceService {
 	
 	List<Device> findAll();
+
+	/**
+	 * Load one page of the admin list, continuing after the row with the given id and name (only the id is used when
+	 * sorting by id). Both are null for the first page.
+	 *
+	 * @param filter case-insensitive text the name must contain, null or blank for all
+	 */
+	Slice<Device> findPage(ListSort sort, String filter, Integer afterId, String afterName);
 	
 	Device findById(Integer id);
 	
@@ -16,8 +33,54 @@ public interface DeviceService {
 	
 	List<Device> findByPersonsIdAndRoomId(Integer userId, Integer roomId);
 	
-	List<Device> getSelectedDevices(List<String> selectedDeviceIds);
+	Set<Integer> findIdsByPersonsId(Integer id);
+	
+	/**
+	 * @return the devices of the type whose information value is above the given one, highest first
+	 */
+	List<Device> findByDeviceTypeIdAndValueAbove(Integer deviceTypeId, BigDecimal value);
+	
+	List<DeviceGridRow> findGridRows();
+	
+	DeviceGridRow findGridRowById(Integer id);
+
+	List<DeviceGridRow> findGridRowsByRoomId(Integer roomId);
+	
+	List<DeviceGridRow> findGridRowsByPersonsId(Integer id);
+	
+	List<DeviceGridRow> findGridRowsByPersonsIdAndRoomId(Integer userId, Integer roomId);
+	
+	/**
+	 * Resolve the device ids submitted by a form with as few queries as possible. Duplicate ids are ignored, while ids
+	 * that are not numbers or do not belong to any device are reported instead of failing the whole selection.
+	 */
+	DeviceSelection getSelectedDevices(List<String> selectedDeviceIds);
+	
+    DeviceState updateStatus(Integer id, boolean statusOn);
+    
+    DeviceState updateInformationValue(Integer id, String informationValue);
+    
+    /**
+     * @throws DeviceStateConflictException if the device is not at the expected version anymore
+     */
+    DeviceState updateStatus(Integer id, boolean statusOn, Long expectedVersion);
+    
+    /**
+     * @throws DeviceStateConflictException if the device is not at the expected version anymore
+     */
+    DeviceState updateInformationValue(Integer id, String informationValue, Long expectedVersion);
+    
+    /**
+     * Increase/Decrease the information value by the given amount, within the range of the device type.
+     */
+    DeviceState adjustInformationValue(Integer id, int delta);
+    
+    List<DeviceState> applyCommands(List<DeviceCommand> commands);
 	
+    /**
+     * @throws org.springframework.orm.ObjectOptimisticLockingFailureException if the device has been changed since
+     * the version of the given one was read
+     */
     Device save(Device d);
     
 	void delete(Device d);
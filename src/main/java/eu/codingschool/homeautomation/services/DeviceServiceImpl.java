@@ -1,68 +1,288 @@
 package eu.codingschool.homeautomation.services;
 
+import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import eu.codingschool.homeautomation.metrics.DeviceCommandMetrics;
 import eu.codingschool.homeautomation.model.Device;
+import eu.codingschool.homeautomation.model.DeviceCommand;
+import eu.codingschool.homeautomation.model.DeviceSelection;
+import eu.codingschool.homeautomation.model.DeviceState;
+import eu.codingschool.homeautomation.model.ListSort;
 import eu.codingschool.homeautomation.repositories.DeviceRepository;
+import eu.codingschool.homeautomation.repositories.projections.DeviceGridRow;
 
 @Service
 public class DeviceServiceImpl implements DeviceService {
 	
 	@Autowired
 	DeviceRepository deviceRepository;
+	
+	@Autowired
+	DeviceStateService deviceStateService;
+
+	@Autowired
+	DevicePermissionService devicePermissionService;
+
+	@Autowired
+	DeviceHistoryService deviceHistoryService;
+
+	@Autowired
+	DeviceCommandMetrics deviceCommandMetrics;
+
+	@Autowired
+	RoomService roomService;
+
+	@Autowired
+	StateVersionService stateVersionService;
+
+	/**
+	 * Maximum number of ids bound to a single IN query; kept well below the parameter limits of the supported databases.
+	 */
+	@Value("${homeautomation.device-selection.chunk-size:1000}")
+	int selectionChunkSize;
+
+	/**
+	 * Number of rows per page of the admin list.
+	 */
+	@Value("${homeautomation.admin-lists.page-size:50}")
+	int pageSize;
 
 	@Override
+	@Transactional(readOnly = true)
 	public List<Device> findAll() {
-		return deviceRepository.findAll();
+		return withLatestState(deviceRepository.findAll());
+	}
+
+	@Override
+	@Transactional(readOnly = true)
+	public Slice<Device> findPage(ListSort sort, String filter, Integer afterId, String afterName) {
+		Pageable rows = KeysetPages.firstRows(pageSize);
+		String pattern = KeysetPages.containing(filter);
+		Slice<Device> page = sort == ListSort.NAME
+				? deviceRepository.findPageOrderByName(
+						pattern, KeysetPages.afterName(afterName), KeysetPages.afterId(afterId), rows)
+				: deviceRepository.findPageOrderById(pattern, KeysetPages.afterId(afterId), rows);
+		withLatestState(page.getContent());
+		return page;
 	}
 
 	@Override
 	public Device findById(Integer id) {
-		return deviceRepository.findById(id).orElse(null);
+		Device device = deviceRepository.findById(id).orElse(null);
+		deviceStateService.applyState(device);
+		return device;
 	}
 	
 	@Override
+	@Transactional(readOnly = true)
 	public List<Device> findAllByRoomId(Integer roomId) {
-		return deviceRepository.findByRoomId(roomId);
+		return withLatestState(deviceRepository.findByRoomId(roomId));
 	}
 
 	@Override
+	@Transactional(readOnly = true)
 	public List<Device> findByPersonsId(Integer id) {
-		return deviceRepository.findByPersonsId(id);
+		return withLatestState(deviceRepository.findByPersonsId(id));
 	}
 	
 	@Override
+	@Transactional(readOnly = true)
 	public List<Device> findByPersonsIdAndRoomId(Integer userId, Integer roomId) {
-		return deviceRepository.findByPersonsIdAndRoomId(userId, roomId);
+		return withLatestState(deviceRepository.findByPersonsIdAndRoomId(userId, roomId));
 	}
 	
 	@Override
-	public List<Device> getSelectedDevices(List<String> selectedDeviceIds) {
-		List<Device> devices = new ArrayList<>();
-		Device deviceToAdd;
+	public Set<Integer> findIdsByPersonsId(Integer id) {
+		return deviceRepository.findIdsByPersonsId(id);
+	}
+	
+	/**
+	 * The range is looked up in the database, which has not caught up with the changes still to be written yet, so the
+	 * devices found are given their state in memory and the devices whose unwritten value is above are added.
+	 */
+	@Override
+	public List<Device> findByDeviceTypeIdAndValueAbove(Integer deviceTypeId, BigDecimal value) {
+		List<Device> devices = withLatestState(deviceRepository.findByDeviceTypeIdAndValueAbove(deviceTypeId, value));
+		Set<Integer> foundIds = devices.stream().map(Device::getId).collect(Collectors.toSet());
+		List<Integer> aboveIds = deviceStateService.getUnwrittenStates()
+												   .stream()
+												   .filter(state -> !foundIds.contains(state.getDeviceId()))
+												   .filter(state -> isAbove(state.getNumericValue(), value))
+												   .map(DeviceState::getDeviceId)
+												   .collect(Collectors.toList());
+		for (Device device : withLatestState(findAllById(aboveIds))) {
+			if (device.getDeviceType() != null && device.getDeviceType().getId() == deviceTypeId) {
+				devices.add(device);
+			}
+		}
+		devices.removeIf(device -> !isAbove(device.getNumericValue(), value));
+		devices.sort(Comparator.comparing(Device::getNumericValue).reversed().thenComparing(Device::getId));
+		return devices;
+	}
+
+	private static boolean isAbove(BigDecimal numericValue, BigDecimal value) {
+		return numericValue != null && numericValue.compareTo(value) > 0;
+	}
+	
+	@Override
+	@Transactional(readOnly = true)
+	public List<DeviceGridRow> findGridRows() {
+		return withLatestGridState(deviceRepository.findGridRows());
+	}
+	
+	@Override
+	@Transactional(readOnly = true)
+	public DeviceGridRow findGridRowById(Integer id) {
+		DeviceGridRow row = deviceRepository.findGridRowById(id);
+		return row != null ? withLatestGridState(Collections.singletonList(row)).get(0) : null;
+	}
+	
+	@Override
+	@Transactional(readOnly = true)
+	public List<DeviceGridRow> findGridRowsByRoomId(Integer roomId) {
+		return withLatestGridState(deviceRepository.findGridRowsByRoomId(roomId));
+	}
+	
+	@Override
+	@Transactional(readOnly = true)
+	public List<DeviceGridRow> findGridRowsByPersonsId(Integer id) {
+		return withLatestGridState(deviceRepository.findGridRowsByPersonsId(id));
+	}
+	
+	@Override
+	@Transactional(readOnly = true)
+	public List<DeviceGridRow> findGridRowsByPersonsIdAndRoomId(Integer userId, Integer roomId) {
+		return withLatestGridState(deviceRepository.findGridRowsByPersonsIdAndRoomId(userId, roomId));
+	}
+	
+	@Override
+	public DeviceSelection getSelectedDevices(List<String> selectedDeviceIds) {
+		Set<Integer> deviceIds = new LinkedHashSet<>();
+		Set<String> malformedIds = new LinkedHashSet<>();
 		if (selectedDeviceIds != null) {
 			for (String deviceIdStr : selectedDeviceIds) {
-				int deviceId = Integer.parseInt(deviceIdStr);
-				deviceToAdd = findById(deviceId);
-				if (deviceToAdd != null) {
-					devices.add(deviceToAdd);
+				if (deviceIdStr == null) {
+					continue;
+				}
+				try {
+					deviceIds.add(Integer.valueOf(deviceIdStr.trim()));
+				} catch (NumberFormatException e) {
+					malformedIds.add(deviceIdStr);
 				}
 			}
 		}
-		return devices;
+
+		Map<Integer, Device> devicesById = new HashMap<>();
+		findAllById(new ArrayList<>(deviceIds)).forEach(device -> devicesById.put(device.getId(), device));
+
+		List<Device> devices = new ArrayList<>();
+		Set<Integer> unknownIds = new LinkedHashSet<>();
+		for (Integer deviceId : deviceIds) {
+			Device device = devicesById.get(deviceId);
+			if (device != null) {
+				devices.add(device);
+			} else {
+				unknownIds.add(deviceId);
+			}
+		}
+		return new DeviceSelection(withLatestState(devices), unknownIds, malformedIds);
+	}
+	
+	@Override
+	public DeviceState updateStatus(Integer id, boolean statusOn) {
+		return deviceStateService.updateStatus(id, statusOn);
+	}
+	
+	@Override
+	public DeviceState updateInformationValue(Integer id, String informationValue) {
+		return deviceStateService.updateInformationValue(id, informationValue);
+	}
+	
+	@Override
+	public DeviceState updateStatus(Integer id, boolean statusOn, Long expectedVersion) {
+		return deviceStateService.updateStatus(id, statusOn, expectedVersion);
+	}
+	
+	@Override
+	public DeviceState updateInformationValue(Integer id, String informationValue, Long expectedVersion) {
+		return deviceStateService.updateInformationValue(id, informationValue, expectedVersion);
+	}
+	
+	@Override
+	public DeviceState adjustInformationValue(Integer id, int delta) {
+		return deviceStateService.adjustInformationValue(id, delta);
+	}
+	
+	@Override
+	public List<DeviceState> applyCommands(List<DeviceCommand> commands) {
+		return deviceStateService.applyCommands(commands);
 	}
 	
 	@Override
 	public Device save(Device d) {
-		return deviceRepository.save(d);
+		// the device forms do not carry the status and the value, so keep the ones the users have set
+		deviceStateService.applyState(d);
+		Device saved = deviceRepository.save(d);
+		// the device type and the room may have changed
+		deviceStateService.evictValueRanges();
+		deviceCommandMetrics.evict(saved.getId());
+		roomService.moveDevice(saved);
+		stateVersionService.changeAll();
+		return saved;
 	}
 
 	@Override
 	public void delete(Device d) {
 		deviceRepository.delete(d);
+		deviceStateService.evict(d.getId());
+		devicePermissionService.invalidateDevice(d.getId());
+		deviceHistoryService.evict(d.getId());
+		deviceCommandMetrics.evict(d.getId());
+		roomService.removeDevice(d.getId());
+		stateVersionService.changeAll();
+	}
+	
+	/**
+	 * The database may not have caught up with the latest commands yet, so always show what is kept in memory.
+	 */
+	private List<Device> findAllById(List<Integer> deviceIds) {
+		List<Device> devices = new ArrayList<>();
+		for (int from = 0; from < deviceIds.size(); from += selectionChunkSize) {
+			List<Integer> chunk = deviceIds.subList(from, Math.min(from + selectionChunkSize, deviceIds.size()));
+			deviceRepository.findAllById(chunk).forEach(devices::add);
+		}
+		return devices;
+	}
+
+	private List<Device> withLatestState(List<Device> devices) {
+		devices.forEach(deviceStateService::applyState);
+		return devices;
+	}
+	
+	private List<DeviceGridRow> withLatestGridState(List<DeviceGridRow> rows) {
+		for (DeviceGridRow row : rows) {
+			DeviceState state = deviceStateService.getLoadedState(row.getId());
+			if (state != null) {
+				row.setStatusOn(state.isStatusOn());
+				row.setInformationValue(state.getInformationValue());
+			}
+		}
+		return rows;
 	}
 }
@@ -0,0 +1,27 @@
+package eu.codingschool.homeautomation.services;
+
+import eu.codingschool.homeautomation.model.DeviceState;
+
+/**
+ * Thrown when a change was requested for a version of a device that is not the current one anymore, i.e. someone else
+ * has changed the device in the meantime. Nothing has been changed.
+ */
+public class DeviceStateConflictException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	private final transient DeviceState currentState;
+
+	public DeviceStateConflictException(DeviceState currentState, long expectedVersion) {
+		super("Device " + currentState.getDeviceId() + " is at version " + currentState.getVersion()
+				+ " instead of " + expectedVersion);
+		this.currentState = currentState;
+	}
+
+	/**
+	 * @return the state the change was rejected for
+	 */
+	public DeviceState getCurrentState() {
+		return currentState;
+	}
+}
@@ -0,0 +1,112 @@
+package eu.codingschool.homeautomation.services;
+
+import java.util.List;
+
+import eu.codingschool.homeautomation.model.Device;
+import eu.codingschool.homeautomation.model.DeviceCommand;
+import eu.codingschool.homeautomation.model.DeviceState;
+
+/**
+ * Keeps the status and the information value of the devices in memory. Commands are applied to memory and written to
+ * the database later in batches (write-behind), while reads are always answered with the latest accepted state.
+ */
+public interface DeviceStateService {
+
+	/**
+	 * @return the latest state of the device or null if the device does not exist
+	 */
+	DeviceState getState(Integer deviceId);
+
+	/**
+	 * @return the new state of the device or null if the device does not exist
+	 */
+	DeviceState updateStatus(Integer deviceId, boolean statusOn);
+
+	/**
+	 * @return the new state of the device or null if the device does not exist
+	 * @throws InvalidDeviceValueException if the value is not a number the database holds or out of the range of the device
+	 * type
+	 */
+	DeviceState updateInformationValue(Integer deviceId, String informationValue);
+
+	/**
+	 * Set the status only if the device is still at the expected version; any version is accepted if it is null.
+	 *
+	 * @return the new state of the device or null if the device does not exist
+	 * @throws DeviceStateConflictException if the device has been changed since the expected version
+	 */
+	DeviceState updateStatus(Integer deviceId, boolean statusOn, Long expectedVersion);
+
+	/**
+	 * Set the information value only if the device is still at the expected version; any version is accepted if it
+	 * is null.
+	 *
+	 * @return the new state of the device or null if the device does not exist
+	 * @throws DeviceStateConflictException if the device has been changed since the expected version
+	 * @throws InvalidDeviceValueException if the value is not a number the database holds or out of the range of the device
+	 * type
+	 */
+	DeviceState updateInformationValue(Integer deviceId, String informationValue, Long expectedVersion);
+
+	/**
+	 * Add the given amount to the information value, keeping it within the minimum and maximum value of the device
+	 * type. The value is read and changed in one atomic step, so concurrent adjustments of the same device all count.
+	 *
+	 * @return the new state of the device or null if the device does not exist
+	 */
+	DeviceState adjustInformationValue(Integer deviceId, int delta);
+
+	/**
+	 * Apply all the commands and write the affected devices to the database right away, in a single batched
+	 * transaction. Nothing is changed if any of the devices does not exist or any of the commands is meant for a
+	 * version that is not the current one anymore.
+	 *
+	 * @return the new state of every affected device or null if any of the devices does not exist
+	 * @throws DeviceStateConflictException if any of the devices has been changed since the version of its command
+	 * @throws InvalidDeviceValueException if any of the values is not a number the database holds or out of the range of
+	 * its device type
+	 * @throws DeviceStatesNotWrittenException if the commands have been applied but not all of the devices could be
+	 * written; like any other change, they are written by a later flush
+	 */
+	List<DeviceState> applyCommands(List<DeviceCommand> commands);
+
+	/**
+	 * @return the state kept in memory or null if the device has not been loaded yet; the database is never queried
+	 */
+	DeviceState getLoadedState(Integer deviceId);
+
+	/**
+	 * @return the states whose changes have not been written to the database yet, including those being written; the
+	 * database is never queried
+	 */
+	List<DeviceState> getUnwrittenStates();
+
+	/**
+	 * Overwrite the status and the information value of the given entity with the latest state kept in memory, if any.
+	 */
+	void applyState(Device device);
+
+	/**
+	 * Forget any state kept for the device, e.g. after it has been deleted.
+	 */
+	void evict(Integer deviceId);
+
+	/**
+	 * Forget the value ranges kept for the devices, e.g. after the type of a device or the range of a type has changed.
+	 */
+	void evictValueRanges();
+
+	/**
+	 * Write all pending changes to the database in a single batched transaction, or one device after the other if the
+	 * batch fails. The changes of a device the database rejects stay pending until they have failed too often, then
+	 * they are dropped and the device is read from the database again.
+	 *
+	 * @return the number of devices written
+	 */
+	int flush();
+
+	/**
+	 * @return the age in milliseconds of the oldest change that has not been written to the database yet
+	 */
+	long getFlushLagMillis();
+}
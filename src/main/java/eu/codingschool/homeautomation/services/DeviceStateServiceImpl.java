@@ -0,0 +1,566 @@
+package eu.codingschool.homeautomation.services;
+
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.UnaryOperator;
+import java.util.stream.Collectors;
+
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.CannotCreateTransactionException;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import eu.codingschool.homeautomation.events.DeviceStateChangedEvent;
+import eu.codingschool.homeautomation.model.Device;
+import eu.codingschool.homeautomation.model.DeviceCommand;
+import eu.codingschool.homeautomation.model.DeviceState;
+import eu.codingschool.homeautomation.model.DeviceValues;
+
+@Service
+public class DeviceStateServiceImpl implements DeviceStateService {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(DeviceStateServiceImpl.class);
+
+	private static final String SQL_SELECT_STATE = "SELECT status, information_value FROM device WHERE id = ?";
+	private static final String SQL_SELECT_STATES = "SELECT id, status, information_value FROM device WHERE id IN ";
+	private static final String SQL_UPDATE_STATE = "UPDATE device SET status = ?, information_value = ? WHERE id = ?";
+	private static final String SQL_SELECT_VALUE_RANGE =
+			"SELECT t.min_value, t.max_value FROM device d JOIN device_type t ON t.id = d.device_type_id WHERE d.id = ?";
+
+	@Autowired
+	JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	TransactionTemplate transactionTemplate;
+
+	@Autowired
+	ApplicationEventPublisher eventPublisher;
+
+	private final ConcurrentMap<Integer, DeviceState> states = new ConcurrentHashMap<>();
+
+	/**
+	 * Devices with changes not written to the database yet, mapped to the time (millis) of their oldest pending change.
+	 */
+	private final ConcurrentMap<Integer, Long> pendingSince = new ConcurrentHashMap<>();
+
+	/**
+	 * Devices taken off the pending ones by a flush that has not finished writing them yet.
+	 */
+	private final Set<Integer> writing = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * The time (millis) of the latest change of each device.
+	 */
+	private final ConcurrentMap<Integer, Long> lastChangedAt = new ConcurrentHashMap<>();
+
+	/**
+	 * The minimum and maximum value of the type of each device that has been adjusted.
+	 */
+	private final ConcurrentMap<Integer, ValueRange> valueRanges = new ConcurrentHashMap<>();
+
+	/**
+	 * The number of failed attempts to write the pending changes of each device the database has rejected.
+	 */
+	private final ConcurrentMap<Integer, Integer> flushFailures = new ConcurrentHashMap<>();
+
+	/**
+	 * A loaded state is stamped with the next number of a sequence that starts at the time of the startup and stays
+	 * above every version handed out since, so that a device loaded again after an eviction or a restart never gets
+	 * back a version a client may still hold for an older state of it.
+	 */
+	private final AtomicLong versions = new AtomicLong(System.currentTimeMillis());
+
+	/**
+	 * Single changes share the lock, since each of them is atomic on its own. A batch of commands takes it exclusively,
+	 * so that the versions it has checked cannot change before all of its commands have been applied.
+	 */
+	private final ReadWriteLock commandsLock = new ReentrantReadWriteLock();
+
+	/**
+	 * A device that keeps changing, e.g. while a user spins its value, is written only once it has not changed for this
+	 * long, so that the whole burst ends up in a single write.
+	 */
+	@Value("${homeautomation.device-state.coalesce-window-ms:500}")
+	long coalesceWindowMillis;
+
+	/**
+	 * A device that never stops changing is still written once its oldest pending change is this old.
+	 */
+	@Value("${homeautomation.device-state.max-flush-lag-ms:5000}")
+	long maxFlushLagMillis;
+
+	/**
+	 * A change that the database keeps rejecting, e.g. a value it cannot hold, is dropped after this many attempts to
+	 * write it, so that it is not retried forever. Attempts while the database cannot be reached do not count.
+	 */
+	@Value("${homeautomation.device-state.max-flush-attempts:5}")
+	int maxFlushAttempts;
+
+	@Override
+	public DeviceState getState(Integer deviceId) {
+		DeviceState state = states.get(deviceId);
+		if (state != null) {
+			return state;
+		}
+		List<DeviceState> loaded = jdbcTemplate.query(
+				SQL_SELECT_STATE,
+				(rs, rowNum) -> new DeviceState(deviceId, rs.getBoolean(1), DeviceValues.format(rs.getBigDecimal(2))),
+				deviceId
+		);
+		if (loaded.isEmpty()) {
+			return null;
+		}
+		// another thread may have loaded or even changed the state in the meantime, so keep the first one
+		state = withNextVersion(loaded.get(0));
+		DeviceState previous = states.putIfAbsent(deviceId, state);
+		return previous != null ? previous : state;
+	}
+
+	@Override
+	public DeviceState updateStatus(Integer deviceId, boolean statusOn) {
+		return updateStatus(deviceId, statusOn, null);
+	}
+
+	@Override
+	public DeviceState updateInformationValue(Integer deviceId, String informationValue) {
+		return updateInformationValue(deviceId, informationValue, null);
+	}
+
+	@Override
+	public DeviceState updateStatus(Integer deviceId, boolean statusOn, Long expectedVersion) {
+		return updateShared(deviceId, expectedVersion, state -> state.withStatusOn(statusOn));
+	}
+
+	@Override
+	public DeviceState updateInformationValue(Integer deviceId, String informationValue, Long expectedVersion) {
+		BigDecimal value = parseValue(deviceId, informationValue);
+		if (getState(deviceId) == null) {
+			return null;
+		}
+		checkWithinRange(deviceId, informationValue, value);
+		return updateShared(deviceId, expectedVersion, state -> state.withNumericValue(value));
+	}
+
+	@Override
+	public DeviceState adjustInformationValue(Integer deviceId, int delta) {
+		if (getState(deviceId) == null) {
+			return null;
+		}
+		ValueRange range = getValueRange(deviceId);
+		return updateShared(
+				deviceId, null, state -> state.withNumericValue(range.adjust(state.getNumericValue(), delta))
+		);
+	}
+
+	private static BigDecimal parseValue(Integer deviceId, String informationValue) {
+		try {
+			return DeviceValues.parse(informationValue);
+		} catch (NumberFormatException e) {
+			throw new InvalidDeviceValueException(deviceId, informationValue, e.getMessage());
+		}
+	}
+
+	private void checkWithinRange(Integer deviceId, String informationValue, BigDecimal value) {
+		if (!getValueRange(deviceId).contains(value)) {
+			throw new InvalidDeviceValueException(deviceId, informationValue, "out of the range of the device type");
+		}
+	}
+
+	private ValueRange getValueRange(Integer deviceId) {
+		ValueRange range = valueRanges.get(deviceId);
+		if (range != null) {
+			return range;
+		}
+		List<ValueRange> loaded = jdbcTemplate.query(
+				SQL_SELECT_VALUE_RANGE,
+				(rs, rowNum) -> new ValueRange(rs.getBigDecimal(1), rs.getBigDecimal(2)),
+				deviceId
+		);
+		range = loaded.isEmpty() ? new ValueRange(null, null) : loaded.get(0);
+		valueRanges.putIfAbsent(deviceId, range);
+		return range;
+	}
+
+	private DeviceState updateShared(Integer deviceId, Long expectedVersion, UnaryOperator<DeviceState> change) {
+		if (getState(deviceId) == null) {
+			return null;
+		}
+		DeviceState updated;
+		commandsLock.readLock().lock();
+		try {
+			updated = update(deviceId, expectedVersion, change);
+		} finally {
+			commandsLock.readLock().unlock();
+		}
+		publishChanged(updated);
+		return updated;
+	}
+
+	/**
+	 * The version is compared within the atomic update of the device, so two writers that have seen the same version
+	 * can never both succeed. The change is published by the caller, once it has released the lock.
+	 */
+	private DeviceState update(Integer deviceId, Long expectedVersion, UnaryOperator<DeviceState> change) {
+		DeviceState updated = states.computeIfPresent(deviceId, (id, state) -> {
+			if (expectedVersion != null && expectedVersion != state.getVersion()) {
+				throw new DeviceStateConflictException(state, expectedVersion);
+			}
+			return change.apply(state);
+		});
+		if (updated != null) {
+			versions.accumulateAndGet(updated.getVersion(), Math::max);
+			// mark as pending only after the state has been changed so that a concurrent flush never misses it
+			long now = System.currentTimeMillis();
+			lastChangedAt.put(deviceId, now);
+			pendingSince.putIfAbsent(deviceId, now);
+		}
+		return updated;
+	}
+
+	/**
+	 * The listeners run on the thread of the change, so they are never called under the lock, which they would hold
+	 * up for every other change.
+	 */
+	private void publishChanged(DeviceState updated) {
+		if (updated != null) {
+			eventPublisher.publishEvent(new DeviceStateChangedEvent(updated));
+		}
+	}
+
+	@Override
+	public List<DeviceState> applyCommands(List<DeviceCommand> commands) {
+		loadMissingStates(commands.stream().map(DeviceCommand::getDeviceId).collect(Collectors.toSet()));
+		if (commands.stream().anyMatch(command -> !states.containsKey(command.getDeviceId()))) {
+			return null;
+		}
+		for (DeviceCommand command : commands) {
+			if (command.getValue() != null) {
+				checkWithinRange(
+						command.getDeviceId(), command.getValue(), parseValue(command.getDeviceId(), command.getValue())
+				);
+			}
+		}
+
+		Map<Integer, DeviceState> updated = new LinkedHashMap<>();
+		commandsLock.writeLock().lock();
+		try {
+			// check every version before changing anything, so that a conflict leaves all the devices untouched
+			for (DeviceCommand command : commands) {
+				DeviceState state = states.get(command.getDeviceId());
+				if (state != null && !command.isApplicableTo(state)) {
+					throw new DeviceStateConflictException(state, command.getVersion());
+				}
+			}
+			// versions only apply to the state the client has seen, not to the one left by a previous command
+			for (DeviceCommand command : commands) {
+				DeviceState state = update(command.getDeviceId(), null, command::applyTo);
+				if (state != null) {
+					updated.put(command.getDeviceId(), state);
+				}
+			}
+		} finally {
+			commandsLock.writeLock().unlock();
+		}
+		updated.values().forEach(this::publishChanged);
+		flush(updated.keySet());
+		if (!updated.keySet().stream().allMatch(this::isWritten)) {
+			throw new DeviceStatesNotWrittenException(new ArrayList<>(updated.values()));
+		}
+		return new ArrayList<>(updated.values());
+	}
+
+	private DeviceState withNextVersion(DeviceState loaded) {
+		return new DeviceState(loaded.getDeviceId(), loaded.isStatusOn(), loaded.getInformationValue(),
+				versions.incrementAndGet());
+	}
+
+	/**
+	 * A device that is pending again after a flush, or has been dropped by it, has not been written.
+	 */
+	private boolean isWritten(Integer deviceId) {
+		return !pendingSince.containsKey(deviceId) && states.containsKey(deviceId);
+	}
+
+	/**
+	 * Load with a single query the state of the devices that are not in memory yet.
+	 */
+	private void loadMissingStates(Collection<Integer> deviceIds) {
+		List<Integer> missing = deviceIds.stream()
+										 .filter(deviceId -> !states.containsKey(deviceId))
+										 .collect(Collectors.toList());
+		if (missing.isEmpty()) {
+			return;
+		}
+		String placeholders = String.join(", ", Collections.nCopies(missing.size(), "?"));
+		jdbcTemplate.query(
+				SQL_SELECT_STATES + "(" + placeholders + ")",
+				(RowCallbackHandler) rs -> states.putIfAbsent(
+						rs.getInt(1),
+						withNextVersion(
+								new DeviceState(rs.getInt(1), rs.getBoolean(2), DeviceValues.format(rs.getBigDecimal(3))))
+				),
+				missing.toArray()
+		);
+	}
+
+	@Override
+	public DeviceState getLoadedState(Integer deviceId) {
+		return states.get(deviceId);
+	}
+
+	@Override
+	public List<DeviceState> getUnwrittenStates() {
+		Set<Integer> deviceIds = new HashSet<>(writing);
+		deviceIds.addAll(pendingSince.keySet());
+		return deviceIds.stream()
+						.map(states::get)
+						.filter(Objects::nonNull)
+						.collect(Collectors.toList());
+	}
+
+	@Override
+	public void applyState(Device device) {
+		if (device == null) {
+			return;
+		}
+		DeviceState state = states.get(device.getId());
+		if (state != null) {
+			device.setStatusOn(state.isStatusOn());
+			device.setNumericValue(state.getNumericValue());
+		}
+	}
+
+	@Override
+	public void evict(Integer deviceId) {
+		pendingSince.remove(deviceId);
+		lastChangedAt.remove(deviceId);
+		flushFailures.remove(deviceId);
+		valueRanges.remove(deviceId);
+		states.remove(deviceId);
+	}
+
+	@Override
+	public void evictValueRanges() {
+		valueRanges.clear();
+	}
+
+	/**
+	 * Synchronized so that a caller never returns before a periodic flush that has already taken its changes has
+	 * written them.
+	 */
+	@Override
+	public synchronized int flush() {
+		if (pendingSince.isEmpty()) {
+			return 0;
+		}
+		return flush(new ArrayList<>(pendingSince.keySet()));
+	}
+
+	/**
+	 * Write the pending changes of the given devices to the database in a single batched transaction. If the batch
+	 * fails, the devices are written one by one, so that a device the database rejects does not hold up the others.
+	 */
+	private synchronized int flush(Collection<Integer> deviceIds) {
+		long now = System.currentTimeMillis();
+		long oldestChange = now;
+		List<DeviceState> batch = new ArrayList<>();
+		List<Long> batchPendingSince = new ArrayList<>();
+		for (Integer deviceId : deviceIds) {
+			writing.add(deviceId);
+			Long since = pendingSince.remove(deviceId);
+			DeviceState state = states.get(deviceId);
+			if (since == null || state == null) {
+				continue;
+			}
+			batch.add(state);
+			batchPendingSince.add(since);
+			oldestChange = Math.min(oldestChange, since);
+		}
+		try {
+			return batch.isEmpty() ? 0 : write(batch, batchPendingSince, now, oldestChange);
+		} finally {
+			writing.removeAll(deviceIds);
+		}
+	}
+
+	/**
+	 * @return the number of devices written
+	 */
+	private int write(List<DeviceState> batch, List<Long> batchPendingSince, long now, long oldestChange) {
+		int written;
+		try {
+			transactionTemplate.execute(status -> jdbcTemplate.batchUpdate(
+					SQL_UPDATE_STATE, batch, batch.size(), DeviceStateServiceImpl::setUpdateParameters));
+			written = batch.size();
+			batch.forEach(state -> flushFailures.remove(state.getDeviceId()));
+		} catch (RuntimeException ex) {
+			if (isDatabaseUnreachable(ex)) {
+				// keep the changes pending so that the next flush retries them
+				for (int i = 0; i < batch.size(); i++) {
+					pendingSince.merge(batch.get(i).getDeviceId(), batchPendingSince.get(i), Math::min);
+				}
+				LOGGER.error("Could not write the state of {} devices to the database", batch.size(), ex);
+				return 0;
+			}
+			LOGGER.warn("Could not write the state of {} devices in a batch, writing them one by one", batch.size(), ex);
+			written = 0;
+			for (int i = 0; i < batch.size(); i++) {
+				if (flushOne(batch.get(i), batchPendingSince.get(i))) {
+					written++;
+				}
+			}
+		}
+
+		LOGGER.debug("Wrote the state of {} devices to the database, flush lag was {} ms", written, now - oldestChange);
+		return written;
+	}
+
+	/**
+	 * @return whether the state has been written; if not, it is either pending again or dropped
+	 */
+	private boolean flushOne(DeviceState state, long since) {
+		Integer deviceId = state.getDeviceId();
+		try {
+			transactionTemplate.execute(
+					status -> jdbcTemplate.update(SQL_UPDATE_STATE, ps -> setUpdateParameters(ps, state)));
+			flushFailures.remove(deviceId);
+			return true;
+		} catch (RuntimeException ex) {
+			int attempts = isDatabaseUnreachable(ex) ? 0 : flushFailures.merge(deviceId, 1, Integer::sum);
+			if (attempts < maxFlushAttempts) {
+				pendingSince.merge(deviceId, since, Math::min);
+				LOGGER.error("Could not write the state of device {} to the database", deviceId, ex);
+				return false;
+			}
+			flushFailures.remove(deviceId);
+			// the device is read from the database again, unless it has changed in the meantime
+			if (states.remove(deviceId, state)) {
+				lastChangedAt.remove(deviceId);
+			} else {
+				pendingSince.merge(deviceId, since, Math::min);
+			}
+			LOGGER.error("Dropped the changes of device {} after the database rejected them {} times, status {}, value {}",
+					deviceId, attempts, state.isStatusOn(), state.getInformationValue(), ex);
+			return false;
+		}
+	}
+
+	private static void setUpdateParameters(PreparedStatement ps, DeviceState state) throws SQLException {
+		ps.setInt(1, state.isStatusOn() ? 1 : 0);
+		ps.setBigDecimal(2, state.getNumericValue());
+		ps.setInt(3, state.getDeviceId());
+	}
+
+	/**
+	 * Nothing can be written while the database cannot be reached, so there is no use trying the devices one by one.
+	 */
+	private static boolean isDatabaseUnreachable(RuntimeException ex) {
+		return ex instanceof DataAccessResourceFailureException
+				|| ex instanceof TransientDataAccessException
+				|| ex instanceof RecoverableDataAccessException
+				|| ex instanceof CannotCreateTransactionException;
+	}
+
+	@Scheduled(fixedDelayString = "${homeautomation.device-state.flush-interval-ms:1000}")
+	public void flushPeriodically() {
+		flushSettled(System.currentTimeMillis());
+	}
+
+	/**
+	 * Write the pending changes of the devices that have not changed within the coalescing window, or have been
+	 * pending for too long.
+	 */
+	int flushSettled(long now) {
+		List<Integer> settled = new ArrayList<>();
+		pendingSince.forEach((deviceId, since) -> {
+			long changedAt = lastChangedAt.getOrDefault(deviceId, since);
+			if (now - changedAt >= coalesceWindowMillis || now - since >= maxFlushLagMillis) {
+				settled.add(deviceId);
+			}
+		});
+		return settled.isEmpty() ? 0 : flush(settled);
+	}
+
+	/**
+	 * Do not lose any accepted command when the application stops.
+	 */
+	@PreDestroy
+	public void flushOnShutdown() {
+		flush();
+	}
+
+	@Override
+	public long getFlushLagMillis() {
+		long now = System.currentTimeMillis();
+		return pendingSince.values()
+						   .stream()
+						   .mapToLong(since -> now - since)
+						   .max()
+						   .orElse(0L);
+	}
+
+	/**
+	 * The bounds of the information value of a device; either of them may be missing.
+	 */
+	static final class ValueRange {
+
+		private final BigDecimal min;
+
+		private final BigDecimal max;
+
+		ValueRange(BigDecimal min, BigDecimal max) {
+			this.min = min;
+			this.max = max;
+		}
+
+		/**
+		 * A missing value is adjusted as if it was zero. Without bounds, the value stops at the limits of the column.
+		 */
+		BigDecimal adjust(BigDecimal value, int delta) {
+			BigDecimal adjusted = DeviceValues.clampToColumn(
+					(value != null ? value : BigDecimal.ZERO).add(BigDecimal.valueOf(delta)));
+			if (min != null && adjusted.compareTo(min) < 0) {
+				adjusted = min;
+			}
+			if (max != null && adjusted.compareTo(max) > 0) {
+				adjusted = max;
+			}
+			return adjusted;
+		}
+
+		/**
+		 * A missing value is always accepted.
+		 */
+		boolean contains(BigDecimal value) {
+			return value == null
+					|| ((min == null || value.compareTo(min) >= 0) && (max == null || value.compareTo(max) <= 0));
+		}
+	}
+}
@@ -0,0 +1,29 @@
+package eu.codingschool.homeautomation.services;
+
+import java.util.Collections;
+import java.util.List;
+
+import eu.codingschool.homeautomation.model.DeviceState;
+
+/**
+ * Thrown when commands have been applied but some of the changed devices could not be written to the database right
+ * away. The changes are kept and written by a later flush, unless the database keeps rejecting them.
+ */
+public class DeviceStatesNotWrittenException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	private final transient List<DeviceState> deviceStates;
+
+	public DeviceStatesNotWrittenException(List<DeviceState> deviceStates) {
+		super("The state of " + deviceStates.size() + " devices has been changed but not written to the database yet");
+		this.deviceStates = Collections.unmodifiableList(deviceStates);
+	}
+
+	/**
+	 * @return the new state of every affected device
+	 */
+	public List<DeviceState> getDeviceStates() {
+		return deviceStates;
+	}
+}
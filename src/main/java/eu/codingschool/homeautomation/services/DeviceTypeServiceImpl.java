@@ -4,6 +4,7 @@ import java.util.List;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import eu.codingschool.homeautomation.model.DeviceType;
 import eu.codingschool.homeautomation.repositories.DeviceTypeRepository;
@@ -13,8 +14,15 @@ public class DeviceTypeServiceImpl implements DeviceTypeService {
 	
 	@Autowired
 	DeviceTypeRepository deviceTypeRepository;
+	
+	@Autowired
+	DeviceStateService deviceStateService;
+
+	@Autowired
+	StateVersionService stateVersionService;
 
 	@Override
+	@Transactional(readOnly = true)
 	public List<DeviceType> findAll() {
 		return deviceTypeRepository.findAll();
 	}
@@ -26,12 +34,18 @@ public class DeviceTypeServiceImpl implements DeviceTypeService {
 	
 	@Override
 	public DeviceType save(DeviceType dt) {
-		return deviceTypeRepository.save(dt);
+		DeviceType saved = deviceTypeRepository.save(dt);
+		// the minimum and maximum value may have changed
+		deviceStateService.evictValueRanges();
+		// the devices of the type are shown with its icon and unit
+		stateVersionService.changeAll();
+		return saved;
 	}
 
 	@Override
 	public void delete(DeviceType dt) {
 		deviceTypeRepository.delete(dt);
+		stateVersionService.changeAll();
 	}
 
 }
@@ -0,0 +1,14 @@
+package eu.codingschool.homeautomation.services;
+
+/**
+ * Thrown when a device is given an information value that is not a number or is out of the range of its device type.
+ * Nothing has been changed.
+ */
+public class InvalidDeviceValueException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	public InvalidDeviceValueException(Integer deviceId, String value, String reason) {
+		super("Invalid value '" + value + "' for device " + deviceId + ": " + reason);
+	}
+}
@@ -0,0 +1,58 @@
+package eu.codingschool.homeautomation.services;
+
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+
+/**
+ * Helpers for the keyset (seek) pages of the admin lists. A page continues from the sort key of the last row of the
+ * previous page instead of skipping rows with an offset, so every page costs the same however deep it is.
+ */
+final class KeysetPages {
+
+	/**
+	 * The escape character of the LIKE patterns; a backslash would need escaping itself in MySQL string literals.
+	 */
+	static final char LIKE_ESCAPE = '!';
+
+	private KeysetPages() {
+	}
+
+	/**
+	 * The pages always start at the first row matching the keyset condition, so only the size is needed.
+	 */
+	static Pageable firstRows(int size) {
+		return PageRequest.of(0, size);
+	}
+
+	/**
+	 * @return the case-insensitive LIKE pattern matching values that contain the filter, or null if the filter is
+	 * blank, for which the lists are not filtered at all, since LIKE '%' would leave out the rows without a name
+	 */
+	static String containing(String filter) {
+		if (filter == null || filter.trim().isEmpty()) {
+			return null;
+		}
+		StringBuilder pattern = new StringBuilder("%");
+		for (char c : filter.trim().toLowerCase().toCharArray()) {
+			if (c == '%' || c == '_' || c == LIKE_ESCAPE) {
+				pattern.append(LIKE_ESCAPE);
+			}
+			pattern.append(c);
+		}
+		return pattern.append('%').toString();
+	}
+
+	/**
+	 * @return the id to continue after, 0 for the first page since ids start at 1
+	 */
+	static int afterId(Integer afterId) {
+		return afterId != null ? afterId : 0;
+	}
+
+	/**
+	 * @return the name to continue after, or null for the first page and after a row without a name, which sort first
+	 */
+	static String afterName(String afterName) {
+		return afterName;
+	}
+}
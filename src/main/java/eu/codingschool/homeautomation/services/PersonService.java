@@ -2,14 +2,23 @@ package eu.codingschool.homeautomation.services;
 
 import java.util.List;
 
+import org.springframework.data.domain.Slice;
 import org.springframework.security.core.userdetails.UserDetails;
 
 import eu.codingschool.homeautomation.model.Device;
+import eu.codingschool.homeautomation.model.ListSort;
 import eu.codingschool.homeautomation.model.Person;
 
 public interface PersonService {
 	
 	List<Person> findAll();
+
+	/**
+	 * Load the people of the admin list that come after the given row; see {@link DeviceService#findPage}.
+	 *
+	 * @param filter case-insensitive text the name, surname or email must contain, null or blank for all
+	 */
+	Slice<Person> findPage(ListSort sort, String filter, Integer afterId, String afterName);
 	
 	Person findById(Integer id);
 	
@@ -22,4 +31,11 @@ public interface PersonService {
 	void delete(Person p);
 	
 	UserDetails getLoggedInUser();
+
+	/**
+	 * The logged-in person is loaded at most once per request and shared by everything that handles the request.
+	 *
+	 * @return the logged-in person or null if nobody is logged in
+	 */
+	Person getLoggedInPerson();
 }
\ No newline at end of file
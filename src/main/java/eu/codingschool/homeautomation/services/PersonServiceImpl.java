@@ -1,22 +1,37 @@
 package eu.codingschool.homeautomation.services;
 
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
-
-import javax.transaction.Transactional;
+import java.util.Map;
+import java.util.Set;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
 
 import eu.codingschool.homeautomation.model.Device;
+import eu.codingschool.homeautomation.model.ListSort;
 import eu.codingschool.homeautomation.model.Person;
 import eu.codingschool.homeautomation.repositories.PersonRepository;
 
 @Service
 public class PersonServiceImpl implements PersonService {
+
+	private static final String ATTRIBUTE_LOGGED_IN_PERSON = PersonServiceImpl.class.getName() + ".LOGGED_IN_PERSON";
+
+	/**
+	 * Remembers within a request that nobody is logged in, since request attributes cannot hold null.
+	 */
+	private static final Object NO_PERSON = new Object();
 	
 	@Autowired
 	PersonRepository personRepository;
@@ -24,11 +39,41 @@ public class PersonServiceImpl implements PersonService {
 	@Autowired
     private BCryptPasswordEncoder bCryptPasswordEncoder;
 
+	@Autowired
+	DevicePermissionService devicePermissionService;
+
+	@Autowired
+	RoomService roomService;
+
+	@Autowired
+	StateVersionService stateVersionService;
+
+	@Autowired
+	DashboardService dashboardService;
+
+	/**
+	 * Number of rows per page of the admin list.
+	 */
+	@Value("${homeautomation.admin-lists.page-size:50}")
+	int pageSize;
+
 	@Override
+	@Transactional(readOnly = true)
 	public List<Person> findAll() {
 		return personRepository.findAll();
 	}
 	
+	@Override
+	@Transactional(readOnly = true)
+	public Slice<Person> findPage(ListSort sort, String filter, Integer afterId, String afterName) {
+		Pageable rows = KeysetPages.firstRows(pageSize);
+		String pattern = KeysetPages.containing(filter);
+		return sort == ListSort.NAME
+				? personRepository.findPageOrderByName(
+						pattern, KeysetPages.afterName(afterName), KeysetPages.afterId(afterId), rows)
+				: personRepository.findPageOrderById(pattern, KeysetPages.afterId(afterId), rows);
+	}
+
 	@Override
 	public Person findById(Integer id) {
 		return personRepository.findById(id).orElse(null);
@@ -57,13 +102,42 @@ public class PersonServiceImpl implements PersonService {
 			personDB.setSurname(personModel.getSurname());
 			personDB.setEmail(personModel.getEmail());
 			personDB.setRole(personModel.getRole());
+			updateDevices(personDB, selectedDevices);
+			devicePermissionService.invalidate(personDB.getId());
+			roomService.updateDevicesCount(personDB.getId(), personDB.getDevices());
+			stateVersionService.changeUser(personDB.getId());
+			forgetLoggedInPerson(personDB.getId());
+		}
+	}
+
+	/**
+	 * Change the assigned devices in place, so that Hibernate writes only the PERSON_DEVICE rows that were added or
+	 * removed. Replacing the collection would make it delete and insert again every row of the person.
+	 * <p>
+	 * The devices are compared by id, since Device has no equals of its own and the selected devices are other
+	 * instances than the assigned ones.
+	 */
+	private void updateDevices(Person personDB, List<Device> selectedDevices) {
+		Set<Device> assignedDevices = personDB.getDevices();
+		if (assignedDevices == null) {
 			personDB.setDevices(new HashSet<>(selectedDevices));
+			return;
 		}
+		Map<Integer, Device> addedDevices = new LinkedHashMap<>();
+		selectedDevices.forEach(device -> addedDevices.put(device.getId(), device));
+		assignedDevices.removeIf(device -> !addedDevices.containsKey(device.getId()));
+		assignedDevices.forEach(device -> addedDevices.remove(device.getId()));
+		assignedDevices.addAll(addedDevices.values());
 	}
 
 	@Override
 	public void delete(Person p) {
 		personRepository.delete(p);
+		devicePermissionService.invalidate(p.getId());
+		roomService.evictDevicesCount(p.getId());
+		stateVersionService.changeUser(p.getId());
+		dashboardService.evict(p.getId());
+		forgetLoggedInPerson(p.getId());
 	}
 	
 	@Override
@@ -74,5 +148,44 @@ public class PersonServiceImpl implements PersonService {
 	    }
 	    return null;
 	}
+
+	@Override
+	public Person getLoggedInPerson() {
+		RequestAttributes requestAttributes = RequestContextHolder.getRequestAttributes();
+		if (requestAttributes != null) {
+			Object loggedInPerson = requestAttributes.getAttribute(ATTRIBUTE_LOGGED_IN_PERSON, RequestAttributes.SCOPE_REQUEST);
+			if (loggedInPerson != null) {
+				return loggedInPerson == NO_PERSON ? null : (Person) loggedInPerson;
+			}
+		}
+
+		UserDetails loggedInUser = getLoggedInUser();
+		Person loggedInPerson = loggedInUser != null && loggedInUser.getUsername() != null
+				? findByEmail(loggedInUser.getUsername())
+				: null;
+
+		if (requestAttributes != null) {
+			requestAttributes.setAttribute(
+					ATTRIBUTE_LOGGED_IN_PERSON,
+					loggedInPerson != null ? loggedInPerson : NO_PERSON,
+					RequestAttributes.SCOPE_REQUEST
+			);
+		}
+		return loggedInPerson;
+	}
+
+	/**
+	 * The logged-in person has just been changed, so load it again if it is needed later in the same request.
+	 */
+	private void forgetLoggedInPerson(int personId) {
+		RequestAttributes requestAttributes = RequestContextHolder.getRequestAttributes();
+		if (requestAttributes == null) {
+			return;
+		}
+		Object loggedInPerson = requestAttributes.getAttribute(ATTRIBUTE_LOGGED_IN_PERSON, RequestAttributes.SCOPE_REQUEST);
+		if (loggedInPerson instanceof Person && ((Person) loggedInPerson).getId() == personId) {
+			requestAttributes.removeAttribute(ATTRIBUTE_LOGGED_IN_PERSON, RequestAttributes.SCOPE_REQUEST);
+		}
+	}
 	
 }
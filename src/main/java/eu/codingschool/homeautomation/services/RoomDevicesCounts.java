@@ -0,0 +1,78 @@
+package eu.codingschool.homeautomation.services;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import eu.codingschool.homeautomation.model.Room;
+import eu.codingschool.homeautomation.repositories.projections.RoomDevicesCount;
+
+/**
+ * The rooms of the devices assigned to one user, together with the side menu entries counted from them. It is never
+ * changed; every change returns a new instance, so it can be shared by any number of requests.
+ */
+final class RoomDevicesCounts {
+
+	/**
+	 * The room of each assigned device that is in a room.
+	 */
+	private final Map<Integer, Room> roomPerDevice;
+
+	/**
+	 * One entry per room, ordered by room id.
+	 */
+	private final List<RoomDevicesCount> counts;
+
+	RoomDevicesCounts(Map<Integer, Room> roomPerDevice) {
+		this.roomPerDevice = roomPerDevice;
+
+		Map<Integer, Room> rooms = new TreeMap<>();
+		Map<Integer, Long> devicesPerRoom = new HashMap<>();
+		for (Room room : roomPerDevice.values()) {
+			rooms.putIfAbsent(room.getId(), room);
+			devicesPerRoom.merge(room.getId(), 1L, Long::sum);
+		}
+		List<RoomDevicesCount> roomCounts = new ArrayList<>(rooms.size());
+		for (Room room : rooms.values()) {
+			roomCounts.add(new RoomDevicesCount(room, devicesPerRoom.get(room.getId())));
+		}
+		this.counts = Collections.unmodifiableList(roomCounts);
+	}
+
+	List<RoomDevicesCount> getCounts() {
+		return counts;
+	}
+
+	boolean hasDevice(int deviceId) {
+		return roomPerDevice.containsKey(deviceId);
+	}
+
+	boolean hasRoom(int roomId) {
+		return counts.stream().anyMatch(count -> count.getRoom().getId() == roomId);
+	}
+
+	/**
+	 * @param room the new room of the device or null if it is not in a room any more
+	 */
+	RoomDevicesCounts withDeviceIn(int deviceId, Room room) {
+		Map<Integer, Room> changed = new HashMap<>(roomPerDevice);
+		if (room != null) {
+			changed.put(deviceId, room);
+		} else {
+			changed.remove(deviceId);
+		}
+		return new RoomDevicesCounts(changed);
+	}
+
+	/**
+	 * @return a copy that shows the given room, e.g. after it has been renamed
+	 */
+	RoomDevicesCounts withRoom(Room room) {
+		Map<Integer, Room> changed = new HashMap<>(roomPerDevice);
+		changed.replaceAll((deviceId, deviceRoom) -> deviceRoom.getId() == room.getId() ? room : deviceRoom);
+		return new RoomDevicesCounts(changed);
+	}
+}
@@ -1,17 +1,53 @@
 package eu.codingschool.homeautomation.services;
 
+import java.util.Collection;
 import java.util.List;
 
+import org.springframework.data.domain.Slice;
+
+import eu.codingschool.homeautomation.model.Device;
+import eu.codingschool.homeautomation.model.ListSort;
 import eu.codingschool.homeautomation.model.Room;
 import eu.codingschool.homeautomation.repositories.projections.RoomDevicesCount;
 
 public interface RoomService {
 	
 	List<Room> findAll();
+
+	/**
+	 * @return the rooms of the admin list that come after the given row; see {@link DeviceService#findPage}
+	 */
+	Slice<Room> findPage(ListSort sort, String filter, Integer afterId, String afterName);
 	
 	Room findById(Integer id);
 	
+	/**
+	 * @return the rooms with devices assigned to the user and how many of them are in each room, ordered by room id.
+	 * They are kept in memory per user and kept up to date by the methods below, so only the first call per user
+	 * queries the database.
+	 */
 	List<RoomDevicesCount> findByUser(Integer personId);
+
+	/**
+	 * The devices assigned to the user have been changed. If a transaction is active, the counts are changed only when
+	 * it commits.
+	 */
+	void updateDevicesCount(Integer personId, Collection<Device> assignedDevices);
+
+	/**
+	 * The device has been saved and may be in another room now.
+	 */
+	void moveDevice(Device device);
+
+	/**
+	 * The device has been deleted.
+	 */
+	void removeDevice(Integer deviceId);
+
+	/**
+	 * Forget the counts of the user, e.g. after the user has been deleted.
+	 */
+	void evictDevicesCount(Integer personId);
     
     Room save(Room r);
     
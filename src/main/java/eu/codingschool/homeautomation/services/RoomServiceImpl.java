@@ -1,11 +1,31 @@
 package eu.codingschool.homeautomation.services;
 
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
+import javax.annotation.PostConstruct;
+
+import eu.codingschool.homeautomation.repositories.projections.DeviceRoom;
 import eu.codingschool.homeautomation.repositories.projections.RoomDevicesCount;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import eu.codingschool.homeautomation.model.Device;
+import eu.codingschool.homeautomation.model.ListSort;
 import eu.codingschool.homeautomation.model.Room;
 import eu.codingschool.homeautomation.repositories.RoomRepository;
 
@@ -15,11 +35,56 @@ public class RoomServiceImpl implements RoomService {
 	@Autowired
 	RoomRepository roomRepository;
 
+	@Autowired
+	StateVersionService stateVersionService;
+
+	@Autowired
+	PlatformTransactionManager transactionManager;
+
+	/**
+	 * Number of rows per page of the admin list.
+	 */
+	@Value("${homeautomation.admin-lists.page-size:50}")
+	int pageSize;
+
+	private final ConcurrentMap<Integer, RoomDevicesCounts> countsPerPerson = new ConcurrentHashMap<>();
+
+	/**
+	 * Counts the changes applied to the counts, so that a load that has overlapped one is not kept.
+	 */
+	private final AtomicLong changes = new AtomicLong();
+
+	/**
+	 * The counts are kept until the devices change, so they are loaded from the primary, where a replica lagging
+	 * behind could have missed those changes: in a transaction of their own, since the one they are asked for in may
+	 * run on a replica, and without a name, which keeps a read-only transaction on the primary.
+	 */
+	private TransactionTemplate primaryTransactionTemplate;
+
+	@PostConstruct
+	void createPrimaryTransactionTemplate() {
+		primaryTransactionTemplate = new TransactionTemplate(transactionManager);
+		primaryTransactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+		primaryTransactionTemplate.setReadOnly(true);
+	}
+
 	@Override
+	@Transactional(readOnly = true)
 	public List<Room> findAll() {
 		return roomRepository.findAll();
 	}
 	
+	@Override
+	@Transactional(readOnly = true)
+	public Slice<Room> findPage(ListSort sort, String filter, Integer afterId, String afterName) {
+		Pageable rows = KeysetPages.firstRows(pageSize);
+		String pattern = KeysetPages.containing(filter);
+		return sort == ListSort.NAME
+				? roomRepository.findPageOrderByName(
+						pattern, KeysetPages.afterName(afterName), KeysetPages.afterId(afterId), rows)
+				: roomRepository.findPageOrderById(pattern, KeysetPages.afterId(afterId), rows);
+	}
+
 	@Override
 	public Room findById(Integer id) {
 		return roomRepository.findById(id).orElse(null);
@@ -27,16 +92,104 @@ public class RoomServiceImpl implements RoomService {
 	
 	@Override
 	public List<RoomDevicesCount> findByUser(Integer personId) {
-		return roomRepository.findUserRooms(personId);
+		RoomDevicesCounts counts = countsPerPerson.get(personId);
+		if (counts != null) {
+			return counts.getCounts();
+		}
+		// loaded outside of the map, so that the transaction does not block the other users of the map
+		long changesBefore = changes.get();
+		RoomDevicesCounts loaded = loadDevicesCount(personId);
+		RoomDevicesCounts kept = countsPerPerson.putIfAbsent(personId, loaded);
+		if (kept != null) {
+			return kept.getCounts();
+		}
+		// a change during the load may have come before the counts were kept, and missed them
+		if (changes.get() != changesBefore) {
+			countsPerPerson.remove(personId, loaded);
+		}
+		return loaded.getCounts();
+	}
+
+	private RoomDevicesCounts loadDevicesCount(Integer personId) {
+		return primaryTransactionTemplate.execute(status -> {
+			Map<Integer, Room> roomPerDevice = new HashMap<>();
+			for (DeviceRoom deviceRoom : roomRepository.findUserDeviceRooms(personId)) {
+				roomPerDevice.put(deviceRoom.getDeviceId(), deviceRoom.getRoom());
+			}
+			return new RoomDevicesCounts(roomPerDevice);
+		});
+	}
+
+	@Override
+	public void updateDevicesCount(Integer personId, Collection<Device> assignedDevices) {
+		Map<Integer, Room> roomPerDevice = new HashMap<>();
+		for (Device device : assignedDevices) {
+			if (device.getRoom() != null) {
+				roomPerDevice.put(device.getId(), device.getRoom());
+			}
+		}
+		RoomDevicesCounts counts = new RoomDevicesCounts(roomPerDevice);
+		// only users whose counts are kept need to change; the others load the committed assignments when needed
+		afterCommit(() -> countsPerPerson.computeIfPresent(personId, (id, previous) -> counts));
+	}
+
+	@Override
+	public void moveDevice(Device device) {
+		afterCommit(() -> countsPerPerson.replaceAll(
+				(personId, counts) -> counts.hasDevice(device.getId())
+						? counts.withDeviceIn(device.getId(), device.getRoom())
+						: counts
+		));
+	}
+
+	@Override
+	public void removeDevice(Integer deviceId) {
+		afterCommit(() -> countsPerPerson.replaceAll(
+				(personId, counts) -> counts.hasDevice(deviceId) ? counts.withDeviceIn(deviceId, null) : counts
+		));
+	}
+
+	@Override
+	public void evictDevicesCount(Integer personId) {
+		afterCommit(() -> countsPerPerson.remove(personId));
+	}
+
+	/**
+	 * A count loaded by another request before the commit would still have the old devices, so the changes are
+	 * applied only after it. They replace what is kept instead of adding to it, so applying one twice does no harm.
+	 */
+	private void afterCommit(Runnable change) {
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			apply(change);
+			return;
+		}
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+			@Override
+			public void afterCommit() {
+				apply(change);
+			}
+		});
+	}
+
+	private void apply(Runnable change) {
+		changes.incrementAndGet();
+		change.run();
 	}
 
 	@Override
 	public Room save(Room r) {
-		return roomRepository.save(r);
+		Room saved = roomRepository.save(r);
+		// the side menus show the room by name
+		afterCommit(() -> countsPerPerson.replaceAll(
+				(personId, counts) -> counts.hasRoom(saved.getId()) ? counts.withRoom(saved) : counts
+		));
+		stateVersionService.changeAll();
+		return saved;
 	}
 
 	@Override
 	public void delete(Room r) {
 		roomRepository.delete(r);
+		stateVersionService.changeAll();
 	}
 }
@@ -0,0 +1,40 @@
+package eu.codingschool.homeautomation.services;
+
+/**
+ * Tells whether what a user sees of the devices may have changed since an earlier request, without loading anything
+ * from the database, so that polling clients can be answered with 304 Not Modified.
+ * <p>
+ * The versions only ever grow, also across restarts, so a version that has been handed out once is never handed out
+ * again for different devices.
+ */
+public interface StateVersionService {
+
+	/**
+	 * @return a version that changes whenever any device assigned to the user changes
+	 */
+	long getUserVersion(int personId);
+
+	/**
+	 * @return a version that changes whenever anything changes, e.g. for what an admin sees of all the devices
+	 */
+	long getVersion();
+
+	/**
+	 * @return a version that changes whenever the device changes
+	 */
+	long getDeviceVersion(int deviceId);
+
+	/**
+	 * Change the version of every user and device, e.g. after a device, device type, room or assignment has been
+	 * saved or deleted. If a transaction is active, the versions change when it commits, so that nobody gets the new
+	 * version with what was read before the commit.
+	 */
+	void changeAll();
+
+	/**
+	 * Change the version of the user, e.g. after the person or their assignments have been saved or deleted. The
+	 * version of everything changes too, but not that of other users or of the devices. Like {@link #changeAll()}, it
+	 * waits for an active transaction to commit.
+	 */
+	void changeUser(int personId);
+}
@@ -0,0 +1,94 @@
+package eu.codingschool.homeautomation.services;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import eu.codingschool.homeautomation.events.DeviceStateChangedEvent;
+
+/**
+ * Every change is stamped with the next number of a sequence that starts at the time of the startup. The version of a
+ * user is the latest stamp of their devices, which are kept in memory by the {@link DevicePermissionService}.
+ */
+@Service
+public class StateVersionServiceImpl implements StateVersionService {
+
+	@Autowired
+	DevicePermissionService devicePermissionService;
+
+	private final AtomicLong sequence = new AtomicLong(System.currentTimeMillis());
+
+	private final AtomicLong allChangedAt = new AtomicLong(sequence.get());
+
+	private final ConcurrentMap<Integer, Long> deviceChangedAt = new ConcurrentHashMap<>();
+
+	private final ConcurrentMap<Integer, Long> userChangedAt = new ConcurrentHashMap<>();
+
+	/**
+	 * The event is published after the state has changed, so a request that gets the new version also gets the new
+	 * state.
+	 */
+	@EventListener
+	public void onDeviceStateChanged(DeviceStateChangedEvent event) {
+		deviceChangedAt.put(event.getDeviceState().getDeviceId(), sequence.incrementAndGet());
+	}
+
+	@Override
+	public long getUserVersion(int personId) {
+		long version = Math.max(allChangedAt.get(), userChangedAt.getOrDefault(personId, 0L));
+		for (int deviceId : devicePermissionService.getAssignedDeviceIds(personId)) {
+			version = Math.max(version, deviceChangedAt.getOrDefault(deviceId, 0L));
+		}
+		return version;
+	}
+
+	/**
+	 * Every change takes the next number of the sequence after it has happened.
+	 */
+	@Override
+	public long getVersion() {
+		return sequence.get();
+	}
+
+	@Override
+	public long getDeviceVersion(int deviceId) {
+		return Math.max(allChangedAt.get(), deviceChangedAt.getOrDefault(deviceId, 0L));
+	}
+
+	@Override
+	public void changeAll() {
+		afterCommit(this::stampAll);
+	}
+
+	@Override
+	public void changeUser(int personId) {
+		afterCommit(() -> userChangedAt.merge(personId, sequence.incrementAndGet(), Math::max));
+	}
+
+	private static void afterCommit(Runnable change) {
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			change.run();
+			return;
+		}
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+			@Override
+			public void afterCommit() {
+				change.run();
+			}
+		});
+	}
+
+	/**
+	 * Concurrent changes may get their stamps in one order and store them in the other, so keep the latest one.
+	 */
+	private void stampAll() {
+		long stamp = sequence.incrementAndGet();
+		allChangedAt.accumulateAndGet(stamp, Math::max);
+	}
+}
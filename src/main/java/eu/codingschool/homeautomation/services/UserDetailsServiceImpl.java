@@ -12,6 +12,7 @@ import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
 
 import eu.codingschool.homeautomation.model.Person;
+import eu.codingschool.homeautomation.security.PersonUser;
 
 @Service("userDetailsServiceImpl")
 public class UserDetailsServiceImpl implements UserDetailsService {
@@ -29,8 +30,7 @@ public class UserDetailsServiceImpl implements UserDetailsService {
         Set<GrantedAuthority> grantedAuthorities = new HashSet<>();
         grantedAuthorities.add(new SimpleGrantedAuthority(person.getRole()));
         
-        return new org.springframework.security.core.userdetails.User(
-        		person.getEmail(), person.getPassword(), grantedAuthorities);
+        return new PersonUser(person.getId(), person.getEmail(), person.getPassword(), grantedAuthorities);
 	}
 
 }
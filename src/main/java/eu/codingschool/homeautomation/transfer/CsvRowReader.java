@@ -0,0 +1,116 @@
+package eu.codingschool.homeautomation.transfer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads comma-separated values as in RFC 4180: the first line has the column names, a value may be quoted to contain
+ * commas, quotes (doubled) and line breaks, and a line may end with a carriage return. Empty lines are skipped and an
+ * empty value is read as missing.
+ */
+final class CsvRowReader implements RowReader {
+
+	private final Reader in;
+
+	private List<String> columns;
+
+	/**
+	 * The line the reader is at, for the messages about malformed records.
+	 */
+	private long line = 1;
+
+	CsvRowReader(InputStream in) {
+		this.in = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+	}
+
+	@Override
+	public Map<String, String> next() throws IOException {
+		if (columns == null) {
+			columns = readRecord();
+			if (columns == null) {
+				return null;
+			}
+			columns.replaceAll(String::trim);
+		}
+
+		List<String> values;
+		do {
+			values = readRecord();
+		} while (values != null && values.size() == 1 && values.get(0).isEmpty());
+		if (values == null) {
+			return null;
+		}
+		if (values.size() > columns.size()) {
+			throw new MalformedDataException(String.format(
+					"The record before line %d has %d values but there are only %d columns",
+					line, values.size(), columns.size()));
+		}
+
+		Map<String, String> row = new LinkedHashMap<>();
+		for (int i = 0; i < columns.size(); i++) {
+			String value = i < values.size() ? values.get(i) : "";
+			row.put(columns.get(i), value.isEmpty() ? null : value);
+		}
+		return row;
+	}
+
+	/**
+	 * @return the values of the next record or null at the end of the input
+	 */
+	private List<String> readRecord() throws IOException {
+		int c = in.read();
+		if (c == -1) {
+			return null;
+		}
+
+		long firstLine = line;
+		List<String> values = new ArrayList<>();
+		StringBuilder value = new StringBuilder();
+		boolean quoted = false;
+		while (true) {
+			if (quoted) {
+				if (c == -1) {
+					throw new MalformedDataException("The quote opened at line " + firstLine + " is never closed");
+				}
+				if (c == '"') {
+					c = in.read();
+					if (c != '"') {
+						// that was the closing quote; go on with the next character outside of the quotes
+						quoted = false;
+						continue;
+					}
+				} else if (c == '\n') {
+					line++;
+				}
+				value.append((char) c);
+			} else if (c == '"' && value.length() == 0) {
+				quoted = true;
+			} else if (c == ',') {
+				values.add(value.toString());
+				value.setLength(0);
+			} else if (c == '\n' || c == -1) {
+				if (c == '\n') {
+					line++;
+				}
+				values.add(value.toString());
+				return values;
+			} else if (c != '\r') {
+				value.append((char) c);
+			}
+			c = in.read();
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+}
@@ -0,0 +1,51 @@
+package eu.codingschool.homeautomation.transfer;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Writes comma-separated values as {@link CsvRowReader} reads them, quoting only the values that need it.
+ */
+final class CsvRowWriter implements RowWriter {
+
+	private final Writer out;
+
+	CsvRowWriter(OutputStream out, List<String> columns) throws IOException {
+		this.out = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+		write(columns);
+	}
+
+	@Override
+	public void write(List<?> values) throws IOException {
+		for (int i = 0; i < values.size(); i++) {
+			if (i > 0) {
+				out.write(',');
+			}
+			Object value = values.get(i);
+			if (value != null) {
+				writeValue(value.toString());
+			}
+		}
+		out.write("\r\n");
+	}
+
+	private void writeValue(String value) throws IOException {
+		if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+			out.write(value);
+			return;
+		}
+		out.write('"');
+		out.write(value.replace("\"", "\"\""));
+		out.write('"');
+	}
+
+	@Override
+	public void close() throws IOException {
+		out.flush();
+	}
+}
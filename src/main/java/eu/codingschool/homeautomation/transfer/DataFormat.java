@@ -0,0 +1,69 @@
+package eu.codingschool.homeautomation.transfer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+
+import org.springframework.http.MediaType;
+
+/**
+ * The file formats of the bulk exports and imports. Both are read and written one row at a time, so that a file of
+ * any size is never kept in memory.
+ */
+public enum DataFormat {
+
+	/**
+	 * A header with the column names followed by one line per row.
+	 */
+	CSV("text/csv", ".csv"),
+
+	/**
+	 * An array with one object per row, whose fields are the column names.
+	 */
+	JSON(MediaType.APPLICATION_JSON_VALUE, ".json");
+
+	private final String mediaType;
+
+	private final String extension;
+
+	DataFormat(String mediaType, String extension) {
+		this.mediaType = mediaType;
+		this.extension = extension;
+	}
+
+	public String getMediaType() {
+		return mediaType;
+	}
+
+	public String getExtension() {
+		return extension;
+	}
+
+	public RowReader openReader(InputStream in) throws IOException {
+		return this == CSV ? new CsvRowReader(in) : new JsonRowReader(in);
+	}
+
+	/**
+	 * The writer does not close the stream, which belongs to the caller.
+	 */
+	public RowWriter openWriter(OutputStream out, List<String> columns) throws IOException {
+		return this == CSV ? new CsvRowWriter(out, columns) : new JsonRowWriter(out, columns);
+	}
+
+	/**
+	 * @return the format of the given content type, ignoring its parameters, or null if there is none
+	 */
+	public static DataFormat fromContentType(String contentType) {
+		if (contentType == null) {
+			return null;
+		}
+		MediaType type = MediaType.parseMediaType(contentType);
+		for (DataFormat format : values()) {
+			if (MediaType.parseMediaType(format.mediaType).includes(type)) {
+				return format;
+			}
+		}
+		return null;
+	}
+}
@@ -0,0 +1,52 @@
+package eu.codingschool.homeautomation.transfer;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The tables that can be exported and imported in bulk, with the columns of their files. The rows refer to each other
+ * by id, e.g. a device to its room, so rooms and device types are imported before the devices and the devices before
+ * the assignments.
+ */
+public enum DataSet {
+
+	ROOMS("rooms", "id", "name"),
+	DEVICE_TYPES("device-types",
+			"id", "type", "informationType", "unitOfMeasure", "minValue", "maxValue", "interactionType", "icon",
+			"groupColor"),
+	DEVICES("devices", "id", "name", "deviceType", "room", "statusOn", "informationValue"),
+	ASSIGNMENTS("assignments", "person", "device");
+
+	private final String path;
+
+	private final List<String> columns;
+
+	DataSet(String path, String... columns) {
+		this.path = path;
+		this.columns = Collections.unmodifiableList(Arrays.asList(columns));
+	}
+
+	/**
+	 * @return the name of the data set in the urls and the file names
+	 */
+	public String getPath() {
+		return path;
+	}
+
+	public List<String> getColumns() {
+		return columns;
+	}
+
+	/**
+	 * @return the data set with the given path or null if there is none
+	 */
+	public static DataSet fromPath(String path) {
+		for (DataSet dataSet : values()) {
+			if (dataSet.path.equals(path)) {
+				return dataSet;
+			}
+		}
+		return null;
+	}
+}
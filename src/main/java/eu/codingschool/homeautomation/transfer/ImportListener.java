@@ -0,0 +1,19 @@
+package eu.codingschool.homeautomation.transfer;
+
+import java.io.IOException;
+
+/**
+ * Told about an import while it runs, so that its progress can be reported before it ends.
+ */
+public interface ImportListener {
+
+	/**
+	 * @param row the number of the row in the file, starting at 1 for the first row after any header
+	 */
+	void rowRejected(long row, String reason) throws IOException;
+
+	/**
+	 * Called after every chunk has been committed.
+	 */
+	void chunkWritten(ImportProgress progress) throws IOException;
+}
@@ -0,0 +1,32 @@
+package eu.codingschool.homeautomation.transfer;
+
+/**
+ * How far an import has got. Every row that has been read is either imported or rejected, apart from the ones of the
+ * chunk that is being written.
+ */
+public class ImportProgress {
+
+	private final long read;
+
+	private final long imported;
+
+	private final long rejected;
+
+	public ImportProgress(long read, long imported, long rejected) {
+		this.read = read;
+		this.imported = imported;
+		this.rejected = rejected;
+	}
+
+	public long getRead() {
+		return read;
+	}
+
+	public long getImported() {
+		return imported;
+	}
+
+	public long getRejected() {
+		return rejected;
+	}
+}
@@ -0,0 +1,77 @@
+package eu.codingschool.homeautomation.transfer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * Reads an array of flat objects token by token. Numbers and booleans are read as their text, so that they are
+ * checked the same way as the values of a CSV file.
+ */
+final class JsonRowReader implements RowReader {
+
+	private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+	private final JsonParser parser;
+
+	private boolean started;
+
+	JsonRowReader(InputStream in) throws IOException {
+		this.parser = JSON_FACTORY.createParser(in);
+	}
+
+	@Override
+	public Map<String, String> next() throws IOException {
+		try {
+			if (!started) {
+				JsonToken first = parser.nextToken();
+				if (first == null) {
+					return null;
+				}
+				expect(first, JsonToken.START_ARRAY, "an array of rows");
+				started = true;
+			}
+
+			JsonToken token = parser.nextToken();
+			if (token == JsonToken.END_ARRAY) {
+				return null;
+			}
+			expect(token, JsonToken.START_OBJECT, "a row");
+
+			Map<String, String> row = new LinkedHashMap<>();
+			while ((token = parser.nextToken()) == JsonToken.FIELD_NAME) {
+				String column = parser.getCurrentName();
+				token = parser.nextToken();
+				if (token == JsonToken.START_OBJECT || token == JsonToken.START_ARRAY) {
+					throw new MalformedDataException(
+							"The value of " + column + " at line " + parser.getCurrentLocation().getLineNr()
+							+ " is not a single value");
+				}
+				String value = token == JsonToken.VALUE_NULL ? null : parser.getText();
+				row.put(column, value == null || value.isEmpty() ? null : value);
+			}
+			expect(token, JsonToken.END_OBJECT, "the end of the row");
+			return row;
+		} catch (JsonProcessingException ex) {
+			throw new MalformedDataException(ex.getOriginalMessage(), ex);
+		}
+	}
+
+	private void expect(JsonToken actual, JsonToken expected, String description) throws MalformedDataException {
+		if (actual != expected) {
+			throw new MalformedDataException(
+					"Expected " + description + " at line " + parser.getCurrentLocation().getLineNr());
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		parser.close();
+	}
+}
@@ -0,0 +1,58 @@
+package eu.codingschool.homeautomation.transfer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.util.List;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+/**
+ * Writes an array with one object per row, as {@link JsonRowReader} reads it.
+ */
+final class JsonRowWriter implements RowWriter {
+
+	private static final JsonFactory JSON_FACTORY = new JsonFactory()
+			.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+	private final JsonGenerator generator;
+
+	private final List<String> columns;
+
+	JsonRowWriter(OutputStream out, List<String> columns) throws IOException {
+		this.generator = JSON_FACTORY.createGenerator(out);
+		this.columns = columns;
+		generator.writeStartArray();
+	}
+
+	@Override
+	public void write(List<?> values) throws IOException {
+		generator.writeStartObject();
+		for (int i = 0; i < columns.size(); i++) {
+			generator.writeFieldName(columns.get(i));
+			writeValue(values.get(i));
+		}
+		generator.writeEndObject();
+	}
+
+	private void writeValue(Object value) throws IOException {
+		if (value == null) {
+			generator.writeNull();
+		} else if (value instanceof Integer || value instanceof Long) {
+			generator.writeNumber(((Number) value).longValue());
+		} else if (value instanceof BigDecimal) {
+			generator.writeNumber((BigDecimal) value);
+		} else if (value instanceof Boolean) {
+			generator.writeBoolean((Boolean) value);
+		} else {
+			generator.writeString(value.toString());
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		generator.writeEndArray();
+		generator.close();
+	}
+}
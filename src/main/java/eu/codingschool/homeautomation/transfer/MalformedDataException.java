@@ -0,0 +1,20 @@
+package eu.codingschool.homeautomation.transfer;
+
+import java.io.IOException;
+
+/**
+ * Thrown when an imported file cannot be read as rows any more, e.g. because of a quote that is never closed. Unlike
+ * a row that is rejected, nothing after it can be imported.
+ */
+public class MalformedDataException extends IOException {
+
+	private static final long serialVersionUID = 1L;
+
+	public MalformedDataException(String message) {
+		super(message);
+	}
+
+	public MalformedDataException(String message, Throwable cause) {
+		super(message, cause);
+	}
+}
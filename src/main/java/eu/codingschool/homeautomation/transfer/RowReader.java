@@ -0,0 +1,17 @@
+package eu.codingschool.homeautomation.transfer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Reads the rows of an import one at a time.
+ */
+public interface RowReader extends Closeable {
+
+	/**
+	 * @return the values of the next row per column name, null where a value is missing, or null after the last row
+	 * @throws MalformedDataException if the rest of the file cannot be read as rows
+	 */
+	Map<String, String> next() throws IOException;
+}
@@ -0,0 +1,17 @@
+package eu.codingschool.homeautomation.transfer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Writes the rows of an export one at a time. Closing it ends the file, but leaves the underlying stream open.
+ */
+public interface RowWriter extends Closeable {
+
+	/**
+	 * @param values the values of the row in the order of the columns; numbers and booleans are kept as such where
+	 *               the format allows it
+	 */
+	void write(List<?> values) throws IOException;
+}
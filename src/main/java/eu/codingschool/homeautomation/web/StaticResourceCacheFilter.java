@@ -0,0 +1,80 @@
+package eu.codingschool.homeautomation.web;
+
+import java.io.IOException;
+import java.util.regex.Pattern;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+/**
+ * Sets the cache headers of the static assets. The urls with the hash of the content, which the templates link to,
+ * never change, so they are cached for a year without asking again. Any other url of an asset is revalidated on every
+ * use, which costs a 304 as long as the file has not changed.
+ * <p>
+ * The headers are set before the request goes on, so that Spring Security leaves them alone. Since the same url may be
+ * answered with the .gz file, the caches are told to keep the variants apart.
+ */
+@Component
+public class StaticResourceCacheFilter extends OncePerRequestFilter {
+
+	static final String IMMUTABLE = "public, max-age=31536000, immutable";
+
+	static final String REVALIDATE = "no-cache";
+
+	private static final String[] STATIC_PATHS = { "/css/", "/img/", "/js/", "/scss/", "/vendor/" };
+
+	/**
+	 * The md5 of the content that the resource chain inserts before the extension, e.g. app.min-{hash}.js
+	 */
+	private static final Pattern FINGERPRINT = Pattern.compile("-[0-9a-f]{32}\\.[^/]+$");
+
+	@Override
+	protected boolean shouldNotFilter(HttpServletRequest request) {
+		String path = getPath(request);
+		for (String staticPath : STATIC_PATHS) {
+			if (path.startsWith(staticPath)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+			throws ServletException, IOException {
+
+		response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+		if (!FINGERPRINT.matcher(getPath(request)).find()) {
+			response.setHeader(HttpHeaders.CACHE_CONTROL, REVALIDATE);
+			filterChain.doFilter(request, response);
+			return;
+		}
+
+		response.setHeader(HttpHeaders.CACHE_CONTROL, IMMUTABLE);
+		// a url with a hash that matches no asset must not be cached for a year
+		filterChain.doFilter(request, new HttpServletResponseWrapper(response) {
+			@Override
+			public void sendError(int sc) throws IOException {
+				setHeader(HttpHeaders.CACHE_CONTROL, REVALIDATE);
+				super.sendError(sc);
+			}
+
+			@Override
+			public void sendError(int sc, String msg) throws IOException {
+				setHeader(HttpHeaders.CACHE_CONTROL, REVALIDATE);
+				super.sendError(sc, msg);
+			}
+		});
+	}
+
+	private static String getPath(HttpServletRequest request) {
+		return request.getRequestURI().substring(request.getContextPath().length());
+	}
+}
@@ -0,0 +1,39 @@
+package eu.codingschool.homeautomation.web;
+
+import org.springframework.boot.autoconfigure.web.ResourceProperties;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.web.servlet.config.annotation.ResourceHandlerRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+import org.springframework.web.servlet.resource.GzipResourceResolver;
+import org.springframework.web.servlet.resource.VersionResourceResolver;
+
+/**
+ * Serves the static assets from urls with the hash of their content, and the .gz files written by the build to the
+ * browsers that accept gzip. The links of the templates are rewritten to those urls when
+ * spring.resources.chain.enabled is set, and so are the links of the stylesheets.
+ * <p>
+ * This replaces the handler that Spring Boot would configure from spring.resources.chain.*, which puts the gzip
+ * resolver after the version resolver: the links then get the hash of the .gz file, while the uncompressed requests
+ * are checked against the hash of the file itself and fail with a 404.
+ */
+@Configuration
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class StaticResourceConfig implements WebMvcConfigurer {
+
+	private final ResourceProperties resourceProperties;
+
+	public StaticResourceConfig(ResourceProperties resourceProperties) {
+		this.resourceProperties = resourceProperties;
+	}
+
+	@Override
+	public void addResourceHandlers(ResourceHandlerRegistry registry) {
+		registry.addResourceHandler("/**")
+				.addResourceLocations(resourceProperties.getStaticLocations())
+				.resourceChain(resourceProperties.getChain().isCache())
+				.addResolver(new GzipResourceResolver())
+				.addResolver(new VersionResourceResolver().addContentVersionStrategy("/**"));
+	}
+}
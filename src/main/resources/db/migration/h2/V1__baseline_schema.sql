@@ -0,0 +1,57 @@
+-- The schema of db/migration/mysql/V1__baseline_schema.sql for the H2 database of the tests and the benchmarks.
+
+CREATE TABLE person (
+  id INT NOT NULL AUTO_INCREMENT,
+  name VARCHAR(45) NULL,
+  surname VARCHAR(45) NULL,
+  email VARCHAR(45) NULL,
+  password VARCHAR(45) NULL,
+  role VARCHAR(45) NULL,
+  PRIMARY KEY (id)
+);
+
+CREATE TABLE room (
+  id INT NOT NULL AUTO_INCREMENT,
+  name VARCHAR(45) NULL,
+  PRIMARY KEY (id)
+);
+
+CREATE TABLE device_type (
+  id INT NOT NULL AUTO_INCREMENT,
+  type VARCHAR(45) NULL,
+  information_type VARCHAR(45) NULL,
+  unit_of_measure VARCHAR(45) NULL,
+  min_value INT NULL,
+  max_value INT NULL,
+  interaction_type VARCHAR(45) NULL,
+  icon VARCHAR(45) NULL,
+  group_color VARCHAR(45) NULL,
+  PRIMARY KEY (id)
+);
+
+CREATE TABLE device (
+  id INT NOT NULL AUTO_INCREMENT,
+  name VARCHAR(45) NULL,
+  status CHAR(1) NOT NULL DEFAULT '0',
+  information_value VARCHAR(45) NULL,
+  -- unlike on MySQL, a device may lack its room and type, as the tests of the repositories save such devices
+  room_id INT NULL,
+  device_type_id INT NULL,
+  PRIMARY KEY (id),
+  CONSTRAINT fk_Device_Room FOREIGN KEY (room_id) REFERENCES room (id),
+  CONSTRAINT fk_Device_Device_Type FOREIGN KEY (device_type_id) REFERENCES device_type (id)
+);
+
+CREATE INDEX fk_Device_Room_idx ON device (room_id);
+CREATE INDEX fk_Device_Device_Type_idx ON device (device_type_id);
+
+CREATE TABLE person_device (
+  person_id INT NOT NULL,
+  device_id INT NOT NULL,
+  PRIMARY KEY (person_id, device_id),
+  CONSTRAINT fk_Person_Device_Person FOREIGN KEY (person_id) REFERENCES person (id),
+  CONSTRAINT fk_Person_Device_Device FOREIGN KEY (device_id) REFERENCES device (id)
+);
+
+CREATE INDEX fk_Person_Device_Device_idx ON person_device (device_id);
+CREATE INDEX fk_Person_Device_Person_idx ON person_device (person_id);
@@ -0,0 +1,65 @@
+-- The changes of db/migration/mysql/V2__schema_of_the_entities.sql for the H2 database of the tests and the benchmarks.
+
+ALTER TABLE person ALTER COLUMN password VARCHAR(255) NULL;
+CREATE INDEX idx_Person_name ON person (name, id);
+
+CREATE INDEX idx_Room_name ON room (name, id);
+
+UPDATE device SET status = '0' WHERE status NOT IN ('0', '1');
+UPDATE device SET information_value = NULL WHERE NOT (TRIM(information_value) REGEXP '^-?[0-9]{1,8}(\.[0-9]+)?$');
+UPDATE device SET information_value = NULL
+WHERE ABS(CAST(TRIM(information_value) AS DECIMAL(20,10))) >= 99999999.995;
+UPDATE device SET information_value = ROUND(CAST(TRIM(information_value) AS DECIMAL(20,10)), 2)
+WHERE information_value IS NOT NULL;
+
+ALTER TABLE device ALTER COLUMN status INT NOT NULL DEFAULT 0;
+ALTER TABLE device ALTER COLUMN information_value DECIMAL(10,2) NULL;
+ALTER TABLE device ADD version INT NOT NULL DEFAULT 0;
+CREATE INDEX idx_Device_name ON device (name, id);
+CREATE INDEX idx_Device_type_value ON device (device_type_id, information_value);
+-- unlike MySQL, H2 keeps using the index it gave to the foreign key, which therefore has to be created again
+ALTER TABLE device DROP CONSTRAINT fk_Device_Device_Type;
+DROP INDEX fk_Device_Device_Type_idx;
+ALTER TABLE device ADD CONSTRAINT fk_Device_Device_Type FOREIGN KEY (device_type_id) REFERENCES device_type (id);
+
+CREATE TABLE device_history (
+  id BIGINT NOT NULL AUTO_INCREMENT,
+  device_id INT NOT NULL,
+  recorded_at BIGINT NOT NULL,
+  status BOOLEAN NOT NULL,
+  numeric_value DOUBLE NULL,
+  PRIMARY KEY (id)
+);
+
+CREATE INDEX idx_device_history_device_time ON device_history (device_id, recorded_at);
+CREATE INDEX idx_device_history_time ON device_history (recorded_at);
+
+CREATE TABLE device_history_rollup (
+  device_id INT NOT NULL,
+  resolution VARCHAR(6) NOT NULL,
+  bucket_start BIGINT NOT NULL,
+  sample_count BIGINT NOT NULL,
+  min_value DOUBLE NOT NULL,
+  max_value DOUBLE NOT NULL,
+  sum_value DOUBLE NOT NULL,
+  PRIMARY KEY (device_id, resolution, bucket_start)
+);
+
+CREATE INDEX idx_device_history_rollup_bucket ON device_history_rollup (resolution, bucket_start);
+
+CREATE TABLE replication_heartbeat (
+  id INT NOT NULL,
+  beat_at BIGINT NOT NULL,
+  PRIMARY KEY (id)
+);
+
+CREATE TABLE id_generator (
+  sequence_name VARCHAR(255) NOT NULL,
+  next_val BIGINT NULL,
+  PRIMARY KEY (sequence_name)
+);
+
+INSERT INTO id_generator (sequence_name, next_val) SELECT 'person', COALESCE(MAX(id), 0) + 1 FROM person;
+INSERT INTO id_generator (sequence_name, next_val) SELECT 'room', COALESCE(MAX(id), 0) + 1 FROM room;
+INSERT INTO id_generator (sequence_name, next_val) SELECT 'device_type', COALESCE(MAX(id), 0) + 1 FROM device_type;
+INSERT INTO id_generator (sequence_name, next_val) SELECT 'device', COALESCE(MAX(id), 0) + 1 FROM device;
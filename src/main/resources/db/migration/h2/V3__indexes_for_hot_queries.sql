@@ -0,0 +1,9 @@
+-- The indexes of db/migration/mysql/V3__indexes_for_hot_queries.sql for the H2 database of the tests and the benchmarks.
+
+CREATE UNIQUE INDEX uq_Person_email ON person (email);
+
+CREATE INDEX idx_Device_room ON device (room_id, id);
+-- the foreign key is created again, as H2 would keep using the index it was given (see V2__schema_of_the_entities.sql)
+ALTER TABLE device DROP CONSTRAINT fk_Device_Room;
+DROP INDEX fk_Device_Room_idx;
+ALTER TABLE device ADD CONSTRAINT fk_Device_Room FOREIGN KEY (room_id) REFERENCES room (id);
@@ -0,0 +1,73 @@
+-- The schema as various_resources/database/scripts/ddl-auto_generated.sql created it before the migrations, together
+-- with the columns of device_type after information_type, which the application has always needed but the script
+-- lacked. A database that was set up with that script is taken as this version (see spring.flyway.baseline-version)
+-- and brought up to date by the migrations that follow.
+
+CREATE TABLE `person` (
+  `id` INT NOT NULL AUTO_INCREMENT,
+  `name` VARCHAR(45) NULL,
+  `surname` VARCHAR(45) NULL,
+  `email` VARCHAR(45) NULL,
+  `password` VARCHAR(45) NULL,
+  `role` VARCHAR(45) NULL COMMENT 'Initially, this will be either ADMIN or USER.',
+  PRIMARY KEY (`id`))
+ENGINE = InnoDB;
+
+CREATE TABLE `room` (
+  `id` INT NOT NULL AUTO_INCREMENT,
+  `name` VARCHAR(45) NULL,
+  PRIMARY KEY (`id`))
+ENGINE = InnoDB;
+
+CREATE TABLE `device_type` (
+  `id` INT NOT NULL AUTO_INCREMENT,
+  `type` VARCHAR(45) NULL,
+  `information_type` VARCHAR(45) NULL COMMENT 'This is the kind of the information we will keep for a device type. For instance, for oven we keep \'temperature\', for lighting the \'illumination percentage\'.',
+  `unit_of_measure` VARCHAR(45) NULL,
+  `min_value` INT NULL,
+  `max_value` INT NULL,
+  `interaction_type` VARCHAR(45) NULL,
+  `icon` VARCHAR(45) NULL,
+  `group_color` VARCHAR(45) NULL,
+  PRIMARY KEY (`id`))
+ENGINE = InnoDB;
+
+CREATE TABLE `device` (
+  `id` INT NOT NULL AUTO_INCREMENT,
+  `name` VARCHAR(45) NULL,
+  `status` CHAR(1) NOT NULL DEFAULT 0 COMMENT 'This will be either 1 (on) or 0 (off).',
+  `information_value` VARCHAR(45) NULL COMMENT 'It keeps a value for the specific device related to the type of the device. For instance, for the oven we keep the temperature in Celsius degrees, for lighting we keep the percentage of the illumination, etc.',
+  `room_id` INT NOT NULL,
+  `device_type_id` INT NOT NULL,
+  PRIMARY KEY (`id`),
+  INDEX `fk_Device_Room_idx` (`room_id` ASC),
+  INDEX `fk_Device_Device_Type_idx` (`device_type_id` ASC),
+  CONSTRAINT `fk_Device_Room`
+    FOREIGN KEY (`room_id`)
+    REFERENCES `room` (`id`)
+    ON DELETE NO ACTION
+    ON UPDATE NO ACTION,
+  CONSTRAINT `fk_Device_Device_Type`
+    FOREIGN KEY (`device_type_id`)
+    REFERENCES `device_type` (`id`)
+    ON DELETE NO ACTION
+    ON UPDATE NO ACTION)
+ENGINE = InnoDB;
+
+CREATE TABLE `person_device` (
+  `person_id` INT NOT NULL,
+  `device_id` INT NOT NULL,
+  PRIMARY KEY (`person_id`, `device_id`),
+  INDEX `fk_Person_Device_Device_idx` (`device_id` ASC),
+  INDEX `fk_Person_Device_Person_idx` (`person_id` ASC),
+  CONSTRAINT `fk_Person_Device_Person`
+    FOREIGN KEY (`person_id`)
+    REFERENCES `person` (`id`)
+    ON DELETE NO ACTION
+    ON UPDATE NO ACTION,
+  CONSTRAINT `fk_Person_Device_Device`
+    FOREIGN KEY (`device_id`)
+    REFERENCES `device` (`id`)
+    ON DELETE NO ACTION
+    ON UPDATE NO ACTION)
+ENGINE = InnoDB;
@@ -0,0 +1,72 @@
+-- Brings the baseline schema up to the entities: numeric statuses and values of the devices, their version, the
+-- indexes of the keyset pages and of the value queries, the value history, the replication heartbeat and the id
+-- generator.
+
+-- the password hashes are 60 characters long
+ALTER TABLE `person`
+  MODIFY `password` VARCHAR(255) NULL,
+  ADD INDEX `idx_Person_name` (`name` ASC, `id` ASC);
+
+ALTER TABLE `room`
+  ADD INDEX `idx_Room_name` (`name` ASC, `id` ASC);
+
+-- The values that are not numbers DECIMAL(10,2) can hold are dropped, as DeviceValues.parse rejects them, and the
+-- others are rounded to two decimals first, since the conversion fails on anything it would have to cut off. Those
+-- that the rounding would carry past 8 integer digits, e.g. 99999999.999, are dropped as well.
+UPDATE `device` SET `status` = '0' WHERE `status` NOT IN ('0', '1');
+UPDATE `device` SET `information_value` = NULL
+WHERE TRIM(`information_value`) NOT REGEXP '^-?[0-9]{1,8}(\\.[0-9]+)?$';
+UPDATE `device` SET `information_value` = NULL
+WHERE ABS(CAST(TRIM(`information_value`) AS DECIMAL(20,10))) >= 99999999.995;
+UPDATE `device` SET `information_value` = ROUND(CAST(TRIM(`information_value`) AS DECIMAL(20,10)), 2)
+WHERE `information_value` IS NOT NULL;
+
+ALTER TABLE `device`
+  MODIFY `status` INT NOT NULL DEFAULT 0 COMMENT 'This will be either 1 (on) or 0 (off).',
+  MODIFY `information_value` DECIMAL(10,2) NULL COMMENT 'It keeps a value for the specific device related to the type of the device. For instance, for the oven we keep the temperature in Celsius degrees, for lighting we keep the percentage of the illumination, etc.',
+  ADD `version` INT NOT NULL DEFAULT 0 COMMENT 'Increased by every update of the device by the admin forms, so that concurrent updates are detected instead of overwriting each other.',
+  ADD INDEX `idx_Device_name` (`name` ASC, `id` ASC),
+  ADD INDEX `idx_Device_type_value` (`device_type_id` ASC, `information_value` ASC),
+  DROP INDEX `fk_Device_Device_Type_idx`;
+
+CREATE TABLE `device_history` (
+  `id` BIGINT NOT NULL AUTO_INCREMENT,
+  `device_id` INT NOT NULL,
+  `recorded_at` BIGINT NOT NULL COMMENT 'Time of the change in millis since the epoch.',
+  `status` BOOLEAN NOT NULL,
+  `numeric_value` DOUBLE NULL COMMENT 'The information value of the device, null when it is not a number.',
+  PRIMARY KEY (`id`),
+  INDEX `idx_device_history_device_time` (`device_id` ASC, `recorded_at` ASC),
+  INDEX `idx_device_history_time` (`recorded_at` ASC))
+ENGINE = InnoDB;
+
+CREATE TABLE `device_history_rollup` (
+  `device_id` INT NOT NULL,
+  `resolution` VARCHAR(6) NOT NULL COMMENT 'Either MINUTE, HOUR or DAY.',
+  `bucket_start` BIGINT NOT NULL COMMENT 'Start of the bucket in millis since the epoch.',
+  `sample_count` BIGINT NOT NULL,
+  `min_value` DOUBLE NOT NULL,
+  `max_value` DOUBLE NOT NULL,
+  `sum_value` DOUBLE NOT NULL,
+  PRIMARY KEY (`device_id`, `resolution`, `bucket_start`),
+  INDEX `idx_device_history_rollup_bucket` (`resolution` ASC, `bucket_start` ASC))
+ENGINE = InnoDB;
+
+CREATE TABLE `replication_heartbeat` (
+  `id` INT NOT NULL,
+  `beat_at` BIGINT NOT NULL COMMENT 'Time of the latest heartbeat of the primary in millis since the epoch, see homeautomation.datasource.replica-urls.',
+  PRIMARY KEY (`id`))
+ENGINE = InnoDB;
+
+CREATE TABLE `id_generator` (
+  `sequence_name` VARCHAR(255) NOT NULL COMMENT 'The table whose ids are handed out: person, room, device_type or device.',
+  `next_val` BIGINT NULL COMMENT 'The first id of the next block of ids that Hibernate reserves, see the @GenericGenerator of the entities.',
+  PRIMARY KEY (`sequence_name`))
+ENGINE = InnoDB;
+
+-- the ids handed out by Hibernate continue after the ids of the existing rows
+INSERT INTO `id_generator` (`sequence_name`, `next_val`) SELECT 'person', COALESCE(MAX(`id`), 0) + 1 FROM `person`;
+INSERT INTO `id_generator` (`sequence_name`, `next_val`) SELECT 'room', COALESCE(MAX(`id`), 0) + 1 FROM `room`;
+INSERT INTO `id_generator` (`sequence_name`, `next_val`)
+SELECT 'device_type', COALESCE(MAX(`id`), 0) + 1 FROM `device_type`;
+INSERT INTO `id_generator` (`sequence_name`, `next_val`) SELECT 'device', COALESCE(MAX(`id`), 0) + 1 FROM `device`;
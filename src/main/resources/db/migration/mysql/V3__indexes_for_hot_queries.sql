@@ -0,0 +1,9 @@
+-- Indexes for the queries that run on every request, see RepositoryIndexCheck, which checks for them on startup.
+
+-- PersonRepository.findByEmail, at every login and several times per request; the emails are the user names
+CREATE UNIQUE INDEX `uq_Person_email` ON `person` (`email`);
+
+-- DeviceRepository.findByRoomId and the room of DeviceRepository.findByPersonsIdAndRoomId, without reading the devices
+-- that are in other rooms; it takes the place of the index of the foreign key
+CREATE INDEX `idx_Device_room` ON `device` (`room_id`, `id`);
+DROP INDEX `fk_Device_Room_idx` ON `device`;
@@ -0,0 +1,25 @@
+$(document).ready(function() {
+    var grid = $('.grid-container[data-events-url]');
+    if (grid.length === 0 || typeof(EventSource) === "undefined") {
+        return;
+    }
+
+    // Keep every open dashboard in sync with the device changes (ours or of other users) without reloading the page.
+    // The browser reconnects on its own if the stream is closed.
+    var source = new EventSource(grid.attr('data-events-url'));
+
+    source.addEventListener('device-state', function(event) {
+        var state = JSON.parse(event.data);
+        var item = grid.find('.grid-item[data-id="' + state.deviceId + '"]');
+
+        item.find('.btnToggle').prop('checked', state.statusOn);
+
+        var input = item.find('.number-spinner input');
+        if (input.length > 0 && state.informationValue !== null) {
+            var value = Number(state.informationValue);
+            input.attr('value', state.informationValue);
+            item.find('.btn-plus').prop('disabled', value >= Number(input.attr('max')));
+            item.find('.btn-minus').prop('disabled', value <= Number(input.attr('min')));
+        }
+    });
+});
@@ -4,15 +4,18 @@ $(document).ready(function() {
         input = btn.closest('.number-spinner').find('input'),
         value = Number(input.attr('value').trim());
 
+        var delta = 0;
         if (btn.attr('data-action') === 'plus') {
             if (value < Number(input.attr('max'))) {
                 value++;
+                delta = 1;
             }
             enableButton(findBtnMinus(input));
         } 
         if (btn.attr('data-action') === 'minus') {
             if (value > Number(input.attr('min'))) {
                 value--;
+                delta = -1;
             }
             enableButton(findBtnPlus(input));
         }
@@ -20,7 +23,9 @@ $(document).ready(function() {
 
         enableDisableBtnOnBoundaryValues(value, input);
 
-        updateDatabase($(this).attr('href'), value);
+        if (delta !== 0) {
+            adjustValue($(this).attr('href'), delta, input);
+        }
     });
 
     function findBtnMinus(input) {
@@ -48,17 +53,44 @@ $(document).ready(function() {
         }
     }
 
-    function updateDatabase(href, value) {
+    // Only the change is sent, the server adds it to the latest value and keeps it within the range of the device
+    // type, so presses from other dashboards are never lost. One request per device at a time; presses made while a
+    // request is running are summed up and sent together.
+    var pendingDeltas = {};
+
+    function adjustValue(href, delta, input) {
+        var sending = href in pendingDeltas;
+        pendingDeltas[href] = (pendingDeltas[href] || 0) + delta;
+        if (!sending) {
+            sendDelta(href, input);
+        }
+    }
+
+    function sendDelta(href, input) {
+        var delta = pendingDeltas[href];
+        pendingDeltas[href] = 0;
         $.ajax({
             type: "PATCH",
-            url: href.replace("{value}", value),
-            success: function(result) {
-                // TODO this is bad practice since AJAX is used!
-                window.location.reload();
+            url: href.replace("{delta}", delta),
+            // other dashboards are updated through the device events stream, see device-events.js
+            success: function(state) {
+                if (pendingDeltas[href] === 0 && state.informationValue !== null) {
+                    input.attr('value', state.informationValue);
+                    enableButton(findBtnMinus(input));
+                    enableButton(findBtnPlus(input));
+                    enableDisableBtnOnBoundaryValues(Number(state.informationValue), input);
+                }
             },
 			error: function(err) {
 				console.log("could not update device information value: " + JSON.stringify(err.responseJSON));
 				alert("Something went wrong!\nCheck logs for more information.");
+            },
+            complete: function() {
+                if (pendingDeltas[href] !== 0) {
+                    sendDelta(href, input);
+                } else {
+                    delete pendingDeltas[href];
+                }
             }
 		});
     }
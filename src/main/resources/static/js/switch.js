@@ -1,14 +1,13 @@
 $(document).ready(function() {
 
     $(".btnToggle").click(function() {
+        var toggle = this;
         $.ajax({
             type: "PATCH",
-            url: $(this).attr('href'), 
-            success: function(result) {
-                // TODO this is bad practice since AJAX is used!
-                window.location.reload();
-            },
+            url: $(this).attr('href').replace("{status}", toggle.checked),
+            // the page is updated through the device events stream, see device-events.js
 			error: function(err) {
+				toggle.checked = !toggle.checked;
 				console.log("could not update device status: " + JSON.stringify(err.responseJSON));
 				alert("Something went wrong!\nCheck logs for more information.");
             }
@@ -0,0 +1,109 @@
+package eu.codingschool.homeautomation;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import eu.codingschool.homeautomation.model.Device;
+import eu.codingschool.homeautomation.repositories.DeviceRepository;
+
+/**
+ * The application starts against a database that was set up without Flyway with the baseline schema, as the script of
+ * various_resources did, and holds the values that schema allowed. The migrations after the baseline have to bring it
+ * up to the entities, or Hibernate's validation and the index check fail the startup.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = HomeAutomationApplication.class)
+@TestPropertySource(properties = {
+		"spring.datasource.url=" + SchemaMigrationIntegrationTest.URL,
+		"spring.flyway.baseline-on-migrate=true",
+		"spring.flyway.baseline-version=1"
+})
+public class SchemaMigrationIntegrationTest {
+
+	static final String URL = "jdbc:h2:mem:baseline;DB_CLOSE_DELAY=-1";
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	private DeviceRepository deviceRepository;
+
+	@BeforeClass
+	public static void setUpBaselineDatabase() {
+		DriverManagerDataSource dataSource = new DriverManagerDataSource(URL, "sa", "sa");
+		new ResourceDatabasePopulator(new ClassPathResource("db/migration/h2/V1__baseline_schema.sql"))
+				.execute(dataSource);
+
+		JdbcTemplate baseline = new JdbcTemplate(dataSource);
+		baseline.update("INSERT INTO person(id, name, surname, email, password, role) "
+				+ "VALUES (1, 'Admin', 'Admin', 'admin@foo.com', '***', 'ADMIN')");
+		baseline.update("INSERT INTO room(id, name) VALUES (1, 'Kitchen')");
+		baseline.update("INSERT INTO device_type(id, type, information_type, min_value, max_value) "
+				+ "VALUES (1, 'Thermostat', 'Target temp.', 10, 30)");
+		baseline.update("INSERT INTO device(id, name, status, information_value, room_id, device_type_id) "
+				+ "VALUES (1, 'Thermostat', '1', '21.5', 1, 1)");
+		baseline.update("INSERT INTO device(id, name, status, information_value, room_id, device_type_id) "
+				+ "VALUES (2, 'Thermostat #2', '0', ' 21.555 ', 1, 1)");
+		baseline.update("INSERT INTO device(id, name, status, information_value, room_id, device_type_id) "
+				+ "VALUES (3, 'Thermostat #3', '0', 'warm', 1, 1)");
+		baseline.update("INSERT INTO device(id, name, status, information_value, room_id, device_type_id) "
+				+ "VALUES (4, 'Thermostat #4', '1', '99999999.999', 1, 1)");
+		baseline.update("INSERT INTO device(id, name, status, information_value, room_id, device_type_id) "
+				+ "VALUES (5, 'Thermostat #5', 'x', '123456789', 1, 1)");
+		baseline.update("INSERT INTO person_device(person_id, device_id) VALUES (1, 1)");
+	}
+
+	@Test
+	public void migrate_shouldApplyTheMigrationsAfterTheBaseline_whenDatabaseSetUpWithoutFlyway() {
+		List<String> versions = jdbcTemplate.queryForList(
+				"SELECT \"version\" FROM \"flyway_schema_history\" WHERE \"success\" ORDER BY \"installed_rank\"",
+				String.class);
+
+		assertThat(versions).containsExactly("1", "2", "3");
+	}
+
+	@Test
+	public void migrate_shouldConvertTheStatusesAndValues_whenDatabaseSetUpWithoutFlyway() {
+		// when
+		Map<Integer, Device> devices = deviceRepository.findAllById(Arrays.asList(1, 2, 3, 4, 5))
+													   .stream()
+													   .collect(Collectors.toMap(Device::getId, device -> device));
+
+		// then
+		assertThat(devices).containsOnlyKeys(1, 2, 3, 4, 5);
+		assertThat(devices.get(1).isStatusOn()).isTrue();
+		assertThat(devices.get(1).getNumericValue()).isEqualTo(new BigDecimal("21.50"));
+		assertThat(devices.get(2).isStatusOn()).isFalse();
+		assertThat(devices.get(2).getNumericValue()).isEqualTo(new BigDecimal("21.56"));
+		assertThat(devices.get(3).getNumericValue()).isNull();
+		assertThat(devices.get(4).getNumericValue()).isNull();
+		assertThat(devices.get(5).isStatusOn()).isFalse();
+		assertThat(devices.get(5).getNumericValue()).isNull();
+		assertThat(devices.values()).extracting(Device::getVersion).containsOnly(0);
+	}
+
+	@Test
+	public void migrate_shouldContinueTheIdsAfterTheExistingRows_whenDatabaseSetUpWithoutFlyway() {
+		Long nextDeviceId = jdbcTemplate.queryForObject(
+				"SELECT next_val FROM id_generator WHERE sequence_name = 'device'", Long.class);
+
+		assertThat(nextDeviceId).isEqualTo(6L);
+	}
+}
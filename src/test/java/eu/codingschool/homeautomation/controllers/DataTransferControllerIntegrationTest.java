@@ -0,0 +1,291 @@
+package eu.codingschool.homeautomation.controllers;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.springframework.security.test.web.servlet.setup.SecurityMockMvcConfigurers.springSecurity;
+import static org.springframework.test.context.jdbc.Sql.ExecutionPhase.AFTER_TEST_METHOD;
+import static org.springframework.test.context.jdbc.Sql.ExecutionPhase.BEFORE_TEST_METHOD;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.forwardedUrl;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.test.context.support.WithUserDetails;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.jdbc.Sql;
+import org.springframework.test.context.jdbc.SqlGroup;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import eu.codingschool.homeautomation.HomeAutomationApplication;
+import eu.codingschool.homeautomation.model.Room;
+import eu.codingschool.homeautomation.services.DevicePermissionService;
+import eu.codingschool.homeautomation.services.DeviceStateService;
+import eu.codingschool.homeautomation.services.RoomService;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.MOCK, classes = HomeAutomationApplication.class)
+@TestPropertySource(
+		locations = "classpath:application-integrationtest.properties",
+		// small chunks, so that a few rows are enough to span several of them
+		properties = "homeautomation.data-transfer.chunk-size=2"
+)
+@SqlGroup({
+	@Sql(executionPhase = BEFORE_TEST_METHOD, scripts = "/test-data-population.sql"),
+	@Sql(executionPhase = AFTER_TEST_METHOD, scripts = "/test-data-cleanup.sql")
+})
+public class DataTransferControllerIntegrationTest {
+
+	@Autowired
+	private WebApplicationContext context;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	private DeviceStateService deviceStateService;
+
+	@Autowired
+	private DevicePermissionService devicePermissionService;
+
+	@Autowired
+	private RoomService roomService;
+
+	private MockMvc mockMvc;
+
+	private static final String ENDPOINT_ADMIN_EXPORT = "/admin/export/{dataSet}";
+	private static final String ENDPOINT_ADMIN_IMPORT = "/admin/import/{dataSet}";
+
+	private static final String MEDIA_TYPE_CSV = "text/csv";
+
+	private static final String VIEW_ERROR_403 = "/error/403";
+
+	private static final String USER_DETAILS_SERVICE = "userDetailsService";
+
+	// User inserted in database via test/resources/test-data-population.sql
+	private static final String USER_ADMIN = "testadmin@foo.com";
+	private static final String USER_SIMPLE = "testuser1@foo.com";
+
+	@Before
+	public void setup() {
+		// explicitly configure the filter chain
+		mockMvc = MockMvcBuilders.webAppContextSetup(context).apply(springSecurity()).build();
+		// the states are kept in memory across tests, while the database is populated again for each of them
+		for (int deviceId = 1; deviceId <= 7; deviceId++) {
+			deviceStateService.evict(deviceId);
+		}
+	}
+
+	@Test
+	@WithUserDetails(value = USER_ADMIN, userDetailsServiceBeanName = USER_DETAILS_SERVICE)
+	public void exportDevices_shouldWriteEveryDeviceAsCsv_whenAdminUser() throws Exception {
+		String expected =
+				"id,name,deviceType,room,statusOn,informationValue\r\n" +
+				"1,Air Condition #1,1,1,true,23\r\n" +
+				"2,Lighting #1,2,1,true,50\r\n" +
+				"3,Door #1,3,1,true,\r\n" +
+				"4,Lighting #2,2,2,false,100\r\n" +
+				"5,Door #2,3,2,true,\r\n" +
+				"6,Air Condition #2,1,3,true,25\r\n" +
+				"7,Lighting #3,2,3,false,0\r\n";
+
+		mockMvc.perform(get(ENDPOINT_ADMIN_EXPORT, "devices"))
+			   .andExpect(status().isOk())
+			   .andExpect(content().contentTypeCompatibleWith(MEDIA_TYPE_CSV))
+			   .andExpect(content().string(expected));
+	}
+
+	@Test
+	@WithUserDetails(value = USER_ADMIN, userDetailsServiceBeanName = USER_DETAILS_SERVICE)
+	public void exportDevices_shouldWriteTheLatestValues_whenTheyAreOnlyInMemory() throws Exception {
+		deviceStateService.updateInformationValue(1, "21.5");
+
+		mockMvc.perform(get(ENDPOINT_ADMIN_EXPORT, "devices").param("format", "JSON"))
+			   .andExpect(status().isOk())
+			   .andExpect(jsonPath("$[0].id", equalTo(1)))
+			   .andExpect(jsonPath("$[0].informationValue", equalTo("21.5")));
+	}
+
+	@Test
+	@WithUserDetails(value = USER_ADMIN, userDetailsServiceBeanName = USER_DETAILS_SERVICE)
+	public void exportRooms_shouldWriteEveryRoomAsJson_whenAdminUser() throws Exception {
+		mockMvc.perform(get(ENDPOINT_ADMIN_EXPORT, "rooms").param("format", "JSON"))
+			   .andExpect(status().isOk())
+			   .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON))
+			   .andExpect(jsonPath("$.length()", equalTo(3)))
+			   .andExpect(jsonPath("$[2].id", equalTo(3)))
+			   .andExpect(jsonPath("$[2].name", equalTo("Bedroom")));
+	}
+
+	@Test
+	@WithUserDetails(value = USER_ADMIN, userDetailsServiceBeanName = USER_DETAILS_SERVICE)
+	public void export_shouldReturnNotFound_whenDataSetDoesNotExist() throws Exception {
+		mockMvc.perform(get(ENDPOINT_ADMIN_EXPORT, "buildings"))
+			   .andExpect(status().isNotFound());
+	}
+
+	@Test
+	@WithUserDetails(value = USER_SIMPLE, userDetailsServiceBeanName = USER_DETAILS_SERVICE)
+	public void export_shouldBeForbidden_whenSimpleUser() throws Exception {
+		mockMvc.perform(get(ENDPOINT_ADMIN_EXPORT, "devices"))
+			   .andExpect(status().isForbidden())
+			   .andExpect(forwardedUrl(VIEW_ERROR_403));
+	}
+
+	@Test
+	@WithUserDetails(value = USER_ADMIN, userDetailsServiceBeanName = USER_DETAILS_SERVICE)
+	public void importRooms_shouldWriteTheValidRowsAndReportTheOthers_whenAdminUser() throws Exception {
+		String csv =
+				"id,name\n" +
+				",Garage\n" +
+				"10,\"Hall, upstairs\"\n" +
+				"11,\n" +
+				",Attic\n";
+
+		String events = mockMvc.perform(post(ENDPOINT_ADMIN_IMPORT, "rooms").contentType(MEDIA_TYPE_CSV).content(csv))
+			   .andExpect(status().isOk())
+			   .andReturn().getResponse().getContentAsString();
+
+		assertEquals(Arrays.asList(
+				"{\"event\":\"progress\",\"read\":2,\"imported\":2,\"rejected\":0}",
+				"{\"event\":\"rejected\",\"row\":3,\"reason\":\"name: This field is required.\"}",
+				"{\"event\":\"progress\",\"read\":4,\"imported\":3,\"rejected\":1}",
+				"{\"event\":\"done\",\"read\":4,\"imported\":3,\"rejected\":1}"
+		), Arrays.asList(events.split("\n")));
+		assertEquals("Hall, upstairs", jdbcTemplate.queryForObject("SELECT name FROM room WHERE id = 10", String.class));
+		assertEquals(Integer.valueOf(6), jdbcTemplate.queryForObject("SELECT COUNT(*) FROM room", Integer.class));
+	}
+
+	@Test
+	@WithUserDetails(value = USER_ADMIN, userDetailsServiceBeanName = USER_DETAILS_SERVICE)
+	public void importRooms_shouldKeepTheIdsOfTheFileFromTheIdGenerator_whenAdminUser() throws Exception {
+		// given
+		mockMvc.perform(post(ENDPOINT_ADMIN_IMPORT, "rooms").contentType(MEDIA_TYPE_CSV).content("name\nGarage\n"))
+			   .andExpect(status().isOk());
+		int garageId = jdbcTemplate.queryForObject("SELECT id FROM room WHERE name = 'Garage'", Integer.class);
+
+		// when, the id of the attic would be the next one that the generator hands out otherwise
+		mockMvc.perform(post(ENDPOINT_ADMIN_IMPORT, "rooms").contentType(MEDIA_TYPE_CSV)
+						.content("id,name\n" + (garageId + 1) + ",Attic\n,Cellar\n"))
+			   .andExpect(status().isOk());
+		Room loft = roomService.save(new Room("Loft"));
+
+		// then
+		assertEquals(Integer.valueOf(garageId + 1), jdbcTemplate.queryForObject(
+				"SELECT id FROM room WHERE name = 'Attic'", Integer.class));
+		int cellarId = jdbcTemplate.queryForObject("SELECT id FROM room WHERE name = 'Cellar'", Integer.class);
+		assertTrue(cellarId > garageId + 1);
+		assertTrue(loft.getId() > garageId + 1);
+		assertEquals(Integer.valueOf(7), jdbcTemplate.queryForObject("SELECT COUNT(*) FROM room", Integer.class));
+	}
+
+	@Test
+	@WithUserDetails(value = USER_ADMIN, userDetailsServiceBeanName = USER_DETAILS_SERVICE)
+	public void importDevices_shouldWriteTheRestOfTheChunk_whenTheDatabaseRejectsARow() throws Exception {
+		String json = "[" +
+				"{\"name\": \"Heater\", \"deviceType\": 1, \"room\": 2, \"statusOn\": true, \"informationValue\": 21}," +
+				"{\"name\": \"Ghost\", \"deviceType\": 1, \"room\": 99}," +
+				"{\"name\": \"Lamp\", \"deviceType\": 2, \"room\": 2, \"informationValue\": \"bright\"}," +
+				"{\"name\": \"Fan\", \"deviceType\": 2, \"room\": 3, \"statusOn\": 0}" +
+				"]";
+
+		String events = mockMvc.perform(
+					post(ENDPOINT_ADMIN_IMPORT, "devices").contentType(MediaType.APPLICATION_JSON).content(json))
+			   .andExpect(status().isOk())
+			   .andReturn().getResponse().getContentAsString();
+
+		List<String> lines = Arrays.asList(events.split("\n"));
+		assertEquals(5, lines.size());
+		assertTrue(lines.get(0).startsWith("{\"event\":\"rejected\",\"row\":2,"));
+		assertEquals("{\"event\":\"rejected\",\"row\":3,\"reason\":\"informationValue: 'bright' is not a number\"}",
+				lines.get(2));
+		assertEquals("{\"event\":\"done\",\"read\":4,\"imported\":2,\"rejected\":2}", lines.get(4));
+		assertEquals(Arrays.asList("Heater", "Fan"), jdbcTemplate.queryForList(
+				"SELECT name FROM device WHERE id > 7 ORDER BY id", String.class));
+	}
+
+	@Test
+	@WithUserDetails(value = USER_ADMIN, userDetailsServiceBeanName = USER_DETAILS_SERVICE)
+	public void importDevices_shouldRejectTheRows_whenValueOutOfRangeOfDeviceType() throws Exception {
+		jdbcTemplate.update("UPDATE device_type SET min_value = 16, max_value = 30 WHERE id = 1");
+		String csv =
+				"name,deviceType,room,informationValue\n" +
+				"Heater,1,2,21.5\n" +
+				"Sauna,1,2,90\n" +
+				"Cellar,1,2,-5\n" +
+				"Lamp,2,2,90\n";
+
+		String events = mockMvc.perform(post(ENDPOINT_ADMIN_IMPORT, "devices").contentType(MEDIA_TYPE_CSV).content(csv))
+			   .andExpect(status().isOk())
+			   .andReturn().getResponse().getContentAsString();
+
+		List<String> lines = Arrays.asList(events.split("\n"));
+		assertEquals("{\"event\":\"rejected\",\"row\":2,"
+				+ "\"reason\":\"informationValue: '90' is out of the range of the device type\"}", lines.get(0));
+		assertEquals("{\"event\":\"rejected\",\"row\":3,"
+				+ "\"reason\":\"informationValue: '-5' is out of the range of the device type\"}", lines.get(1));
+		assertEquals("{\"event\":\"done\",\"read\":4,\"imported\":2,\"rejected\":2}", lines.get(lines.size() - 1));
+		assertEquals(Arrays.asList("Heater", "Lamp"), jdbcTemplate.queryForList(
+				"SELECT name FROM device WHERE id > 7 ORDER BY id", String.class));
+	}
+
+	@Test
+	@WithUserDetails(value = USER_ADMIN, userDetailsServiceBeanName = USER_DETAILS_SERVICE)
+	public void importAssignments_shouldGiveTheUsersAccess_whenAdminUser() throws Exception {
+		// keep the devices of the user in memory before the import
+		assertFalse(devicePermissionService.isAssigned(102, 1));
+
+		mockMvc.perform(post(ENDPOINT_ADMIN_IMPORT, "assignments").contentType(MEDIA_TYPE_CSV)
+						.content("person,device\n102,1\n102,2\n"))
+			   .andExpect(status().isOk());
+
+		assertTrue(devicePermissionService.isAssigned(102, 1));
+		// the assignment that already existed is rejected by the primary key, the new one is added to devices 2, 4, 7
+		assertEquals(Integer.valueOf(4), jdbcTemplate.queryForObject(
+				"SELECT COUNT(*) FROM person_device WHERE person_id = 102", Integer.class));
+	}
+
+	@Test
+	@WithUserDetails(value = USER_ADMIN, userDetailsServiceBeanName = USER_DETAILS_SERVICE)
+	public void importRooms_shouldKeepTheRowsBefore_whenTheFileIsMalformed() throws Exception {
+		String csv =
+				"name\n" +
+				"Garage\n" +
+				"\"Attic\n";
+
+		String events = mockMvc.perform(post(ENDPOINT_ADMIN_IMPORT, "rooms").contentType(MEDIA_TYPE_CSV).content(csv))
+			   .andExpect(status().isOk())
+			   .andReturn().getResponse().getContentAsString();
+
+		assertEquals(Arrays.asList(
+				"{\"event\":\"progress\",\"read\":1,\"imported\":1,\"rejected\":0}",
+				"{\"event\":\"aborted\",\"reason\":\"The quote opened at line 3 is never closed\"}"
+		), Arrays.asList(events.split("\n")));
+		assertEquals(Integer.valueOf(1), jdbcTemplate.queryForObject(
+				"SELECT COUNT(*) FROM room WHERE name = 'Garage'", Integer.class));
+	}
+
+	@Test
+	@WithUserDetails(value = USER_SIMPLE, userDetailsServiceBeanName = USER_DETAILS_SERVICE)
+	public void import_shouldBeForbidden_whenSimpleUser() throws Exception {
+		mockMvc.perform(post(ENDPOINT_ADMIN_IMPORT, "rooms").contentType(MEDIA_TYPE_CSV).content("name\nGarage\n"))
+			   .andExpect(status().isForbidden())
+			   .andExpect(forwardedUrl(VIEW_ERROR_403));
+	}
+}
@@ -0,0 +1,222 @@
+package eu.codingschool.homeautomation.controllers;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.junit.Assert.assertNotEquals;
+import static org.springframework.security.test.web.servlet.setup.SecurityMockMvcConfigurers.springSecurity;
+import static org.springframework.test.context.jdbc.Sql.ExecutionPhase.AFTER_TEST_METHOD;
+import static org.springframework.test.context.jdbc.Sql.ExecutionPhase.BEFORE_TEST_METHOD;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.forwardedUrl;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.test.context.support.WithUserDetails;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.jdbc.Sql;
+import org.springframework.test.context.jdbc.SqlGroup;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import eu.codingschool.homeautomation.HomeAutomationApplication;
+import eu.codingschool.homeautomation.services.DevicePermissionService;
+import eu.codingschool.homeautomation.services.DeviceStateService;
+import eu.codingschool.homeautomation.services.StateVersionService;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.MOCK, classes = HomeAutomationApplication.class)
+@TestPropertySource(locations = "classpath:application-integrationtest.properties")
+@SqlGroup({
+	@Sql(executionPhase = BEFORE_TEST_METHOD, scripts = "/test-data-population.sql"),
+	@Sql(executionPhase = AFTER_TEST_METHOD, scripts = "/test-data-cleanup.sql")
+})
+public class DeviceApiControllerIntegrationTest {
+
+	@Autowired
+	private WebApplicationContext context;
+
+	@Autowired
+	private DeviceStateService deviceStateService;
+
+	@Autowired
+	private DevicePermissionService devicePermissionService;
+
+	@Autowired
+	private StateVersionService stateVersionService;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	private MockMvc mockMvc;
+
+	private static final String ENDPOINT_API_USER_DEVICES = "/api/v1/users/{userId}/devices";
+	private static final String ENDPOINT_API_USER_ROOM_DEVICES = "/api/v1/users/{userId}/rooms/{roomId}/devices";
+	private static final String ENDPOINT_API_DEVICE = "/api/v1/devices/{id}";
+
+	private static final String VIEW_ERROR_403 = "/error/403";
+
+	private static final String USER_DETAILS_SERVICE = "userDetailsService";
+
+	// Users inserted in database via test/resources/test-data-population.sql
+	private static final String USER_ADMIN = "testadmin@foo.com";
+	private static final String USER_SIMPLE = "testuser1@foo.com";
+	private static final int USER_SIMPLE_ID = 102;
+
+	@Before
+	public void setup() {
+		// explicitly configure the filter chain
+		mockMvc = MockMvcBuilders.webAppContextSetup(context).apply(springSecurity()).build();
+		// the states and assignments are kept in memory across tests, while the database is populated for each of them
+		for (int deviceId = 1; deviceId <= 7; deviceId++) {
+			deviceStateService.evict(deviceId);
+		}
+		devicePermissionService.invalidate(USER_SIMPLE_ID);
+	}
+
+	@Test
+	@WithUserDetails(value = USER_SIMPLE, userDetailsServiceBeanName = USER_DETAILS_SERVICE)
+	public void getUserDevices_shouldReturnTheDevicesWithAnETag_whenSameUser() throws Exception {
+		mockMvc.perform(get(ENDPOINT_API_USER_DEVICES, USER_SIMPLE_ID))
+			   .andExpect(status().isOk())
+			   .andExpect(header().string(HttpHeaders.ETAG, notNullValue()))
+			   .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "no-cache, private"))
+			   .andExpect(jsonPath("$.length()", equalTo(3)))
+			   .andExpect(jsonPath("$[0].id", equalTo(2)))
+			   .andExpect(jsonPath("$[0].informationValue", equalTo("50")));
+	}
+
+	@Test
+	@WithUserDetails(value = USER_SIMPLE, userDetailsServiceBeanName = USER_DETAILS_SERVICE)
+	public void getUserDevices_shouldReturnNotModified_whenNothingHasChanged() throws Exception {
+		String etag = getETag(ENDPOINT_API_USER_DEVICES, USER_SIMPLE_ID);
+
+		mockMvc.perform(get(ENDPOINT_API_USER_DEVICES, USER_SIMPLE_ID).header(HttpHeaders.IF_NONE_MATCH, etag))
+			   .andExpect(status().isNotModified())
+			   .andExpect(header().string(HttpHeaders.ETAG, etag))
+			   .andExpect(content().string(""));
+	}
+
+	@Test
+	@WithUserDetails(value = USER_SIMPLE, userDetailsServiceBeanName = USER_DETAILS_SERVICE)
+	public void getUserDevices_shouldNotReadTheLoggedInPerson_untilSomethingHasChanged() throws Exception {
+		String etag = getETag(ENDPOINT_API_USER_DEVICES, USER_SIMPLE_ID);
+		// behind the application, so the person cannot be found by the email of the login any more
+		jdbcTemplate.update("UPDATE person SET email = 'renamed@foo.com' WHERE id = ?", USER_SIMPLE_ID);
+
+		mockMvc.perform(get(ENDPOINT_API_USER_DEVICES, USER_SIMPLE_ID).header(HttpHeaders.IF_NONE_MATCH, etag))
+			   .andExpect(status().isNotModified());
+
+		stateVersionService.changeAll();
+		mockMvc.perform(get(ENDPOINT_API_USER_DEVICES, USER_SIMPLE_ID).header(HttpHeaders.IF_NONE_MATCH, etag))
+			   .andExpect(status().isForbidden())
+			   .andExpect(forwardedUrl(VIEW_ERROR_403));
+	}
+
+	@Test
+	@WithUserDetails(value = USER_SIMPLE, userDetailsServiceBeanName = USER_DETAILS_SERVICE)
+	public void getUserDevices_shouldReturnNotModified_whenOnlyTheDevicesOfOthersHaveChanged() throws Exception {
+		String etag = getETag(ENDPOINT_API_USER_DEVICES, USER_SIMPLE_ID);
+
+		// device 1 is not assigned to the user
+		deviceStateService.updateStatus(1, false);
+
+		mockMvc.perform(get(ENDPOINT_API_USER_DEVICES, USER_SIMPLE_ID).header(HttpHeaders.IF_NONE_MATCH, etag))
+			   .andExpect(status().isNotModified());
+	}
+
+	@Test
+	@WithUserDetails(value = USER_SIMPLE, userDetailsServiceBeanName = USER_DETAILS_SERVICE)
+	public void getUserDevices_shouldReturnTheNewState_whenADeviceOfTheUserHasChanged() throws Exception {
+		String etag = getETag(ENDPOINT_API_USER_DEVICES, USER_SIMPLE_ID);
+
+		deviceStateService.updateInformationValue(2, "75");
+
+		String newETag = mockMvc.perform(
+					get(ENDPOINT_API_USER_DEVICES, USER_SIMPLE_ID).header(HttpHeaders.IF_NONE_MATCH, etag))
+			   .andExpect(status().isOk())
+			   .andExpect(jsonPath("$[0].informationValue", equalTo("75")))
+			   .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+		assertNotEquals(etag, newETag);
+	}
+
+	@Test
+	@WithUserDetails(value = USER_SIMPLE, userDetailsServiceBeanName = USER_DETAILS_SERVICE)
+	public void getUserDevices_shouldReturnTheDevices_whenADeviceOrAssignmentHasBeenSaved() throws Exception {
+		String etag = getETag(ENDPOINT_API_USER_DEVICES, USER_SIMPLE_ID);
+
+		stateVersionService.changeAll();
+
+		mockMvc.perform(get(ENDPOINT_API_USER_DEVICES, USER_SIMPLE_ID).header(HttpHeaders.IF_NONE_MATCH, etag))
+			   .andExpect(status().isOk());
+	}
+
+	@Test
+	@WithUserDetails(value = USER_SIMPLE, userDetailsServiceBeanName = USER_DETAILS_SERVICE)
+	public void getUserDevices_shouldBeForbidden_whenAnotherUser() throws Exception {
+		mockMvc.perform(get(ENDPOINT_API_USER_DEVICES, 103))
+			   .andExpect(status().isForbidden())
+			   .andExpect(forwardedUrl(VIEW_ERROR_403));
+	}
+
+	@Test
+	@WithUserDetails(value = USER_SIMPLE, userDetailsServiceBeanName = USER_DETAILS_SERVICE)
+	public void getUserDevicesPerRoom_shouldReturnTheDevicesOfTheRoom_whenSameUser() throws Exception {
+		mockMvc.perform(get(ENDPOINT_API_USER_ROOM_DEVICES, USER_SIMPLE_ID, 3))
+			   .andExpect(status().isOk())
+			   .andExpect(header().string(HttpHeaders.ETAG, notNullValue()))
+			   .andExpect(jsonPath("$.length()", equalTo(1)))
+			   .andExpect(jsonPath("$[0].id", equalTo(7)));
+	}
+
+	@Test
+	@WithUserDetails(value = USER_SIMPLE, userDetailsServiceBeanName = USER_DETAILS_SERVICE)
+	public void getDevice_shouldReturnNotModified_whenTheDeviceHasNotChanged() throws Exception {
+		String etag = getETag(ENDPOINT_API_DEVICE, 4);
+
+		// another device of the user changes
+		deviceStateService.updateStatus(2, false);
+
+		mockMvc.perform(get(ENDPOINT_API_DEVICE, 4).header(HttpHeaders.IF_NONE_MATCH, etag))
+			   .andExpect(status().isNotModified());
+	}
+
+	@Test
+	@WithUserDetails(value = USER_SIMPLE, userDetailsServiceBeanName = USER_DETAILS_SERVICE)
+	public void getDevice_shouldReturnTheDevice_whenAssignedToUser() throws Exception {
+		mockMvc.perform(get(ENDPOINT_API_DEVICE, 4))
+			   .andExpect(status().isOk())
+			   .andExpect(jsonPath("$.name", equalTo("Lighting #2")))
+			   .andExpect(jsonPath("$.statusOn", equalTo(false)));
+	}
+
+	@Test
+	@WithUserDetails(value = USER_SIMPLE, userDetailsServiceBeanName = USER_DETAILS_SERVICE)
+	public void getDevice_shouldBeForbidden_whenNotAssignedToUser() throws Exception {
+		mockMvc.perform(get(ENDPOINT_API_DEVICE, 1))
+			   .andExpect(status().isForbidden());
+	}
+
+	@Test
+	@WithUserDetails(value = USER_ADMIN, userDetailsServiceBeanName = USER_DETAILS_SERVICE)
+	public void getDevice_shouldReturnNotFound_whenDeviceDoesNotExist() throws Exception {
+		mockMvc.perform(get(ENDPOINT_API_DEVICE, 99))
+			   .andExpect(status().isNotFound());
+	}
+
+	private String getETag(String url, Object... uriVars) throws Exception {
+		return mockMvc.perform(get(url, uriVars))
+					  .andExpect(status().isOk())
+					  .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+	}
+}
@@ -3,35 +3,55 @@ package eu.codingschool.homeautomation.controllers;
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.CoreMatchers.isA;
 import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
 import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.hasProperty;
 import static org.hamcrest.Matchers.hasSize;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.atMost;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.verify;
 import static org.springframework.security.test.web.servlet.setup.SecurityMockMvcConfigurers.springSecurity;
 import static org.springframework.test.context.jdbc.Sql.ExecutionPhase.AFTER_TEST_METHOD;
 import static org.springframework.test.context.jdbc.Sql.ExecutionPhase.BEFORE_TEST_METHOD;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
+import java.util.Arrays;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
 import org.springframework.security.test.context.support.WithUserDetails;
 import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.context.jdbc.Sql;
 import org.springframework.test.context.jdbc.SqlGroup;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.RequestBuilder;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import org.springframework.web.context.WebApplicationContext;
 
 import eu.codingschool.homeautomation.HomeAutomationApplication;
 import eu.codingschool.homeautomation.model.Device;
+import eu.codingschool.homeautomation.model.HistoryResolution;
 import eu.codingschool.homeautomation.repositories.DeviceRepository;
+import eu.codingschool.homeautomation.repositories.PersonRepository;
+import eu.codingschool.homeautomation.services.DeviceHistoryService;
+import eu.codingschool.homeautomation.services.DeviceStateService;
+import eu.codingschool.homeautomation.services.StateVersionService;
 
 @RunWith(SpringRunner.class)
 @SpringBootTest(
@@ -41,6 +61,7 @@ import eu.codingschool.homeautomation.repositories.DeviceRepository;
 // We could have @Autowired MockMvc if Spring security was absent and we didn't configure that via setUp().
 //@AutoConfigureMockMvc
 @TestPropertySource(locations = "classpath:application-integrationtest.properties")
+@Import(PersonRepositoryRecorder.class)
 @SqlGroup({
 	@Sql(executionPhase = BEFORE_TEST_METHOD, scripts = "/test-data-population.sql"),
 	@Sql(executionPhase = AFTER_TEST_METHOD, scripts = "/test-data-cleanup.sql")
@@ -52,6 +73,24 @@ public class DeviceControllerIntegrationTest {
 	
 	@Autowired
 	private DeviceRepository deviceRepository;
+	
+	@Autowired
+	private DeviceStateService deviceStateService;
+
+	@Autowired
+	private PersonRepository personRepository;
+
+	@Autowired
+	private EntityManagerFactory entityManagerFactory;
+
+	@Autowired
+	private DeviceHistoryService deviceHistoryService;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	private StateVersionService stateVersionService;
 
     private MockMvc mockMvc;
 
@@ -64,10 +103,16 @@ public class DeviceControllerIntegrationTest {
     private static final String ENDPOINT_DEVICE_PER_ROOM_PER_USER = ENDPOINT_DEVICES_BASE_URL + "/user/{userId}/room/{roomId}";
     private static final String ENDPOINT_DEVICE_STATUS_EDIT = ENDPOINT_DEVICES_BASE_URL + "/{id}/updateStatus/{status}";
     private static final String ENDPOINT_DEVICE_VALUE_EDIT = ENDPOINT_DEVICES_BASE_URL + "/{id}/updateValue/{value}";
+    private static final String ENDPOINT_DEVICE_VALUE_ADJUST = ENDPOINT_DEVICES_BASE_URL + "/{id}/adjustValue/{delta}";
+    private static final String ENDPOINT_DEVICE_COMMANDS = ENDPOINT_DEVICES_BASE_URL + "/commands";
+    private static final String ENDPOINT_DEVICE_HISTORY = ENDPOINT_DEVICES_BASE_URL + "/{id}/history";
+    private static final String ENDPOINT_DEVICE_HISTORY_ROLLUPS = ENDPOINT_DEVICE_HISTORY + "/rollups";
+    private static final String HEADER_AJAX_REQUEST = "X-Requested-With";
     
     private static final String VIEW_DEVICE_LIST = "device/list";
     private static final String VIEW_DEVICE_GRID = "device/grid";
     private static final String VIEW_ERROR_403 = "/error/403";
+    private static final String VIEW_ERROR_409 = "/error/409";
     private static final String VIEW_ERROR_422 = "/error/422";
     
     private static final String MODAL_DEVICE_NEW_OR_EDIT = "device/modals :: modalNewOrEdit";
@@ -88,6 +133,8 @@ public class DeviceControllerIntegrationTest {
 		mockMvc = MockMvcBuilders.webAppContextSetup(context)
 								 .apply(springSecurity())
 								 .build();
+		// the dashboards are kept in memory across tests, while the database is populated for each of them
+		stateVersionService.changeAll();
     }
 	
 	@Test
@@ -98,6 +145,20 @@ public class DeviceControllerIntegrationTest {
 			   .andExpect(view().name(VIEW_DEVICE_LIST));
 	}
 	
+	@Test
+	@WithUserDetails(value = USER_ADMIN, userDetailsServiceBeanName = USER_DETAILS_SERVICE)
+	public void getAllDevices_shouldReturnMatchingDevicesAfterTheGivenRow_whenSortedByNameAndFiltered() throws Exception {
+		mockMvc.perform(get(ENDPOINT_ADMIN_DEVICES_BASE_URL)
+								.param("sort", "NAME")
+								.param("filter", "DOOR")
+								.param("afterId", "3")
+								.param("afterName", "Door #1"))
+			   .andExpect(status().isOk())
+			   .andExpect(view().name(VIEW_DEVICE_LIST))
+			   .andExpect(model().attribute("devices", contains(hasProperty("name", equalTo("Door #2")))))
+			   .andExpect(model().attribute("nextPage", nullValue()));
+	}
+	
 	@Test
 	@WithUserDetails(value = USER_SIMPLE, userDetailsServiceBeanName = USER_DETAILS_SERVICE)
 	public void getAllDevices_shouldBeForbidden_whenSimpleUser() throws Exception {
@@ -213,6 +274,37 @@ public class DeviceControllerIntegrationTest {
 		assertNotEquals(roomBeforeEdit, roomAfterEdit);
 	}
 	
+	@Test
+	@WithUserDetails(value = USER_ADMIN, userDetailsServiceBeanName = USER_DETAILS_SERVICE)
+	public void editDevice_shouldRespondWithConflict_whenDeviceSavedSinceFormLoaded() throws Exception {
+		Integer deviceId = 7;
+		int versionInForm = deviceRepository.findById(deviceId).get().getVersion();
+		
+		// another admin saves the device first
+		mockMvc.perform(put(ENDPOINT_ADMIN_DEVICES_EDIT_OR_DELETE_BASE_URL, deviceId)
+							.param("name", "Renamed by other admin")
+							.param("deviceType", "2") // Lights
+							.param("room", "3") // Bedroom
+							.param("version", String.valueOf(versionInForm))
+			   )
+			   .andExpect(status().is3xxRedirection());
+		
+		mockMvc.perform(put(ENDPOINT_ADMIN_DEVICES_EDIT_OR_DELETE_BASE_URL, deviceId)
+							.param("name", "Test lighting")
+							.param("deviceType", "2") // Lights
+							.param("room", "2") // Kitchen
+							.param("version", String.valueOf(versionInForm))
+			   )
+			   .andExpect(status().isConflict())
+			   .andExpect(view().name(VIEW_ERROR_409));
+		
+		// Check that the changes of the other admin were kept
+		Device deviceAfterEdit = deviceRepository.findById(deviceId).get();
+		assertEquals("Renamed by other admin", deviceAfterEdit.getName());
+		assertEquals(3, deviceAfterEdit.getRoom().getId());
+		assertEquals(versionInForm + 1, deviceAfterEdit.getVersion());
+	}
+	
 	@Test
 	@WithUserDetails(value = USER_ADMIN, userDetailsServiceBeanName = USER_DETAILS_SERVICE)
 	public void editDevice_shouldDisplayForm_whenSubmittingFormFails() throws Exception {
@@ -416,6 +508,8 @@ public class DeviceControllerIntegrationTest {
 			   .andExpect(status().is3xxRedirection())
 			   .andExpect(view().name(REDIRECT + ENDPOINT_DEVICE_LIST_ALL_ALTERNATIVE));
 		
+		// commands are written to the database in the background
+		deviceStateService.flush();
 		boolean deviceStatusAfter = deviceRepository.findById(deviceId).get().isStatusOn();
 		assertEquals(!deviceStatusBefore, deviceStatusAfter);
 	}
@@ -437,6 +531,8 @@ public class DeviceControllerIntegrationTest {
 			   .andExpect(status().is3xxRedirection())
 			   .andExpect(view().name(REDIRECT + ENDPOINT_DEVICE_PER_USER.replace("{id}", String.valueOf(userId))));
 		
+		// commands are written to the database in the background
+		deviceStateService.flush();
 		boolean deviceStatusAfter = deviceRepository.findById(deviceId).get().isStatusOn();
 		assertEquals(!deviceStatusBefore, deviceStatusAfter);
 	}
@@ -454,6 +550,8 @@ public class DeviceControllerIntegrationTest {
 			   )
 			   .andExpect(status().isForbidden());
 
+		// commands are written to the database in the background
+		deviceStateService.flush();
 		boolean deviceStatusAfter = deviceRepository.findById(deviceId).get().isStatusOn();
 		// status for the device should not be updated
 		assertEquals(deviceStatusBefore, deviceStatusAfter);
@@ -477,6 +575,8 @@ public class DeviceControllerIntegrationTest {
 			   .andExpect(status().is3xxRedirection())
 			   .andExpect(view().name(REDIRECT + ENDPOINT_DEVICE_LIST_ALL_ALTERNATIVE));
 		
+		// commands are written to the database in the background
+		deviceStateService.flush();
 		int deviceInformationValueAfter = Integer.parseInt(
 				deviceRepository.findById(deviceId).get().getInformationValue()
 		);
@@ -502,6 +602,8 @@ public class DeviceControllerIntegrationTest {
 			   .andExpect(status().is3xxRedirection())
 			   .andExpect(view().name(REDIRECT + ENDPOINT_DEVICE_PER_USER.replace("{id}", String.valueOf(userId))));
 		
+		// commands are written to the database in the background
+		deviceStateService.flush();
 		int deviceInformationValueAfter = Integer.parseInt(
 				deviceRepository.findById(deviceId).get().getInformationValue()
 		);
@@ -523,6 +625,8 @@ public class DeviceControllerIntegrationTest {
 			   )
 			   .andExpect(status().isForbidden());
 		
+		// commands are written to the database in the background
+		deviceStateService.flush();
 		int deviceInformationValueAfter = Integer.parseInt(
 				deviceRepository.findById(deviceId).get().getInformationValue()
 		);
@@ -530,4 +634,274 @@ public class DeviceControllerIntegrationTest {
 		assertEquals(deviceInformationValueBefore, deviceInformationValueAfter);
 	}
 	
+	@Test
+	@WithUserDetails(value = USER_ADMIN, userDetailsServiceBeanName = USER_DETAILS_SERVICE)
+	public void updateDevices_shouldApplyAllCommands_whenAdminUser() throws Exception {
+		mockMvc.perform(patch(ENDPOINT_DEVICE_COMMANDS)
+								.contentType(MediaType.APPLICATION_JSON)
+								.content("[{\"deviceId\": 1, \"status\": false}, " +
+										 "{\"deviceId\": 2, \"status\": false, \"value\": \"0\"}]")
+			   )
+			   .andExpect(status().isOk())
+			   .andExpect(jsonPath("$", hasSize(2)))
+			   .andExpect(jsonPath("$[1].informationValue", equalTo("0")));
+
+		// the bulk commands are written to the database before responding
+		assertFalse(deviceRepository.findById(1).get().isStatusOn());
+		assertFalse(deviceRepository.findById(2).get().isStatusOn());
+		assertEquals("0", deviceRepository.findById(2).get().getInformationValue());
+	}
+
+	@Test
+	@WithUserDetails(value = USER_SIMPLE, userDetailsServiceBeanName = USER_DETAILS_SERVICE)
+	public void updateDevices_shouldFailWithoutChangingAnything_whenSimpleUserUpdatesAnyUnauthorizedDevice()
+			throws Exception {
+
+		// deviceId 6 should be controlled only by ADMIN and testuser2@foo.com!
+		mockMvc.perform(patch(ENDPOINT_DEVICE_COMMANDS)
+								.contentType(MediaType.APPLICATION_JSON)
+								.content("[{\"deviceId\": 4, \"status\": true}, {\"deviceId\": 6, \"status\": false}]")
+			   )
+			   .andExpect(status().isForbidden());
+
+		deviceStateService.flush();
+		assertFalse(deviceRepository.findById(4).get().isStatusOn());
+		assertEquals(true, deviceRepository.findById(6).get().isStatusOn());
+	}
+
+	@Test
+	@WithUserDetails(value = USER_ADMIN, userDetailsServiceBeanName = USER_DETAILS_SERVICE)
+	public void updateDevices_shouldBeNotFound_whenAnyDeviceNotExists() throws Exception {
+		mockMvc.perform(patch(ENDPOINT_DEVICE_COMMANDS)
+								.contentType(MediaType.APPLICATION_JSON)
+								.content("[{\"deviceId\": 1, \"status\": false}, {\"deviceId\": 999, \"status\": false}]")
+			   )
+			   .andExpect(status().isNotFound());
+	}
+	
+	@Test
+	@WithUserDetails(value = USER_SIMPLE, userDetailsServiceBeanName = USER_DETAILS_SERVICE)
+	public void updateDeviceStatus_shouldReturnNewStateWithoutRedirecting_whenRequestedFromDashboard() throws Exception {
+		Integer deviceId = 7;
+		
+		mockMvc.perform(patch(ENDPOINT_DEVICE_STATUS_EDIT, String.valueOf(deviceId), "true")
+								.header(HEADER_AJAX_REQUEST, "XMLHttpRequest")
+			   )
+			   .andExpect(status().isOk())
+			   .andExpect(jsonPath("$.deviceId", equalTo(deviceId)))
+			   .andExpect(jsonPath("$.statusOn", equalTo(true)));
+	}
+
+	@Test
+	@WithUserDetails(value = USER_SIMPLE, userDetailsServiceBeanName = USER_DETAILS_SERVICE)
+	public void updateDeviceStatus_shouldRespondWithConflictAndCurrentState_whenDeviceChangedSinceVersion()
+			throws Exception {
+		Integer deviceId = 7;
+		long seenVersion = deviceStateService.getState(deviceId).getVersion();
+		
+		// another member of the household changes the device first
+		mockMvc.perform(patch(ENDPOINT_DEVICE_VALUE_EDIT, String.valueOf(deviceId), "42")
+								.header(HEADER_AJAX_REQUEST, "XMLHttpRequest")
+								.param("version", String.valueOf(seenVersion))
+			   )
+			   .andExpect(status().isOk())
+			   .andExpect(jsonPath("$.version", equalTo(seenVersion + 1)));
+		
+		mockMvc.perform(patch(ENDPOINT_DEVICE_STATUS_EDIT, String.valueOf(deviceId), "true")
+								.header(HEADER_AJAX_REQUEST, "XMLHttpRequest")
+								.param("version", String.valueOf(seenVersion))
+			   )
+			   .andExpect(status().isConflict())
+			   .andExpect(jsonPath("$.deviceId", equalTo(deviceId)))
+			   .andExpect(jsonPath("$.informationValue", equalTo("42")))
+			   .andExpect(jsonPath("$.version", equalTo(seenVersion + 1)));
+		
+		deviceStateService.flush();
+	}
+
+	@Test
+	@WithUserDetails(value = USER_ADMIN, userDetailsServiceBeanName = USER_DETAILS_SERVICE)
+	public void adjustDeviceInformationValue_shouldKeepValueWithinRangeOfDeviceType() throws Exception {
+		Integer deviceId = 4; // Lighting #2, at 100
+		jdbcTemplate.update("UPDATE device_type SET min_value = 0, max_value = 100 WHERE id = 2");
+		deviceStateService.evict(deviceId);
+		
+		mockMvc.perform(patch(ENDPOINT_DEVICE_VALUE_ADJUST, String.valueOf(deviceId), "1"))
+			   .andExpect(status().isOk())
+			   .andExpect(jsonPath("$.informationValue", equalTo("100")));
+		mockMvc.perform(patch(ENDPOINT_DEVICE_VALUE_ADJUST, String.valueOf(deviceId), "-5"))
+			   .andExpect(status().isOk())
+			   .andExpect(jsonPath("$.informationValue", equalTo("95")));
+		
+		deviceStateService.flush();
+		assertEquals("95", deviceRepository.findById(deviceId).get().getInformationValue());
+		deviceStateService.evictValueRanges();
+	}
+
+	@Test
+	@WithUserDetails(value = USER_ADMIN, userDetailsServiceBeanName = USER_DETAILS_SERVICE)
+	public void updateDeviceInformationValue_shouldBeBadRequest_whenValueNotNumberOrOutOfRange() throws Exception {
+		Integer deviceId = 4; // Lighting #2, at 100
+		jdbcTemplate.update("UPDATE device_type SET min_value = 0, max_value = 100 WHERE id = 2");
+		deviceStateService.evict(deviceId);
+		
+		mockMvc.perform(patch(ENDPOINT_DEVICE_VALUE_EDIT, String.valueOf(deviceId), "bright")
+								.header(HEADER_AJAX_REQUEST, "XMLHttpRequest"))
+			   .andExpect(status().isBadRequest());
+		mockMvc.perform(patch(ENDPOINT_DEVICE_VALUE_EDIT, String.valueOf(deviceId), "101")
+								.header(HEADER_AJAX_REQUEST, "XMLHttpRequest"))
+			   .andExpect(status().isBadRequest());
+		
+		assertEquals("100", deviceStateService.getState(deviceId).getInformationValue());
+		deviceStateService.evictValueRanges();
+	}
+
+	@Test
+	@WithUserDetails(value = USER_ADMIN, userDetailsServiceBeanName = USER_DETAILS_SERVICE)
+	public void updateDeviceInformationValue_shouldBeBadRequest_whenValueHasMoreDigitsThanDatabaseHolds()
+			throws Exception {
+		Integer deviceId = 4; // Lighting #2, at 100, of a type without range
+		deviceStateService.evict(deviceId);
+		
+		mockMvc.perform(patch(ENDPOINT_DEVICE_VALUE_EDIT, String.valueOf(deviceId), "1e20")
+								.header(HEADER_AJAX_REQUEST, "XMLHttpRequest"))
+			   .andExpect(status().isBadRequest());
+		mockMvc.perform(patch(ENDPOINT_DEVICE_VALUE_EDIT, String.valueOf(deviceId), "21.555")
+								.header(HEADER_AJAX_REQUEST, "XMLHttpRequest"))
+			   .andExpect(status().isBadRequest());
+		
+		assertEquals("100", deviceStateService.getState(deviceId).getInformationValue());
+	}
+
+	@Test
+	@WithUserDetails(value = USER_SIMPLE, userDetailsServiceBeanName = USER_DETAILS_SERVICE)
+	public void adjustDeviceInformationValue_shouldBeForbidden_whenSimpleUserAdjustsUnauthorizedDevice()
+			throws Exception {
+		mockMvc.perform(patch(ENDPOINT_DEVICE_VALUE_ADJUST, "1", "1"))
+			   .andExpect(status().isForbidden());
+	}
+
+	@Test
+	@WithUserDetails(value = USER_SIMPLE, userDetailsServiceBeanName = USER_DETAILS_SERVICE)
+	public void updateDeviceStatus_shouldLookUpLoggedInUserOnce_whenSimpleUserUpdatingTheirDevice() throws Exception {
+		// the logged-in user has already been loaded once to set up the security context
+		clearInvocations(personRepository);
+
+		mockMvc.perform(patch(ENDPOINT_DEVICE_STATUS_EDIT, "7", "true"))
+			   .andExpect(status().isSeeOther());
+
+		verify(personRepository, atMost(1)).findByEmail(anyString());
+	}
+
+	@Test
+	@WithUserDetails(value = USER_SIMPLE, userDetailsServiceBeanName = USER_DETAILS_SERVICE)
+	public void getDevicesPerUser_shouldLookUpLoggedInUserOnce_whenSimpleUser() throws Exception {
+		clearInvocations(personRepository);
+
+		mockMvc.perform(get(ENDPOINT_DEVICE_PER_ROOM_PER_USER, "102", "1"))
+			   .andExpect(status().isOk());
+
+		verify(personRepository, atMost(1)).findByEmail(anyString());
+	}
+
+	@Test
+	@WithUserDetails(value = USER_ADMIN, userDetailsServiceBeanName = USER_DETAILS_SERVICE)
+	public void getAllDevices_shouldLookUpLoggedInUserOnce_whenAdminUser() throws Exception {
+		clearInvocations(personRepository);
+
+		mockMvc.perform(get(ENDPOINT_DEVICE_LIST_ALL_ALTERNATIVE))
+			   .andExpect(status().isOk());
+
+		verify(personRepository, atMost(1)).findByEmail(anyString());
+	}
+
+	@Test
+	@WithUserDetails(value = USER_ADMIN, userDetailsServiceBeanName = USER_DETAILS_SERVICE)
+	public void getDevicesPerRoom_shouldRenderWithSameNumberOfStatements_whenRoomsHaveDifferentDevices() throws Exception {
+		// Bedroom has 2 devices of 2 types, Living Room has 3 devices of 3 types
+		// the first request also fills the caches that outlive a dashboard, e.g. the rooms and the id of the admin
+		countStatements(get(ENDPOINT_DEVICE_PER_ROOM_ALL, "2"));
+		long fewDevicesStatements = countStatements(get(ENDPOINT_DEVICE_PER_ROOM_ALL, "3"));
+		long moreDevicesStatements = countStatements(get(ENDPOINT_DEVICE_PER_ROOM_ALL, "1"));
+
+		assertEquals(fewDevicesStatements, moreDevicesStatements);
+	}
+
+	@Test
+	@WithUserDetails(value = USER_ADMIN, userDetailsServiceBeanName = USER_DETAILS_SERVICE)
+	public void getDeviceHistory_shouldReturnLatestChanges_whenAdminUser() throws Exception {
+		Integer deviceId = 6;
+		long from = System.currentTimeMillis();
+		mockMvc.perform(patch(ENDPOINT_DEVICE_VALUE_EDIT, deviceId, "30").header(HEADER_AJAX_REQUEST, "XMLHttpRequest"))
+			   .andExpect(status().isOk());
+		mockMvc.perform(patch(ENDPOINT_DEVICE_VALUE_EDIT, deviceId, "31").header(HEADER_AJAX_REQUEST, "XMLHttpRequest"))
+			   .andExpect(status().isOk());
+
+		mockMvc.perform(get(ENDPOINT_DEVICE_HISTORY, deviceId).param("from", String.valueOf(from)))
+			   .andExpect(status().isOk())
+			   .andExpect(jsonPath("$", hasSize(2)))
+			   .andExpect(jsonPath("$[0].value", equalTo(30.0)))
+			   .andExpect(jsonPath("$[1].value", equalTo(31.0)));
+
+		// do not leave the commands pending for the next tests, which start from freshly populated data
+		deviceStateService.flush();
+	}
+
+	@Test
+	@WithUserDetails(value = USER_SIMPLE, userDetailsServiceBeanName = USER_DETAILS_SERVICE)
+	public void getDeviceHistory_shouldBeForbidden_whenSimpleUserReadsUnauthorizedDevice() throws Exception {
+		mockMvc.perform(get(ENDPOINT_DEVICE_HISTORY, 1).param("from", "0"))
+			   .andExpect(status().isForbidden())
+			   .andExpect(forwardedUrl(VIEW_ERROR_403));
+	}
+
+	@Test
+	@WithUserDetails(value = USER_ADMIN, userDetailsServiceBeanName = USER_DETAILS_SERVICE)
+	public void getDeviceHistoryRollups_shouldAggregateValues_whenHistoryRolledUp() throws Exception {
+		Integer deviceId = 6;
+		long day = HistoryResolution.DAY.getMillis();
+		long start = HistoryResolution.DAY.truncate(System.currentTimeMillis()) - 10 * day;
+		// two values in the first minute, one in the second and a change without a value
+		jdbcTemplate.batchUpdate(
+				"INSERT INTO device_history (device_id, recorded_at, status, numeric_value) VALUES (?, ?, ?, ?)",
+				Arrays.asList(
+						new Object[] { deviceId, start + 1_000, true, 20.0 },
+						new Object[] { deviceId, start + 2_000, true, 30.0 },
+						new Object[] { deviceId, start + 61_000, true, 25.0 },
+						new Object[] { deviceId, start + 62_000, false, null }
+				)
+		);
+
+		deviceHistoryService.rollUp(start + 2 * day);
+
+		mockMvc.perform(get(ENDPOINT_DEVICE_HISTORY_ROLLUPS, deviceId)
+							.param("resolution", "MINUTE")
+							.param("from", String.valueOf(start))
+							.param("to", String.valueOf(start + day)))
+			   .andExpect(status().isOk())
+			   .andExpect(jsonPath("$", hasSize(2)))
+			   .andExpect(jsonPath("$[0].sampleCount", equalTo(2)))
+			   .andExpect(jsonPath("$[0].averageValue", equalTo(25.0)))
+			   .andExpect(jsonPath("$[1].sampleCount", equalTo(1)));
+		mockMvc.perform(get(ENDPOINT_DEVICE_HISTORY_ROLLUPS, deviceId)
+							.param("resolution", "DAY")
+							.param("from", String.valueOf(start))
+							.param("to", String.valueOf(start + day)))
+			   .andExpect(status().isOk())
+			   .andExpect(jsonPath("$", hasSize(1)))
+			   .andExpect(jsonPath("$[0].bucketStart", equalTo(start)))
+			   .andExpect(jsonPath("$[0].sampleCount", equalTo(3)))
+			   .andExpect(jsonPath("$[0].minValue", equalTo(20.0)))
+			   .andExpect(jsonPath("$[0].maxValue", equalTo(30.0)));
+	}
+
+	private long countStatements(RequestBuilder request) throws Exception {
+		// the dashboard of the previous request would be reused otherwise
+		stateVersionService.changeAll();
+		Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+		long statementsBefore = statistics.getPrepareStatementCount();
+		mockMvc.perform(request)
+			   .andExpect(status().isOk());
+		return statistics.getPrepareStatementCount() - statementsBefore;
+	}
 }
@@ -2,33 +2,59 @@ package eu.codingschool.homeautomation.controllers;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 import java.util.*;
 
+import eu.codingschool.homeautomation.repositories.projections.DeviceGridRow;
 import eu.codingschool.homeautomation.repositories.projections.RoomDevicesCount;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.AccessDeniedException;
 import org.springframework.security.core.userdetails.User;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.ui.ModelMap;
 import org.springframework.validation.BeanPropertyBindingResult;
 import org.springframework.validation.MapBindingResult;
 import org.springframework.validation.ObjectError;
 
+import eu.codingschool.homeautomation.model.Dashboard;
 import eu.codingschool.homeautomation.model.Device;
+import eu.codingschool.homeautomation.model.DeviceCommand;
+import eu.codingschool.homeautomation.model.DeviceHistoryRollup;
+import eu.codingschool.homeautomation.model.DeviceHistorySample;
+import eu.codingschool.homeautomation.model.DeviceState;
 import eu.codingschool.homeautomation.model.DeviceType;
+import eu.codingschool.homeautomation.model.HistoryResolution;
+import eu.codingschool.homeautomation.model.ListSort;
 import eu.codingschool.homeautomation.model.Person;
 import eu.codingschool.homeautomation.model.Room;
+import eu.codingschool.homeautomation.services.DashboardService;
+import eu.codingschool.homeautomation.services.DeviceEventService;
+import eu.codingschool.homeautomation.services.DeviceHistoryService;
+import eu.codingschool.homeautomation.services.DevicePermissionService;
 import eu.codingschool.homeautomation.services.DeviceService;
+import eu.codingschool.homeautomation.services.DeviceStateConflictException;
+import eu.codingschool.homeautomation.services.DeviceStatesNotWrittenException;
 import eu.codingschool.homeautomation.services.DeviceTypeService;
 import eu.codingschool.homeautomation.services.PersonService;
 import eu.codingschool.homeautomation.services.RoomService;
 import eu.codingschool.homeautomation.validators.DeviceValidator;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.ui.ExtendedModelMap;
 import org.springframework.web.servlet.mvc.support.RedirectAttributesModelMap;
 
 import javax.servlet.http.HttpServletRequest;
@@ -51,6 +77,18 @@ public class DeviceControllerTest {
 	@Mock
 	private RoomService roomService;
 
+	@Mock
+	private DeviceEventService deviceEventService;
+
+	@Mock
+	private DevicePermissionService devicePermissionService;
+
+	@Mock
+	private DeviceHistoryService deviceHistoryService;
+
+	@Mock
+	private DashboardService dashboardService;
+
 	@InjectMocks
 	private DeviceController deviceController;
 
@@ -63,10 +101,13 @@ public class DeviceControllerTest {
 
 	private static final String VIEW_DEVICE_LIST = "device/list";
 	private static final String VIEW_DEVICE_GRID = "device/grid";
+	private static final String VIEW_ERROR_409 = "/error/409";
 
 	private Person admin;
 	private Person simpleUser;
 	private List<Device> allDevices;
+	private Dashboard adminDashboard;
+	private Dashboard simpleUserDashboard;
 
 	private static final String SIMPLE_USER_EMAIL = "user@foo.com";
 	private static final String ADMIN_USER_EMAIL = "admin@foo.com";
@@ -118,6 +159,14 @@ public class DeviceControllerTest {
 		when(deviceService.findById(1)).thenReturn(device1);
 		when(deviceService.findById(2)).thenReturn(device2);
 		when(deviceService.findAllByRoomId(livingRoom.getId())).thenReturn(new ArrayList<>(livingRoom.getDevices()));
+		when(deviceService.updateStatus(eq(1), anyBoolean()))
+				.thenAnswer(invocation -> new DeviceState(1, invocation.getArgument(1), null));
+		when(deviceService.updateInformationValue(eq(1), any()))
+				.thenAnswer(invocation -> new DeviceState(1, false, invocation.getArgument(1)));
+		when(deviceService.updateStatus(eq(1), anyBoolean(), any()))
+				.thenAnswer(invocation -> new DeviceState(1, invocation.getArgument(1), null));
+		when(deviceService.updateInformationValue(eq(1), any(), any()))
+				.thenAnswer(invocation -> new DeviceState(1, false, invocation.getArgument(1)));
 		
 		when(personService.findById(1)).thenReturn(null);
 		when(personService.findById(2)).thenReturn(simpleUser);
@@ -125,6 +174,12 @@ public class DeviceControllerTest {
 		when(roomService.findAll()).thenReturn(allRooms);
 		when(roomService.findById(1)).thenReturn(livingRoom);
 		when(roomService.findByUser(simpleUser.getId())).thenReturn(simpleUserRooms);
+
+		DeviceGridRow row1 = new DeviceGridRow(1, "Thermostat", 1, false, null, null, null, null, null, null, null, null);
+		DeviceGridRow row2 = new DeviceGridRow(2, "Lights", 1, false, null, null, null, null, null, null, null, null);
+		DeviceGridRow row3 = new DeviceGridRow(3, "Door Lock", 3, false, null, null, null, null, null, null, null, null);
+		adminDashboard = new Dashboard(admin, allRooms, null, Arrays.asList(row1, row2, row3));
+		simpleUserDashboard = new Dashboard(simpleUser, null, simpleUserRooms, Arrays.asList(row2, row3));
     }
 	
 	@Test
@@ -134,10 +189,12 @@ public class DeviceControllerTest {
 		when(personService.getLoggedInUser())
 				.thenReturn(new User(ADMIN_USER_EMAIL, "pass-foo", Collections.emptyList()));
 
-		when(personService.findByEmail(ADMIN_USER_EMAIL)).thenReturn(admin);
+		when(personService.getLoggedInPerson()).thenReturn(admin);
+		when(deviceService.findPage(ListSort.ID, null, null, null)).thenReturn(new SliceImpl<>(allDevices));
 
 		// when
-		String returnedView = deviceController.getAdminDevicesList(new RedirectAttributesModelMap());
+		String returnedView = deviceController.getAdminDevicesList(
+				ListSort.ID, null, null, null, new RedirectAttributesModelMap());
 
 		// then
 		assertThat(returnedView).isEqualTo(VIEW_DEVICE_LIST);
@@ -150,7 +207,7 @@ public class DeviceControllerTest {
 		when(personService.getLoggedInUser())
 				.thenReturn(new User(ADMIN_USER_EMAIL, "pass-foo", Collections.emptyList()));
 
-		when(personService.findByEmail(ADMIN_USER_EMAIL)).thenReturn(admin);
+		when(personService.getLoggedInPerson()).thenReturn(admin);
 
 		// when
 		String returnedView = deviceController.newDevice(new RedirectAttributesModelMap());
@@ -166,12 +223,14 @@ public class DeviceControllerTest {
 		when(personService.getLoggedInUser())
 				.thenReturn(new User(ADMIN_USER_EMAIL, "pass-foo", Collections.emptyList()));
 
-		when(personService.findByEmail(ADMIN_USER_EMAIL)).thenReturn(admin);
+		when(personService.getLoggedInPerson()).thenReturn(admin);
 
 		// when
 		String returnedView = deviceController.addDevice(
 				new Device(),
-				new MapBindingResult(new HashMap<>(), "foo")
+				new MapBindingResult(new HashMap<>(), "foo"),
+				new ModelMap(),
+				new MockHttpServletResponse()
 		);
 
 		// then
@@ -186,7 +245,7 @@ public class DeviceControllerTest {
 		when(personService.getLoggedInUser())
 				.thenReturn(new User(ADMIN_USER_EMAIL, "pass-foo", Collections.emptyList()));
 
-		when(personService.findByEmail(ADMIN_USER_EMAIL)).thenReturn(admin);
+		when(personService.getLoggedInPerson()).thenReturn(admin);
 
 		// mock the void method to return validation errors
 		doAnswer(validator -> {
@@ -197,7 +256,9 @@ public class DeviceControllerTest {
 		// when
 		String returnedView = deviceController.addDevice(
 				new Device(),
-				new BeanPropertyBindingResult(new HashMap<>(), "foo")
+				new BeanPropertyBindingResult(new HashMap<>(), "foo"),
+				new ModelMap(),
+				new MockHttpServletResponse()
 		);
 
 		// then
@@ -213,7 +274,7 @@ public class DeviceControllerTest {
 		when(personService.getLoggedInUser())
 				.thenReturn(new User(ADMIN_USER_EMAIL, "pass-foo", Collections.emptyList()));
 
-		when(personService.findByEmail(ADMIN_USER_EMAIL)).thenReturn(admin);
+		when(personService.getLoggedInPerson()).thenReturn(admin);
 
 		// when
 		String returnedView = deviceController.viewDevice(2, new RedirectAttributesModelMap());
@@ -233,12 +294,14 @@ public class DeviceControllerTest {
 		when(personService.getLoggedInUser())
 				.thenReturn(new User(ADMIN_USER_EMAIL, "pass-foo", Collections.emptyList()));
 
-		when(personService.findByEmail(ADMIN_USER_EMAIL)).thenReturn(admin);
+		when(personService.getLoggedInPerson()).thenReturn(admin);
 
 		// when
 		String returnedView = deviceController.editDevice(
 				deviceService.findById(deviceId),
-				new MapBindingResult(new HashMap<>(), "foo")
+				new MapBindingResult(new HashMap<>(), "foo"),
+				new ModelMap(),
+				new MockHttpServletResponse()
 		);
 
 		// then
@@ -246,6 +309,31 @@ public class DeviceControllerTest {
 		verify(deviceService, times(1)).save(any());
 	}
 
+	@Test
+	@WithMockUser
+	public void editDevice_shouldRespondWithConflict_whenDeviceChangedSinceFormLoaded() {
+		// given
+		Integer deviceId = 2;
+		when(personService.getLoggedInUser())
+				.thenReturn(new User(ADMIN_USER_EMAIL, "pass-foo", Collections.emptyList()));
+
+		when(personService.getLoggedInPerson()).thenReturn(admin);
+		when(deviceService.save(any())).thenThrow(new ObjectOptimisticLockingFailureException(Device.class, deviceId));
+		MockHttpServletResponse response = new MockHttpServletResponse();
+
+		// when
+		String returnedView = deviceController.editDevice(
+				deviceService.findById(deviceId),
+				new MapBindingResult(new HashMap<>(), "foo"),
+				new ModelMap(),
+				response
+		);
+
+		// then
+		assertThat(returnedView).isEqualTo(VIEW_ERROR_409);
+		assertThat(response.getStatus()).isEqualTo(HttpStatus.CONFLICT.value());
+	}
+
 	@Test
 	@WithMockUser
 	public void editDevice_shouldNotSaveDevice_whenNameNotProvided() {
@@ -254,7 +342,7 @@ public class DeviceControllerTest {
 		when(personService.getLoggedInUser())
 				.thenReturn(new User(ADMIN_USER_EMAIL, "pass-foo", Collections.emptyList()));
 
-		when(personService.findByEmail(ADMIN_USER_EMAIL)).thenReturn(admin);
+		when(personService.getLoggedInPerson()).thenReturn(admin);
 
 		// mock the void method to return validation errors
 		doAnswer(validator -> {
@@ -265,7 +353,9 @@ public class DeviceControllerTest {
 		// when
 		String returnedView = deviceController.editDevice(
 				allDevices.get(deviceId - 1),
-				new BeanPropertyBindingResult(new HashMap<>(), "foo")
+				new BeanPropertyBindingResult(new HashMap<>(), "foo"),
+				new ModelMap(),
+				new MockHttpServletResponse()
 		);
 
 		// then
@@ -281,7 +371,7 @@ public class DeviceControllerTest {
 		when(personService.getLoggedInUser())
 				.thenReturn(new User(ADMIN_USER_EMAIL, "pass-foo", Collections.emptyList()));
 
-		when(personService.findByEmail(ADMIN_USER_EMAIL)).thenReturn(admin);
+		when(personService.getLoggedInPerson()).thenReturn(admin);
 
 		// when
 		String returnedView = deviceController.confirmDeleteDevice(deviceId, new RedirectAttributesModelMap());
@@ -301,7 +391,7 @@ public class DeviceControllerTest {
 		when(personService.getLoggedInUser())
 				.thenReturn(new User(ADMIN_USER_EMAIL, "pass-foo", Collections.emptyList()));
 
-		when(personService.findByEmail(ADMIN_USER_EMAIL)).thenReturn(admin);
+		when(personService.getLoggedInPerson()).thenReturn(admin);
 
 		// when
 		String returnedView = deviceController.doDeleteDevice(
@@ -325,7 +415,7 @@ public class DeviceControllerTest {
 		when(personService.getLoggedInUser())
 				.thenReturn(new User(ADMIN_USER_EMAIL, "pass-foo", Collections.emptyList()));
 
-		when(personService.findByEmail(ADMIN_USER_EMAIL)).thenReturn(admin);
+		when(personService.getLoggedInPerson()).thenReturn(admin);
 
 		// when
 		String returnedView = deviceController.doDeleteDevice(device, new RedirectAttributesModelMap());
@@ -342,13 +432,16 @@ public class DeviceControllerTest {
 		when(personService.getLoggedInUser())
 				.thenReturn(new User(ADMIN_USER_EMAIL, "pass-foo", Collections.emptyList()));
 
-		when(personService.findByEmail(ADMIN_USER_EMAIL)).thenReturn(admin);
+		when(dashboardService.getLoggedInDashboard()).thenReturn(adminDashboard);
 
 		// when
-		String returnedView = deviceController.showAdminDevices(new RedirectAttributesModelMap());
+		ExtendedModelMap model = new ExtendedModelMap();
+		String returnedView = deviceController.showAdminDevices(model);
 
 		// then
 		assertThat(returnedView).isEqualTo(VIEW_DEVICE_GRID);
+		assertThat(model.get("devices")).isSameAs(adminDashboard.getDevices());
+		verifyZeroInteractions(deviceService);
 	}
 
 	@Test
@@ -359,13 +452,16 @@ public class DeviceControllerTest {
 		when(personService.getLoggedInUser())
 				.thenReturn(new User(SIMPLE_USER_EMAIL, "pass-foo", Collections.emptyList()));
 
-		when(personService.findByEmail(SIMPLE_USER_EMAIL)).thenReturn(simpleUser);
+		when(dashboardService.getLoggedInDashboard()).thenReturn(simpleUserDashboard);
 
 		// when
-		String returnedView = deviceController.showUserDevices(userId, new RedirectAttributesModelMap());
+		ExtendedModelMap model = new ExtendedModelMap();
+		String returnedView = deviceController.showUserDevices(userId, model);
 
 		// then
 		assertThat(returnedView).isEqualTo(VIEW_DEVICE_GRID);
+		assertThat(model.get("devices")).isSameAs(simpleUserDashboard.getDevices());
+		verifyZeroInteractions(deviceService);
 	}
 
 	@Test
@@ -376,13 +472,15 @@ public class DeviceControllerTest {
 		when(personService.getLoggedInUser())
 				.thenReturn(new User(ADMIN_USER_EMAIL, "pass-foo", Collections.emptyList()));
 
-		when(personService.findByEmail(ADMIN_USER_EMAIL)).thenReturn(admin);
+		when(dashboardService.getLoggedInDashboard()).thenReturn(adminDashboard);
 
 		// when
-		String returnedView = deviceController.showAdminDevicesPerRoom(roomId, new RedirectAttributesModelMap());
+		ExtendedModelMap model = new ExtendedModelMap();
+		String returnedView = deviceController.showAdminDevicesPerRoom(roomId, model);
 
 		// then
 		assertThat(returnedView).isEqualTo(VIEW_DEVICE_GRID);
+		assertThat(model.get("devices")).asList().extracting("id").containsExactly(1, 2);
 	}
 
 	@Test
@@ -394,13 +492,15 @@ public class DeviceControllerTest {
 		when(personService.getLoggedInUser())
 				.thenReturn(new User(SIMPLE_USER_EMAIL, "pass-foo", Collections.emptyList()));
 
-		when(personService.findByEmail(SIMPLE_USER_EMAIL)).thenReturn(simpleUser);
+		when(dashboardService.getLoggedInDashboard()).thenReturn(simpleUserDashboard);
 
 		// when
-		String returnedView = deviceController.showUserDevicesPerRoom(userId, roomId, new RedirectAttributesModelMap());
+		ExtendedModelMap model = new ExtendedModelMap();
+		String returnedView = deviceController.showUserDevicesPerRoom(userId, roomId, model);
 
 		// then
 		assertThat(returnedView).isEqualTo(VIEW_DEVICE_GRID);
+		assertThat(model.get("devices")).asList().extracting("id").containsExactly(2);
 	}
 
 	@Test
@@ -444,7 +544,7 @@ public class DeviceControllerTest {
 		String value = String.valueOf(new Random().nextInt(101));
 		User userDetails = new User(SIMPLE_USER_EMAIL, "pass-foo", Collections.emptyList());
 		when(personService.getLoggedInUser()).thenReturn(userDetails);
-		when(personService.findByEmail(any())).thenReturn(simpleUser);
+		when(personService.getLoggedInPerson()).thenReturn(simpleUser);
 
 		// when
 		deviceController.updateDeviceStatus(deviceId, true, mock(HttpServletRequest.class));
@@ -469,7 +569,7 @@ public class DeviceControllerTest {
 		String value = String.valueOf(new Random().nextInt(101));
 		User userDetails = new User(SIMPLE_USER_EMAIL, "pass-foo", Collections.emptyList());
 		when(personService.getLoggedInUser()).thenReturn(userDetails);
-		when(personService.findByEmail(any())).thenReturn(simpleUser);
+		when(personService.getLoggedInPerson()).thenReturn(simpleUser);
 
 		// when
 		deviceController.updateDeviceStatus(deviceId, false, mock(HttpServletRequest.class));
@@ -503,12 +603,228 @@ public class DeviceControllerTest {
 		String value = String.valueOf(new Random().nextInt(101));
 		User userDetails = new User(SIMPLE_USER_EMAIL, "pass-foo", Collections.emptyList());
 		when(personService.getLoggedInUser()).thenReturn(userDetails);
-		when(personService.findByEmail(any())).thenReturn(simpleUser);
+		when(personService.getLoggedInPerson()).thenReturn(simpleUser);
 
 		// when
 		deviceController.updateDeviceInformationValue(deviceId, value, mock(HttpServletRequest.class));
 	}
 
+	@Test
+	@WithMockUser
+	public void updateDeviceStatusFromDashboard_shouldReturnNewState_whenSimpleUserLoggedInAndUpdatingTheirDevice() {
+		// given
+		int deviceId = 1;
+		when(personService.getLoggedInUser())
+				.thenReturn(new User(SIMPLE_USER_EMAIL, "pass-foo", Collections.emptyList()));
+		when(personService.getLoggedInPerson()).thenReturn(simpleUser);
+		when(devicePermissionService.isAssigned(simpleUser.getId(), deviceId)).thenReturn(true);
+
+		// when
+		ResponseEntity<DeviceState> response = deviceController.updateDeviceStatusFromDashboard(deviceId, true, null);
+
+		// then
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(response.getBody().isStatusOn()).isTrue();
+	}
+
+	@Test
+	@WithMockUser
+	public void adjustDeviceInformationValue_shouldReturnNewState_whenSimpleUserLoggedInAndAdjustingTheirDevice() {
+		// given
+		int deviceId = 1;
+		when(personService.getLoggedInUser())
+				.thenReturn(new User(SIMPLE_USER_EMAIL, "pass-foo", Collections.emptyList()));
+		when(personService.getLoggedInPerson()).thenReturn(simpleUser);
+		when(devicePermissionService.isAssigned(simpleUser.getId(), deviceId)).thenReturn(true);
+		when(deviceService.adjustInformationValue(deviceId, -1)).thenReturn(new DeviceState(deviceId, true, "21"));
+
+		// when
+		ResponseEntity<DeviceState> response = deviceController.adjustDeviceInformationValue(deviceId, -1);
+
+		// then
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(response.getBody().getInformationValue()).isEqualTo("21");
+		verify(deviceService, never()).updateInformationValue(anyInt(), any());
+	}
+
+	@Test
+	@WithMockUser
+	public void handleDeviceStatesNotWritten_shouldRespondAcceptedWithNewStates() {
+		// given
+		List<DeviceState> newStates = Arrays.asList(new DeviceState(1, false, null), new DeviceState(3, false, "0"));
+
+		// when
+		ResponseEntity<List<DeviceState>> response =
+				deviceController.handleDeviceStatesNotWritten(new DeviceStatesNotWrittenException(newStates));
+
+		// then
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.ACCEPTED);
+		assertThat(response.getBody()).isEqualTo(newStates);
+	}
+
+	@Test
+	@WithMockUser
+	public void handleDeviceStateConflict_shouldRespondWithCurrentState() {
+		// given
+		DeviceState currentState = new DeviceState(1, true, "21", 4L);
+
+		// when
+		ResponseEntity<DeviceState> response =
+				deviceController.handleDeviceStateConflict(new DeviceStateConflictException(currentState, 3L));
+
+		// then
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.CONFLICT);
+		assertThat(response.getBody()).isSameAs(currentState);
+	}
+
+	@Test
+	@WithMockUser
+	public void updateDeviceInformationValueFromDashboard_shouldBeNotFound_whenDeviceNotExists() {
+		// given
+		when(personService.getLoggedInUser())
+				.thenReturn(new User(ADMIN_USER_EMAIL, "pass-foo", Collections.emptyList()));
+		when(personService.getLoggedInPerson()).thenReturn(admin);
+
+		// when
+		ResponseEntity<DeviceState> response = deviceController.updateDeviceInformationValueFromDashboard(99, "20", null);
+
+		// then
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+	}
+
+	@Test
+	@WithMockUser
+	public void streamDeviceEvents_shouldSubscribeLoggedInUser_whenUserLoggedIn() {
+		// given
+		SseEmitter emitter = new SseEmitter();
+		when(personService.getLoggedInUser())
+				.thenReturn(new User(SIMPLE_USER_EMAIL, "pass-foo", Collections.emptyList()));
+		when(personService.getLoggedInPerson()).thenReturn(simpleUser);
+		when(deviceEventService.subscribe(simpleUser)).thenReturn(emitter);
+
+		// when
+		SseEmitter returnedEmitter = deviceController.streamDeviceEvents();
+
+		// then
+		assertThat(returnedEmitter).isSameAs(emitter);
+	}
+
+	@Test
+	@WithMockUser
+	public void updateDevices_shouldApplyAllCommands_whenAdminLoggedIn() {
+		// given
+		List<DeviceCommand> commands = Arrays.asList(new DeviceCommand(1, false, null), new DeviceCommand(3, false, "0"));
+		when(personService.getLoggedInUser())
+				.thenReturn(new User(ADMIN_USER_EMAIL, "pass-foo", Collections.emptyList()));
+		when(personService.getLoggedInPerson()).thenReturn(admin);
+		when(deviceService.applyCommands(commands))
+				.thenReturn(Arrays.asList(new DeviceState(1, false, null), new DeviceState(3, false, "0")));
+
+		// when
+		ResponseEntity<List<DeviceState>> response = deviceController.updateDevices(commands);
+
+		// then
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(response.getBody().size()).isEqualTo(2);
+		verify(devicePermissionService, never()).isAssignedAll(anyInt(), any());
+	}
+
+	@Test
+	@WithMockUser
+	public void updateDevices_shouldCheckAuthorizationOnce_whenSimpleUserLoggedInAndUpdatingTheirDevices() {
+		// given
+		List<DeviceCommand> commands = Arrays.asList(new DeviceCommand(2, true, null), new DeviceCommand(3, true, null));
+		when(personService.getLoggedInUser())
+				.thenReturn(new User(SIMPLE_USER_EMAIL, "pass-foo", Collections.emptyList()));
+		when(personService.getLoggedInPerson()).thenReturn(simpleUser);
+		when(devicePermissionService.isAssignedAll(simpleUser.getId(), new HashSet<>(Arrays.asList(2, 3)))).thenReturn(true);
+		when(deviceService.applyCommands(commands))
+				.thenReturn(Arrays.asList(new DeviceState(2, true, null), new DeviceState(3, true, null)));
+
+		// when
+		ResponseEntity<List<DeviceState>> response = deviceController.updateDevices(commands);
+
+		// then
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+		verify(devicePermissionService, times(1)).isAssignedAll(eq(simpleUser.getId()), any());
+		verify(personService, times(1)).getLoggedInPerson();
+	}
+
+	@Test(expected = AccessDeniedException.class) // then
+	@WithMockUser
+	public void updateDevices_shouldFail_whenSimpleUserLoggedInAndUpdatingAnyUnauthorizedDevice() {
+		// given
+		List<DeviceCommand> commands = Arrays.asList(new DeviceCommand(1, true, null), new DeviceCommand(2, true, null));
+		when(personService.getLoggedInUser())
+				.thenReturn(new User(SIMPLE_USER_EMAIL, "pass-foo", Collections.emptyList()));
+		when(personService.getLoggedInPerson()).thenReturn(simpleUser);
+		when(devicePermissionService.isAssignedAll(simpleUser.getId(), new HashSet<>(Arrays.asList(2, 3)))).thenReturn(true);
+
+		// when
+		deviceController.updateDevices(commands);
+	}
+
+	@Test
+	@WithMockUser
+	public void updateDevices_shouldBeBadRequest_whenCommandHasNothingToChange() {
+		// when
+		ResponseEntity<List<DeviceState>> response = deviceController.updateDevices(
+				Collections.singletonList(new DeviceCommand(1, null, null))
+		);
+
+		// then
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+		verify(deviceService, never()).applyCommands(any());
+	}
+
+	@Test(expected = AccessDeniedException.class) // then
+	@WithMockUser
+	public void getDeviceHistory_shouldFail_whenSimpleUserLoggedInAndReadingUnauthorizedDevice() {
+		// given
+		when(personService.getLoggedInPerson()).thenReturn(simpleUser);
+
+		// when
+		deviceController.getDeviceHistory(1, 0L, null);
+	}
+
+	@Test
+	@WithMockUser
+	public void getRoomHistory_shouldReturnOnlyAssignedDevices_whenSimpleUserLoggedIn() {
+		// given
+		Map<Integer, List<DeviceHistorySample>> roomSamples = new TreeMap<>();
+		roomSamples.put(1, Collections.singletonList(new DeviceHistorySample(1, 1000L, true, 21.0)));
+		roomSamples.put(2, Collections.singletonList(new DeviceHistorySample(2, 1000L, true, 60.0)));
+		when(personService.getLoggedInPerson()).thenReturn(simpleUser);
+		when(devicePermissionService.isAssigned(simpleUser.getId(), 2)).thenReturn(true);
+		when(deviceHistoryService.getRoomSamples(eq(1), eq(0L), anyLong())).thenReturn(roomSamples);
+
+		// when
+		ResponseEntity<Map<Integer, List<DeviceHistorySample>>> response = deviceController.getRoomHistory(1, 0L, null);
+
+		// then
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(response.getBody()).containsOnlyKeys(2);
+	}
+
+	@Test
+	@WithMockUser
+	public void getRoomHistoryRollups_shouldReturnAllDevices_whenAdminLoggedIn() {
+		// given
+		Map<Integer, List<DeviceHistoryRollup>> roomRollups = new TreeMap<>();
+		roomRollups.put(1, Collections.emptyList());
+		roomRollups.put(2, Collections.emptyList());
+		when(personService.getLoggedInPerson()).thenReturn(admin);
+		when(deviceHistoryService.getRoomRollups(1, HistoryResolution.HOUR, 0L, 1000L)).thenReturn(roomRollups);
+
+		// when
+		ResponseEntity<Map<Integer, List<DeviceHistoryRollup>>> response =
+				deviceController.getRoomHistoryRollups(1, HistoryResolution.HOUR, 0L, 1000L);
+
+		// then
+		assertThat(response.getBody()).containsOnlyKeys(1, 2);
+		verify(devicePermissionService, never()).isAssigned(anyInt(), anyInt());
+	}
+
 	private void updateDeviceStatus_shouldRedirectToDevices_whenAnyUserLoggedInAndSettingStatusToAnything(
 			User userDetails, Person user, boolean status, String expectedUrl) {
 
@@ -517,10 +833,10 @@ public class DeviceControllerTest {
 		Device device = new Device();
 		device.setId(deviceId);
 		when(personService.getLoggedInUser()).thenReturn(userDetails);
-		when(personService.findByEmail(user.getEmail())).thenReturn(user);
+		when(personService.getLoggedInPerson()).thenReturn(user);
 		if (!user.isAdmin()) {
 			// we assume that device belongs to the user if they are not ADMIN
-			user.setDevices(new HashSet<>(Arrays.asList(allDevices.get(deviceId - 1))));
+			when(devicePermissionService.isAssigned(user.getId(), deviceId)).thenReturn(true);
 		}
 
 		// when
@@ -537,10 +853,10 @@ public class DeviceControllerTest {
 		int deviceId = 1;
 		String value = String.valueOf(new Random().nextInt(101));
 		when(personService.getLoggedInUser()).thenReturn(userDetails);
-		when(personService.findByEmail(any())).thenReturn(user);
+		when(personService.getLoggedInPerson()).thenReturn(user);
 		if (!user.isAdmin()) {
 			// we assume that device belongs to the user if they are not ADMIN
-			user.setDevices(new HashSet<>(Arrays.asList(allDevices.get(deviceId - 1))));
+			when(devicePermissionService.isAssigned(user.getId(), deviceId)).thenReturn(true);
 		}
 
 		// when
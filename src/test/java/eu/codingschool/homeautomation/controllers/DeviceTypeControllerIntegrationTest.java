@@ -7,6 +7,10 @@ import static org.hamcrest.Matchers.hasProperty;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.atMost;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.verify;
 import static org.springframework.security.test.web.servlet.setup.SecurityMockMvcConfigurers.springSecurity;
 import static org.springframework.test.context.jdbc.Sql.ExecutionPhase.AFTER_TEST_METHOD;
 import static org.springframework.test.context.jdbc.Sql.ExecutionPhase.BEFORE_TEST_METHOD;
@@ -21,6 +25,7 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
 import org.springframework.security.test.context.support.WithUserDetails;
 import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.context.jdbc.Sql;
@@ -33,12 +38,14 @@ import org.springframework.web.context.WebApplicationContext;
 import eu.codingschool.homeautomation.HomeAutomationApplication;
 import eu.codingschool.homeautomation.model.DeviceType;
 import eu.codingschool.homeautomation.repositories.DeviceTypeRepository;
+import eu.codingschool.homeautomation.repositories.PersonRepository;
 
 @RunWith(SpringRunner.class)
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.MOCK, classes = HomeAutomationApplication.class)
 // We could have @Autowired MockMvc if Spring security was absent and we didn't configure that via setUp().
 // @AutoConfigureMockMvc
 @TestPropertySource(locations = "classpath:application-integrationtest.properties")
+@Import(PersonRepositoryRecorder.class)
 @SqlGroup({ 
 	@Sql(executionPhase = BEFORE_TEST_METHOD, scripts = "/test-data-population.sql"),
 	@Sql(executionPhase = AFTER_TEST_METHOD, scripts = "/test-data-cleanup.sql") 
@@ -51,6 +58,9 @@ public class DeviceTypeControllerIntegrationTest {
 	@Autowired
 	private DeviceTypeRepository deviceTypeRepository;
 
+	@Autowired
+	private PersonRepository personRepository;
+
 	private MockMvc mockMvc;
 
 	private static final String ENDPOINT_ADMIN_DEVICE_TYPES_BASE_URL = "/admin/deviceTypes";
@@ -84,6 +94,18 @@ public class DeviceTypeControllerIntegrationTest {
 			   .andExpect(view().name(VIEW_DEVICE_TYPE_LIST));
 	}
 
+	@Test
+	@WithUserDetails(value = USER_ADMIN, userDetailsServiceBeanName = USER_DETAILS_SERVICE)
+	public void getDeviceTypes_shouldLookUpLoggedInUserOnce_whenAdminUser() throws Exception {
+		// the logged-in user has already been loaded once to set up the security context
+		clearInvocations(personRepository);
+
+		mockMvc.perform(get(ENDPOINT_ADMIN_DEVICE_TYPES_BASE_URL))
+			   .andExpect(status().isOk());
+
+		verify(personRepository, atMost(1)).findByEmail(anyString());
+	}
+
 	@Test
 	@WithUserDetails(value = USER_SIMPLE, userDetailsServiceBeanName = USER_DETAILS_SERVICE)
 	public void getDeviceTypes_shouldBeForbidden_whenSimpleUser() throws Exception {
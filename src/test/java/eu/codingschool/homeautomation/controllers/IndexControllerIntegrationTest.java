@@ -1,5 +1,9 @@
 package eu.codingschool.homeautomation.controllers;
 
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.atMost;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.verify;
 import static org.springframework.security.test.web.servlet.setup.SecurityMockMvcConfigurers.springSecurity;
 import static org.springframework.test.context.jdbc.Sql.ExecutionPhase.BEFORE_TEST_METHOD;
 import static org.springframework.test.context.jdbc.Sql.ExecutionPhase.AFTER_TEST_METHOD;
@@ -13,7 +17,9 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
 import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.security.test.context.support.WithUserDetails;
 import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.context.jdbc.Sql;
 import org.springframework.test.context.jdbc.SqlGroup;
@@ -23,6 +29,8 @@ import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import org.springframework.web.context.WebApplicationContext;
 
 import eu.codingschool.homeautomation.HomeAutomationApplication;
+import eu.codingschool.homeautomation.repositories.PersonRepository;
+import eu.codingschool.homeautomation.services.StateVersionService;
 
 @RunWith(SpringRunner.class)
 @SpringBootTest(
@@ -32,6 +40,7 @@ import eu.codingschool.homeautomation.HomeAutomationApplication;
 // We could have @Autowired MockMvc if Spring security was absent and we didn't configure that via setUp().
 //@AutoConfigureMockMvc
 @TestPropertySource(locations = "classpath:application-integrationtest.properties")
+@Import(PersonRepositoryRecorder.class)
 @SqlGroup({
 	@Sql(executionPhase = BEFORE_TEST_METHOD, scripts = "/test-data-population.sql"),
 	@Sql(executionPhase = AFTER_TEST_METHOD, scripts = "/test-data-cleanup.sql")
@@ -41,6 +50,12 @@ public class IndexControllerIntegrationTest {
 	@Autowired
     private WebApplicationContext context;
 
+	@Autowired
+	private StateVersionService stateVersionService;
+
+	@Autowired
+	private PersonRepository personRepository;
+
     private MockMvc mockMvc;
     
     private static final String ENDPOINT_ROOT = "/";
@@ -60,6 +75,8 @@ public class IndexControllerIntegrationTest {
 		mockMvc = MockMvcBuilders.webAppContextSetup(context)
 								 .apply(springSecurity())
 								 .build();
+		// the dashboards are kept in memory across tests, while the database is populated for each of them
+		stateVersionService.changeAll();
     }
 	
 	@Test
@@ -78,6 +95,19 @@ public class IndexControllerIntegrationTest {
 		   	   .andExpect(view().name(VIEW_INDEX));
 	}
 
+	@Test
+	@WithUserDetails(value = MOCK_USER, userDetailsServiceBeanName = "userDetailsService")
+	public void home_shouldLookUpLoggedInUserOnce_whenTheDashboardIsBuilt() throws Exception {
+		// the logged-in user has already been loaded once to set up the security context
+		clearInvocations(personRepository);
+
+		mockMvc.perform(get(ENDPOINT_INDEX))
+			   .andExpect(status().isOk())
+			   .andExpect(view().name(VIEW_INDEX));
+
+		verify(personRepository, atMost(1)).findByEmail(anyString());
+	}
+
 	@Test
 	@WithMockUser(username = MOCK_USER)
 	public void login_shouldLoadLoginPage_whenRequestingLoginPage() throws Exception {
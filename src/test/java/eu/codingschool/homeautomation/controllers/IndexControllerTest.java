@@ -15,12 +15,14 @@ import org.mockito.Mock;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.context.junit4.SpringRunner;
 
+import eu.codingschool.homeautomation.model.Dashboard;
 import eu.codingschool.homeautomation.model.Person;
 import eu.codingschool.homeautomation.model.Room;
+import eu.codingschool.homeautomation.services.DashboardService;
 import eu.codingschool.homeautomation.services.PersonService;
-import eu.codingschool.homeautomation.services.RoomService;
 import eu.codingschool.homeautomation.validators.PersonValidator;
 import org.springframework.validation.BeanPropertyBindingResult;
+import org.springframework.ui.ExtendedModelMap;
 import org.springframework.web.servlet.mvc.support.RedirectAttributesModelMap;
 
 @RunWith(SpringRunner.class)
@@ -33,7 +35,7 @@ public class IndexControllerTest {
 	private PersonService personService;
 	
 	@Mock
-	private RoomService roomService;
+	private DashboardService dashboardService;
 
 	@InjectMocks
 	private IndexController indexController;
@@ -46,6 +48,8 @@ public class IndexControllerTest {
 	
 	private Person admin;
 	private Person simpleUser;
+	private List<Room> allRooms;
+	private List<RoomDevicesCount> simpleUserRooms;
 
 	@Before
     public void setUp() {
@@ -60,13 +64,10 @@ public class IndexControllerTest {
 		Room room2 = new Room();
 		room2.setId(2);
 
-		List<Room> allRooms = Arrays.asList(room1, room2);
-		List<RoomDevicesCount> simpleUserRooms = Arrays.asList(
+		allRooms = Arrays.asList(room1, room2);
+		simpleUserRooms = Arrays.asList(
 				new RoomDevicesCount(room1, (long)Math.random())
 		);
-		
-		when(roomService.findAll()).thenReturn(allRooms);
-		when(roomService.findByUser(simpleUser.getId())).thenReturn(simpleUserRooms);
     }
 	
 	@Test
@@ -123,15 +124,34 @@ public class IndexControllerTest {
 		assertThat(returnedView).isEqualTo("redirect:" + ENDPOINT_INDEX);
 	}
 	
-	private void loadIndexPageWhenUserLoggedIn(Person loggedInUser) {
+	@Test
+	public void home_shouldLoadLoginPage_whenNobodyLoggedIn() {
 		// given
-		when(personService.findByEmail(any())).thenReturn(loggedInUser);
+		when(dashboardService.getLoggedInDashboard()).thenReturn(null);
 
 		// when
 		String returnedView = indexController.home(new RedirectAttributesModelMap());
 
+		// then
+		assertThat(returnedView).isEqualTo(VIEW_LOGIN);
+	}
+	
+	private void loadIndexPageWhenUserLoggedIn(Person loggedInUser) {
+		// given
+		Dashboard dashboard = loggedInUser.isAdmin()
+				? new Dashboard(loggedInUser, allRooms, null, Collections.emptyList())
+				: new Dashboard(loggedInUser, null, simpleUserRooms, Collections.emptyList());
+		when(dashboardService.getLoggedInDashboard()).thenReturn(dashboard);
+
+		// when
+		ExtendedModelMap model = new ExtendedModelMap();
+		String returnedView = indexController.home(model);
+
 		// then
 		assertThat(returnedView).isEqualTo(VIEW_INDEX);
+		assertThat(model.get("loggedInUser")).isSameAs(loggedInUser);
+		assertThat(model.get(loggedInUser.isAdmin() ? "rooms" : "roomsDevicesCount"))
+				.isSameAs(loggedInUser.isAdmin() ? allRooms : simpleUserRooms);
 	}
 	
 }
@@ -2,21 +2,35 @@ package eu.codingschool.homeautomation.controllers;
 
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.CoreMatchers.isA;
+import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.hasProperty;
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.atMost;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.verify;
 import static org.springframework.security.test.web.servlet.setup.SecurityMockMvcConfigurers.springSecurity;
 import static org.springframework.test.context.jdbc.Sql.ExecutionPhase.AFTER_TEST_METHOD;
 import static org.springframework.test.context.jdbc.Sql.ExecutionPhase.BEFORE_TEST_METHOD;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
+import java.util.Arrays;
+import java.util.HashSet;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
 import org.springframework.security.test.context.support.WithUserDetails;
 import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.context.jdbc.Sql;
@@ -28,13 +42,17 @@ import org.springframework.web.context.WebApplicationContext;
 
 import eu.codingschool.homeautomation.HomeAutomationApplication;
 import eu.codingschool.homeautomation.model.Person;
+import eu.codingschool.homeautomation.repositories.DeviceRepository;
 import eu.codingschool.homeautomation.repositories.PersonRepository;
+import eu.codingschool.homeautomation.repositories.projections.RoomDevicesCount;
+import eu.codingschool.homeautomation.services.RoomService;
 
 @RunWith(SpringRunner.class)
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.MOCK, classes = HomeAutomationApplication.class)
 // We could have @Autowired MockMvc if Spring security was absent and we didn't configure that via setUp().
 // @AutoConfigureMockMvc
 @TestPropertySource(locations = "classpath:application-integrationtest.properties")
+@Import(PersonRepositoryRecorder.class)
 @SqlGroup({ 
 	@Sql(executionPhase = BEFORE_TEST_METHOD, scripts = "/test-data-population.sql"),
 	@Sql(executionPhase = AFTER_TEST_METHOD, scripts = "/test-data-cleanup.sql") 
@@ -47,6 +65,15 @@ public class PersonControllerIntegrationTest {
 	@Autowired
 	private PersonRepository personRepository;
 
+	@Autowired
+	private DeviceRepository deviceRepository;
+
+	@Autowired
+	private EntityManagerFactory entityManagerFactory;
+
+	@Autowired
+	private RoomService roomService;
+
 	private MockMvc mockMvc;
 
 	private static final String ENDPOINT_ADMIN_PERSONS_BASE_URL = "/admin/people";
@@ -79,6 +106,14 @@ public class PersonControllerIntegrationTest {
 			   .andExpect(view().name(VIEW_PERSON_LIST));
 	}
 
+	@Test
+	@WithUserDetails(value = USER_ADMIN, userDetailsServiceBeanName = USER_DETAILS_SERVICE)
+	public void getPeople_shouldReturnMatchingPeople_whenFilteredByEmail() throws Exception {
+		mockMvc.perform(get(ENDPOINT_ADMIN_PERSONS_BASE_URL).param("filter", "testuser2@"))
+			   .andExpect(status().isOk())
+			   .andExpect(model().attribute("people", contains(hasProperty("id", equalTo(103)))));
+	}
+
 	@Test
 	@WithUserDetails(value = USER_SIMPLE, userDetailsServiceBeanName = USER_DETAILS_SERVICE)
 	public void getPeople_shouldBeForbidden_whenSimpleUser() throws Exception {
@@ -87,6 +122,66 @@ public class PersonControllerIntegrationTest {
 			   .andExpect(forwardedUrl(VIEW_ERROR_403));
 	}
 
+	@Test
+	@WithUserDetails(value = USER_ADMIN, userDetailsServiceBeanName = USER_DETAILS_SERVICE)
+	public void getPeople_shouldLookUpLoggedInUserOnce_whenAdminUser() throws Exception {
+		// the logged-in user has already been loaded once to set up the security context
+		clearInvocations(personRepository);
+
+		mockMvc.perform(get(ENDPOINT_ADMIN_PERSONS_BASE_URL))
+			   .andExpect(status().isOk());
+
+		verify(personRepository, atMost(1)).findByEmail(anyString());
+	}
+
+	@Test
+	@WithUserDetails(value = USER_ADMIN, userDetailsServiceBeanName = USER_DETAILS_SERVICE)
+	public void viewEditPersonForm_shouldLookUpLoggedInUserOnce_whenAdminUser() throws Exception {
+		clearInvocations(personRepository);
+
+		mockMvc.perform(put(ENDPOINT_ADMIN_PERSONS_EDIT_OR_DELETE_BASE_URL + "/form", 103))
+			   .andExpect(status().isOk());
+
+		verify(personRepository, atMost(1)).findByEmail(anyString());
+	}
+
+	@Test
+	@WithUserDetails(value = USER_ADMIN, userDetailsServiceBeanName = USER_DETAILS_SERVICE)
+	public void editPerson_shouldLookUpLoggedInUserOnce_whenSubmittingFormSucceeds() throws Exception {
+		clearInvocations(personRepository);
+
+		mockMvc.perform(put(ENDPOINT_ADMIN_PERSONS_EDIT_OR_DELETE_BASE_URL, 103)
+							.param("name", "Another person")
+							.param("surname", "UserSurname")
+							.param("email", "testuser2@foo.com")
+				)
+				.andExpect(status().is3xxRedirection());
+
+		verify(personRepository, atMost(1)).findByEmail(anyString());
+	}
+
+	@Test
+	@WithUserDetails(value = USER_ADMIN, userDetailsServiceBeanName = USER_DETAILS_SERVICE)
+	public void confirmDeletePerson_shouldLookUpLoggedInUserOnce_whenAdminUser() throws Exception {
+		clearInvocations(personRepository);
+
+		mockMvc.perform(delete(ENDPOINT_ADMIN_PERSONS_EDIT_OR_DELETE_BASE_URL + "/confirmation", 103))
+			   .andExpect(status().isOk());
+
+		verify(personRepository, atMost(1)).findByEmail(anyString());
+	}
+
+	@Test
+	@WithUserDetails(value = USER_ADMIN, userDetailsServiceBeanName = USER_DETAILS_SERVICE)
+	public void doDeletePerson_shouldLookUpLoggedInUserOnce_whenAdminUser() throws Exception {
+		clearInvocations(personRepository);
+
+		mockMvc.perform(delete(ENDPOINT_ADMIN_PERSONS_EDIT_OR_DELETE_BASE_URL, 103))
+			   .andExpect(status().is3xxRedirection());
+
+		verify(personRepository, atMost(1)).findByEmail(anyString());
+	}
+
 	@Test
 	@WithUserDetails(value = USER_ADMIN, userDetailsServiceBeanName = USER_DETAILS_SERVICE)
 	public void viewEditPersonForm_shouldDisplayForm_whenAdminUser() throws Exception {
@@ -151,6 +246,91 @@ public class PersonControllerIntegrationTest {
 				.andExpect(view().name(MODAL_PERSON_NEW_OR_EDIT));
 	}
 
+	@Test
+	@WithUserDetails(value = USER_ADMIN, userDetailsServiceBeanName = USER_DETAILS_SERVICE)
+	public void editPerson_shouldNotRewriteDeviceAssignments_whenOnlyNameChanged() throws Exception {
+		Integer personId = 103;
+		Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+		long recreatesBefore = statistics.getCollectionRecreateCount();
+		long updatesBefore = statistics.getCollectionUpdateCount();
+
+		mockMvc.perform(put(ENDPOINT_ADMIN_PERSONS_EDIT_OR_DELETE_BASE_URL, personId)
+							.param("name", "Another person")
+							.param("surname", "UserSurname")
+							.param("email", "testuser2@foo.com")
+							.param("selectedDeviceIds", "1", "2", "4", "6", "7")
+				)
+				.andExpect(status().is3xxRedirection())
+				.andExpect(view().name(REDIRECT_ENDPOINT_ADMIN_PERSONS_BASE_URL));
+
+		assertEquals(recreatesBefore, statistics.getCollectionRecreateCount());
+		assertEquals(updatesBefore, statistics.getCollectionUpdateCount());
+		assertEquals(new HashSet<>(Arrays.asList(1, 2, 4, 6, 7)), deviceRepository.findIdsByPersonsId(personId));
+	}
+
+	@Test
+	@WithUserDetails(value = USER_ADMIN, userDetailsServiceBeanName = USER_DETAILS_SERVICE)
+	public void editPerson_shouldOnlyChangeDifferentDeviceAssignments_whenDevicesAddedAndRemoved() throws Exception {
+		Integer personId = 103;
+		Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+		long recreatesBefore = statistics.getCollectionRecreateCount();
+		long updatesBefore = statistics.getCollectionUpdateCount();
+
+		// device 3 is added and device 6 is removed
+		mockMvc.perform(put(ENDPOINT_ADMIN_PERSONS_EDIT_OR_DELETE_BASE_URL, personId)
+							.param("name", "User2")
+							.param("surname", "UserSurname")
+							.param("email", "testuser2@foo.com")
+							.param("selectedDeviceIds", "1", "2", "3", "4", "7")
+				)
+				.andExpect(status().is3xxRedirection())
+				.andExpect(view().name(REDIRECT_ENDPOINT_ADMIN_PERSONS_BASE_URL));
+
+		assertEquals(recreatesBefore, statistics.getCollectionRecreateCount());
+		assertEquals(updatesBefore + 1, statistics.getCollectionUpdateCount());
+		assertEquals(new HashSet<>(Arrays.asList(1, 2, 3, 4, 7)), deviceRepository.findIdsByPersonsId(personId));
+	}
+
+	@Test
+	@WithUserDetails(value = USER_ADMIN, userDetailsServiceBeanName = USER_DETAILS_SERVICE)
+	public void editPerson_shouldUpdateRoomDevicesCount_whenDevicesAddedAndRemoved() throws Exception {
+		Integer personId = 103;
+		assertThat(roomService.findByUser(personId)).extracting(RoomDevicesCount::getUserDevicesCount)
+													.containsExactly(2L, 1L, 2L);
+
+		// device 3 of the Living Room is added and device 6 of the Bedroom is removed
+		mockMvc.perform(put(ENDPOINT_ADMIN_PERSONS_EDIT_OR_DELETE_BASE_URL, personId)
+							.param("name", "User2")
+							.param("surname", "UserSurname")
+							.param("email", "testuser2@foo.com")
+							.param("selectedDeviceIds", "1", "2", "3", "4", "7")
+				)
+				.andExpect(status().is3xxRedirection());
+
+		assertThat(roomService.findByUser(personId)).extracting(RoomDevicesCount::getUserDevicesCount)
+													.containsExactly(3L, 1L, 1L);
+		// the assignments are restored by the SQL scripts, which the counts kept in memory do not see
+		roomService.evictDevicesCount(personId);
+	}
+
+	@Test
+	@WithUserDetails(value = USER_ADMIN, userDetailsServiceBeanName = USER_DETAILS_SERVICE)
+	public void editPerson_shouldDisplayForm_whenSelectedDevicesNotExist() throws Exception {
+		Integer personId = 103;
+		mockMvc.perform(put(ENDPOINT_ADMIN_PERSONS_EDIT_OR_DELETE_BASE_URL, personId)
+							.param("name", "Another person")
+							.param("surname", "UserSurname")
+							.param("email", "testuser2@foo.com")
+							.param("selectedDeviceIds", "1", "999", "abc")
+				)
+				.andExpect(status().isOk())
+				.andExpect(view().name(MODAL_PERSON_NEW_OR_EDIT))
+				.andExpect(model().attributeHasFieldErrorCode("person", "devices", "Unknown"));
+
+		// Check that the person was not edited
+		assertEquals("User2", personRepository.findById(personId).get().getName());
+	}
+
 	@Test
 	@WithUserDetails(value = USER_SIMPLE, userDetailsServiceBeanName = USER_DETAILS_SERVICE)
 	public void editPerson_shouldBeForbidden_whenSimpleUser() throws Exception {
@@ -3,6 +3,7 @@ package eu.codingschool.homeautomation.controllers;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
@@ -17,14 +18,17 @@ import org.junit.rules.ExpectedException;
 import org.junit.runner.RunWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.springframework.data.domain.SliceImpl;
 import org.springframework.security.access.AccessDeniedException;
-import org.springframework.security.core.userdetails.User;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.ui.ExtendedModelMap;
 import org.springframework.validation.BeanPropertyBindingResult;
 import org.springframework.validation.MapBindingResult;
 import org.springframework.validation.ObjectError;
 
+import eu.codingschool.homeautomation.model.DeviceSelection;
+import eu.codingschool.homeautomation.model.ListSort;
 import eu.codingschool.homeautomation.model.Person;
 import eu.codingschool.homeautomation.model.Room;
 import eu.codingschool.homeautomation.services.DeviceService;
@@ -82,19 +86,25 @@ public class PersonControllerTest {
 		when(roomService.findAll()).thenReturn(allRooms);
 		when(personService.findById(1)).thenReturn(person1);
 		when(personService.findById(2)).thenReturn(person2);
+		when(deviceService.getSelectedDevices(any())).thenReturn(
+				new DeviceSelection(Collections.emptyList(), Collections.emptySet(), Collections.emptySet()));
     }
 	
 	@Test
 	@WithMockUser
 	public void getPeople_shouldLoadAllPeople_whenLoggedIn() {
 		// given
-		when(personService.getLoggedInUser()).thenReturn(new User("user-foo", "pass-foo", Collections.emptyList()));
+		when(personService.getLoggedInPerson()).thenReturn(allPeople.get(0));
+		when(personService.findPage(ListSort.ID, null, null, null)).thenReturn(new SliceImpl<>(allPeople));
+		ExtendedModelMap model = new ExtendedModelMap();
 		
 		// when
-		String returnedView = personController.getPeople(new RedirectAttributesModelMap());
+		String returnedView = personController.getPeople(ListSort.ID, null, null, null, model);
 
 		// then
 		assertThat(returnedView).isEqualTo(VIEW_PERSON_LIST);
+		assertThat(model.get("people")).isEqualTo(allPeople);
+		assertThat(model.get("nextPage")).isNull();
 	}
 
 	@Rule
@@ -104,7 +114,7 @@ public class PersonControllerTest {
 	@WithMockUser
 	public void getPeople_shouldThrowException_whenNotLoggedIn() {
 		// when
-		personController.getPeople(new RedirectAttributesModelMap());
+		personController.getPeople(ListSort.ID, null, null, null, new RedirectAttributesModelMap());
 	}
 
 	@Test
@@ -128,7 +138,7 @@ public class PersonControllerTest {
 	public void editPerson_shouldSavePerson_whenProvided() {
 		// given
 		int personId = 2;
-		when(personService.getLoggedInUser()).thenReturn(new User("user-foo", "pass-foo", Collections.emptyList()));
+		when(personService.getLoggedInPerson()).thenReturn(allPeople.get(0));
 
 		// when
 		String returnedView = personController.editPerson(
@@ -140,9 +150,8 @@ public class PersonControllerTest {
 
 		// then
 		assertThat(returnedView).isEqualTo(REDIRECT_ENDPOINT_ADMIN_PERSONS_BASE_URL);
-		verify(personService, times(1)).getLoggedInUser();
+		verify(personService, times(1)).getLoggedInPerson();
 		verify(personService, times(1)).update(any(), any());
-		verify(personService, times(1)).findByEmail(any());
 	}
 
 	@Test
@@ -150,7 +159,7 @@ public class PersonControllerTest {
 	public void editPerson_shouldNotSavePerson_whenNameNotProvided() {
 		// given
 		int personId = 2;
-		when(personService.getLoggedInUser()).thenReturn(new User("user-foo", "pass-foo", Collections.emptyList()));
+		when(personService.getLoggedInPerson()).thenReturn(allPeople.get(0));
 
 		// mock the void method to return validation errors
 		doAnswer(validator -> {
@@ -168,10 +177,35 @@ public class PersonControllerTest {
 
 		// then
 		assertThat(returnedView).isEqualTo(MODAL_PERSON_NEW_OR_EDIT);
-		verify(personService, times(1)).getLoggedInUser();
+		verify(personService, times(1)).getLoggedInPerson();
 		verifyNoMoreInteractions(personService);
 	}
 
+	@Test
+	@WithMockUser
+	public void editPerson_shouldNotSavePerson_whenSelectedDevicesNotExist() {
+		// given
+		int personId = 2;
+		List<String> selectedDeviceIds = Arrays.asList("1", "x", "99");
+		when(personService.getLoggedInPerson()).thenReturn(allPeople.get(0));
+		when(deviceService.getSelectedDevices(selectedDeviceIds)).thenReturn(new DeviceSelection(
+				Collections.emptyList(), Collections.singleton(99), Collections.singleton("x")));
+		MapBindingResult result = new MapBindingResult(new HashMap<>(), "person");
+
+		// when
+		String returnedView = personController.editPerson(
+				allPeople.get(personId - 1),
+				selectedDeviceIds,
+				result,
+				new RedirectAttributesModelMap()
+		);
+
+		// then
+		assertThat(returnedView).isEqualTo(MODAL_PERSON_NEW_OR_EDIT);
+		assertThat(result.getFieldError("devices").getArguments()).containsExactly("x, 99");
+		verify(personService, never()).update(any(), any());
+	}
+
 	@Test(expected = AccessDeniedException.class)
 	@WithMockUser
 	public void editPerson_shouldThrowException_whenNotLoggedIn() {
@@ -0,0 +1,25 @@
+package eu.codingschool.homeautomation.controllers;
+
+import static org.mockito.AdditionalAnswers.delegatesTo;
+import static org.mockito.Mockito.mock;
+
+import org.springframework.beans.factory.config.BeanPostProcessor;
+
+import eu.codingschool.homeautomation.repositories.PersonRepository;
+
+/**
+ * Records the calls to the person repository, so that the principal lookups per request can be counted. A @SpyBean
+ * cannot be used since the repository is a JDK proxy.
+ * <p>
+ * It is imported by the integration tests rather than scanned, so that they share a single context.
+ */
+public class PersonRepositoryRecorder implements BeanPostProcessor {
+
+	@Override
+	public Object postProcessAfterInitialization(Object bean, String beanName) {
+		if (bean instanceof PersonRepository) {
+			return mock(PersonRepository.class, delegatesTo(bean));
+		}
+		return bean;
+	}
+}
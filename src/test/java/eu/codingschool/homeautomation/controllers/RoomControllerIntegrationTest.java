@@ -1,16 +1,24 @@
 package eu.codingschool.homeautomation.controllers;
 
 import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.containsString;
 import static org.hamcrest.CoreMatchers.isA;
 import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.hasProperty;
+import static org.hamcrest.Matchers.hasSize;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.atMost;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.verify;
 import static org.springframework.security.test.web.servlet.setup.SecurityMockMvcConfigurers.springSecurity;
 import static org.springframework.test.context.jdbc.Sql.ExecutionPhase.AFTER_TEST_METHOD;
 import static org.springframework.test.context.jdbc.Sql.ExecutionPhase.BEFORE_TEST_METHOD;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.forwardedUrl;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.model;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
@@ -21,24 +29,30 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
 import org.springframework.security.test.context.support.WithUserDetails;
 import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.context.jdbc.Sql;
 import org.springframework.test.context.jdbc.SqlGroup;
 import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.util.AopTestUtils;
+import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import org.springframework.web.context.WebApplicationContext;
 
 import eu.codingschool.homeautomation.HomeAutomationApplication;
 import eu.codingschool.homeautomation.model.Room;
+import eu.codingschool.homeautomation.repositories.PersonRepository;
 import eu.codingschool.homeautomation.repositories.RoomRepository;
+import eu.codingschool.homeautomation.services.RoomService;
 
 @RunWith(SpringRunner.class)
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.MOCK, classes = HomeAutomationApplication.class)
 // We could have @Autowired MockMvc if Spring security was absent and we didn't configure that via setUp().
 // @AutoConfigureMockMvc
 @TestPropertySource(locations = "classpath:application-integrationtest.properties")
+@Import(PersonRepositoryRecorder.class)
 @SqlGroup({ 
 	@Sql(executionPhase = BEFORE_TEST_METHOD, scripts = "/test-data-population.sql"),
 	@Sql(executionPhase = AFTER_TEST_METHOD, scripts = "/test-data-cleanup.sql") 
@@ -51,6 +65,12 @@ public class RoomControllerIntegrationTest {
 	@Autowired
 	private RoomRepository roomRepository;
 
+	@Autowired
+	private RoomService roomService;
+
+	@Autowired
+	private PersonRepository personRepository;
+
 	private MockMvc mockMvc;
 
 	private static final String ENDPOINT_ADMIN_ROOMS_BASE_URL = "/admin/rooms";
@@ -84,6 +104,53 @@ public class RoomControllerIntegrationTest {
 			   .andExpect(view().name(VIEW_ROOM_LIST));
 	}
 
+	@Test
+	@WithUserDetails(value = USER_ADMIN, userDetailsServiceBeanName = USER_DETAILS_SERVICE)
+	public void getRooms_shouldLookUpLoggedInUserOnce_whenAdminUser() throws Exception {
+		// the logged-in user has already been loaded once to set up the security context
+		clearInvocations(personRepository);
+
+		mockMvc.perform(get(ENDPOINT_ADMIN_ROOMS_BASE_URL))
+			   .andExpect(status().isOk());
+
+		verify(personRepository, atMost(1)).findByEmail(anyString());
+	}
+
+	@Test
+	@WithUserDetails(value = USER_ADMIN, userDetailsServiceBeanName = USER_DETAILS_SERVICE)
+	public void getRooms_shouldListRoomsByName_whenSortedByName() throws Exception {
+		mockMvc.perform(get(ENDPOINT_ADMIN_ROOMS_BASE_URL).param("sort", "NAME"))
+			   .andExpect(status().isOk())
+			   .andExpect(model().attribute("listedRooms", contains(
+					   hasProperty("name", equalTo("Bedroom")),
+					   hasProperty("name", equalTo("Kitchen")),
+					   hasProperty("name", equalTo("Living Room")))))
+			   .andExpect(model().attribute("rooms", hasSize(3)));
+	}
+
+	@Test
+	@WithUserDetails(value = USER_ADMIN, userDetailsServiceBeanName = USER_DETAILS_SERVICE)
+	public void getRooms_shouldLinkToTheRoomsAfterRoomWithoutName_whenSortedByName() throws Exception {
+		// given
+		Room unnamed = roomRepository.save(new Room());
+		RoomService target = AopTestUtils.getTargetObject(roomService);
+		Object pageSize = ReflectionTestUtils.getField(target, "pageSize");
+		ReflectionTestUtils.setField(target, "pageSize", 1);
+		try {
+			// when, then
+			mockMvc.perform(get(ENDPOINT_ADMIN_ROOMS_BASE_URL).param("sort", "NAME"))
+				   .andExpect(status().isOk())
+				   .andExpect(model().attribute("listedRooms", contains(hasProperty("id", equalTo(unnamed.getId())))))
+				   .andExpect(content().string(containsString("afterId=" + unnamed.getId() + "\"")));
+			mockMvc.perform(get(ENDPOINT_ADMIN_ROOMS_BASE_URL).param("sort", "NAME")
+															 .param("afterId", String.valueOf(unnamed.getId())))
+				   .andExpect(status().isOk())
+				   .andExpect(model().attribute("listedRooms", contains(hasProperty("name", equalTo("Bedroom")))));
+		} finally {
+			ReflectionTestUtils.setField(target, "pageSize", pageSize);
+		}
+	}
+
 	@Test
 	@WithUserDetails(value = USER_SIMPLE, userDetailsServiceBeanName = USER_DETAILS_SERVICE)
 	public void getRooms_shouldBeForbidden_whenSimpleUser() throws Exception {
@@ -15,11 +15,15 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.SliceImpl;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.ui.ExtendedModelMap;
 import org.springframework.validation.MapBindingResult;
 import org.springframework.validation.ObjectError;
 
+import eu.codingschool.homeautomation.model.ListSort;
 import eu.codingschool.homeautomation.model.Room;
 import eu.codingschool.homeautomation.services.PersonService;
 import eu.codingschool.homeautomation.services.RoomService;
@@ -70,13 +74,32 @@ public class RoomControllerTest {
 	public void getRooms_shouldLoadRoomListView_whenRequested() {
 		// given
 		when(roomService.findAll()).thenReturn(allRooms);
+		when(roomService.findPage(ListSort.ID, null, null, null)).thenReturn(new SliceImpl<>(allRooms));
 
 		// when
-		String returnedView = roomController.getRooms(new RedirectAttributesModelMap());
+		String returnedView = roomController.getRooms(ListSort.ID, null, null, null, new RedirectAttributesModelMap());
 
 		// then
 		assertThat(returnedView).isEqualTo(VIEW_ROOM_LIST);
 	}
+
+	@Test
+	@WithMockUser
+	public void getRooms_shouldLinkToTheNextPage_whenMoreRoomsExist() {
+		// given
+		when(roomService.findPage(ListSort.NAME, "room", 1, "Attic"))
+				.thenReturn(new SliceImpl<>(allRooms, PageRequest.of(0, 2), true));
+		ExtendedModelMap model = new ExtendedModelMap();
+
+		// when
+		roomController.getRooms(ListSort.NAME, "room", 1, "Attic", model);
+
+		// then
+		assertThat(model.get("listedRooms")).isEqualTo(allRooms);
+		assertThat(model.get("nextPage")).isEqualTo(allRooms.get(1));
+		assertThat(model.get("sort")).isEqualTo(ListSort.NAME);
+		assertThat(model.get("rooms")).isEqualTo(allRooms);
+	}
 	
 	@Test
 	public void newRoom_shouldOpenModal_whenRequested() {
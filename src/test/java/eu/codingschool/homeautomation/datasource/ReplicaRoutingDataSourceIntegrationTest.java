@@ -0,0 +1,206 @@
+package eu.codingschool.homeautomation.datasource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.context.jdbc.Sql.ExecutionPhase.AFTER_TEST_METHOD;
+import static org.springframework.test.context.jdbc.Sql.ExecutionPhase.BEFORE_TEST_METHOD;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.jdbc.Sql;
+import org.springframework.test.context.jdbc.SqlGroup;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import eu.codingschool.homeautomation.HomeAutomationApplication;
+import eu.codingschool.homeautomation.model.ListSort;
+import eu.codingschool.homeautomation.model.Room;
+import eu.codingschool.homeautomation.services.RoomService;
+
+/**
+ * The replica is a second in-memory database, which the tests bring up to date by copying the primary into it. The
+ * heartbeat is only written when a test asks for it, and the replica is told apart by a room it names differently.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = HomeAutomationApplication.class)
+@TestPropertySource(
+		locations = "classpath:application-integrationtest.properties",
+		properties = {
+				"homeautomation.datasource.replica-urls=" + ReplicaRoutingDataSourceIntegrationTest.REPLICA_URL,
+				"homeautomation.datasource.heartbeat-interval-ms=3600000",
+				"homeautomation.datasource.max-replica-lag-ms=60000"
+		}
+)
+@SqlGroup({
+	@Sql(executionPhase = BEFORE_TEST_METHOD, scripts = "/test-data-population.sql"),
+	@Sql(executionPhase = AFTER_TEST_METHOD, scripts = "/test-data-cleanup.sql")
+})
+public class ReplicaRoutingDataSourceIntegrationTest {
+
+	static final String REPLICA_URL = "jdbc:h2:mem:replica;DB_CLOSE_DELAY=-1";
+
+	private static final String KITCHEN = "Kitchen";
+	private static final String REPLICA_KITCHEN = "Kitchen on the replica";
+
+	@Autowired
+	private RoomService roomService;
+
+	@Autowired
+	private ReplicaSet replicaSet;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	private JdbcTemplate replicaJdbcTemplate;
+
+	@Before
+	public void setUp() {
+		replicaJdbcTemplate = new JdbcTemplate(new DriverManagerDataSource(REPLICA_URL, "sa", "sa"));
+		replicateUpToDate();
+	}
+
+	@After
+	public void tearDown() {
+		RequestContextHolder.resetRequestAttributes();
+	}
+
+	@Test
+	public void readOnlyServiceMethod_shouldReadFromReplica_whenReplicaUpToDate() {
+		assertThat(findRoomNames()).contains(REPLICA_KITCHEN).doesNotContain(KITCHEN);
+	}
+
+	@Test
+	public void readOnlyServiceMethod_shouldReadFromPrimary_whenCalledFromReadWriteTransaction() {
+		// given
+		TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+		transactionTemplate.setName(getClass().getName() + ".write");
+
+		// when
+		List<String> names = transactionTemplate.execute(status -> findRoomNames());
+
+		// then
+		assertThat(names).contains(KITCHEN);
+	}
+
+	@Test
+	public void keptDevicesCount_shouldBeReadFromPrimary_whenAskedForInReadOnlyTransaction() {
+		// given
+		TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+		transactionTemplate.setReadOnly(true);
+		transactionTemplate.setName(getClass().getName() + ".read");
+		try {
+			// when
+			List<List<String>> names = transactionTemplate.execute(status -> Arrays.asList(
+					findRoomNames(),
+					roomService.findByUser(101).stream()
+							   .map(count -> count.getRoom().getName())
+							   .collect(Collectors.toList())
+			));
+
+			// then
+			assertThat(names.get(0)).contains(REPLICA_KITCHEN);
+			assertThat(names.get(1)).contains(KITCHEN).doesNotContain(REPLICA_KITCHEN);
+		} finally {
+			roomService.evictDevicesCount(101);
+		}
+	}
+
+	@Test
+	public void repositoryFinder_shouldReadFromPrimary_whenReplicaUpToDate() {
+		assertThat(roomService.findById(2).getName()).isEqualTo(KITCHEN);
+	}
+
+	@Test
+	public void readOnlyServiceMethod_shouldReadFromPrimary_untilReplicaReplayedWriteOfRequest() throws Exception {
+		// given
+		RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest()));
+		roomService.save(new Room("Attic"));
+
+		// when
+		List<String> namesAfterWrite = findRoomNames();
+		Thread.sleep(5);
+		replicateUpToDate();
+		List<String> namesAfterReplay = findRoomNames();
+
+		// then
+		assertThat(namesAfterWrite).contains("Attic", KITCHEN);
+		assertThat(namesAfterReplay).contains("Attic", REPLICA_KITCHEN);
+	}
+
+	@Test
+	public void readOnlyServiceMethod_shouldReadFromReplica_whenAnotherSessionHasWritten() {
+		// given
+		RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest()));
+		roomService.save(new Room("Attic"));
+		List<String> namesOfWriter = findRoomNames();
+
+		// when
+		RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest()));
+		List<String> namesOfOtherUser = findRoomNames();
+
+		// then
+		assertThat(namesOfWriter).contains("Attic", KITCHEN);
+		assertThat(namesOfOtherUser).contains(REPLICA_KITCHEN).doesNotContain("Attic");
+	}
+
+	@Test
+	public void readOnlyServiceMethod_shouldReadFromPrimary_whenReplicaLagsBehind() {
+		// given
+		replicaJdbcTemplate.update(
+				"UPDATE replication_heartbeat SET beat_at = ? WHERE id = 1", System.currentTimeMillis() - 120000);
+		replicaSet.beat();
+
+		// when
+		List<String> names = findRoomNames();
+
+		// then
+		assertThat(names).contains(KITCHEN);
+	}
+
+	@Test
+	public void readOnlyServiceMethod_shouldReadFromPrimary_whenReplicaCannotBeRead() {
+		// given
+		replicaJdbcTemplate.execute("DROP TABLE replication_heartbeat");
+		replicaSet.beat();
+
+		// when
+		List<String> names = findRoomNames();
+
+		// then
+		assertThat(names).contains(KITCHEN);
+	}
+
+	private List<String> findRoomNames() {
+		return roomService.findPage(ListSort.ID, null, null, null).map(Room::getName).getContent();
+	}
+
+	/**
+	 * Writes a heartbeat, copies the primary into the replica, which then renames the kitchen, and reads the heartbeat
+	 * back from the replica.
+	 */
+	private void replicateUpToDate() {
+		replicaSet.beat();
+		List<String> script = jdbcTemplate.queryForList("SCRIPT", String.class);
+		replicaJdbcTemplate.execute("DROP ALL OBJECTS");
+		script.forEach(replicaJdbcTemplate::execute);
+		replicaJdbcTemplate.update("UPDATE room SET name = ? WHERE name = ?", REPLICA_KITCHEN, KITCHEN);
+		replicaSet.beat();
+	}
+}
@@ -0,0 +1,108 @@
+package eu.codingschool.homeautomation.metrics;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.annotation.DirtiesContext.ClassMode;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import eu.codingschool.homeautomation.events.DeviceStateChangedEvent;
+import eu.codingschool.homeautomation.model.DeviceState;
+import eu.codingschool.homeautomation.repositories.DeviceRepository;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+@RunWith(SpringRunner.class)
+@DirtiesContext(classMode = ClassMode.AFTER_EACH_TEST_METHOD)
+public class DeviceCommandMetricsTest {
+
+	@TestConfiguration
+	static class DeviceCommandMetricsTestContextConfiguration {
+		@Bean
+		public DeviceCommandMetrics deviceCommandMetrics() {
+			return new DeviceCommandMetrics();
+		}
+
+		@Bean
+		public MeterRegistry meterRegistry() {
+			return new SimpleMeterRegistry();
+		}
+	}
+
+	@Autowired
+	private DeviceCommandMetrics deviceCommandMetrics;
+
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	@MockBean
+	private DeviceRepository deviceRepository;
+
+	@MockBean
+	private BCryptPasswordEncoder bCryptPasswordEncoder;
+
+	@Before
+	public void setUp() {
+		Mockito.when(deviceRepository.findDeviceTypeById(1)).thenReturn("Lights");
+		Mockito.when(deviceRepository.findDeviceTypeById(2)).thenReturn("Lights");
+		Mockito.when(deviceRepository.findDeviceTypeById(3)).thenReturn("Thermostat");
+	}
+
+	@Test
+	public void onDeviceStateChanged_shouldCountCommandsPerDeviceType_whenDevicesChange() {
+		// when
+		changeDevice(1);
+		changeDevice(2);
+		changeDevice(1);
+		changeDevice(3);
+
+		// then
+		assertThat(countedCommands("Lights")).isEqualTo(3);
+		assertThat(countedCommands("Thermostat")).isEqualTo(1);
+		verify(deviceRepository, times(1)).findDeviceTypeById(1);
+	}
+
+	@Test
+	public void onDeviceStateChanged_shouldLookUpDeviceTypeAgain_whenDeviceEvicted() {
+		// given
+		changeDevice(3);
+		Mockito.when(deviceRepository.findDeviceTypeById(3)).thenReturn("Lights");
+
+		// when
+		deviceCommandMetrics.evict(3);
+		changeDevice(3);
+
+		// then
+		assertThat(countedCommands("Thermostat")).isEqualTo(1);
+		assertThat(countedCommands("Lights")).isEqualTo(1);
+	}
+
+	@Test
+	public void onDeviceStateChanged_shouldCountCommand_whenDeviceHasNoType() {
+		// when
+		changeDevice(4);
+
+		// then
+		assertThat(countedCommands("none")).isEqualTo(1);
+	}
+
+	private void changeDevice(int deviceId) {
+		deviceCommandMetrics.onDeviceStateChanged(new DeviceStateChangedEvent(new DeviceState(deviceId, true, "1")));
+	}
+
+	private double countedCommands(String deviceType) {
+		return meterRegistry.get(DeviceCommandMetrics.METRIC_COMMANDS).tag("type", deviceType).counter().count();
+	}
+}
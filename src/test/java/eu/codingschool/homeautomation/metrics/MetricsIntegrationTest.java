@@ -0,0 +1,149 @@
+package eu.codingschool.homeautomation.metrics;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestBuilders.formLogin;
+import static org.springframework.security.test.web.servlet.setup.SecurityMockMvcConfigurers.springSecurity;
+import static org.springframework.test.context.jdbc.Sql.ExecutionPhase.AFTER_TEST_METHOD;
+import static org.springframework.test.context.jdbc.Sql.ExecutionPhase.BEFORE_TEST_METHOD;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.metrics.web.servlet.WebMvcMetricsFilter;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.security.test.context.support.WithAnonymousUser;
+import org.springframework.security.test.context.support.WithUserDetails;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.jdbc.Sql;
+import org.springframework.test.context.jdbc.SqlGroup;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import eu.codingschool.homeautomation.HomeAutomationApplication;
+import eu.codingschool.homeautomation.services.DeviceStateService;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(
+		webEnvironment = SpringBootTest.WebEnvironment.MOCK,
+		classes = HomeAutomationApplication.class
+)
+@TestPropertySource(
+		locations = "classpath:application-integrationtest.properties",
+		// the port that Prometheus scrapes, without starting a management server on it
+		properties = "homeautomation.metrics.scrape-port=" + MetricsIntegrationTest.SCRAPE_PORT
+)
+@SqlGroup({
+	@Sql(executionPhase = BEFORE_TEST_METHOD, scripts = "/test-data-population.sql"),
+	@Sql(executionPhase = AFTER_TEST_METHOD, scripts = "/test-data-cleanup.sql")
+})
+public class MetricsIntegrationTest {
+
+	static final int SCRAPE_PORT = 8081;
+
+	private static final String ENDPOINT_PROMETHEUS = "/actuator/prometheus";
+	private static final String ENDPOINT_HEALTH = "/actuator/health";
+	private static final String ENDPOINT_DEVICE_STATUS_EDIT = "/devices/{id}/updateStatus/{status}";
+	private static final String ENDPOINT_LOGIN = "/login";
+
+	private static final String USER_DETAILS_SERVICE = "userDetailsService";
+
+	// User inserted in database via test/resources/test-data-population.sql
+	private static final String USER_ADMIN = "testadmin@foo.com";
+	private static final String USER_SIMPLE = "testuser1@foo.com";
+
+	@Autowired
+	private WebApplicationContext context;
+
+	@Autowired
+	private FilterRegistrationBean<WebMvcMetricsFilter> webMvcMetricsFilter;
+
+	@Autowired
+	private DatabaseRequestMetricsFilter databaseRequestMetricsFilter;
+
+	@Autowired
+	private DeviceStateService deviceStateService;
+
+	private MockMvc mockMvc;
+
+	@Before
+	public void setup() {
+		// the metrics filters are servlet filters, so they have to be added explicitly like the security filters
+		mockMvc = MockMvcBuilders.webAppContextSetup(context)
+								 .addFilters(webMvcMetricsFilter.getFilter(), databaseRequestMetricsFilter)
+								 .apply(springSecurity())
+								 .build();
+	}
+
+	@After
+	public void tearDown() {
+		// the states are kept in memory across the tests, so write them before the test data is cleaned up
+		deviceStateService.flush();
+	}
+
+	@Test
+	@WithUserDetails(value = USER_ADMIN, userDetailsServiceBeanName = USER_DETAILS_SERVICE)
+	public void getPrometheus_shouldExposeApplicationMetrics_whenAdminUserSentCommand() throws Exception {
+		mockMvc.perform(patch(ENDPOINT_DEVICE_STATUS_EDIT, "6", "true"))
+			   .andExpect(status().is3xxRedirection());
+
+		mockMvc.perform(get(ENDPOINT_PROMETHEUS))
+			   .andExpect(status().isOk())
+			   .andExpect(content().string(containsString("homeautomation_device_commands_total{type=\"Thermostat\",}")))
+			   .andExpect(content().string(containsString("homeautomation_requests_commands_seconds_bucket")))
+			   .andExpect(content().string(containsString(
+					   "homeautomation_services_seconds_count{class=\"DeviceService\",exception=\"none\",method=\"updateStatus\",}")))
+			   .andExpect(content().string(containsString("homeautomation_repositories_seconds_count{class=\"PersonRepository\"")))
+			   .andExpect(content().string(containsString("homeautomation_db_statements_seconds_count")))
+			   .andExpect(content().string(containsString(
+					   "homeautomation_db_request_statements_count{uri=\"/devices/{id}/updateStatus/{status}\",}")))
+			   .andExpect(content().string(containsString("homeautomation_device_history_dropped_total")))
+			   .andExpect(content().string(containsString("hikaricp_connections_active")));
+	}
+
+	@Test
+	@WithUserDetails(value = USER_SIMPLE, userDetailsServiceBeanName = USER_DETAILS_SERVICE)
+	public void getPrometheus_shouldBeForbidden_whenSimpleUser() throws Exception {
+		mockMvc.perform(get(ENDPOINT_PROMETHEUS))
+			   .andExpect(status().isForbidden());
+	}
+
+	@Test
+	public void getPrometheus_shouldBeAllowedWithoutLogin_whenScrapedOnManagementPort() throws Exception {
+		mockMvc.perform(get(ENDPOINT_PROMETHEUS).with(request -> {
+					request.setLocalPort(SCRAPE_PORT);
+					return request;
+				}))
+			   .andExpect(status().isOk())
+			   .andExpect(content().string(containsString("hikaricp_connections_active")));
+	}
+
+	@Test
+	public void getPrometheus_shouldRedirectToLogin_whenNotScrapedOnManagementPort() throws Exception {
+		mockMvc.perform(get(ENDPOINT_PROMETHEUS))
+			   .andExpect(status().is3xxRedirection())
+			   .andExpect(redirectedUrlPattern("**" + ENDPOINT_LOGIN));
+	}
+
+	@Test
+	@WithAnonymousUser
+	public void getHealth_shouldBeAllowed_whenAnonymousUser() throws Exception {
+		mockMvc.perform(get(ENDPOINT_HEALTH))
+			   .andExpect(status().isOk());
+	}
+
+	@Test
+	@WithUserDetails(value = USER_ADMIN, userDetailsServiceBeanName = USER_DETAILS_SERVICE)
+	public void login_shouldBeTimedAsFailure_whenPasswordIsWrong() throws Exception {
+		mockMvc.perform(formLogin(ENDPOINT_LOGIN).user("email", USER_SIMPLE).password("wrong"));
+
+		mockMvc.perform(get(ENDPOINT_PROMETHEUS))
+			   .andExpect(content().string(containsString("homeautomation_login_seconds_count{outcome=\"FAILURE\",}")));
+	}
+}
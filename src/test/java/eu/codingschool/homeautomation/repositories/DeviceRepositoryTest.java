@@ -2,6 +2,7 @@ package eu.codingschool.homeautomation.repositories;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
+import java.math.BigDecimal;
 import java.util.List;
 
 import org.junit.Test;
@@ -9,12 +10,15 @@ import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
 import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
 import org.springframework.test.context.junit4.SpringRunner;
 
 import eu.codingschool.homeautomation.model.Device;
 import eu.codingschool.homeautomation.model.DeviceType;
 import eu.codingschool.homeautomation.model.Person;
 import eu.codingschool.homeautomation.model.Room;
+import eu.codingschool.homeautomation.repositories.projections.DeviceGridRow;
 
 @RunWith(SpringRunner.class)
 @DataJpaTest
@@ -112,6 +116,105 @@ public class DeviceRepositoryTest {
 	    assertThat(devicesFound.size()).isEqualTo(0);
 	}
 	
+	@Test
+	public void findGridRowsByPersonsId_shouldReturnRowsWithDeviceTypeDetails_whenDevicesForPersonExist() {
+	    // given
+		Person person = new Person();
+		Room room = new Room();
+		initDevices(person, room);
+		DeviceType deviceType = new DeviceType("Lights", "Illumination");
+		deviceType.setUnitOfMeasure("%");
+		deviceType.setIcon("fa-lightbulb");
+		entityManager.persist(deviceType);
+		Device device = person.getDevices().iterator().next();
+		device.setDeviceType(deviceType);
+		entityManager.persist(device);
+		entityManager.flush();
+	 
+	    // when
+	    List<DeviceGridRow> rowsFound = deviceRepository.findGridRowsByPersonsId(person.getId());
+	 
+	    // then
+	    assertThat(rowsFound.size()).isEqualTo(3);
+	    DeviceGridRow row = rowsFound.stream().filter(r -> r.getId() == device.getId()).findFirst().get();
+	    assertThat(row.getIcon()).isEqualTo("fa-lightbulb");
+	    assertThat(row.getInformationText()).isEqualTo("Illumination %");
+	}
+	
+	@Test
+	public void findGridRowsByRoomId_shouldReturnRows_whenDevicesForRoomExist() {
+	    // given
+		Person person = new Person();
+		Room room = new Room();
+		initDevices(person, room);
+	 
+	    // when
+	    List<DeviceGridRow> rowsFound = deviceRepository.findGridRowsByRoomId(room.getId());
+	 
+	    // then
+	    assertThat(rowsFound.size()).isEqualTo(4);
+	}
+	
+	@Test
+	public void findGridRowsByPersonsIdAndRoomId_shouldReturnRows_whenDevicesForPersonAndRoomExist() {
+	    // given
+		Person person = new Person();
+		Room room = new Room();
+		initDevices(person, room);
+	 
+	    // when
+	    List<DeviceGridRow> rowsFound = deviceRepository.findGridRowsByPersonsIdAndRoomId(person.getId(), room.getId());
+	 
+	    // then
+	    assertThat(rowsFound.size()).isEqualTo(2);
+	}
+	
+	@Test
+	public void findPageOrderById_shouldReturnMatchingDevicesAfterTheGivenId_whenFiltering() {
+	    // given
+		Room room = new Room("Kitchen");
+		persistRoom(room);
+		Device lamp = persistDevice("Ceiling Lamp", room);
+		persistDevice("Fridge", room);
+		Device deskLamp = persistDevice("Desk lamp", room);
+		Device floorLamp = persistDevice("Floor LAMP", room);
+	    entityManager.flush();
+	 
+	    // when
+	    Slice<Device> firstPage = deviceRepository.findPageOrderById("%lamp%", 0, PageRequest.of(0, 2));
+	    Slice<Device> secondPage = deviceRepository.findPageOrderById("%lamp%", deskLamp.getId(), PageRequest.of(0, 2));
+	 
+	    // then
+	    assertThat(firstPage.getContent()).containsExactly(lamp, deskLamp);
+	    assertThat(firstPage.hasNext()).isTrue();
+	    assertThat(firstPage.getContent().get(0).getRoom().getName()).isEqualTo("Kitchen");
+	    assertThat(secondPage.getContent()).containsExactly(floorLamp);
+	    assertThat(secondPage.hasNext()).isFalse();
+	}
+	
+	@Test
+	public void findByDeviceTypeIdAndValueAbove_shouldReturnDevicesOfTypeAboveValue_highestFirst() {
+		// given
+		Room room = new Room();
+		persistRoom(room);
+		DeviceType thermostat = entityManager.persist(new DeviceType("Thermostat", "Target temp."));
+		DeviceType lights = entityManager.persist(new DeviceType("Lights", "Illumination"));
+		entityManager.persist(new Device("Thermostat #1", true, "22", thermostat, room));
+		entityManager.persist(new Device("Thermostat #2", true, "24.5", thermostat, room));
+		entityManager.persist(new Device("Thermostat #3", true, "26", thermostat, room));
+		entityManager.persist(new Device("Thermostat #4", true, "24", thermostat, room));
+		entityManager.persist(new Device("Lighting #1", true, "90", lights, room));
+		entityManager.flush();
+
+		// when
+		List<Device> devicesFound = deviceRepository.findByDeviceTypeIdAndValueAbove(
+				thermostat.getId(), new BigDecimal("24"));
+
+		// then
+		assertThat(devicesFound).extracting(Device::getName).containsExactly("Thermostat #3", "Thermostat #2");
+		assertThat(devicesFound).extracting(Device::getInformationValue).containsExactly("26", "24.5");
+	}
+
 	private void initDevices(Person person, Room room) {
 		persistDeviceTypes();
 		persistRoom(room);
@@ -130,6 +233,13 @@ public class DeviceRepositoryTest {
 		entityManager.persist(room);
 	}
 	
+	private Device persistDevice(String name, Room room) {
+		Device device = new Device();
+		device.setName(name);
+		device.setRoom(room);
+		return entityManager.persist(device);
+	}
+	
 	private void persistDevices(Person person, Room room) {
 		Device device1 = new Device();
 	    device1.setRoom(room);
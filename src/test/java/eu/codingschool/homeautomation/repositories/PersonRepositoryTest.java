@@ -8,6 +8,8 @@ import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
 import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
 import org.springframework.test.context.junit4.SpringRunner;
 
 import eu.codingschool.homeautomation.model.Person;
@@ -49,4 +51,20 @@ public class PersonRepositoryTest {
 	    // then
 	    assertNull(personFound);
 	}
+	
+	@Test
+	public void findPageOrderById_shouldReturnMatchingPeople_whenFilteringByEmail() {
+	    // given
+	    Person admin = entityManager.persist(new Person("AdminName", "AdminSurname", "admin@foo.com", "***", "ADMIN"));
+	    entityManager.persist(new Person("UserName", "UserSurname", "user@bar.com", "***", "USER"));
+	    Person other = entityManager.persist(new Person("OtherName", "OtherSurname", "other@foo.com", "***", "USER"));
+	    entityManager.flush();
+	 
+	    // when
+	    Slice<Person> page = personRepository.findPageOrderById("%@foo%", 0, PageRequest.of(0, 10));
+	 
+	    // then
+	    assertThat(page.getContent()).containsExactly(admin, other);
+	    assertThat(page.hasNext()).isFalse();
+	}
 }
\ No newline at end of file
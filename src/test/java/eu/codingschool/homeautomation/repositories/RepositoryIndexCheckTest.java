@@ -0,0 +1,83 @@
+package eu.codingschool.homeautomation.repositories;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.junit4.SpringRunner;
+
+/**
+ * The check runs against the database that the H2 migrations have created, which must have every required index;
+ * the tests take some of them away again.
+ */
+@RunWith(SpringRunner.class)
+@DataJpaTest
+@Import(RepositoryIndexCheck.class)
+public class RepositoryIndexCheckTest {
+
+	@Autowired
+	private RepositoryIndexCheck repositoryIndexCheck;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Test
+	public void findMissingIndexes_shouldFindNone_whenDatabaseMigrated() {
+		assertThat(repositoryIndexCheck.findMissingIndexes()).isEmpty();
+	}
+
+	@Test
+	public void afterSingletonsInstantiated_shouldFail_whenIndexesMissing() {
+		// given
+		jdbcTemplate.execute("DROP INDEX uq_Person_email");
+		jdbcTemplate.execute("DROP INDEX idx_Device_room");
+		try {
+			// when
+			Throwable thrown = catchThrowable(repositoryIndexCheck::afterSingletonsInstantiated);
+
+			// then
+			assertThat(thrown).isInstanceOf(IllegalStateException.class)
+							  .hasMessageContaining("a unique index on person [email] for PersonRepository.findByEmail")
+							  .hasMessageContaining("an index on device [room_id, id] for DeviceRepository.findByRoomId");
+			assertThat(thrown.getMessage()).doesNotContain("DeviceRepository.findByPersonsIdAndRoomId");
+		} finally {
+			jdbcTemplate.execute("CREATE UNIQUE INDEX uq_Person_email ON person (email)");
+			jdbcTemplate.execute("CREATE INDEX idx_Device_room ON device (room_id, id)");
+		}
+	}
+
+	@Test
+	public void findMissingIndexes_shouldNotAcceptIndexThatIsNotUnique_whenUniqueIndexRequired() {
+		// given
+		jdbcTemplate.execute("DROP INDEX uq_Person_email");
+		jdbcTemplate.execute("CREATE INDEX idx_Person_email ON person (email)");
+		try {
+			// when, then
+			assertThat(repositoryIndexCheck.findMissingIndexes())
+					.extracting(Object::toString)
+					.containsExactly("a unique index on person [email] for PersonRepository.findByEmail");
+		} finally {
+			jdbcTemplate.execute("DROP INDEX idx_Person_email");
+			jdbcTemplate.execute("CREATE UNIQUE INDEX uq_Person_email ON person (email)");
+		}
+	}
+
+	@Test
+	public void afterSingletonsInstantiated_shouldNotCheck_whenDisabled() {
+		// given
+		jdbcTemplate.execute("DROP INDEX idx_Device_room");
+		repositoryIndexCheck.enabled = false;
+		try {
+			// when
+			repositoryIndexCheck.afterSingletonsInstantiated();
+		} finally {
+			repositoryIndexCheck.enabled = true;
+			jdbcTemplate.execute("CREATE INDEX idx_Device_room ON device (room_id, id)");
+		}
+	}
+}
@@ -11,6 +11,8 @@ import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
 import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
 import org.springframework.test.context.junit4.SpringRunner;
 
 import eu.codingschool.homeautomation.model.Device;
@@ -63,4 +65,59 @@ public class RoomRepositoryTest {
 	    // then
 	    assertTrue(roomsFound.isEmpty());
 	}
+	
+	@Test
+	public void findPageOrderByName_shouldContinueAfterTheLastRow_whenNamesAreEqual() {
+	    // given
+		Room attic = entityManager.persist(new Room("Attic"));
+		Room bedroom = entityManager.persist(new Room("Bedroom"));
+		Room kitchen = entityManager.persist(new Room("Kitchen"));
+		Room otherBedroom = entityManager.persist(new Room("Bedroom"));
+	    entityManager.flush();
+	 
+	    // when
+	    Slice<Room> firstPage = roomRepository.findPageOrderByName("%", "", 0, PageRequest.of(0, 2));
+	    Slice<Room> secondPage = roomRepository.findPageOrderByName(
+	    		"%", bedroom.getName(), bedroom.getId(), PageRequest.of(0, 2));
+	 
+	    // then
+	    assertThat(firstPage.getContent()).containsExactly(attic, bedroom);
+	    assertTrue(firstPage.hasNext());
+	    assertThat(secondPage.getContent()).containsExactly(otherBedroom, kitchen);
+	    assertThat(secondPage.hasNext()).isFalse();
+	}
+
+	@Test
+	public void findPageOrderByName_shouldListRoomsWithoutNameFirst_whenNotFiltering() {
+	    // given
+		Room attic = entityManager.persist(new Room("Attic"));
+		Room unnamed = entityManager.persist(new Room());
+		Room otherUnnamed = entityManager.persist(new Room());
+	    entityManager.flush();
+
+	    // when
+	    Slice<Room> firstPage = roomRepository.findPageOrderByName(null, null, 0, PageRequest.of(0, 1));
+	    Slice<Room> secondPage = roomRepository.findPageOrderByName(null, null, unnamed.getId(), PageRequest.of(0, 2));
+
+	    // then
+	    assertThat(firstPage.getContent()).containsExactly(unnamed);
+	    assertThat(secondPage.getContent()).containsExactly(otherUnnamed, attic);
+	    assertThat(secondPage.hasNext()).isFalse();
+	}
+
+	@Test
+	public void findPageOrderById_shouldListRoomsWithoutName_whenNotFiltering() {
+	    // given
+		Room unnamed = entityManager.persist(new Room());
+		Room attic = entityManager.persist(new Room("Attic"));
+	    entityManager.flush();
+
+	    // when
+	    Slice<Room> page = roomRepository.findPageOrderById(null, 0, PageRequest.of(0, 10));
+	    Slice<Room> filteredPage = roomRepository.findPageOrderById("%a%", 0, PageRequest.of(0, 10));
+
+	    // then
+	    assertThat(page.getContent()).containsExactly(unnamed, attic);
+	    assertThat(filteredPage.getContent()).containsExactly(attic);
+	}
 }
\ No newline at end of file
@@ -0,0 +1,325 @@
+package eu.codingschool.homeautomation.services;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextImpl;
+import org.springframework.security.core.session.SessionDestroyedEvent;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.annotation.DirtiesContext.ClassMode;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+
+import eu.codingschool.homeautomation.model.Dashboard;
+import eu.codingschool.homeautomation.model.Person;
+import eu.codingschool.homeautomation.model.Room;
+import eu.codingschool.homeautomation.repositories.projections.DeviceGridRow;
+import eu.codingschool.homeautomation.repositories.projections.RoomDevicesCount;
+import eu.codingschool.homeautomation.security.PersonUser;
+
+@RunWith(SpringRunner.class)
+@DirtiesContext(classMode = ClassMode.AFTER_EACH_TEST_METHOD)
+public class DashboardServiceImplTest {
+
+	@TestConfiguration
+	static class DashboardServiceImplTestContextConfiguration {
+		@Bean
+		public DashboardService dashboardService() {
+			return new DashboardServiceImpl();
+		}
+	}
+
+	@Autowired
+	private DashboardService dashboardService;
+
+	@MockBean
+	private PersonService personService;
+
+	@MockBean
+	private RoomService roomService;
+
+	@MockBean
+	private DeviceService deviceService;
+
+	@MockBean
+	private StateVersionService stateVersionService;
+
+	@MockBean
+	private PlatformTransactionManager transactionManager;
+
+	private static final String ADMIN_EMAIL = "admin@foo.com";
+	private static final String USER_EMAIL = "user@foo.com";
+
+	private Person admin;
+	private Person simpleUser;
+
+	private ExecutorService executor;
+
+	@Before
+	public void setUp() {
+		admin = new Person();
+		admin.setId(1);
+		admin.setRole("ADMIN");
+		admin.setEmail(ADMIN_EMAIL);
+
+		simpleUser = new Person();
+		simpleUser.setId(2);
+		simpleUser.setRole("USER");
+		simpleUser.setEmail(USER_EMAIL);
+
+		Room room = new Room("Living Room");
+		room.setId(1);
+		room.setDevices(Collections.emptySet());
+
+		Mockito.when(personService.findByEmail(ADMIN_EMAIL)).thenReturn(admin);
+		Mockito.when(personService.findByEmail(USER_EMAIL)).thenReturn(simpleUser);
+		Mockito.when(roomService.findAll()).thenReturn(Collections.singletonList(room));
+		Mockito.when(roomService.findByUser(2)).thenReturn(Collections.singletonList(new RoomDevicesCount(room, 1)));
+		Mockito.when(deviceService.findGridRows()).thenReturn(Arrays.asList(gridRow(1), gridRow(2)));
+		Mockito.when(deviceService.findGridRowsByPersonsId(2)).thenReturn(Collections.singletonList(gridRow(2)));
+		Mockito.when(stateVersionService.getUserVersion(any(Integer.class))).thenReturn(10L);
+		Mockito.when(stateVersionService.getVersion()).thenReturn(100L);
+
+		executor = Executors.newFixedThreadPool(2);
+	}
+
+	@After
+	public void tearDown() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void getLoggedInDashboard_shouldReturnNull_whenNobodyLoggedIn() {
+		// when
+		Dashboard dashboard = dashboardService.getLoggedInDashboard();
+
+		// then
+		assertThat(dashboard).isNull();
+	}
+
+	@Test
+	public void getLoggedInDashboard_shouldHaveAssignedDevices_whenSimpleUserLoggedIn() {
+		// given
+		logIn(USER_EMAIL);
+
+		// when
+		Dashboard dashboard = dashboardService.getLoggedInDashboard();
+
+		// then
+		assertThat(dashboard.getLoggedInUser()).isSameAs(simpleUser);
+		assertThat(dashboard.getRooms()).isNull();
+		assertThat(dashboard.getRoomsDevicesCount()).hasSize(1);
+		assertThat(dashboard.getDevices()).extracting("id").containsExactly(2);
+	}
+
+	@Test
+	public void getLoggedInDashboard_shouldHaveAllRoomsAndDevices_whenAdminLoggedIn() {
+		// given
+		logIn(ADMIN_EMAIL);
+
+		// when
+		Dashboard dashboard = dashboardService.getLoggedInDashboard();
+
+		// then
+		assertThat(dashboard.getLoggedInUser()).isSameAs(admin);
+		assertThat(dashboard.getRooms()).hasSize(1);
+		assertThat(dashboard.getRoomsDevicesCount()).isNull();
+		assertThat(dashboard.getDevices()).extracting("id").containsExactly(1, 2);
+	}
+
+	@Test
+	public void getLoggedInDashboard_shouldLoadInReadOnlyTransaction() {
+		// given
+		logIn(USER_EMAIL);
+
+		// when
+		dashboardService.getLoggedInDashboard();
+
+		// then
+		verify(transactionManager, times(1)).getTransaction(argThat(TransactionDefinition::isReadOnly));
+	}
+
+	@Test
+	public void getLoggedInDashboard_shouldNotLoadAnything_whenNothingChanged() {
+		// given
+		logIn(USER_EMAIL);
+		Dashboard first = dashboardService.getLoggedInDashboard();
+
+		// when
+		Dashboard second = dashboardService.getLoggedInDashboard();
+
+		// then
+		assertThat(second).isSameAs(first);
+		verify(personService, times(2)).findByEmail(USER_EMAIL);
+		verify(deviceService, times(1)).findGridRowsByPersonsId(2);
+		verify(roomService, times(1)).findByUser(2);
+	}
+
+	@Test
+	public void getLoggedInDashboard_shouldLoadAgain_whenTheUserVersionChanged() {
+		// given
+		logIn(USER_EMAIL);
+		Dashboard first = dashboardService.getLoggedInDashboard();
+		Mockito.when(stateVersionService.getUserVersion(2)).thenReturn(11L);
+
+		// when
+		Dashboard second = dashboardService.getLoggedInDashboard();
+
+		// then
+		assertThat(second).isNotSameAs(first);
+		verify(deviceService, times(2)).findGridRowsByPersonsId(2);
+	}
+
+	@Test
+	public void getLoggedInDashboard_shouldNotLoadAgain_whenOnlyDevicesOfOthersChanged() {
+		// given
+		logIn(USER_EMAIL);
+		Dashboard first = dashboardService.getLoggedInDashboard();
+		Mockito.when(stateVersionService.getVersion()).thenReturn(101L);
+
+		// when
+		Dashboard second = dashboardService.getLoggedInDashboard();
+
+		// then
+		assertThat(second).isSameAs(first);
+	}
+
+	@Test
+	public void getLoggedInDashboard_shouldLoadAgain_whenAnyDeviceChangedForAnAdmin() {
+		// given
+		logIn(ADMIN_EMAIL);
+		Dashboard first = dashboardService.getLoggedInDashboard();
+		Mockito.when(stateVersionService.getVersion()).thenReturn(101L);
+
+		// when
+		Dashboard second = dashboardService.getLoggedInDashboard();
+
+		// then
+		assertThat(second).isNotSameAs(first);
+		verify(deviceService, times(2)).findGridRows();
+	}
+
+	@Test
+	public void getLoggedInDashboard_shouldReturnNull_whenThePersonIsGone() {
+		// given
+		logIn(USER_EMAIL);
+		dashboardService.getLoggedInDashboard();
+		Mockito.when(personService.findByEmail(USER_EMAIL)).thenReturn(null);
+		Mockito.when(stateVersionService.getUserVersion(2)).thenReturn(11L);
+
+		// when
+		Dashboard dashboard = dashboardService.getLoggedInDashboard();
+
+		// then
+		assertThat(dashboard).isNull();
+	}
+
+	@Test
+	public void getLoggedInDashboard_shouldLoadOnce_whenConcurrentRequestsMiss() throws Exception {
+		// given
+		logIn(USER_EMAIL);
+		CountDownLatch loading = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		Mockito.when(deviceService.findGridRowsByPersonsId(2)).thenAnswer(invocation -> {
+			loading.countDown();
+			release.await(5, TimeUnit.SECONDS);
+			return Collections.singletonList(gridRow(2));
+		});
+
+		// when
+		Future<Dashboard> first = executor.submit(this::getDashboardAs);
+		assertThat(loading.await(5, TimeUnit.SECONDS)).isTrue();
+		Future<Dashboard> second = executor.submit(this::getDashboardAs);
+		Thread.sleep(100);
+		release.countDown();
+
+		// then
+		assertThat(second.get(5, TimeUnit.SECONDS)).isSameAs(first.get(5, TimeUnit.SECONDS));
+		verify(deviceService, times(1)).findGridRowsByPersonsId(2);
+	}
+
+	@Test
+	public void getLoggedInDashboard_shouldLoadAgain_whenTheSessionEnded() {
+		// given
+		logIn(USER_EMAIL);
+		Dashboard first = dashboardService.getLoggedInDashboard();
+
+		// when
+		((DashboardServiceImpl) dashboardService).onSessionDestroyed(sessionDestroyed(
+				new PersonUser(2, USER_EMAIL, "pass-foo", Collections.emptyList())));
+		Dashboard second = dashboardService.getLoggedInDashboard();
+
+		// then
+		assertThat(second).isNotSameAs(first);
+		verify(personService, times(4)).findByEmail(USER_EMAIL);
+		verify(deviceService, times(2)).findGridRowsByPersonsId(2);
+	}
+
+	@Test
+	public void getLoggedInDashboard_shouldLoadAgain_whenThePersonWasEvicted() {
+		// given
+		logIn(USER_EMAIL);
+		Dashboard first = dashboardService.getLoggedInDashboard();
+
+		// when
+		dashboardService.evict(2);
+		Dashboard second = dashboardService.getLoggedInDashboard();
+
+		// then
+		assertThat(second).isNotSameAs(first);
+		verify(deviceService, times(2)).findGridRowsByPersonsId(2);
+	}
+
+	private Dashboard getDashboardAs() {
+		return dashboardService.getLoggedInDashboard();
+	}
+
+	private void logIn(String email) {
+		Mockito.when(personService.getLoggedInUser()).thenReturn(new User(email, "pass-foo", Collections.emptyList()));
+	}
+
+	private static SessionDestroyedEvent sessionDestroyed(PersonUser user) {
+		SecurityContext securityContext =
+				new SecurityContextImpl(new UsernamePasswordAuthenticationToken(user, null, user.getAuthorities()));
+		return new SessionDestroyedEvent("session-foo") {
+			@Override
+			public List<SecurityContext> getSecurityContexts() {
+				return Collections.singletonList(securityContext);
+			}
+
+			@Override
+			public String getId() {
+				return "session-foo";
+			}
+		};
+	}
+
+	private static DeviceGridRow gridRow(int id) {
+		return new DeviceGridRow(id, "Device #" + id, 1, false, null, null, null, null, null, null, null, null);
+	}
+}
@@ -0,0 +1,167 @@
+package eu.codingschool.homeautomation.services;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import eu.codingschool.homeautomation.events.DeviceStateChangedEvent;
+import eu.codingschool.homeautomation.model.DeviceState;
+import eu.codingschool.homeautomation.model.Person;
+
+@RunWith(SpringRunner.class)
+public class DeviceEventServiceImplTest {
+
+	private static final List<RecordingSseEmitter> emitters = new CopyOnWriteArrayList<>();
+
+	@TestConfiguration
+	static class DeviceEventServiceImplTestContextConfiguration {
+		@Bean
+		public DeviceEventService deviceEventService() {
+			return new DeviceEventServiceImpl() {
+				@Override
+				SseEmitter createEmitter() {
+					RecordingSseEmitter emitter = new RecordingSseEmitter();
+					emitters.add(emitter);
+					return emitter;
+				}
+			};
+		}
+	}
+
+	/**
+	 * Keeps the sent events instead of writing them to an HTTP response, which may be stuck like the one of a dashboard
+	 * on a bad connection.
+	 */
+	static class RecordingSseEmitter extends SseEmitter {
+
+		private final List<SseEventBuilder> events = new CopyOnWriteArrayList<>();
+
+		private final CountDownLatch sending = new CountDownLatch(1);
+
+		private volatile CountDownLatch stuckUntil = new CountDownLatch(0);
+
+		private volatile boolean completed;
+
+		@Override
+		public void send(SseEventBuilder builder) throws IOException {
+			sending.countDown();
+			try {
+				stuckUntil.await();
+			} catch (InterruptedException ex) {
+				throw new IOException(ex);
+			}
+			events.add(builder);
+		}
+
+		@Override
+		public void complete() {
+			completed = true;
+			super.complete();
+		}
+	}
+
+	@Autowired
+	private DeviceEventService deviceEventService;
+
+	@MockBean
+	private DevicePermissionService devicePermissionService;
+
+	@Test
+	public void onDeviceStateChanged_shouldPushOnlyVisibleDevices_whenSimpleUserSubscribed() throws Exception {
+		// given
+		Person person = new Person();
+		person.setId(102);
+		person.setRole("USER");
+		Mockito.when(devicePermissionService.isAssigned(102, 7)).thenReturn(true);
+		RecordingSseEmitter emitter = (RecordingSseEmitter) subscribe(person);
+
+		// when
+		deviceEventService.onDeviceStateChanged(new DeviceStateChangedEvent(new DeviceState(6, false, "18")));
+		deviceEventService.onDeviceStateChanged(new DeviceStateChangedEvent(new DeviceState(7, true, "42")));
+
+		// then
+		assertThat(awaitEvents(emitter, 1)).containsExactly(7);
+	}
+
+	@Test
+	public void onDeviceStateChanged_shouldPushAllDevices_whenAdminSubscribed() throws Exception {
+		// given
+		Person person = new Person();
+		person.setId(101);
+		person.setRole("ADMIN");
+		RecordingSseEmitter emitter = (RecordingSseEmitter) subscribe(person);
+
+		// when
+		deviceEventService.onDeviceStateChanged(new DeviceStateChangedEvent(new DeviceState(6, false, "18")));
+		deviceEventService.onDeviceStateChanged(new DeviceStateChangedEvent(new DeviceState(7, true, "42")));
+
+		// then
+		assertThat(awaitEvents(emitter, 2)).containsExactly(6, 7);
+		Mockito.verify(devicePermissionService, Mockito.never()).isAssigned(Mockito.eq(101), Mockito.anyInt());
+	}
+
+	@Test
+	public void onDeviceStateChanged_shouldCloseDashboard_whenItFallsTooFarBehind() throws Exception {
+		// given
+		Person person = new Person();
+		person.setId(103);
+		person.setRole("ADMIN");
+		RecordingSseEmitter emitter = (RecordingSseEmitter) subscribe(person);
+		CountDownLatch connection = new CountDownLatch(1);
+		emitter.stuckUntil = connection;
+		deviceEventService.onDeviceStateChanged(new DeviceStateChangedEvent(new DeviceState(6, false, "18")));
+		assertThat(emitter.sending.await(5, TimeUnit.SECONDS)).isTrue();
+
+		// when, the changes queued for the dashboard are one more than it may have waiting
+		for (int i = 0; i <= 100; i++) {
+			deviceEventService.onDeviceStateChanged(new DeviceStateChangedEvent(new DeviceState(7, true, "42")));
+		}
+		connection.countDown();
+
+		// then
+		assertThat(awaitEvents(emitter, 1)).containsExactly(6);
+		assertThat(emitter.completed).isTrue();
+	}
+
+	private SseEmitter subscribe(Person person) {
+		SseEmitter emitter = deviceEventService.subscribe(person);
+		assertThat(emitters).contains((RecordingSseEmitter) emitter);
+		return emitter;
+	}
+
+	/**
+	 * The events are sent in the background, so wait a little for them.
+	 *
+	 * @return the ids of the devices pushed, in the order they were sent
+	 */
+	private List<Integer> awaitEvents(RecordingSseEmitter emitter, int expected) throws InterruptedException {
+		for (int i = 0; i < 50 && emitter.events.size() < expected; i++) {
+			Thread.sleep(100);
+		}
+		// give the dispatcher the chance to send anything that should not have been sent
+		Thread.sleep(100);
+		List<Integer> deviceIds = new ArrayList<>();
+		for (SseEmitter.SseEventBuilder event : emitter.events) {
+			event.build()
+				 .stream()
+				 .filter(part -> part.getData() instanceof DeviceState)
+				 .forEach(part -> deviceIds.add(((DeviceState) part.getData()).getDeviceId()));
+		}
+		return deviceIds;
+	}
+}
@@ -0,0 +1,262 @@
+package eu.codingschool.homeautomation.services;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import eu.codingschool.homeautomation.model.DeviceHistoryRollup;
+import eu.codingschool.homeautomation.model.DeviceHistorySample;
+import eu.codingschool.homeautomation.model.DeviceState;
+import eu.codingschool.homeautomation.model.HistoryResolution;
+import eu.codingschool.homeautomation.repositories.DeviceRepository;
+
+@RunWith(SpringRunner.class)
+public class DeviceHistoryServiceImplTest {
+
+	@TestConfiguration
+	static class DeviceHistoryServiceImplTestContextConfiguration {
+		@Bean
+		public DeviceHistoryService deviceHistoryService() {
+			return new DeviceHistoryServiceImpl();
+		}
+	}
+
+	@Autowired
+	private DeviceHistoryService deviceHistoryService;
+
+	@MockBean
+	private JdbcTemplate jdbcTemplate;
+
+	@MockBean
+	private TransactionTemplate transactionTemplate;
+
+	@MockBean
+	private DeviceRepository deviceRepository;
+
+	private DeviceHistoryServiceImpl deviceHistoryServiceImpl;
+
+	@Before
+	public void setUp() {
+		// the history is kept in memory across tests since the context is shared
+		deviceHistoryServiceImpl = (DeviceHistoryServiceImpl) deviceHistoryService;
+		deviceHistoryServiceImpl.bufferSize = 3;
+		deviceHistoryServiceImpl.maxPending = 100;
+		deviceHistoryService.evict(1);
+		deviceHistoryService.evict(2);
+		deviceHistoryService.flush();
+
+		Mockito.when(transactionTemplate.execute(any()))
+			   .thenAnswer(invocation -> ((TransactionCallback<?>) invocation.getArgument(0)).doInTransaction(null));
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void getSamples_shouldNotQueryDatabase_whenRangeIsKeptInMemory() {
+		// given
+		deviceHistoryServiceImpl.record(new DeviceState(1, true, "20"), 1000L);
+		deviceHistoryServiceImpl.record(new DeviceState(1, true, "21.5"), 2000L);
+		deviceHistoryServiceImpl.record(new DeviceState(1, false, null), 3000L);
+
+		// when
+		List<DeviceHistorySample> samples = deviceHistoryService.getSamples(1, 1000L, 3001L);
+
+		// then
+		assertThat(samples).extracting(DeviceHistorySample::getValue).containsExactly(20.0, 21.5, null);
+		assertThat(samples).extracting(DeviceHistorySample::isStatusOn).containsExactly(true, true, false);
+		verify(jdbcTemplate, never()).query(anyString(), any(RowMapper.class), any(Object[].class));
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void getSamples_shouldReadOnlyOlderPartFromDatabase_whenRangeStartsBeforeMemory() {
+		// given
+		for (long recordedAt = 1000L; recordedAt <= 5000L; recordedAt += 1000L) {
+			deviceHistoryServiceImpl.record(new DeviceState(1, true, String.valueOf(recordedAt)), recordedAt);
+		}
+		// only the latest three changes are kept in memory
+		Mockito.when(jdbcTemplate.query(anyString(), any(RowMapper.class), eq(1), eq(0L), eq(3000L)))
+			   .thenReturn(Arrays.asList(
+					   new DeviceHistorySample(1, 1000L, true, 1000.0),
+					   new DeviceHistorySample(1, 2000L, true, 2000.0)
+			   ));
+
+		// when
+		List<DeviceHistorySample> samples = deviceHistoryService.getSamples(1, 0L, 10000L);
+
+		// then
+		assertThat(samples).extracting(DeviceHistorySample::getRecordedAt)
+						   .containsExactly(1000L, 2000L, 3000L, 4000L, 5000L);
+		verify(jdbcTemplate, times(1)).query(anyString(), any(RowMapper.class), eq(1), eq(0L), eq(3000L));
+	}
+
+	@Test
+	public void getRoomSamples_shouldReturnSamplesPerDevice_whenRoomHasDevices() {
+		// given
+		deviceHistoryServiceImpl.record(new DeviceState(1, true, "20"), 1000L);
+		deviceHistoryServiceImpl.record(new DeviceState(2, true, "70"), 1000L);
+		Mockito.when(deviceRepository.findIdsByRoomId(5)).thenReturn(new HashSet<>(Arrays.asList(1, 2)));
+
+		// when
+		Map<Integer, List<DeviceHistorySample>> samples = deviceHistoryService.getRoomSamples(5, 1000L, 2000L);
+
+		// then
+		assertThat(samples).containsOnlyKeys(1, 2);
+		assertThat(samples.get(2)).extracting(DeviceHistorySample::getValue).containsExactly(70.0);
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void getSamples_shouldReturnChangesWaitingToBeWritten_whenNoLongerKeptInMemory() {
+		// given
+		for (long recordedAt = 1000L; recordedAt <= 5000L; recordedAt += 1000L) {
+			deviceHistoryServiceImpl.record(new DeviceState(1, true, String.valueOf(recordedAt)), recordedAt);
+		}
+
+		// when
+		List<DeviceHistorySample> samples = deviceHistoryService.getSamples(1, 0L, 10000L);
+
+		// then
+		assertThat(samples).extracting(DeviceHistorySample::getRecordedAt)
+						   .containsExactly(1000L, 2000L, 3000L, 4000L, 5000L);
+		verify(jdbcTemplate, times(1)).query(anyString(), any(RowMapper.class), eq(1), eq(0L), eq(3000L));
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void getRoomSamples_shouldQueryDatabaseOnce_whenRoomHasDevices() {
+		// given
+		Mockito.when(deviceRepository.findIdsByRoomId(5)).thenReturn(new HashSet<>(Arrays.asList(1, 2)));
+		Mockito.when(jdbcTemplate.query(anyString(), any(RowMapper.class), eq(1), eq(2), eq(0L), eq(2000L)))
+			   .thenReturn(Arrays.asList(
+					   new DeviceHistorySample(2, 500L, true, 70.0),
+					   new DeviceHistorySample(1, 1000L, true, 20.0),
+					   new DeviceHistorySample(2, 1500L, false, null)
+			   ));
+
+		// when
+		Map<Integer, List<DeviceHistorySample>> samples = deviceHistoryService.getRoomSamples(5, 0L, 2000L);
+
+		// then
+		assertThat(samples.get(1)).extracting(DeviceHistorySample::getRecordedAt).containsExactly(1000L);
+		assertThat(samples.get(2)).extracting(DeviceHistorySample::getRecordedAt).containsExactly(500L, 1500L);
+		verify(jdbcTemplate, times(1)).query(anyString(), any(RowMapper.class), eq(1), eq(2), eq(0L), eq(2000L));
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void getRoomRollups_shouldQueryDatabaseOnce_whenRoomHasDevices() {
+		// given
+		Mockito.when(deviceRepository.findIdsByRoomId(5)).thenReturn(new HashSet<>(Arrays.asList(1, 2)));
+		Mockito.when(jdbcTemplate.query(anyString(), any(RowMapper.class),
+										eq(1), eq(2), eq(HistoryResolution.HOUR.name()), eq(0L), eq(7200000L)))
+			   .thenReturn(Arrays.asList(
+					   new DeviceHistoryRollup(2, HistoryResolution.HOUR, 0L, 2L, 20.0, 21.0, 41.0),
+					   new DeviceHistoryRollup(2, HistoryResolution.HOUR, 3600000L, 1L, 22.0, 22.0, 22.0)
+			   ));
+
+		// when
+		Map<Integer, List<DeviceHistoryRollup>> rollups =
+				deviceHistoryService.getRoomRollups(5, HistoryResolution.HOUR, 0L, 7200000L);
+
+		// then
+		assertThat(rollups).containsOnlyKeys(1, 2);
+		assertThat(rollups.get(1)).isEmpty();
+		assertThat(rollups.get(2)).hasSize(2);
+		verify(jdbcTemplate, times(1)).query(anyString(), any(RowMapper.class),
+											 eq(1), eq(2), eq(HistoryResolution.HOUR.name()), eq(0L), eq(7200000L));
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void flush_shouldWriteAllChangesInOneBatch_whenChangesRecorded() {
+		// given
+		deviceHistoryServiceImpl.record(new DeviceState(1, true, "20"), 1000L);
+		deviceHistoryServiceImpl.record(new DeviceState(1, true, "21"), 2000L);
+		deviceHistoryServiceImpl.record(new DeviceState(2, false, null), 2000L);
+
+		// when
+		int written = deviceHistoryService.flush();
+
+		// then
+		assertThat(written).isEqualTo(3);
+		ArgumentCaptor<Collection<DeviceHistorySample>> batch = ArgumentCaptor.forClass(Collection.class);
+		verify(jdbcTemplate, times(1)).batchUpdate(
+				anyString(), batch.capture(), anyInt(), any(ParameterizedPreparedStatementSetter.class));
+		assertThat(batch.getValue()).hasSize(3);
+		assertThat(deviceHistoryService.flush()).isEqualTo(0);
+	}
+
+	@Test
+	public void flush_shouldKeepChanges_whenDatabaseWriteFails() {
+		// given
+		deviceHistoryServiceImpl.record(new DeviceState(1, true, "20"), 1000L);
+		Mockito.when(jdbcTemplate.batchUpdate(anyString(), anyCollection(), anyInt(), any()))
+			   .thenThrow(new IllegalStateException("database is down"))
+			   .thenReturn(new int[][] { new int[] { 1 } });
+
+		// when
+		int writtenFirst = deviceHistoryService.flush();
+		int writtenSecond = deviceHistoryService.flush();
+
+		// then
+		assertThat(Arrays.asList(writtenFirst, writtenSecond)).containsExactly(0, 1);
+	}
+
+	@Test
+	public void flush_shouldWriteOnlyChangesThatFitInQueue_whenTooManyWaiting() {
+		// given
+		deviceHistoryServiceImpl.maxPending = 2;
+		long droppedBefore = deviceHistoryService.getDroppedCount();
+		deviceHistoryServiceImpl.record(new DeviceState(1, true, "20"), 1000L);
+		deviceHistoryServiceImpl.record(new DeviceState(1, true, "21"), 2000L);
+		deviceHistoryServiceImpl.record(new DeviceState(1, true, "22"), 3000L);
+
+		// when
+		int written = deviceHistoryService.flush();
+
+		// then
+		assertThat(written).isEqualTo(2);
+		assertThat(deviceHistoryService.getDroppedCount() - droppedBefore).isEqualTo(1);
+		assertThat(deviceHistoryService.getSamples(1, 0L, 4000L)).hasSize(3);
+	}
+
+	@Test
+	public void evict_shouldForgetChangesInMemory_whenDeviceDeleted() {
+		// given
+		deviceHistoryServiceImpl.record(new DeviceState(1, true, "20"), 1000L);
+
+		// when
+		deviceHistoryService.evict(1);
+
+		// then
+		assertThat(deviceHistoryService.getSamples(1, 0L, 2000L)).isEmpty();
+	}
+}
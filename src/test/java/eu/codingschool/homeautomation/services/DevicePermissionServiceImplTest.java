@@ -0,0 +1,126 @@
+package eu.codingschool.homeautomation.services;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import eu.codingschool.homeautomation.repositories.DeviceRepository;
+
+@RunWith(SpringRunner.class)
+public class DevicePermissionServiceImplTest {
+
+	@TestConfiguration
+	static class DevicePermissionServiceImplTestContextConfiguration {
+		@Bean
+		public DevicePermissionService devicePermissionService() {
+			return new DevicePermissionServiceImpl();
+		}
+	}
+
+	@Autowired
+	private DevicePermissionService devicePermissionService;
+
+	@MockBean
+	private DeviceRepository deviceRepository;
+
+	@Before
+	public void setUp() {
+		// the index is kept in memory across tests since the context is shared
+		devicePermissionService.invalidate(1);
+		devicePermissionService.invalidate(2);
+
+		Mockito.when(deviceRepository.findIdsByPersonsId(1)).thenReturn(new HashSet<>(Arrays.asList(7, 2, 4)));
+		Mockito.when(deviceRepository.findIdsByPersonsId(2)).thenReturn(Collections.emptySet());
+	}
+
+	@Test
+	public void isAssigned_shouldLoadDevicesOnce_whenCheckedManyTimes() {
+		// when
+		boolean firstCheck = devicePermissionService.isAssigned(1, 7);
+		boolean secondCheck = devicePermissionService.isAssigned(1, 2);
+
+		// then
+		assertThat(firstCheck).isTrue();
+		assertThat(secondCheck).isTrue();
+		verify(deviceRepository, times(1)).findIdsByPersonsId(1);
+	}
+
+	@Test
+	public void isAssigned_shouldBeFalse_whenDeviceNotAssigned() {
+		// when - then
+		assertThat(devicePermissionService.isAssigned(1, 3)).isFalse();
+		assertThat(devicePermissionService.isAssigned(2, 7)).isFalse();
+	}
+
+	@Test
+	public void isAssignedAll_shouldBeFalse_whenAnyDeviceNotAssigned() {
+		// when - then
+		assertThat(devicePermissionService.isAssignedAll(1, Arrays.asList(2, 4))).isTrue();
+		assertThat(devicePermissionService.isAssignedAll(1, Arrays.asList(2, 3))).isFalse();
+	}
+
+	@Test
+	public void invalidate_shouldReloadDevices_whenPersonChanged() {
+		// given
+		devicePermissionService.isAssigned(1, 3);
+		Mockito.when(deviceRepository.findIdsByPersonsId(1)).thenReturn(new HashSet<>(Arrays.asList(3)));
+
+		// when
+		devicePermissionService.invalidate(1);
+
+		// then
+		assertThat(devicePermissionService.isAssigned(1, 3)).isTrue();
+		verify(deviceRepository, times(2)).findIdsByPersonsId(1);
+	}
+
+	@Test
+	public void isAssigned_shouldLoadDevicesAgain_whenInvalidatedDuringTheLoad() {
+		// given
+		Mockito.when(deviceRepository.findIdsByPersonsId(1))
+			   .thenAnswer(invocation -> {
+				   // the map is not locked while the devices are loaded, so the invalidation does not wait for it
+				   devicePermissionService.invalidate(1);
+				   return new HashSet<>(Arrays.asList(7));
+			   })
+			   .thenReturn(new HashSet<>(Arrays.asList(3)));
+
+		// when
+		boolean duringInvalidation = devicePermissionService.isAssigned(1, 7);
+		boolean afterInvalidation = devicePermissionService.isAssigned(1, 3);
+
+		// then
+		assertThat(duringInvalidation).isTrue();
+		assertThat(afterInvalidation).isTrue();
+		verify(deviceRepository, times(2)).findIdsByPersonsId(1);
+	}
+
+	@Test
+	public void invalidateDevice_shouldReloadOnlyPersonsWithDevice_whenDeviceDeleted() {
+		// given
+		devicePermissionService.isAssigned(1, 7);
+		devicePermissionService.isAssigned(2, 7);
+
+		// when
+		devicePermissionService.invalidateDevice(7);
+		devicePermissionService.isAssigned(1, 7);
+		devicePermissionService.isAssigned(2, 7);
+
+		// then
+		verify(deviceRepository, times(2)).findIdsByPersonsId(1);
+		verify(deviceRepository, times(1)).findIdsByPersonsId(2);
+	}
+}
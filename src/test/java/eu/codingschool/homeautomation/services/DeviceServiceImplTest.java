@@ -4,28 +4,45 @@ import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
+import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.TestConfiguration;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.context.annotation.Bean;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.test.context.junit4.SpringRunner;
 
+import eu.codingschool.homeautomation.metrics.DeviceCommandMetrics;
 import eu.codingschool.homeautomation.model.Device;
+import eu.codingschool.homeautomation.model.DeviceSelection;
+import eu.codingschool.homeautomation.model.DeviceState;
+import eu.codingschool.homeautomation.model.DeviceType;
+import eu.codingschool.homeautomation.model.ListSort;
 import eu.codingschool.homeautomation.model.Person;
 import eu.codingschool.homeautomation.model.Room;
 import eu.codingschool.homeautomation.repositories.DeviceRepository;
+import eu.codingschool.homeautomation.repositories.projections.DeviceGridRow;
 
 @RunWith(SpringRunner.class)
 public class DeviceServiceImplTest {
@@ -44,8 +61,26 @@ public class DeviceServiceImplTest {
 	@MockBean
 	private DeviceRepository deviceRepository;
 	
+	@MockBean
+	private DeviceStateService deviceStateService;
+
+	@MockBean
+	private DevicePermissionService devicePermissionService;
+
+	@MockBean
+	private DeviceHistoryService deviceHistoryService;
+
+	@MockBean
+	private DeviceCommandMetrics deviceCommandMetrics;
+
+	@MockBean
+	private RoomService roomService;
+	
 	@MockBean
 	private BCryptPasswordEncoder bCryptPasswordEncoder;
+
+	@MockBean
+	private StateVersionService stateVersionService;
 	
 	private Device device1;
 	private Device device2;
@@ -94,6 +129,15 @@ public class DeviceServiceImplTest {
 		Mockito.when(deviceRepository.findById(device1.getId())).thenReturn(Optional.of(device1));
 		Mockito.when(deviceRepository.findById(device2.getId())).thenReturn(Optional.of(device2));
 		Mockito.when(deviceRepository.findById(device3.getId())).thenReturn(Optional.of(device3));
+		Mockito.when(deviceRepository.findAllById(any())).thenAnswer(invocation -> {
+			Iterable<Integer> ids = invocation.getArgument(0);
+			List<Integer> requestedIds = new ArrayList<>();
+			ids.forEach(requestedIds::add);
+			return Stream.of(device1, device2, device3)
+						 .filter(device -> requestedIds.contains(device.getId()))
+						 .collect(Collectors.toList());
+		});
+		((DeviceServiceImpl) deviceService).selectionChunkSize = 1000;
 	}
 	
 	@Test
@@ -110,6 +154,73 @@ public class DeviceServiceImplTest {
 		assertThat(devicesFound.size()).isEqualTo(devicesSaved.size());
 	}
 	
+	@Test
+	public void findPage_shouldContinueAfterTheGivenRowWithLatestState_whenSortedByName() {
+		// given
+		Mockito.when(deviceRepository.findPageOrderByName("%lamp%", "Desk lamp", 4, PageRequest.of(0, 50)))
+			   .thenReturn(new SliceImpl<>(Arrays.asList(device1, device2), PageRequest.of(0, 50), true));
+		
+		// when
+		Slice<Device> page = deviceService.findPage(ListSort.NAME, "Lamp", 4, "Desk lamp");
+		
+		// then
+		assertThat(page.getContent()).containsExactly(device1, device2);
+		assertThat(page.hasNext()).isTrue();
+		verify(deviceStateService).applyState(device1);
+		verify(deviceStateService).applyState(device2);
+	}
+	
+	@Test
+	public void findGridRowsByPersonsId_shouldShowLatestState_whenStateNotWrittenYet() {
+		// given
+		DeviceGridRow row1 = new DeviceGridRow(1, "Lighting", 1, false, new BigDecimal("20"), null, null, 0, 100, "plusminus", null, null);
+		DeviceGridRow row2 = new DeviceGridRow(2, "Door", 2, true, null, null, null, null, null, null, null, null);
+		Mockito.when(deviceRepository.findGridRowsByPersonsId(person2.getId())).thenReturn(Arrays.asList(row1, row2));
+		Mockito.when(deviceStateService.getLoadedState(1)).thenReturn(new DeviceState(1, true, "30"));
+		
+		// when
+		List<DeviceGridRow> rowsFound = deviceService.findGridRowsByPersonsId(person2.getId());
+		
+		// then
+		assertThat(rowsFound.get(0).isStatusOn()).isTrue();
+		assertThat(rowsFound.get(0).getInformationValue()).isEqualTo("30");
+		assertThat(rowsFound.get(1).isStatusOn()).isTrue();
+		verify(deviceStateService, Mockito.never()).getState(any());
+	}
+	
+	@Test
+	public void findByDeviceTypeIdAndValueAbove_shouldUseUnwrittenValues_withoutFlushing() {
+		// given
+		DeviceType thermostat = new DeviceType();
+		thermostat.setId(1);
+		DeviceType lighting = new DeviceType();
+		lighting.setId(2);
+		device1.setDeviceType(thermostat);
+		device1.setNumericValue(new BigDecimal("25"));
+		device2.setDeviceType(thermostat);
+		device2.setNumericValue(new BigDecimal("10"));
+		device3.setDeviceType(lighting);
+		device3.setNumericValue(new BigDecimal("10"));
+		Map<Integer, DeviceState> unwritten = Stream.of(
+				new DeviceState(1, true, "15"), new DeviceState(2, true, "30"), new DeviceState(3, true, "40")
+		).collect(Collectors.toMap(DeviceState::getDeviceId, state -> state));
+		Mockito.when(deviceStateService.getUnwrittenStates()).thenReturn(new ArrayList<>(unwritten.values()));
+		Mockito.doAnswer(invocation -> {
+			Device device = invocation.getArgument(0);
+			device.setNumericValue(unwritten.get(device.getId()).getNumericValue());
+			return null;
+		}).when(deviceStateService).applyState(any());
+		Mockito.when(deviceRepository.findByDeviceTypeIdAndValueAbove(1, new BigDecimal("20")))
+			   .thenReturn(new ArrayList<>(Arrays.asList(device1)));
+
+		// when
+		List<Device> devices = deviceService.findByDeviceTypeIdAndValueAbove(1, new BigDecimal("20"));
+
+		// then
+		assertThat(devices).containsExactly(device2);
+		verify(deviceStateService, never()).flush();
+	}
+
 	@Test
 	public void findAll_shouldNotReturnDevices_whenDevicesNotExist() {
 		// given
@@ -238,7 +349,7 @@ public class DeviceServiceImplTest {
 		List<String> selectedDeviceIds = Arrays.asList("1", "3", "4"); // "4" does not exist
 		
 		// when
-		List<Device> devicesFound = deviceService.getSelectedDevices(selectedDeviceIds);
+		List<Device> devicesFound = deviceService.getSelectedDevices(selectedDeviceIds).getDevices();
 		
 		// then
 		assertNotNull(devicesFound);
@@ -251,7 +362,7 @@ public class DeviceServiceImplTest {
 		List<String> selectedDeviceIds = Arrays.asList();
 		
 		// when
-		List<Device> devicesFound = deviceService.getSelectedDevices(selectedDeviceIds);
+		List<Device> devicesFound = deviceService.getSelectedDevices(selectedDeviceIds).getDevices();
 		
 		// then
 		assertNotNull(devicesFound);
@@ -264,13 +375,49 @@ public class DeviceServiceImplTest {
 		List<String> selectedDeviceIds = Arrays.asList("6", "5", "4"); // none of "6", "5", "4" exists
 		
 		// when
-		List<Device> devicesFound = deviceService.getSelectedDevices(selectedDeviceIds);
+		List<Device> devicesFound = deviceService.getSelectedDevices(selectedDeviceIds).getDevices();
 		
 		// then
 		assertNotNull(devicesFound);
 		assertThat(devicesFound).isEmpty();
 	}	
 	
+	@Test
+	public void getSelectedDevices_shouldReportUnknownAndMalformedIds_whenSubmitted() {
+		// given
+		List<String> selectedDeviceIds = Arrays.asList("3", "1", "3", "4", "abc", " 1 ");
+		
+		// when
+		DeviceSelection selection = deviceService.getSelectedDevices(selectedDeviceIds);
+		
+		// then
+		assertThat(selection.getDevices()).containsExactly(device3, device1);
+		assertThat(selection.getUnknownIds()).containsExactly(4);
+		assertThat(selection.getMalformedIds()).containsExactly("abc");
+		assertThat(selection.isComplete()).isFalse();
+		verify(deviceRepository, times(1)).findAllById(any());
+		verify(deviceRepository, never()).findById(any());
+	}
+	
+	@Test
+	@SuppressWarnings("unchecked")
+	public void getSelectedDevices_shouldQueryInChunks_whenManyIdsSubmitted() {
+		// given
+		((DeviceServiceImpl) deviceService).selectionChunkSize = 2;
+		List<String> selectedDeviceIds = Arrays.asList("1", "2", "3", "4", "5");
+		
+		// when
+		DeviceSelection selection = deviceService.getSelectedDevices(selectedDeviceIds);
+		
+		// then
+		ArgumentCaptor<Iterable<Integer>> chunks = ArgumentCaptor.forClass(Iterable.class);
+		verify(deviceRepository, times(3)).findAllById(chunks.capture());
+		assertThat(chunks.getAllValues()).extracting(chunk -> ((Collection<?>) chunk).size())
+										  .containsExactly(2, 2, 1);
+		assertThat(selection.getDevices()).containsExactly(device1, device2, device3);
+		assertThat(selection.getUnknownIds()).containsExactly(4, 5);
+	}
+	
 	@Test
 	public void save_shouldPersistDevice_whenCalled() {
 		// given
@@ -284,6 +431,7 @@ public class DeviceServiceImplTest {
 		// then
 		assertNotNull(devicePersisted);
 		assertThat(devicePersisted.getName()).isEqualTo("air condition");
+		verify(roomService).moveDevice(devicePersisted);
 	}
 	
 	@Test
@@ -296,5 +444,8 @@ public class DeviceServiceImplTest {
 		
 		// then
 		verify(deviceRepository).delete(any());
+		verify(deviceHistoryService).evict(device.getId());
+		verify(roomService).removeDevice(device.getId());
+		verify(stateVersionService).changeAll();
 	}
 }
\ No newline at end of file
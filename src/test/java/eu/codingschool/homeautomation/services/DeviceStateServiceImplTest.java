@@ -0,0 +1,588 @@
+package eu.codingschool.homeautomation.services;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.CannotGetJdbcConnectionException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.jdbc.core.PreparedStatementSetter;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import eu.codingschool.homeautomation.model.Device;
+import eu.codingschool.homeautomation.model.DeviceCommand;
+import eu.codingschool.homeautomation.model.DeviceState;
+
+@RunWith(SpringRunner.class)
+public class DeviceStateServiceImplTest {
+
+	@TestConfiguration
+	static class DeviceStateServiceImplTestContextConfiguration {
+		@Bean
+		public DeviceStateService deviceStateService() {
+			return new DeviceStateServiceImpl();
+		}
+	}
+
+	@Autowired
+	private DeviceStateService deviceStateService;
+
+	@MockBean
+	private JdbcTemplate jdbcTemplate;
+
+	@MockBean
+	private TransactionTemplate transactionTemplate;
+
+	@Before
+	public void setUp() {
+		// the state is kept in memory across tests since the context is shared
+		deviceStateService.evict(1);
+		deviceStateService.evict(2);
+		deviceStateService.evict(3);
+
+		Mockito.when(jdbcTemplate.query(anyString(), ArgumentMatchers.<RowMapper<DeviceState>>any(), eq(1)))
+			   .thenReturn(Collections.singletonList(new DeviceState(1, false, "20")));
+		Mockito.when(jdbcTemplate.query(anyString(), ArgumentMatchers.<RowMapper<DeviceState>>any(), eq(2)))
+			   .thenReturn(Collections.emptyList());
+		// no range unless a test gives one
+		deviceStateService.evictValueRanges();
+		Mockito.when(jdbcTemplate.query(
+				startsWith("SELECT t.min_value"), ArgumentMatchers.<RowMapper<DeviceStateServiceImpl.ValueRange>>any(), eq(1)))
+			   .thenReturn(Collections.singletonList(new DeviceStateServiceImpl.ValueRange(null, null)));
+		Mockito.when(transactionTemplate.execute(any()))
+			   .thenAnswer(invocation -> ((TransactionCallback<?>) invocation.getArgument(0)).doInTransaction(null));
+	}
+
+	@Test
+	public void getState_shouldLoadStateOnce_whenDeviceExists() {
+		// when
+		DeviceState firstRead = deviceStateService.getState(1);
+		DeviceState secondRead = deviceStateService.getState(1);
+
+		// then
+		assertNotNull(firstRead);
+		assertThat(secondRead).isSameAs(firstRead);
+		verify(jdbcTemplate, times(1)).query(anyString(), ArgumentMatchers.<RowMapper<DeviceState>>any(), eq(1));
+	}
+
+	@Test
+	public void getState_shouldNotReturnState_whenDeviceNotExists() {
+		// when
+		DeviceState state = deviceStateService.getState(2);
+
+		// then
+		assertNull(state);
+	}
+
+	@Test
+	public void updateStatus_shouldBeVisibleImmediately_whenNotFlushedYet() {
+		// when
+		deviceStateService.updateStatus(1, true);
+		Device device = new Device();
+		device.setId(1);
+		deviceStateService.applyState(device);
+
+		// then
+		assertThat(deviceStateService.getState(1).isStatusOn()).isTrue();
+		assertThat(device.isStatusOn()).isTrue();
+		assertThat(device.getInformationValue()).isEqualTo("20");
+		verify(jdbcTemplate, never()).batchUpdate(anyString(), anyCollection(), anyInt(), any());
+	}
+
+	@Test
+	public void updateInformationValue_shouldNotUpdate_whenDeviceNotExists() {
+		// when
+		DeviceState state = deviceStateService.updateInformationValue(2, "30");
+
+		// then
+		assertNull(state);
+		assertThat(deviceStateService.flush()).isEqualTo(0);
+	}
+
+	@Test
+	public void adjustInformationValue_shouldKeepValueWithinRangeOfDeviceType() {
+		// given
+		Mockito.when(jdbcTemplate.query(
+				startsWith("SELECT t.min_value"), ArgumentMatchers.<RowMapper<DeviceStateServiceImpl.ValueRange>>any(), eq(1)))
+			   .thenReturn(Collections.singletonList(
+					   new DeviceStateServiceImpl.ValueRange(BigDecimal.valueOf(16), BigDecimal.valueOf(30))));
+
+		// when
+		DeviceState raised = deviceStateService.adjustInformationValue(1, 15);
+		DeviceState lowered = deviceStateService.adjustInformationValue(1, -3);
+		DeviceState lowest = deviceStateService.adjustInformationValue(1, -100);
+
+		// then
+		assertThat(raised.getInformationValue()).isEqualTo("30");
+		assertThat(lowered.getInformationValue()).isEqualTo("27");
+		assertThat(lowest.getInformationValue()).isEqualTo("16");
+		verify(jdbcTemplate, times(1)).query(
+				startsWith("SELECT t.min_value"), ArgumentMatchers.<RowMapper<DeviceStateServiceImpl.ValueRange>>any(), eq(1));
+	}
+
+	@Test
+	public void adjustInformationValue_shouldCountEveryAdjustment_whenAdjustedConcurrently() throws Exception {
+		// given
+		long loadedVersion = deviceStateService.getState(1).getVersion();
+		ExecutorService panels = Executors.newFixedThreadPool(4);
+
+		// when
+		for (int i = 0; i < 400; i++) {
+			panels.execute(() -> deviceStateService.adjustInformationValue(1, 1));
+		}
+		panels.shutdown();
+		panels.awaitTermination(10, TimeUnit.SECONDS);
+
+		// then
+		assertThat(deviceStateService.getState(1).getInformationValue()).isEqualTo("420");
+		assertThat(deviceStateService.getState(1).getVersion()).isEqualTo(loadedVersion + 400);
+	}
+
+	@Test
+	public void updateInformationValue_shouldRejectValue_whenNotNumberOrOutOfRange() {
+		// given
+		Mockito.when(jdbcTemplate.query(
+				startsWith("SELECT t.min_value"), ArgumentMatchers.<RowMapper<DeviceStateServiceImpl.ValueRange>>any(), eq(1)))
+			   .thenReturn(Collections.singletonList(
+					   new DeviceStateServiceImpl.ValueRange(BigDecimal.valueOf(16), BigDecimal.valueOf(30))));
+
+		// when
+		List<String> rejected = new ArrayList<>();
+		for (String value : Arrays.asList("warm", "15.5", "31")) {
+			try {
+				deviceStateService.updateInformationValue(1, value);
+			} catch (InvalidDeviceValueException e) {
+				rejected.add(value);
+			}
+		}
+		long loadedVersion = deviceStateService.getState(1).getVersion();
+		DeviceState accepted = deviceStateService.updateInformationValue(1, "21.50");
+
+		// then
+		assertThat(rejected).containsExactly("warm", "15.5", "31");
+		assertThat(accepted.getInformationValue()).isEqualTo("21.5");
+		assertThat(accepted.getNumericValue()).isEqualByComparingTo("21.5");
+		assertThat(accepted.getVersion()).isEqualTo(loadedVersion + 1);
+	}
+
+	@Test
+	public void updateInformationValue_shouldRejectValue_whenDatabaseCannotHoldIt() {
+		// when
+		List<String> rejected = new ArrayList<>();
+		for (String value : Arrays.asList("1e20", "123456789", "-123456789", "21.555")) {
+			try {
+				deviceStateService.updateInformationValue(1, value);
+			} catch (InvalidDeviceValueException e) {
+				rejected.add(value);
+			}
+		}
+		DeviceState largest = deviceStateService.updateInformationValue(1, "99999999.990");
+
+		// then
+		assertThat(rejected).containsExactly("1e20", "123456789", "-123456789", "21.555");
+		assertThat(largest.getInformationValue()).isEqualTo("99999999.99");
+	}
+
+	@Test
+	public void adjustInformationValue_shouldStopAtLimitOfDatabase_whenDeviceTypeHasNoRange() {
+		// given
+		deviceStateService.updateInformationValue(1, "99999999.5");
+
+		// when
+		DeviceState adjusted = deviceStateService.adjustInformationValue(1, 1);
+
+		// then
+		assertThat(adjusted.getInformationValue()).isEqualTo("99999999.99");
+	}
+
+	@Test
+	public void applyCommands_shouldNotChangeAnything_whenAnyValueNotNumber() {
+		// given
+		deviceStateService.getState(1);
+		List<DeviceCommand> commands = Arrays.asList(
+				new DeviceCommand(1, true, null),
+				new DeviceCommand(1, null, "twenty")
+		);
+
+		// when
+		InvalidDeviceValueException invalid = null;
+		try {
+			deviceStateService.applyCommands(commands);
+		} catch (InvalidDeviceValueException e) {
+			invalid = e;
+		}
+
+		// then
+		assertNotNull(invalid);
+		assertThat(deviceStateService.getState(1).isStatusOn()).isFalse();
+		verify(jdbcTemplate, never()).batchUpdate(anyString(), anyCollection(), anyInt(), any());
+	}
+
+	@Test
+	public void adjustInformationValue_shouldNotUpdate_whenDeviceNotExists() {
+		// when
+		DeviceState state = deviceStateService.adjustInformationValue(2, 1);
+
+		// then
+		assertNull(state);
+		assertThat(deviceStateService.flush()).isEqualTo(0);
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void flush_shouldWriteOnlyLatestState_whenDeviceChangedManyTimes() {
+		// given
+		deviceStateService.updateInformationValue(1, "21");
+		deviceStateService.updateInformationValue(1, "22");
+		deviceStateService.updateStatus(1, true);
+		assertThat(deviceStateService.getFlushLagMillis()).isGreaterThanOrEqualTo(0L);
+
+		// when
+		int written = deviceStateService.flush();
+
+		// then
+		assertThat(written).isEqualTo(1);
+		ArgumentCaptor<Collection<DeviceState>> batch = ArgumentCaptor.forClass(Collection.class);
+		verify(jdbcTemplate, times(1)).batchUpdate(
+				anyString(), batch.capture(), anyInt(), any(ParameterizedPreparedStatementSetter.class));
+		DeviceState flushed = batch.getValue().iterator().next();
+		assertThat(flushed.isStatusOn()).isTrue();
+		assertThat(flushed.getInformationValue()).isEqualTo("22");
+		assertThat(deviceStateService.flush()).isEqualTo(0);
+		assertThat(deviceStateService.getFlushLagMillis()).isEqualTo(0L);
+	}
+
+	@Test
+	public void getUnwrittenStates_shouldIncludeStates_untilTheirWriteHasFinished() {
+		// given
+		deviceStateService.updateInformationValue(1, "22");
+		List<DeviceState> unwrittenWhileWriting = new ArrayList<>();
+		Mockito.when(jdbcTemplate.batchUpdate(anyString(), anyCollection(), anyInt(), any())).thenAnswer(invocation -> {
+			unwrittenWhileWriting.addAll(deviceStateService.getUnwrittenStates());
+			return new int[][] { new int[] { 1 } };
+		});
+		List<DeviceState> unwrittenBefore = deviceStateService.getUnwrittenStates();
+
+		// when
+		deviceStateService.flush();
+
+		// then
+		assertThat(unwrittenBefore).extracting(DeviceState::getInformationValue).containsExactly("22");
+		assertThat(unwrittenWhileWriting).extracting(DeviceState::getInformationValue).containsExactly("22");
+		assertThat(deviceStateService.getUnwrittenStates()).isEmpty();
+	}
+
+	@Test
+	public void flush_shouldKeepChangesPending_whenDatabaseWriteFails() {
+		// given
+		deviceStateService.updateStatus(1, true);
+		Mockito.when(jdbcTemplate.batchUpdate(anyString(), anyCollection(), anyInt(), any()))
+			   .thenThrow(new CannotGetJdbcConnectionException("database is down"))
+			   .thenReturn(new int[][] { new int[] { 1 } });
+
+		// when
+		int writtenFirst = deviceStateService.flush();
+		int writtenSecond = deviceStateService.flush();
+
+		// then
+		assertThat(Arrays.asList(writtenFirst, writtenSecond)).containsExactly(0, 1);
+	}
+
+	@Test
+	public void flush_shouldWriteOtherDevices_whenDatabaseRejectsOneOfThem() {
+		// given
+		givenDeviceThree();
+		deviceStateService.updateStatus(1, true);
+		deviceStateService.updateStatus(3, true);
+		Mockito.when(jdbcTemplate.batchUpdate(anyString(), anyCollection(), anyInt(), any()))
+			   .thenThrow(new DataIntegrityViolationException("out of range"));
+		Mockito.when(jdbcTemplate.update(anyString(), any(PreparedStatementSetter.class))).thenAnswer(invocation -> {
+			if (deviceIdOf(invocation.getArgument(1)) == 3) {
+				throw new DataIntegrityViolationException("out of range");
+			}
+			return 1;
+		});
+
+		// when
+		int written = deviceStateService.flush();
+
+		// then
+		assertThat(written).isEqualTo(1);
+		assertThat(deviceStateService.flush()).isEqualTo(0);
+		verify(jdbcTemplate, times(3)).update(anyString(), any(PreparedStatementSetter.class));
+		assertThat(deviceStateService.getLoadedState(3).isStatusOn()).isTrue();
+	}
+
+	@Test
+	public void flush_shouldDropChanges_whenDatabaseRejectsThemRepeatedly() {
+		// given
+		DeviceStateServiceImpl deviceStateServiceImpl = (DeviceStateServiceImpl) deviceStateService;
+		int maxFlushAttempts = deviceStateServiceImpl.maxFlushAttempts;
+		deviceStateServiceImpl.maxFlushAttempts = 2;
+		givenDeviceThree();
+		deviceStateService.updateStatus(3, true);
+		Mockito.when(jdbcTemplate.batchUpdate(anyString(), anyCollection(), anyInt(), any()))
+			   .thenThrow(new DataIntegrityViolationException("out of range"));
+		Mockito.when(jdbcTemplate.update(anyString(), any(PreparedStatementSetter.class)))
+			   .thenThrow(new DataIntegrityViolationException("out of range"));
+		try {
+			// when
+			int writtenFirst = deviceStateService.flush();
+			long lagAfterFirst = deviceStateService.getFlushLagMillis();
+			int writtenSecond = deviceStateService.flush();
+
+			// then
+			assertThat(Arrays.asList(writtenFirst, writtenSecond)).containsExactly(0, 0);
+			assertThat(lagAfterFirst).isGreaterThanOrEqualTo(0L);
+			assertThat(deviceStateService.getFlushLagMillis()).isEqualTo(0L);
+			assertThat(deviceStateService.getLoadedState(3)).isNull();
+			assertThat(deviceStateService.flush()).isEqualTo(0);
+			verify(jdbcTemplate, times(2)).update(anyString(), any(PreparedStatementSetter.class));
+		} finally {
+			deviceStateServiceImpl.maxFlushAttempts = maxFlushAttempts;
+		}
+	}
+
+	@Test
+	public void flush_shouldNotDropChanges_whenDatabaseCannotBeReached() {
+		// given
+		DeviceStateServiceImpl deviceStateServiceImpl = (DeviceStateServiceImpl) deviceStateService;
+		deviceStateService.updateStatus(1, true);
+		Mockito.when(jdbcTemplate.batchUpdate(anyString(), anyCollection(), anyInt(), any()))
+			   .thenThrow(new CannotGetJdbcConnectionException("database is down"));
+
+		// when
+		for (int i = 0; i <= deviceStateServiceImpl.maxFlushAttempts; i++) {
+			deviceStateService.flush();
+		}
+
+		// then
+		assertThat(deviceStateService.getLoadedState(1).isStatusOn()).isTrue();
+		verify(jdbcTemplate, never()).update(anyString(), any(PreparedStatementSetter.class));
+	}
+
+	private void givenDeviceThree() {
+		Mockito.when(jdbcTemplate.query(anyString(), ArgumentMatchers.<RowMapper<DeviceState>>any(), eq(3)))
+			   .thenReturn(Collections.singletonList(new DeviceState(3, false, "20")));
+	}
+
+	private static int deviceIdOf(PreparedStatementSetter setter) throws SQLException {
+		PreparedStatement ps = Mockito.mock(PreparedStatement.class);
+		setter.setValues(ps);
+		ArgumentCaptor<Integer> deviceId = ArgumentCaptor.forClass(Integer.class);
+		verify(ps).setInt(eq(3), deviceId.capture());
+		return deviceId.getValue();
+	}
+
+	@Test
+	public void applyCommands_shouldWriteAllChangesInOneBatch_whenAllDevicesExist() {
+		// given
+		deviceStateService.getState(1);
+		List<DeviceCommand> commands = Arrays.asList(
+				new DeviceCommand(1, true, null),
+				new DeviceCommand(1, null, "25")
+		);
+
+		// when
+		List<DeviceState> states = deviceStateService.applyCommands(commands);
+
+		// then
+		assertNotNull(states);
+		assertThat(states.size()).isEqualTo(1);
+		assertThat(states.get(0).isStatusOn()).isTrue();
+		assertThat(states.get(0).getInformationValue()).isEqualTo("25");
+		verify(transactionTemplate, times(1)).execute(any());
+		verify(jdbcTemplate, times(1)).batchUpdate(anyString(), anyCollection(), anyInt(), any());
+		assertThat(deviceStateService.flush()).isEqualTo(0);
+	}
+
+	@Test
+	public void applyCommands_shouldKeepChangesPending_whenDatabaseWriteFails() {
+		// given
+		deviceStateService.getState(1);
+		Mockito.when(jdbcTemplate.batchUpdate(anyString(), anyCollection(), anyInt(), any()))
+			   .thenThrow(new CannotGetJdbcConnectionException("database is down"))
+			   .thenReturn(new int[][] { new int[] { 1 } });
+
+		// when
+		DeviceStatesNotWrittenException notWritten = null;
+		try {
+			deviceStateService.applyCommands(Collections.singletonList(new DeviceCommand(1, true, null)));
+		} catch (DeviceStatesNotWrittenException e) {
+			notWritten = e;
+		}
+
+		// then
+		assertNotNull(notWritten);
+		assertThat(notWritten.getDeviceStates()).extracting(DeviceState::isStatusOn).containsExactly(true);
+		assertThat(deviceStateService.getState(1).isStatusOn()).isTrue();
+		assertThat(deviceStateService.flush()).isEqualTo(1);
+	}
+
+	@Test
+	public void applyCommands_shouldNotChangeAnything_whenAnyDeviceNotExists() {
+		// given
+		deviceStateService.getState(1);
+		List<DeviceCommand> commands = Arrays.asList(
+				new DeviceCommand(1, true, null),
+				new DeviceCommand(2, true, null)
+		);
+
+		// when
+		List<DeviceState> states = deviceStateService.applyCommands(commands);
+
+		// then
+		assertNull(states);
+		assertThat(deviceStateService.getState(1).isStatusOn()).isFalse();
+		verify(jdbcTemplate, never()).batchUpdate(anyString(), anyCollection(), anyInt(), any());
+	}
+
+	@Test
+	public void getState_shouldNotReuseVersion_whenReloadedAfterEviction() {
+		// given
+		DeviceState seenByClient = deviceStateService.getState(1);
+		DeviceState changed = deviceStateService.updateStatus(1, true);
+		deviceStateService.evict(1);
+
+		// when
+		DeviceState reloaded = deviceStateService.getState(1);
+
+		// then
+		assertThat(reloaded.getVersion()).isGreaterThan(changed.getVersion());
+		assertThat(reloaded.getVersion()).isGreaterThan(seenByClient.getVersion());
+		assertThat(seenByClient.getVersion()).isGreaterThan(0L);
+	}
+
+	@Test
+	public void updateStatus_shouldRejectChange_whenDeviceChangedSinceExpectedVersion() {
+		// given
+		long seenVersion = deviceStateService.getState(1).getVersion();
+		DeviceState changedByOther = deviceStateService.updateInformationValue(1, "21", seenVersion);
+
+		// when
+		DeviceStateConflictException conflict = null;
+		try {
+			deviceStateService.updateStatus(1, true, seenVersion);
+		} catch (DeviceStateConflictException ex) {
+			conflict = ex;
+		}
+
+		// then
+		assertNotNull(conflict);
+		assertThat(conflict.getCurrentState()).isSameAs(changedByOther);
+		assertThat(changedByOther.getVersion()).isEqualTo(seenVersion + 1);
+		assertThat(deviceStateService.getState(1).isStatusOn()).isFalse();
+		assertThat(deviceStateService.updateStatus(1, true, changedByOther.getVersion()).isStatusOn()).isTrue();
+	}
+
+	@Test
+	public void applyCommands_shouldNotChangeAnything_whenAnyDeviceChangedSinceVersionOfItsCommand() {
+		// given
+		Mockito.when(jdbcTemplate.query(anyString(), ArgumentMatchers.<RowMapper<DeviceState>>any(), eq(3)))
+			   .thenReturn(Collections.singletonList(new DeviceState(3, false, "0")));
+		deviceStateService.evict(3);
+		long seenVersion = deviceStateService.getState(1).getVersion();
+		deviceStateService.getState(3);
+		deviceStateService.updateStatus(3, true);
+		DeviceCommand first = new DeviceCommand(1, true, null);
+		first.setVersion(seenVersion);
+		DeviceCommand second = new DeviceCommand(3, false, null);
+		second.setVersion(0L);
+
+		// when
+		DeviceStateConflictException conflict = null;
+		try {
+			deviceStateService.applyCommands(Arrays.asList(first, second));
+		} catch (DeviceStateConflictException ex) {
+			conflict = ex;
+		}
+
+		// then
+		assertNotNull(conflict);
+		assertThat(conflict.getCurrentState().getDeviceId()).isEqualTo(3);
+		assertThat(deviceStateService.getState(1).isStatusOn()).isFalse();
+		assertThat(deviceStateService.getState(1).getVersion()).isEqualTo(seenVersion);
+		assertThat(deviceStateService.getState(3).isStatusOn()).isTrue();
+		verify(jdbcTemplate, never()).batchUpdate(anyString(), anyCollection(), anyInt(), any());
+		deviceStateService.evict(3);
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void flushSettled_shouldWriteBurstOnce_whenDeviceStoppedChanging() {
+		// given
+		DeviceStateServiceImpl deviceStateServiceImpl = (DeviceStateServiceImpl) deviceStateService;
+		deviceStateService.updateInformationValue(1, "21");
+		deviceStateService.updateInformationValue(1, "22");
+		deviceStateService.updateInformationValue(1, "23");
+		long now = System.currentTimeMillis();
+
+		// when
+		int writtenWhileChanging = deviceStateServiceImpl.flushSettled(now);
+		int writtenAfterWindow = deviceStateServiceImpl.flushSettled(now + deviceStateServiceImpl.coalesceWindowMillis);
+
+		// then
+		assertThat(Arrays.asList(writtenWhileChanging, writtenAfterWindow)).containsExactly(0, 1);
+		ArgumentCaptor<Collection<DeviceState>> batch = ArgumentCaptor.forClass(Collection.class);
+		verify(jdbcTemplate, times(1)).batchUpdate(
+				anyString(), batch.capture(), anyInt(), any(ParameterizedPreparedStatementSetter.class));
+		assertThat(batch.getValue().iterator().next().getInformationValue()).isEqualTo("23");
+	}
+
+	@Test
+	public void flushSettled_shouldWriteDevice_whenPendingLongerThanMaxLag() {
+		// given
+		DeviceStateServiceImpl deviceStateServiceImpl = (DeviceStateServiceImpl) deviceStateService;
+		long coalesceWindowMillis = deviceStateServiceImpl.coalesceWindowMillis;
+		deviceStateServiceImpl.coalesceWindowMillis = 60000;
+		deviceStateService.updateInformationValue(1, "21");
+		long now = System.currentTimeMillis();
+
+		try {
+			// when
+			int writtenBeforeMaxLag = deviceStateServiceImpl.flushSettled(now);
+			int writtenAfterMaxLag = deviceStateServiceImpl.flushSettled(now + deviceStateServiceImpl.maxFlushLagMillis);
+
+			// then
+			assertThat(Arrays.asList(writtenBeforeMaxLag, writtenAfterMaxLag)).containsExactly(0, 1);
+		} finally {
+			deviceStateServiceImpl.coalesceWindowMillis = coalesceWindowMillis;
+		}
+	}
+}
@@ -44,6 +44,12 @@ public class DeviceTypeServiceImplTest {
 	@MockBean
 	private BCryptPasswordEncoder bCryptPasswordEncoder;
 	
+	@MockBean
+	private DeviceStateService deviceStateService;
+
+	@MockBean
+	private StateVersionService stateVersionService;
+	
 	private DeviceType deviceType1;
 	private DeviceType deviceType2;
 
@@ -119,6 +125,7 @@ public class DeviceTypeServiceImplTest {
 		// then
 		assertNotNull(deviceTypePersisted);
 		assertThat(deviceTypePersisted.getMaxValue()).isEqualTo(100);
+		verify(deviceStateService).evictValueRanges();
 	}
 	
 	@Test
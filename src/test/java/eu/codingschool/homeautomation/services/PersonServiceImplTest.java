@@ -4,12 +4,16 @@ import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -18,9 +22,12 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.TestConfiguration;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.context.annotation.Bean;
+import org.springframework.mock.web.MockHttpServletRequest;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
 
 import eu.codingschool.homeautomation.model.Device;
 import eu.codingschool.homeautomation.model.Person;
@@ -45,6 +52,18 @@ public class PersonServiceImplTest {
 	
 	@MockBean
 	private BCryptPasswordEncoder bCryptPasswordEncoder;
+
+	@MockBean
+	private DevicePermissionService devicePermissionService;
+
+	@MockBean
+	private RoomService roomService;
+
+	@MockBean
+	private StateVersionService stateVersionService;
+
+	@MockBean
+	private DashboardService dashboardService;
 	
 	private static final String PERSON1_EMAIL = "person1@foo.com";
 	private static final String PERSON1_EMAIL_UPDATED = "person1Updated@foo.com";
@@ -69,6 +88,11 @@ public class PersonServiceImplTest {
 		Mockito.when(personRepository.findByEmail(person1.getEmail())).thenReturn(person1);
 		Mockito.when(personRepository.findByEmail(person2.getEmail())).thenReturn(person2);
 	}
+
+	@After
+	public void tearDown() {
+		RequestContextHolder.resetRequestAttributes();
+	}
 	
 	@Test
 	public void findAll_shouldReturnPersons_whenPersonsExist() {
@@ -170,7 +194,7 @@ public class PersonServiceImplTest {
 		Person person = new Person();
 		person.setId(1);
 		person.setEmail(PERSON1_EMAIL_UPDATED);
-		List<Device> devices = Arrays.asList(new Device(), new Device(), new Device());
+		List<Device> devices = Arrays.asList(device(1), device(2), device(3));
 		
 		// when 
 		personService.update(person, devices);
@@ -180,6 +204,43 @@ public class PersonServiceImplTest {
 		assertNotNull(personUpdated.getDevices());
 		assertThat(personUpdated.getDevices().size()).isEqualTo(devices.size());
 		assertThat(personUpdated.getEmail()).isEqualTo(PERSON1_EMAIL_UPDATED);
+		verify(stateVersionService).changeUser(1);
+		verify(stateVersionService, never()).changeAll();
+	}
+	
+	@Test
+	public void update_shouldChangeAssignedDevicesInPlace_whenDevicesAddedAndRemoved() {
+		// given
+		Device keptDevice = device(1);
+		Device removedDevice = device(2);
+		Device addedDevice = device(3);
+		person1.addDevice(keptDevice);
+		person1.addDevice(removedDevice);
+		Set<Device> assignedDevices = person1.getDevices();
+		
+		// when
+		personService.update(person1, Arrays.asList(keptDevice, addedDevice));
+		
+		// then
+		assertThat(person1.getDevices()).isSameAs(assignedDevices);
+		assertThat(person1.getDevices()).containsExactlyInAnyOrder(keptDevice, addedDevice);
+		verify(roomService).updateDevicesCount(person1.getId(), assignedDevices);
+	}
+	
+	@Test
+	public void update_shouldKeepAssignedDevices_whenSelectedAsOtherInstances() {
+		// given, the selected devices are bound from the form, not the ones loaded with the person
+		Device keptDevice = device(1);
+		Device removedDevice = device(2);
+		person1.addDevice(keptDevice);
+		person1.addDevice(removedDevice);
+		Device addedDevice = device(3);
+		
+		// when
+		personService.update(person1, Arrays.asList(device(1), addedDevice));
+		
+		// then
+		assertThat(person1.getDevices()).containsExactlyInAnyOrder(keptDevice, addedDevice);
 	}
 	
 	@Test
@@ -210,6 +271,9 @@ public class PersonServiceImplTest {
 		
 		// then
 		verify(personRepository).delete(any());
+		verify(stateVersionService).changeUser(person.getId());
+		verify(stateVersionService, never()).changeAll();
+		verify(dashboardService).evict(person.getId());
 	}
 	
 	@Test
@@ -224,4 +288,75 @@ public class PersonServiceImplTest {
 		// when
 		personService.getLoggedInUser();
 	}
+
+	@Test
+	@WithMockUser(username = PERSON1_EMAIL) // given
+	public void getLoggedInPerson_shouldLoadPersonOnce_whenCalledManyTimesInSameRequest() {
+		// given
+		RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest()));
+
+		// when
+		Person firstCall = personService.getLoggedInPerson();
+		Person secondCall = personService.getLoggedInPerson();
+
+		// then
+		assertThat(firstCall).isSameAs(person1);
+		assertThat(secondCall).isSameAs(person1);
+		verify(personRepository, times(1)).findByEmail(PERSON1_EMAIL);
+	}
+
+	@Test
+	@WithMockUser(username = PERSON1_EMAIL) // given
+	public void getLoggedInPerson_shouldLoadPersonAgain_whenInNewRequest() {
+		// given
+		RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest()));
+		personService.getLoggedInPerson();
+		RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest()));
+
+		// when
+		personService.getLoggedInPerson();
+
+		// then
+		verify(personRepository, times(2)).findByEmail(PERSON1_EMAIL);
+	}
+
+	@Test
+	@WithMockUser(username = "email@foo.com") // given
+	public void getLoggedInPerson_shouldLookUpOnce_whenLoggedInPersonNotExists() {
+		// given
+		RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest()));
+
+		// when
+		Person firstCall = personService.getLoggedInPerson();
+		Person secondCall = personService.getLoggedInPerson();
+
+		// then
+		assertNull(firstCall);
+		assertNull(secondCall);
+		verify(personRepository, times(1)).findByEmail("email@foo.com");
+	}
+
+	@Test
+	@WithMockUser(username = PERSON1_EMAIL) // given
+	public void getLoggedInPerson_shouldLoadPersonAgain_whenLoggedInPersonUpdated() {
+		// given
+		RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest()));
+		personService.getLoggedInPerson();
+		Person person = new Person();
+		person.setId(person1.getId());
+		person.setEmail(PERSON1_EMAIL);
+
+		// when
+		personService.update(person, Arrays.asList());
+		personService.getLoggedInPerson();
+
+		// then
+		verify(personRepository, times(2)).findByEmail(PERSON1_EMAIL);
+	}
+
+	private static Device device(int id) {
+		Device device = new Device();
+		device.setId(id);
+		return device;
+	}
 }
\ No newline at end of file
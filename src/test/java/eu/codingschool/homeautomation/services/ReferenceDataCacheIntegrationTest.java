@@ -0,0 +1,146 @@
+package eu.codingschool.homeautomation.services;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.context.jdbc.Sql.ExecutionPhase.AFTER_TEST_METHOD;
+import static org.springframework.test.context.jdbc.Sql.ExecutionPhase.BEFORE_TEST_METHOD;
+
+import java.util.List;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.jdbc.Sql;
+import org.springframework.test.context.jdbc.SqlGroup;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import eu.codingschool.homeautomation.HomeAutomationApplication;
+import eu.codingschool.homeautomation.model.DeviceType;
+import eu.codingschool.homeautomation.model.Room;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * The second-level cache is only turned on here, since the other tests change the database behind Hibernate's back
+ * with the SQL scripts.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = HomeAutomationApplication.class)
+@TestPropertySource(
+		locations = "classpath:application-integrationtest.properties",
+		properties = {
+				"spring.jpa.properties.hibernate.cache.use_second_level_cache=true",
+				"spring.jpa.properties.hibernate.cache.use_query_cache=true",
+				"spring.jpa.properties.hibernate.cache.region.factory_class=org.hibernate.cache.jcache.JCacheRegionFactory",
+				"spring.jpa.properties.hibernate.javax.cache.provider=org.ehcache.jsr107.EhcacheCachingProvider"
+		}
+)
+@SqlGroup({
+	@Sql(executionPhase = BEFORE_TEST_METHOD, scripts = "/test-data-population.sql"),
+	@Sql(executionPhase = AFTER_TEST_METHOD, scripts = "/test-data-cleanup.sql")
+})
+public class ReferenceDataCacheIntegrationTest {
+
+	@Autowired
+	private RoomService roomService;
+
+	@Autowired
+	private DeviceTypeService deviceTypeService;
+
+	@Autowired
+	private EntityManagerFactory entityManagerFactory;
+
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	private Statistics statistics;
+
+	@Before
+	public void setUp() {
+		SessionFactory sessionFactory = entityManagerFactory.unwrap(SessionFactory.class);
+		sessionFactory.getCache().evictAllRegions();
+		statistics = sessionFactory.getStatistics();
+		statistics.clear();
+	}
+
+	@Test
+	public void findAll_shouldNotQueryDatabase_whenRoomsAlreadyListed() {
+		// given
+		roomService.findAll();
+		long statementsBefore = statistics.getPrepareStatementCount();
+
+		// when
+		List<Room> rooms = roomService.findAll();
+
+		// then
+		assertThat(rooms).extracting(Room::getName).contains("Living Room", "Kitchen", "Bedroom");
+		assertThat(statistics.getPrepareStatementCount()).isEqualTo(statementsBefore);
+		assertThat(statistics.getQueryCacheHitCount()).isEqualTo(1);
+		assertThat(meterRegistry.get("hibernate.cache.query.requests").tag("result", "hit").functionCounter().count())
+				.isEqualTo(1);
+	}
+
+	@Test
+	public void findAll_shouldNotQueryDatabase_whenDeviceTypesAlreadyListed() {
+		// given
+		deviceTypeService.findAll();
+		long statementsBefore = statistics.getPrepareStatementCount();
+
+		// when
+		List<DeviceType> deviceTypes = deviceTypeService.findAll();
+
+		// then
+		assertThat(deviceTypes).extracting(DeviceType::getType).contains("Thermostat", "Lights", "Door Lock");
+		assertThat(statistics.getPrepareStatementCount()).isEqualTo(statementsBefore);
+	}
+
+	@Test
+	public void findById_shouldNotQueryDatabase_whenRoomAlreadyListed() {
+		// given
+		roomService.findAll();
+		long statementsBefore = statistics.getPrepareStatementCount();
+
+		// when
+		Room room = roomService.findById(2);
+
+		// then
+		assertThat(room.getName()).isEqualTo("Kitchen");
+		assertThat(statistics.getPrepareStatementCount()).isEqualTo(statementsBefore);
+		assertThat(statistics.getSecondLevelCacheHitCount()).isGreaterThan(0);
+	}
+
+	@Test
+	public void findAll_shouldReturnChangedRoom_whenRoomSavedAfterListing() {
+		// given
+		roomService.findAll();
+		Room room = roomService.findById(2);
+		room.setName("Dining Room");
+
+		// when
+		roomService.save(room);
+
+		// then
+		assertThat(roomService.findAll()).extracting(Room::getName).contains("Dining Room").doesNotContain("Kitchen");
+		assertThat(roomService.findById(2).getName()).isEqualTo("Dining Room");
+	}
+
+	@Test
+	public void findAll_shouldNotReturnDeletedDeviceType_whenDeviceTypeDeletedAfterListing() {
+		// given
+		DeviceType deviceType = deviceTypeService.save(new DeviceType("Oven", "Temperature"));
+		assertThat(deviceTypeService.findAll()).extracting(DeviceType::getType).contains("Oven");
+
+		// when
+		deviceTypeService.delete(deviceType);
+
+		// then
+		assertThat(deviceTypeService.findAll()).extracting(DeviceType::getType).doesNotContain("Oven");
+		assertThat(deviceTypeService.findById(deviceType.getId())).isNull();
+	}
+}
@@ -4,12 +4,16 @@ import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
 
+import eu.codingschool.homeautomation.repositories.projections.DeviceRoom;
 import eu.codingschool.homeautomation.repositories.projections.RoomDevicesCount;
 import org.junit.Before;
 import org.junit.Test;
@@ -19,9 +23,14 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.TestConfiguration;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.context.annotation.Bean;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.SliceImpl;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.PlatformTransactionManager;
 
+import eu.codingschool.homeautomation.model.Device;
+import eu.codingschool.homeautomation.model.ListSort;
 import eu.codingschool.homeautomation.model.Person;
 import eu.codingschool.homeautomation.model.Room;
 import eu.codingschool.homeautomation.repositories.RoomRepository;
@@ -45,6 +54,12 @@ public class RoomServiceImplTest {
 	
 	@MockBean
 	private BCryptPasswordEncoder bCryptPasswordEncoder;
+
+	@MockBean
+	private StateVersionService stateVersionService;
+
+	@MockBean
+	private PlatformTransactionManager transactionManager;
 	
 	private Person person1;
 	private Person person2;
@@ -52,8 +67,8 @@ public class RoomServiceImplTest {
 	private Room room1;
 	private Room room2;
 	
-	private List<RoomDevicesCount> person1Rooms;
-	private List<RoomDevicesCount> person2Rooms;
+	private List<DeviceRoom> person1DeviceRooms;
+	private List<DeviceRoom> person2DeviceRooms;
 
 	@Before
 	public void setUp() {
@@ -68,11 +83,16 @@ public class RoomServiceImplTest {
 		person2 = new Person();
 		person2.setId(2);
 		
-		person1Rooms = Arrays.asList(
-				new RoomDevicesCount(room1, (long)Math.random()),
-				new RoomDevicesCount(room2, (long)Math.random())
+		// the counts are kept across the tests, since the service is shared by them
+		roomService.evictDevicesCount(person1.getId());
+		roomService.evictDevicesCount(person2.getId());
+
+		person1DeviceRooms = Arrays.asList(
+				new DeviceRoom(1, room1),
+				new DeviceRoom(2, room2),
+				new DeviceRoom(3, room2)
 		);
-		person2Rooms = Arrays.asList();
+		person2DeviceRooms = Arrays.asList();
 		
 		Mockito.when(roomRepository.findById(room1.getId())).thenReturn(Optional.of(room1));
 		Mockito.when(roomRepository.findById(room2.getId())).thenReturn(Optional.of(room2));
@@ -105,6 +125,33 @@ public class RoomServiceImplTest {
 		assertThat(rooms).isEmpty();
 	}
 	
+	@Test
+	public void findPage_shouldStartFromTheFirstRow_whenNoRowGiven() {
+		// given
+		Mockito.when(roomRepository.findPageOrderByName(any(), any(), Mockito.anyInt(), any()))
+			   .thenReturn(new SliceImpl<>(Arrays.asList(room1)));
+		
+		// when
+		List<Room> rooms = roomService.findPage(ListSort.NAME, null, null, null).getContent();
+		
+		// then
+		assertThat(rooms).containsExactly(room1);
+		verify(roomRepository).findPageOrderByName(isNull(), isNull(), eq(0), eq(PageRequest.of(0, 50)));
+	}
+	
+	@Test
+	public void findPage_shouldMatchWildcardsLiterally_whenFiltering() {
+		// given
+		Mockito.when(roomRepository.findPageOrderById(any(), Mockito.anyInt(), any()))
+			   .thenReturn(new SliceImpl<>(Arrays.asList()));
+		
+		// when
+		roomService.findPage(ListSort.ID, " 100%_Room! ", 2, null);
+		
+		// then
+		verify(roomRepository).findPageOrderById(eq("%100!%!_room!!%"), eq(2), any());
+	}
+	
 	@Test
 	public void findById_shouldReturnRoom_whenRoomWithIdExists() {
 		// when
@@ -127,20 +174,121 @@ public class RoomServiceImplTest {
 	@Test
 	public void findByUser_shouldReturnRooms_whenRoomsForUserExists() {
 		// given
-		Mockito.when(roomRepository.findUserRooms(person1.getId())).thenReturn(person1Rooms);
+		Mockito.when(roomRepository.findUserDeviceRooms(person1.getId())).thenReturn(person1DeviceRooms);
 		
 		// when
 		List<RoomDevicesCount> rooms = roomService.findByUser(person1.getId());
 		
 		// then
 		assertNotNull(rooms);
-		assertThat(rooms.size()).isEqualTo(person1Rooms.size());
+		assertThat(rooms).extracting(RoomDevicesCount::getRoom).containsExactly(room1, room2);
+		assertThat(rooms).extracting(RoomDevicesCount::getUserDevicesCount).containsExactly(1L, 2L);
+	}
+
+	@Test
+	public void findByUser_shouldQueryOnce_whenCalledAgain() {
+		// given
+		Mockito.when(roomRepository.findUserDeviceRooms(person1.getId())).thenReturn(person1DeviceRooms);
+		roomService.findByUser(person1.getId());
+
+		// when
+		List<RoomDevicesCount> rooms = roomService.findByUser(person1.getId());
+
+		// then
+		assertThat(rooms).hasSize(2);
+		verify(roomRepository, times(1)).findUserDeviceRooms(person1.getId());
+	}
+
+	@Test
+	public void findByUser_shouldQueryAgain_whenDeviceRemovedDuringTheLoad() {
+		// given
+		Mockito.when(roomRepository.findUserDeviceRooms(person1.getId()))
+			   .thenAnswer(invocation -> {
+				   // the map is not locked while the counts are loaded, so the change does not wait for it
+				   roomService.removeDevice(3);
+				   return person1DeviceRooms;
+			   })
+			   .thenReturn(person1DeviceRooms.subList(0, 2));
+		roomService.findByUser(person1.getId());
+
+		// when
+		List<RoomDevicesCount> rooms = roomService.findByUser(person1.getId());
+
+		// then
+		assertThat(rooms).extracting(RoomDevicesCount::getUserDevicesCount).containsExactly(1L, 1L);
+		verify(roomRepository, times(2)).findUserDeviceRooms(person1.getId());
+	}
+
+	@Test
+	public void updateDevicesCount_shouldCountAssignedDevices_whenAssignmentsChanged() {
+		// given
+		Mockito.when(roomRepository.findUserDeviceRooms(person1.getId())).thenReturn(person1DeviceRooms);
+		roomService.findByUser(person1.getId());
+
+		// when
+		roomService.updateDevicesCount(
+				person1.getId(), Arrays.asList(device(1, room2), device(4, room2), device(5, null)));
+
+		// then
+		List<RoomDevicesCount> rooms = roomService.findByUser(person1.getId());
+		assertThat(rooms).extracting(RoomDevicesCount::getRoom).containsExactly(room2);
+		assertThat(rooms).extracting(RoomDevicesCount::getUserDevicesCount).containsExactly(2L);
+		verify(roomRepository, times(1)).findUserDeviceRooms(person1.getId());
+	}
+
+	@Test
+	public void moveDevice_shouldMoveCountToNewRoom_whenDeviceChangedRoom() {
+		// given
+		Mockito.when(roomRepository.findUserDeviceRooms(person1.getId())).thenReturn(person1DeviceRooms);
+		Mockito.when(roomRepository.findUserDeviceRooms(person2.getId())).thenReturn(person2DeviceRooms);
+		roomService.findByUser(person1.getId());
+		roomService.findByUser(person2.getId());
+
+		// when
+		roomService.moveDevice(device(1, room2));
+
+		// then
+		List<RoomDevicesCount> rooms = roomService.findByUser(person1.getId());
+		assertThat(rooms).extracting(RoomDevicesCount::getRoom).containsExactly(room2);
+		assertThat(rooms).extracting(RoomDevicesCount::getUserDevicesCount).containsExactly(3L);
+		assertThat(roomService.findByUser(person2.getId())).isEmpty();
+	}
+
+	@Test
+	public void removeDevice_shouldNotCountDevice_whenDeviceDeleted() {
+		// given
+		Mockito.when(roomRepository.findUserDeviceRooms(person1.getId())).thenReturn(person1DeviceRooms);
+		roomService.findByUser(person1.getId());
+
+		// when
+		roomService.removeDevice(3);
+
+		// then
+		List<RoomDevicesCount> rooms = roomService.findByUser(person1.getId());
+		assertThat(rooms).extracting(RoomDevicesCount::getUserDevicesCount).containsExactly(1L, 1L);
+	}
+
+	@Test
+	public void save_shouldShowNewRoomName_whenRoomRenamed() {
+		// given
+		Mockito.when(roomRepository.findUserDeviceRooms(person1.getId())).thenReturn(person1DeviceRooms);
+		roomService.findByUser(person1.getId());
+		Room renamedRoom = new Room("Dining Room");
+		renamedRoom.setId(room2.getId());
+		Mockito.when(roomRepository.save(renamedRoom)).thenReturn(renamedRoom);
+
+		// when
+		roomService.save(renamedRoom);
+
+		// then
+		List<RoomDevicesCount> rooms = roomService.findByUser(person1.getId());
+		assertThat(rooms).extracting(RoomDevicesCount::getRoom).containsExactly(room1, renamedRoom);
 	}
 	
 	@Test
 	public void findByUser_shouldNotReturnRooms_whenRoomsForUserNotExists() {
 		// given
-		Mockito.when(roomRepository.findUserRooms(person2.getId())).thenReturn(person2Rooms);
+		Mockito.when(roomRepository.findUserDeviceRooms(person2.getId())).thenReturn(person2DeviceRooms);
 		
 		// when
 		List<RoomDevicesCount> room = roomService.findByUser(person2.getId());
@@ -175,4 +323,11 @@ public class RoomServiceImplTest {
 		// then
 		verify(roomRepository).delete(any());
 	}
+
+	private static Device device(int id, Room room) {
+		Device device = new Device();
+		device.setId(id);
+		device.setRoom(room);
+		return device;
+	}
 }
\ No newline at end of file
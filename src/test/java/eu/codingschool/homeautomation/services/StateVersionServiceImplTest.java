@@ -0,0 +1,128 @@
+package eu.codingschool.homeautomation.services;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import eu.codingschool.homeautomation.events.DeviceStateChangedEvent;
+import eu.codingschool.homeautomation.model.DeviceState;
+
+@RunWith(SpringRunner.class)
+public class StateVersionServiceImplTest {
+
+	@TestConfiguration
+	static class StateVersionServiceImplTestContextConfiguration {
+		@Bean
+		public StateVersionService stateVersionService() {
+			return new StateVersionServiceImpl();
+		}
+	}
+
+	@Autowired
+	private StateVersionService stateVersionService;
+
+	@MockBean
+	private DevicePermissionService devicePermissionService;
+
+	@Before
+	public void setUp() {
+		Mockito.when(devicePermissionService.getAssignedDeviceIds(102)).thenReturn(new int[] {2, 4, 7});
+	}
+
+	@Test
+	public void getUserVersion_shouldChange_whenAnAssignedDeviceChanges() {
+		// given
+		long before = stateVersionService.getUserVersion(102);
+
+		// when
+		changeState(4);
+
+		// then
+		assertThat(stateVersionService.getUserVersion(102)).isGreaterThan(before);
+	}
+
+	@Test
+	public void getUserVersion_shouldNotChange_whenAnotherDeviceChanges() {
+		// given
+		long before = stateVersionService.getUserVersion(102);
+
+		// when
+		changeState(1);
+
+		// then
+		assertThat(stateVersionService.getUserVersion(102)).isEqualTo(before);
+	}
+
+	@Test
+	public void getDeviceVersion_shouldChangeOnlyForTheDevice_whenItChanges() {
+		// given
+		long before = stateVersionService.getDeviceVersion(4);
+		long otherBefore = stateVersionService.getDeviceVersion(5);
+
+		// when
+		changeState(4);
+
+		// then
+		assertThat(stateVersionService.getDeviceVersion(4)).isGreaterThan(before);
+		assertThat(stateVersionService.getDeviceVersion(5)).isEqualTo(otherBefore);
+	}
+
+	@Test
+	public void getVersion_shouldChange_whenAnyDeviceChanges() {
+		// given
+		long before = stateVersionService.getVersion();
+
+		// when
+		changeState(1);
+
+		// then
+		assertThat(stateVersionService.getVersion()).isGreaterThan(before);
+	}
+
+	@Test
+	public void changeAll_shouldChangeEveryVersion_whenCalledOutsideATransaction() {
+		// given
+		long userBefore = stateVersionService.getUserVersion(102);
+		long deviceBefore = stateVersionService.getDeviceVersion(5);
+
+		// when
+		stateVersionService.changeAll();
+
+		// then
+		assertThat(stateVersionService.getUserVersion(102)).isGreaterThan(userBefore);
+		assertThat(stateVersionService.getDeviceVersion(5)).isGreaterThan(deviceBefore);
+		assertThat(stateVersionService.getVersion()).isGreaterThanOrEqualTo(stateVersionService.getUserVersion(102));
+	}
+
+	@Test
+	public void changeUser_shouldChangeOnlyTheUserAndEverything_whenCalledOutsideATransaction() {
+		// given
+		Mockito.when(devicePermissionService.getAssignedDeviceIds(103)).thenReturn(new int[] {4});
+		long userBefore = stateVersionService.getUserVersion(102);
+		long otherUserBefore = stateVersionService.getUserVersion(103);
+		long deviceBefore = stateVersionService.getDeviceVersion(4);
+		long before = stateVersionService.getVersion();
+
+		// when
+		stateVersionService.changeUser(102);
+
+		// then
+		assertThat(stateVersionService.getUserVersion(102)).isGreaterThan(userBefore);
+		assertThat(stateVersionService.getUserVersion(103)).isEqualTo(otherUserBefore);
+		assertThat(stateVersionService.getDeviceVersion(4)).isEqualTo(deviceBefore);
+		assertThat(stateVersionService.getVersion()).isGreaterThan(before);
+	}
+
+	private void changeState(int deviceId) {
+		((StateVersionServiceImpl) stateVersionService).onDeviceStateChanged(
+				new DeviceStateChangedEvent(new DeviceState(deviceId, true, "1")));
+	}
+}
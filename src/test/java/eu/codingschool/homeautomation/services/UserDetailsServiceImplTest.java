@@ -17,6 +17,7 @@ import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.test.context.junit4.SpringRunner;
 
 import eu.codingschool.homeautomation.model.Person;
+import eu.codingschool.homeautomation.security.PersonUser;
 
 @RunWith(SpringRunner.class)
 public class UserDetailsServiceImplTest {
@@ -39,6 +40,7 @@ public class UserDetailsServiceImplTest {
 	public void loadUserByUsername_shouldLoadUser_whenUserExists() {
 		// given
 		Person person = new Person("Admin", "Surname", "administrator@foo.com", "***", "ADMIN");
+		person.setId(101);
 		Mockito.when(personService.findByEmail(person.getEmail())).thenReturn(person);
         Object[] person1Authorities = new GrantedAuthority[] {
         		new SimpleGrantedAuthority(person.getRole())
@@ -51,6 +53,8 @@ public class UserDetailsServiceImplTest {
 		assertNotNull(userDetails);
 		assertThat(userDetails.getUsername()).isEqualTo(person.getEmail());
 		assertThat(userDetails.getAuthorities().toArray()).contains(person1Authorities);
+		assertThat(((PersonUser) userDetails).getPersonId()).isEqualTo(101);
+		assertThat(((PersonUser) userDetails).isAdmin()).isTrue();
 	}
 	
 	@Test(expected = UsernameNotFoundException.class) // then
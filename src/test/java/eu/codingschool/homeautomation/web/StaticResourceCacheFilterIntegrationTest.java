@@ -0,0 +1,135 @@
+package eu.codingschool.homeautomation.web;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.testSecurityContext;
+import static org.springframework.test.context.jdbc.Sql.ExecutionPhase.AFTER_TEST_METHOD;
+import static org.springframework.test.context.jdbc.Sql.ExecutionPhase.BEFORE_TEST_METHOD;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import javax.servlet.Filter;
+
+import org.hamcrest.Matchers;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.jdbc.Sql;
+import org.springframework.test.context.jdbc.SqlGroup;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+import org.springframework.web.servlet.resource.ResourceUrlEncodingFilter;
+import org.springframework.web.servlet.resource.ResourceUrlProvider;
+
+import eu.codingschool.homeautomation.HomeAutomationApplication;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(
+		webEnvironment = SpringBootTest.WebEnvironment.MOCK,
+		classes = HomeAutomationApplication.class
+)
+// as in the main application.properties, which the test properties shadow
+@TestPropertySource(
+		locations = "classpath:application-integrationtest.properties",
+		properties = "spring.resources.chain.enabled=true"
+)
+@SqlGroup({
+	@Sql(executionPhase = BEFORE_TEST_METHOD, scripts = "/test-data-population.sql"),
+	@Sql(executionPhase = AFTER_TEST_METHOD, scripts = "/test-data-cleanup.sql")
+})
+public class StaticResourceCacheFilterIntegrationTest {
+
+	@Autowired
+	private WebApplicationContext context;
+
+	@Autowired
+	private ResourceUrlProvider resourceUrlProvider;
+
+	@Autowired
+	private StaticResourceCacheFilter staticResourceCacheFilter;
+
+	@Autowired
+	private Filter springSecurityFilterChain;
+
+	private MockMvc mockMvc;
+
+	private static final String APP_JS = "/js/app.min.js";
+	private static final String APP_CSS = "/css/app.min.css";
+
+	// User inserted in database via test/resources/test-data-population.sql
+	private static final String MOCK_USER = "testuser1@foo.com";
+
+	@Before
+	public void setUp() {
+		// the url encoding filter has to come after Spring Security, which stops the rewriting of the urls, as it
+		// does when the filters are registered by Spring Boot
+		mockMvc = MockMvcBuilders.webAppContextSetup(context)
+								 .addFilters(springSecurityFilterChain, new ResourceUrlEncodingFilter(), staticResourceCacheFilter)
+								 .defaultRequest(get("/").with(testSecurityContext()))
+								 .build();
+	}
+
+	@Test
+	@WithMockUser(username = MOCK_USER)
+	public void pages_shouldLinkToFingerprintedBundles() throws Exception {
+		mockMvc.perform(get("/index"))
+			   .andExpect(status().isOk())
+			   .andExpect(content().string(Matchers.containsString(resourceUrlProvider.getForLookupPath(APP_JS))))
+			   .andExpect(content().string(Matchers.containsString(resourceUrlProvider.getForLookupPath(APP_CSS))));
+	}
+
+	@Test
+	public void fingerprintedAsset_shouldBeCachedForAYear() throws Exception {
+		String url = resourceUrlProvider.getForLookupPath(APP_JS);
+		assertThat(url).matches("/js/app\\.min-[0-9a-f]{32}\\.js");
+
+		mockMvc.perform(get(url))
+			   .andExpect(status().isOk())
+			   .andExpect(header().doesNotExist(HttpHeaders.CONTENT_ENCODING))
+			   .andExpect(header().string(HttpHeaders.CACHE_CONTROL, StaticResourceCacheFilter.IMMUTABLE));
+	}
+
+	@Test
+	public void fingerprintedAsset_shouldBeServedPrecompressed_whenGzipIsAccepted() throws Exception {
+		String url = resourceUrlProvider.getForLookupPath(APP_CSS);
+
+		mockMvc.perform(get(url).header(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate"))
+			   .andExpect(status().isOk())
+			   .andExpect(header().string(HttpHeaders.CONTENT_ENCODING, "gzip"))
+			   .andExpect(header().string(HttpHeaders.VARY, Matchers.containsString(HttpHeaders.ACCEPT_ENCODING)))
+			   .andExpect(header().string(HttpHeaders.CACHE_CONTROL, StaticResourceCacheFilter.IMMUTABLE));
+	}
+
+	@Test
+	public void unversionedAsset_shouldBeRevalidated() throws Exception {
+		String lastModified = mockMvc.perform(get(APP_JS))
+									 .andExpect(status().isOk())
+									 .andExpect(header().string(HttpHeaders.CACHE_CONTROL, StaticResourceCacheFilter.REVALIDATE))
+									 .andReturn().getResponse().getHeader(HttpHeaders.LAST_MODIFIED);
+
+		mockMvc.perform(get(APP_JS).header(HttpHeaders.IF_MODIFIED_SINCE, lastModified))
+			   .andExpect(status().isNotModified());
+	}
+
+	@Test
+	public void unknownFingerprint_shouldNotBeCached() throws Exception {
+		mockMvc.perform(get("/js/app.min-0123456789abcdef0123456789abcdef.js"))
+			   .andExpect(status().isNotFound())
+			   .andExpect(header().string(HttpHeaders.CACHE_CONTROL, StaticResourceCacheFilter.REVALIDATE));
+	}
+
+	@Test
+	public void pages_shouldNotBeTouched() throws Exception {
+		mockMvc.perform(get("/login"))
+			   .andExpect(status().isOk())
+			   .andExpect(header().string(HttpHeaders.CACHE_CONTROL, Matchers.containsString("no-store")));
+	}
+}
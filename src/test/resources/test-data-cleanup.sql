@@ -1,3 +1,5 @@
+DELETE FROM device_history;
+DELETE FROM device_history_rollup;
 DELETE FROM person_device;
 DELETE FROM device;
 DELETE FROM device_type;
@@ -95,3 +95,22 @@ VALUES (103, 6);
 
 INSERT INTO person_device(person_id, device_id)
 VALUES (103, 7);
+
+-- The ids above are not handed out by Hibernate, so its id generator must continue after them. The rows are kept between
+-- the tests, since the generator keeps the ids it has reserved in memory, and are only ever raised.
+
+MERGE INTO id_generator (sequence_name, next_val) KEY (sequence_name)
+SELECT 'person', GREATEST(COALESCE(MAX(id), 0) + 1, COALESCE((SELECT next_val FROM id_generator WHERE sequence_name = 'person'), 0))
+FROM person;
+
+MERGE INTO id_generator (sequence_name, next_val) KEY (sequence_name)
+SELECT 'room', GREATEST(COALESCE(MAX(id), 0) + 1, COALESCE((SELECT next_val FROM id_generator WHERE sequence_name = 'room'), 0))
+FROM room;
+
+MERGE INTO id_generator (sequence_name, next_val) KEY (sequence_name)
+SELECT 'device_type', GREATEST(COALESCE(MAX(id), 0) + 1, COALESCE((SELECT next_val FROM id_generator WHERE sequence_name = 'device_type'), 0))
+FROM device_type;
+
+MERGE INTO id_generator (sequence_name, next_val) KEY (sequence_name)
+SELECT 'device', GREATEST(COALESCE(MAX(id), 0) + 1, COALESCE((SELECT next_val FROM id_generator WHERE sequence_name = 'device'), 0))
+FROM device;
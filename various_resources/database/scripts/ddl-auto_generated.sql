@@ -30,7 +30,8 @@ CREATE TABLE IF NOT EXISTS `home_automation`.`Person` (
   `email` VARCHAR(45) NULL,
   `password` VARCHAR(45) NULL,
   `role` VARCHAR(45) NULL COMMENT 'Initially, this will be either ADMIN or USER.',
-  PRIMARY KEY (`id`))
+  PRIMARY KEY (`id`),
+  INDEX `idx_Person_name` (`name` ASC, `id` ASC))
 ENGINE = InnoDB;
 
 
@@ -42,7 +43,8 @@ DROP TABLE IF EXISTS `home_automation`.`Room` ;
 CREATE TABLE IF NOT EXISTS `home_automation`.`Room` (
   `id` INT NOT NULL AUTO_INCREMENT,
   `name` VARCHAR(45) NULL,
-  PRIMARY KEY (`id`))
+  PRIMARY KEY (`id`),
+  INDEX `idx_Room_name` (`name` ASC, `id` ASC))
 ENGINE = InnoDB;
 
 
@@ -68,12 +70,14 @@ CREATE TABLE IF NOT EXISTS `home_automation`.`Device` (
   `id` INT NOT NULL AUTO_INCREMENT,
   `name` VARCHAR(45) NULL,
   `status` CHAR(1) NOT NULL DEFAULT 0 COMMENT 'This will be either 1 (on) or 0 (off).',
-  `information_value` VARCHAR(45) NULL COMMENT 'It keeps a value for the specific device related to the type of the device. For instance, for the oven we keep the temperature in Celsius degrees, for lighting we keep the percentage of the illumination, etc.',
+  `information_value` DECIMAL(10,2) NULL COMMENT 'It keeps a value for the specific device related to the type of the device. For instance, for the oven we keep the temperature in Celsius degrees, for lighting we keep the percentage of the illumination, etc.',
   `Room_id` INT NOT NULL,
   `Device_Type_id` INT NOT NULL,
+  `version` INT NOT NULL DEFAULT 0 COMMENT 'Increased by every update of the device by the admin forms, so that concurrent updates are detected instead of overwriting each other.',
   PRIMARY KEY (`id`),
+  INDEX `idx_Device_name` (`name` ASC, `id` ASC),
   INDEX `fk_Device_Room_idx` (`Room_id` ASC),
-  INDEX `fk_Device_Device_Type_idx` (`Device_Type_id` ASC),
+  INDEX `idx_Device_type_value` (`Device_Type_id` ASC, `information_value` ASC),
   CONSTRAINT `fk_Device_Room`
     FOREIGN KEY (`Room_id`)
     REFERENCES `home_automation`.`Room` (`id`)
@@ -111,6 +115,65 @@ CREATE TABLE IF NOT EXISTS `home_automation`.`Person_Device` (
 ENGINE = InnoDB;
 
 
+-- -----------------------------------------------------
+-- Table `home_automation`.`device_history`
+-- -----------------------------------------------------
+DROP TABLE IF EXISTS `home_automation`.`device_history` ;
+
+CREATE TABLE IF NOT EXISTS `home_automation`.`device_history` (
+  `id` BIGINT NOT NULL AUTO_INCREMENT,
+  `device_id` INT NOT NULL,
+  `recorded_at` BIGINT NOT NULL COMMENT 'Time of the change in millis since the epoch.',
+  `status` BOOLEAN NOT NULL,
+  `numeric_value` DOUBLE NULL COMMENT 'The information value of the device, null when it is not a number.',
+  PRIMARY KEY (`id`),
+  INDEX `idx_device_history_device_time` (`device_id` ASC, `recorded_at` ASC),
+  INDEX `idx_device_history_time` (`recorded_at` ASC))
+ENGINE = InnoDB;
+
+
+-- -----------------------------------------------------
+-- Table `home_automation`.`device_history_rollup`
+-- -----------------------------------------------------
+DROP TABLE IF EXISTS `home_automation`.`device_history_rollup` ;
+
+CREATE TABLE IF NOT EXISTS `home_automation`.`device_history_rollup` (
+  `device_id` INT NOT NULL,
+  `resolution` VARCHAR(6) NOT NULL COMMENT 'Either MINUTE, HOUR or DAY.',
+  `bucket_start` BIGINT NOT NULL COMMENT 'Start of the bucket in millis since the epoch.',
+  `sample_count` BIGINT NOT NULL,
+  `min_value` DOUBLE NOT NULL,
+  `max_value` DOUBLE NOT NULL,
+  `sum_value` DOUBLE NOT NULL,
+  PRIMARY KEY (`device_id`, `resolution`, `bucket_start`),
+  INDEX `idx_device_history_rollup_bucket` (`resolution` ASC, `bucket_start` ASC))
+ENGINE = InnoDB;
+
+
+-- -----------------------------------------------------
+-- Table `home_automation`.`replication_heartbeat`
+-- -----------------------------------------------------
+DROP TABLE IF EXISTS `home_automation`.`replication_heartbeat` ;
+
+CREATE TABLE IF NOT EXISTS `home_automation`.`replication_heartbeat` (
+  `id` INT NOT NULL,
+  `beat_at` BIGINT NOT NULL COMMENT 'Time of the latest heartbeat of the primary in millis since the epoch, see homeautomation.datasource.replica-urls.',
+  PRIMARY KEY (`id`))
+ENGINE = InnoDB;
+
+
+-- -----------------------------------------------------
+-- Table `home_automation`.`id_generator`
+-- -----------------------------------------------------
+DROP TABLE IF EXISTS `home_automation`.`id_generator` ;
+
+CREATE TABLE IF NOT EXISTS `home_automation`.`id_generator` (
+  `sequence_name` VARCHAR(255) NOT NULL COMMENT 'The table whose ids are handed out: person, room, device_type or device.',
+  `next_val` BIGINT NULL COMMENT 'The first id of the next block of ids that Hibernate reserves, see the @GenericGenerator of the entities.',
+  PRIMARY KEY (`sequence_name`))
+ENGINE = InnoDB;
+
+
 SET SQL_MODE=@OLD_SQL_MODE;
 SET FOREIGN_KEY_CHECKS=@OLD_FOREIGN_KEY_CHECKS;
 SET UNIQUE_CHECKS=@OLD_UNIQUE_CHECKS;
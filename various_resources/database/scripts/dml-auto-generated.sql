@@ -21,7 +21,7 @@
 
 LOCK TABLES `device` WRITE;
 /*!40000 ALTER TABLE `device` DISABLE KEYS */;
-INSERT INTO `device` VALUES (17,'Game play station',1,'3',11,35),(18,'Watering system',1,'70',13,34),(19,'Air Condition #1',1,'23',5,30),(20,'Lighting #1',0,'50',5,31),(32,'Air Condition #2',0,NULL,5,30),(33,'Lighting #2',1,'10',5,31),(34,'Air Condition #3',0,NULL,5,30),(35,'Lighting #3',0,'40',5,31),(36,'Air Condition #4',0,NULL,5,30),(37,'Lighting #4',0,'20',5,31),(38,'otinanai',0,NULL,14,65);
+INSERT INTO `device` VALUES (17,'Game play station',1,'3',11,35,0),(18,'Watering system',1,'70',13,34,0),(19,'Air Condition #1',1,'23',5,30,0),(20,'Lighting #1',0,'50',5,31,0),(32,'Air Condition #2',0,NULL,5,30,0),(33,'Lighting #2',1,'10',5,31,0),(34,'Air Condition #3',0,NULL,5,30,0),(35,'Lighting #3',0,'40',5,31,0),(36,'Air Condition #4',0,NULL,5,30,0),(37,'Lighting #4',0,'20',5,31,0),(38,'otinanai',0,NULL,14,65,0);
 /*!40000 ALTER TABLE `device` ENABLE KEYS */;
 UNLOCK TABLES;
 
@@ -64,6 +64,14 @@ LOCK TABLES `room` WRITE;
 INSERT INTO `room` VALUES (5,'Dining Room'),(6,'Kitchen'),(7,'Bedroom'),(8,'Bathroom'),(9,'Living Room'),(11,'Play Room'),(13,'Garden'),(14,'foo_room1');
 /*!40000 ALTER TABLE `room` ENABLE KEYS */;
 UNLOCK TABLES;
+--
+-- The ids that Hibernate hands out continue after the ones above
+--
+
+UPDATE `id_generator` SET `next_val` = (SELECT MAX(`id`) + 1 FROM `person`) WHERE `sequence_name` = 'person';
+UPDATE `id_generator` SET `next_val` = (SELECT MAX(`id`) + 1 FROM `room`) WHERE `sequence_name` = 'room';
+UPDATE `id_generator` SET `next_val` = (SELECT MAX(`id`) + 1 FROM `device_type`) WHERE `sequence_name` = 'device_type';
+UPDATE `id_generator` SET `next_val` = (SELECT MAX(`id`) + 1 FROM `device`) WHERE `sequence_name` = 'device';
 /*!40103 SET TIME_ZONE=@OLD_TIME_ZONE */;
 
 /*!40101 SET SQL_MODE=@OLD_SQL_MODE */;